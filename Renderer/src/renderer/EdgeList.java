@@ -1,31 +1,62 @@
 package renderer;
 
-import java.awt.*;
-import java.util.HashMap;
-import java.util.Map;
-
 /**
  * EdgeList should store the data for the edge list of a single polygon in your
  * scene. A few method stubs have been provided so that it can be tested, but
  * you'll need to fill in all the details.
  *
- * You'll probably want to add some setters as well as getters or, for example,
- * an addRow(y, xLeft, xRight, zLeft, zRight) method.
+ * The left and right x, z, and colour of each row are kept in flat arrays
+ * indexed by y - startY. The arrays only grow, so one edge list can be reset
+ * and reused for every polygon, and once it's big enough for the tallest
+ * polygon nothing is allocated to fill it.
  */
 public class EdgeList {
-	private final int startY;
-	private final int endY;
+	private int startY;
+	private int endY;
+
+	private float[] leftX = new float[0];
+	private float[] rightX = new float[0];
+	private float[] leftZ = new float[0];
+	private float[] rightZ = new float[0];
+	private float[] leftR = new float[0];
+	private float[] leftG = new float[0];
+	private float[] leftB = new float[0];
+	private float[] rightR = new float[0];
+	private float[] rightG = new float[0];
+	private float[] rightB = new float[0];
 
-	private Map<Integer, Float> leftXMap = new HashMap<>();
-	private Map<Integer, Float> rightXMap = new HashMap<>();
-	private Map<Integer, Float> leftZMap = new HashMap<>();
-	private Map<Integer, Float> rightZMap = new HashMap<>();
-	private Map<Integer, Color> leftColorMap = new HashMap<>();
-	private Map<Integer, Color> rightColorMap = new HashMap<>();
+	/**
+	 * Makes an empty edge list, to be {@link #reset} before it's filled
+	 */
+	public EdgeList() {
+	}
 
 	public EdgeList(int startY, int endY) {
+		reset(startY, endY);
+	}
+
+	/**
+	 * Empties the edge list so it can hold the rows of another polygon,
+	 * growing the arrays if they aren't big enough
+	 */
+	public void reset(int startY, int endY) {
 		this.startY = startY;
 		this.endY = endY;
+
+		int rows = endY - startY + 1;
+		if (rows > leftX.length) {
+			int capacity = Math.max(rows, leftX.length * 2);
+			leftX = new float[capacity];
+			rightX = new float[capacity];
+			leftZ = new float[capacity];
+			rightZ = new float[capacity];
+			leftR = new float[capacity];
+			leftG = new float[capacity];
+			leftB = new float[capacity];
+			rightR = new float[capacity];
+			rightG = new float[capacity];
+			rightB = new float[capacity];
+		}
 	}
 
 	public int getStartY() {
@@ -36,41 +67,62 @@ public class EdgeList {
 		return endY;
 	}
 
-	public void add(int y, float x, float z, Color color, boolean left) {
+	public void add(int y, float x, float z, float r, float g, float b, boolean left) {
+		int i = y - startY;
 		if (left) {
-			leftXMap.put(y, x);
-			leftZMap.put(y, z);
-			leftColorMap.put(y, color);
+			leftX[i] = x;
+			leftZ[i] = z;
+			leftR[i] = r;
+			leftG[i] = g;
+			leftB[i] = b;
 		}
 		else {
-			rightXMap.put(y, x);
-			rightZMap.put(y, z);
-			rightColorMap.put(y, color);
+			rightX[i] = x;
+			rightZ[i] = z;
+			rightR[i] = r;
+			rightG[i] = g;
+			rightB[i] = b;
 		}
 	}
 
 	public float getLeftX(int y) {
-		return leftXMap.get(y);
+		return leftX[y - startY];
 	}
 
 	public float getRightX(int y) {
-		return rightXMap.get(y);
+		return rightX[y - startY];
 	}
 
 	public float getLeftZ(int y) {
-		return leftZMap.get(y);
+		return leftZ[y - startY];
 	}
 
 	public float getRightZ(int y) {
-		return rightZMap.get(y);
+		return rightZ[y - startY];
+	}
+
+	public float getLeftRed(int y) {
+		return leftR[y - startY];
+	}
+
+	public float getLeftGreen(int y) {
+		return leftG[y - startY];
+	}
+
+	public float getLeftBlue(int y) {
+		return leftB[y - startY];
+	}
+
+	public float getRightRed(int y) {
+		return rightR[y - startY];
 	}
 
-	public Color getLeftColor(int y) {
-		return leftColorMap.get(y);
+	public float getRightGreen(int y) {
+		return rightG[y - startY];
 	}
 
-	public Color getRightColor(int y) {
-		return rightColorMap.get(y);
+	public float getRightBlue(int y) {
+		return rightB[y - startY];
 	}
 }
 
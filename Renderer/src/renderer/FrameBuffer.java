@@ -0,0 +1,65 @@
+package renderer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * The colour and depth of every pixel of a frame, kept in flat arrays indexed by y * width + x. The colours are the
+ * pixel array of the image itself, so writing a pixel draws it straight into the image, and the image can be shown
+ * without copying anything. The buffer is meant to be kept and cleared for each frame rather than made again.
+ */
+public class FrameBuffer {
+    private final int width;
+    private final int height;
+    private final BufferedImage image;
+    private final int[] pixels; //RGB colour of each pixel, shared with the image
+    private final float[] depth; //Z value of whatever was drawn at each pixel
+
+    public FrameBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        depth = new float[width * height];
+    }
+
+    /**
+     * Fills every pixel with the background colour, and pushes every pixel's depth infinitely far away
+     *
+     * @param rgb the background colour, as from {@link java.awt.Color#getRGB()}
+     */
+    public void clear(int rgb) {
+        Arrays.fill(pixels, rgb);
+        Arrays.fill(depth, Float.POSITIVE_INFINITY);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the RGB colour of every pixel. Changes to the array change the image
+     */
+    public int[] getPixels() {
+        return pixels;
+    }
+
+    /**
+     * @return the depth of every pixel
+     */
+    public float[] getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return the image the pixels are drawn into. It's drawn over by the next frame
+     */
+    public BufferedImage getImage() {
+        return image;
+    }
+}
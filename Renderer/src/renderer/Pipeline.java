@@ -27,6 +27,13 @@ public class Pipeline {
         return (int) Math.max(Math.min(a, 255), 0);
     }
 
+    /**
+     * Packs a colour into an RGB pixel, with each component clamped
+     */
+    private static int pack(float r, float g, float b) {
+        return clamp(r) << 16 | clamp(g) << 8 | clamp(b);
+    }
+
     private static int divClamp(float a) {
         return clamp(a / 255);
     }
@@ -157,118 +164,148 @@ public class Pipeline {
         return transformScene(scene, transform);
     }
 
+    /**
+     * Computes the edgelist of a single provided polygon into a new edge list
+     *
+     * @see #computeEdgeList(Polygon, Map, EdgeList)
+     */
+    public static EdgeList computeEdgeList(Polygon poly, Map<Vector3D, Color> vertexColors) {
+        return computeEdgeList(poly, vertexColors, new EdgeList());
+    }
+
     /**
      * Computes the edgelist of a single provided polygon, using a custom (slightly less efficient, much more accurate) method
      * This method sorts the the vertices based on y value (so v0.y <= v1.y <= v2.y). It then traverses down the longest
      * side first (updating either the lhs or rhs) and then the other two sides (updating the other side).
      * This took a fair bit of napkin maths to get working, but as a result it's a hell of a lot more accurate than the
      * method described in the lecture slides and gets rid of over 99% of whiskers
+     * <p>
+     * The edge list is reset and filled rather than made, so one edge list can be reused for every polygon without
+     * allocating anything
+     *
+     * @param edgeList the edge list to fill
+     * @return the edge list
      */
-    public static EdgeList computeEdgeList(Polygon poly, Map<Vector3D, Color> vertexColors) {
-        //Sort the vertices of the polygon
-        Vector3D[] vertices = Arrays.copyOf(poly.getVertices(), 3);
-        Arrays.sort(vertices, Comparator.comparing(Vector3D::getY));
+    public static EdgeList computeEdgeList(Polygon poly, Map<Vector3D, Color> vertexColors, EdgeList edgeList) {
+        //Sort the vertices of the polygon. Swapping neighbours keeps vertices with the same y in order
+        Vector3D v0 = poly.getVertices()[0];
+        Vector3D v1 = poly.getVertices()[1];
+        Vector3D v2 = poly.getVertices()[2];
+        Vector3D t;
+        if (Float.compare(v1.y, v0.y) < 0) {
+            t = v0;
+            v0 = v1;
+            v1 = t;
+        }
+        if (Float.compare(v2.y, v1.y) < 0) {
+            t = v1;
+            v1 = v2;
+            v2 = t;
+        }
+        if (Float.compare(v1.y, v0.y) < 0) {
+            t = v0;
+            v0 = v1;
+            v1 = t;
+        }
 
-        Vector3D[][] edges = {
-                { vertices[0], vertices[2] },
-                { vertices[0], vertices[1] },
-                { vertices[1], vertices[2] }
-        };
-        EdgeList edgeList = new EdgeList((int) vertices[0].y, (int) vertices[2].y);
+        edgeList.reset((int) v0.y, (int) v2.y);
 
         //Calculate if the longest side is left of the other sides. If so, we want to update the lhs of edgeList first
-        Vector3D v1 = vertices[2].minus(vertices[0]);
-        Vector3D v2 = vertices[1].minus(vertices[0]);
-        boolean updateLeft = (v1.x * -v2.y + v1.y * v2.x) > 0;
-
-        //Iterate through the edges
-        for (int i = 0; i < edges.length; i++) {
-            Vector3D[] edge = edges[i];
-
-            Color startColor = vertexColors.get(edge[0]);
-            Color targetColor = vertexColors.get(edge[1]);
+        boolean updateLeft = ((v2.x - v0.x) * -(v1.y - v0.y) + (v2.y - v0.y) * (v1.x - v0.x)) > 0;
 
-            float dy = edge[1].y - edge[0].y;
-            if (dy < 1) //Fixes most whiskers
-                dy = 1;
+        //Trace the longest edge, then the other two
+        addEdge(edgeList, v0, v2, vertexColors, updateLeft);
+        addEdge(edgeList, v0, v1, vertexColors, !updateLeft);
+        addEdge(edgeList, v1, v2, vertexColors, !updateLeft);
 
-            //Calculate the relevant slopes
-            float xSlope = (edge[1].x - edge[0].x) / dy;
-            float zSlope = (edge[1].z - edge[0].z) / dy;
-            float rSlope = (targetColor.getRed() - startColor.getRed()) / dy;
-            float gSlope = (targetColor.getGreen() - startColor.getGreen()) / dy;
-            float bSlope = (targetColor.getBlue() - startColor.getBlue()) / dy;
-
-            //Starting values
-            float x = edge[0].x;
-            float z = edge[0].z;
-            float r = startColor.getRed();
-            float g = startColor.getGreen();
-            float b = startColor.getBlue();
-
-            int y = (int) edge[0].y;
-            int targetY = (int) edge[1].y;
-            while (y <= targetY) {
-                edgeList.add(y, x, z, new Color(clamp(r), clamp(g), clamp(b)), updateLeft);
-
-                //Increment values by relevant slopes
-                x += xSlope;
-                z += zSlope;
-                r += rSlope;
-                g += gSlope;
-                b += bSlope;
-                y++;
-            }
+        return edgeList;
+    }
 
-            if (i == 0)
-                updateLeft = !updateLeft;
+    /**
+     * Adds a row to one side of the edge list for every y along an edge, interpolating the x, z, and colour from the
+     * start to the end of the edge
+     */
+    private static void addEdge(EdgeList edgeList, Vector3D start, Vector3D end, Map<Vector3D, Color> vertexColors,
+                                boolean left) {
+        Color startColor = vertexColors.get(start);
+        Color targetColor = vertexColors.get(end);
+
+        float dy = end.y - start.y;
+        if (dy < 1) //Fixes most whiskers
+            dy = 1;
+
+        //Calculate the relevant slopes
+        float xSlope = (end.x - start.x) / dy;
+        float zSlope = (end.z - start.z) / dy;
+        float rSlope = (targetColor.getRed() - startColor.getRed()) / dy;
+        float gSlope = (targetColor.getGreen() - startColor.getGreen()) / dy;
+        float bSlope = (targetColor.getBlue() - startColor.getBlue()) / dy;
+
+        //Starting values
+        float x = start.x;
+        float z = start.z;
+        float r = startColor.getRed();
+        float g = startColor.getGreen();
+        float b = startColor.getBlue();
+
+        int y = (int) start.y;
+        int targetY = (int) end.y;
+        while (y <= targetY) {
+            //Colours are rounded to whole components on the edges, as they're shaded across each row from there
+            edgeList.add(y, x, z, clamp(r), clamp(g), clamp(b), left);
+
+            //Increment values by relevant slopes
+            x += xSlope;
+            z += zSlope;
+            r += rSlope;
+            g += gSlope;
+            b += bSlope;
+            y++;
         }
-
-        return edgeList;
     }
 
     /**
-     * Fills a zbuffer with the contents of a single edge list according to the
-     * lecture slides.
+     * Fills a frame buffer with the contents of a single edge list according to the
+     * lecture slides. A pixel is only drawn if it's in front of whatever has been
+     * drawn there already.
      * <p>
-     * The idea here is to make zbuffer and zdepth arrays in your main loop, and
-     * pass them into the method to be modified.
+     * The idea here is to clear one frame buffer at the start of each frame, and
+     * pass it into the method to be drawn into.
      *
-     * @param zBuffer  A double array of colours representing the Color at each pixel
-     *                 so far.
-     * @param zDepth   A double array of floats storing the z-value of each pixel
-     *                 that has been coloured in so far.
-     * @param edgeList The edgelist of the polygon to add into the zbuffer.
+     * @param frame    The colour and depth of each pixel drawn so far.
+     * @param edgeList The edgelist of the polygon to add into the frame buffer.
      */
-    public static void computeZBuffer(Color[][] zBuffer, float[][] zDepth, EdgeList edgeList) {
-        //Go down the triangle from top to bottom
-        for (int y = Math.max(edgeList.getStartY(), 0); y <= edgeList.getEndY() && y < zBuffer[0].length; y++) {
-            Color startColor = edgeList.getLeftColor(y);
-            Color targetColor = edgeList.getRightColor(y);
+    public static void computeZBuffer(FrameBuffer frame, EdgeList edgeList) {
+        int[] pixels = frame.getPixels();
+        float[] depth = frame.getDepth();
+        int width = frame.getWidth();
 
+        //Go down the triangle from top to bottom
+        for (int y = Math.max(edgeList.getStartY(), 0); y <= edgeList.getEndY() && y < frame.getHeight(); y++) {
             float dx = edgeList.getRightX(y) - edgeList.getLeftX(y);
 
             //Calculate the relevant slopes
             float slope = (edgeList.getRightZ(y) - edgeList.getLeftZ(y)) / dx;
-            float rSlope = (targetColor.getRed() - startColor.getRed()) / dx;
-            float gSlope = (targetColor.getGreen() - startColor.getGreen()) / dx;
-            float bSlope = (targetColor.getBlue() - startColor.getBlue()) / dx;
+            float rSlope = (edgeList.getRightRed(y) - edgeList.getLeftRed(y)) / dx;
+            float gSlope = (edgeList.getRightGreen(y) - edgeList.getLeftGreen(y)) / dx;
+            float bSlope = (edgeList.getRightBlue(y) - edgeList.getLeftBlue(y)) / dx;
 
             int x = (int) edgeList.getLeftX(y);
             int targetX = (int) edgeList.getRightX(y);
+            int row = y * width;
 
             //Starting values
             float z = edgeList.getLeftZ(y);
-            float r = startColor.getRed();
-            float g = startColor.getGreen();
-            float b = startColor.getBlue();
+            float r = edgeList.getLeftRed(y);
+            float g = edgeList.getLeftGreen(y);
+            float b = edgeList.getLeftBlue(y);
 
             //Try to draw a horizontal line
-            while (x < targetX && x < zBuffer.length) {
+            while (x < targetX && x < width) {
                 //Only draw the pixel if it's in front of the other pixel in the buffer (and it's on screen)
-                if (x >= 0 && z < zDepth[x][y]) {
-                    zBuffer[x][y] = new Color(clamp(r), clamp(g), clamp(b));
-                    zDepth[x][y] = z;
+                if (x >= 0 && z < depth[row + x]) {
+                    pixels[row + x] = pack(r, g, b);
+                    depth[row + x] = z;
                 }
 
                 //Increment values by relevant slopes
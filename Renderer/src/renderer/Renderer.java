@@ -17,6 +17,8 @@ public class Renderer extends GUI {
     private static final Vector3D ORIGIN = new Vector3D(CANVAS_WIDTH / 2, CANVAS_HEIGHT /2, 0);
 
     private Scene scene = null;
+    private final FrameBuffer frameBuffer = new FrameBuffer(CANVAS_WIDTH, CANVAS_HEIGHT); //Drawn over by every frame
+    private final EdgeList edgeList = new EdgeList(); //Refilled for every polygon drawn
 
     @Override
     protected void onLoad(File file) {
@@ -109,18 +111,9 @@ public class Renderer extends GUI {
         if (scene == null)
             return null;
 
-        Color[][] zBuffer = new Color[CANVAS_WIDTH][CANVAS_HEIGHT];
-        float[][] zDepth = new float[CANVAS_WIDTH][CANVAS_HEIGHT];
-
         Color ambientLight = new Color(getAmbientLight()[0], getAmbientLight()[1], getAmbientLight()[2]);
         Color background = new Color(ambientLight.getRed() / 2, ambientLight.getGreen() / 2, ambientLight.getBlue() / 2);
-
-        for (int x = 0; x < CANVAS_WIDTH; x++) {
-            for (int y = 0; y < CANVAS_HEIGHT; y++) {
-                zBuffer[x][y] = background;
-                zDepth[x][y] = Float.POSITIVE_INFINITY;
-            }
-        }
+        frameBuffer.clear(background.getRGB());
 
         Map<Vector3D, List<Scene.Polygon>> adjacencyMap = new HashMap<>();
 
@@ -142,44 +135,33 @@ public class Renderer extends GUI {
             if (Pipeline.isHidden(polygon)) //Only draw the polygon if it's facing the right direction
                 continue;
 
-            EdgeList edgeList = Pipeline.computeEdgeList(polygon, vertexColors);
-            Pipeline.computeZBuffer(zBuffer, zDepth, edgeList);
+            Pipeline.computeEdgeList(polygon, vertexColors, edgeList);
+            Pipeline.computeZBuffer(frameBuffer, edgeList);
         }
 
 
         //Create some axes in the centre (for debug purposes)
         if (showAxes) {
+            int[] pixels = frameBuffer.getPixels();
+            float[] depth = frameBuffer.getDepth();
+            int white = Color.WHITE.getRGB();
+
             int axesOffset = 10; //Arbitrary constant
             int centreX = CANVAS_WIDTH / 2 + 1;
             for (int y = axesOffset; y < CANVAS_HEIGHT - axesOffset; y++) {
-                if (zDepth[centreX][y] > 0)
-                    zBuffer[centreX][y] = Color.WHITE;
+                if (depth[y * CANVAS_WIDTH + centreX] > 0)
+                    pixels[y * CANVAS_WIDTH + centreX] = white;
             }
 
             int centreY = CANVAS_HEIGHT / 2 + 1;
             for (int x = axesOffset; x < CANVAS_WIDTH - axesOffset; x++) {
-                if (zDepth[x][centreY] > 0)
-                    zBuffer[x][centreY] = Color.WHITE;
+                if (depth[centreY * CANVAS_WIDTH + x] > 0)
+                    pixels[centreY * CANVAS_WIDTH + x] = white;
             }
         }
 
-        return convertBitmapToImage(zBuffer);
-    }
-
-    /**
-     * Converts a 2D array of Colors to a BufferedImage. Assumes that bitmap is
-     * indexed by column then row and has imageHeight rows and imageWidth
-     * columns. Note that image.setRGB requires x (col) and y (row) are given in
-     * that order.
-     */
-    private BufferedImage convertBitmapToImage(Color[][] bitmap) {
-        BufferedImage image = new BufferedImage(CANVAS_WIDTH, CANVAS_HEIGHT, BufferedImage.TYPE_INT_RGB);
-        for (int x = 0; x < CANVAS_WIDTH; x++) {
-            for (int y = 0; y < CANVAS_HEIGHT; y++) {
-                image.setRGB(x, y, bitmap[x][y].getRGB());
-            }
-        }
-        return image;
+        //The pixels were drawn straight into the frame buffer's image
+        return frameBuffer.getImage();
     }
 
     public static void main(String[] args) {
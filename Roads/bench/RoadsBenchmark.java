@@ -0,0 +1,615 @@
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.IntFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks for the map code, run against synthetic networks so that they don't need the NZ data.
+ * <p>
+ * Each benchmark is run for a number of warmup iterations, then a number of measured iterations of a fixed length,
+ * and the average time per operation is reported (the same as JMH's AverageTime mode). Results can be written as
+ * JSON in the same shape as JMH's -rf json output, so they can be tracked with the same tools.
+ * <p>
+ * Like JMH, each benchmark runs in its own forked JVM by default, started with the same JVM options and class path as
+ * this one, so what the JIT learnt from the benchmarks before it can't change its result. The network is generated
+ * once per size and shared by the forks. Anything a benchmark builds the first time it runs (such as the overlay or
+ * the hub labels) is built during the warmup, so warmup should be at least 1 for those.
+ * <p>
+ * Build and run from the Roads directory with:
+ * <pre>
+ *     javac -d out src/*.java bench/*.java
+ *     java -cp out RoadsBenchmark --nodes 10000,100000 --topology grid --json results.json
+ * </pre>
+ * Options:
+ * <pre>
+ *     --topology grid|geometric  shape of the generated network (default grid)
+ *     --nodes n[,n...]           network sizes to run every benchmark against (default 10000)
+ *     --forks n                  forked JVMs to run each benchmark in, or 0 to run them all in this one (default 1)
+ *     --warmup n                 warmup iterations in each fork (default 3)
+ *     --iterations n             measured iterations in each fork (default 5)
+ *     --time seconds             length of each iteration (default 1)
+ *     --filter regex             only run benchmarks whose name matches
+ *     --seed n                   seed for the network and the random queries (default 261)
+ *     --json file                write the results to a JSON file
+ *     --metrics                  print the load, route, and search histograms the benchmarks recorded (see Metrics)
+ * </pre>
+ */
+public class RoadsBenchmark {
+    private static final int QUERY_COUNT = 1024; //Number of pre-generated random inputs for the query benchmarks
+    private static final String SCORES_PREFIX = "# scores "; //Starts the line a fork reports its scores on
+
+    //Results are written here so the JIT can't throw away the work being measured
+    private static volatile Object sink;
+
+    private final SyntheticRoadNetwork.Topology topology;
+    private final int nodeCount;
+    private final long seed;
+
+    private File directory;
+    private RoadMap roadMap;
+    private SyntheticRoadNetwork shuffledNetwork; //The same network written in a random order, only written if needed
+    private RoadMap fileOrderMap; //The shuffled network with the nodes left in file order, only loaded if needed
+    private List<Node> nodes;
+    private List<String> labels;
+
+    private RoadsBenchmark(SyntheticRoadNetwork.Topology topology, int nodeCount, long seed) {
+        this.topology = topology;
+        this.nodeCount = nodeCount;
+        this.seed = seed;
+    }
+
+    /**
+     * Writes the network's files into a new temporary directory
+     */
+    private void generate() throws IOException {
+        directory = Files.createTempDirectory("roads-bench").toFile();
+        new SyntheticRoadNetwork(topology, nodeCount, seed).write(directory);
+    }
+
+    /**
+     * Loads the network once, so the query benchmarks have something to query
+     */
+    private void setUp() {
+        roadMap = load();
+        nodes = new ArrayList<>(roadMap.getNodeLookupTable().values());
+        labels = new ArrayList<>();
+        roadMap.getRoadInfoLookupTable().values().forEach(roadInfo -> labels.add(roadInfo.getLabel()));
+    }
+
+    private void tearDown() {
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null)
+            for (File child : files)
+                delete(child);
+
+        file.delete();
+    }
+
+    private RoadMap load() {
+        return load(directory, true);
+    }
+
+    private RoadMap load(File directory, boolean hilbertOrdering) {
+        RoadMap map = new RoadMap();
+        map.setHilbertOrdering(hilbertOrdering);
+        map.load(new File(directory, SyntheticRoadNetwork.NODES_FILENAME),
+                new File(directory, SyntheticRoadNetwork.ROADS_FILENAME),
+                new File(directory, SyntheticRoadNetwork.SEGS_FILENAME),
+                optionalFile(directory, SyntheticRoadNetwork.POLYS_FILENAME),
+                optionalFile(directory, SyntheticRoadNetwork.RESTRICTIONS_FILENAME),
+                optionalFile(directory, SyntheticRoadNetwork.TRAFFIC_FILENAME));
+        return map;
+    }
+
+    /**
+     * The map the Hilbert ordering is measured against: the same network, but written in a random order with random
+     * IDs, and loaded without renumbering the nodes. A generated grid is written one row at a time, which already
+     * keeps neighbouring nodes close together, so it would hide what the ordering does. The shuffled network is
+     * written into a subdirectory the first time it's needed, and shared by later forks
+     *
+     * @return the map with its nodes in file order, loading it the first time it's asked for
+     */
+    private RoadMap fileOrderMap() {
+        if (fileOrderMap == null) {
+            File shuffled = new File(directory, "shuffled");
+            shuffledNetwork = new SyntheticRoadNetwork(topology, nodeCount, seed);
+            shuffledNetwork.setShuffled(true);
+
+            try {
+                if (!new File(shuffled, SyntheticRoadNetwork.NODES_FILENAME).exists())
+                    shuffledNetwork.write(shuffled);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            fileOrderMap = load(shuffled, false);
+        }
+
+        return fileOrderMap;
+    }
+
+    /**
+     * @return the node in the file order map at the same place as a node in the main map
+     */
+    private Node fileOrderNode(Node node) {
+        RoadMap map = fileOrderMap();
+        int id = topology == SyntheticRoadNetwork.Topology.GRID
+                ? shuffledNetwork.shuffledNodeID(node.getSourceID()) : node.getSourceID();
+        return map.getNodeLookupTable().get(id);
+    }
+
+    /**
+     * Draws every segment the way a frame does, in the order the adjacency table holds them
+     */
+    private static Object drawSegments(RoadMap map, Graphics g, Point centre) {
+        Point origin = new Point(0, 0);
+        map.getNodeAdjacencyTable().forEach((id, segments) -> segments.forEach(segment -> segment.draw(g, origin,
+                centre, MapViewer.CLOSE_ZOOM_CUTOFF, map.getRoadInfoLookupTable().get(segment.getID()).getRoadClass())));
+        return g;
+    }
+
+    /**
+     * @return the file if the generator wrote it, otherwise null (which the loader treats as missing)
+     */
+    private static File optionalFile(File directory, String name) {
+        File file = new File(directory, name);
+        return file.exists() ? file : null;
+    }
+
+    /**
+     * @return all of the benchmarks, by name. Each benchmark takes an operation index and returns its result
+     */
+    private Map<String, IntFunction<Object>> benchmarks() {
+        Random random = new Random(seed);
+        Map<String, IntFunction<Object>> benchmarks = new LinkedHashMap<>();
+
+        //Random inputs are generated up front so that generating them isn't measured
+        Node[] starts = new Node[QUERY_COUNT];
+        Node[] goals = new Node[QUERY_COUNT];
+        BoundingBox[] ranges = new BoundingBox[QUERY_COUNT];
+        String[] prefixes = new String[QUERY_COUNT];
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            starts[i] = nodes.get(random.nextInt(nodes.size()));
+            goals[i] = nodes.get(random.nextInt(nodes.size()));
+
+            Location location = nodes.get(random.nextInt(nodes.size())).getLocation();
+            ranges[i] = new BoundingBox(new Location(location.x - 0.05, location.y - 0.05), 0.1);
+
+            String label = labels.get(random.nextInt(labels.size()));
+            prefixes[i] = label.substring(0, 1 + random.nextInt(Math.min(4, label.length())));
+        }
+
+        QuadTree quadTree = roadMap.getNodeQuadTree();
+        SearchTrie<RoadInfo> trie = roadMap.getRoadSearchTrie();
+        RouteFinder routeFinder = roadMap.getRouteFinder();
+        BoundingBox bounds = boundsOf(nodes);
+
+        benchmarks.put("load", i -> load());
+        benchmarks.put("quadTreeInsert", i -> {
+            QuadTree tree = new QuadTree(bounds);
+            nodes.forEach(tree::insert);
+            return tree;
+        });
+        benchmarks.put("quadTreeQueryRange", i -> quadTree.queryRange(ranges[i % QUERY_COUNT]));
+        benchmarks.put("searchTrieInsert", i -> {
+            SearchTrie<String> searchTrie = new SearchTrie<>();
+            labels.forEach(label -> searchTrie.insert(label, label));
+            return searchTrie;
+        });
+        benchmarks.put("searchTrieFindAll", i -> trie.findAll(prefixes[i % QUERY_COUNT]));
+        benchmarks.put("aStarSearch", i ->
+                routeFinder.aStarSearch(starts[i % QUERY_COUNT], goals[i % QUERY_COUNT], false, false));
+        benchmarks.put("bidirectionalAStarSearch", i ->
+                routeFinder.bidirectionalAStarSearch(starts[i % QUERY_COUNT], goals[i % QUERY_COUNT], false, false));
+        benchmarks.put("calculateAPs", i -> roadMap.calculateAPs());
+
+        //The same queries and frames on a shuffled copy of the network, without its nodes renumbered along a Hilbert
+        //curve (see fileOrderMap). The queries are looked up by their ID in the files, as the nodes have different IDs
+        //in each map
+        Node[] fileOrderStarts = new Node[QUERY_COUNT];
+        Node[] fileOrderGoals = new Node[QUERY_COUNT];
+        benchmarks.put("aStarSearchFileOrder", i -> {
+            if (i == 0) {
+                for (int j = 0; j < QUERY_COUNT; j++) {
+                    fileOrderStarts[j] = fileOrderNode(starts[j]);
+                    fileOrderGoals[j] = fileOrderNode(goals[j]);
+                }
+            }
+
+            return fileOrderMap().getRouteFinder().aStarSearch(fileOrderStarts[i % QUERY_COUNT],
+                    fileOrderGoals[i % QUERY_COUNT], false, false);
+        });
+
+        //An image's graphics has no clip, so nothing would be culled. It's clipped to the image like a window's is
+        Graphics frame = new BufferedImage(1024, 768, BufferedImage.TYPE_INT_RGB).getGraphics();
+        frame.setClip(0, 0, 1024, 768);
+        Point centre = new Point(512, 384);
+        benchmarks.put("drawSegments", i -> drawSegments(roadMap, frame, centre));
+        benchmarks.put("drawSegmentsFileOrder", i -> drawSegments(fileOrderMap(), frame, centre));
+
+        //The overlay is only partitioned the first time one of these runs, so it isn't built unless it's measured
+        benchmarks.put("overlayCustomise", i -> roadMap.getOverlayGraph().customise(false, false));
+        benchmarks.put("overlaySearch", i -> routeFinder.findRoute(starts[i % QUERY_COUNT], goals[i % QUERY_COUNT],
+                roadMap.getOverlayGraph(), false, false));
+
+        //Likewise the labels are only built the first time this runs
+        benchmarks.put("hubLabelDistance", i ->
+                roadMap.getHubLabels().distance(starts[i % QUERY_COUNT].getID(), goals[i % QUERY_COUNT].getID()));
+
+        //Plans a tour of 200 random stops, with the graph copied into the planner the first time this runs
+        List<Node> stops = new ArrayList<>();
+        for (int i = 0; i < 200; i++)
+            stops.add(nodes.get(random.nextInt(nodes.size())));
+        benchmarks.put("tourPlan", i -> roadMap.getTourPlanner().plan(stops, true, 1000));
+
+        //Estimates the centrality from 64 sampled sources, a different sample every time
+        benchmarks.put("betweennessSampled", i -> {
+            BetweennessCentrality centrality = roadMap.getCentrality();
+            centrality.compute(64, i);
+            return centrality;
+        });
+
+        //Projects every segment point the way a frame at zoom 1 does
+        List<RoadSegment> segments = new ArrayList<>();
+        roadMap.getRoadToRoadSegmentsTable().values().forEach(segments::addAll);
+        PointBuffer buffer = new PointBuffer();
+        Point origin = new Point(0, 0);
+        benchmarks.put("projectSegments", i -> {
+            for (RoadSegment segment : segments)
+                buffer.project(segment.getXs(), segment.getYs(), segment.getPointCount(), origin, 1, origin);
+            return buffer;
+        });
+
+        //Writes the geometry of 1024 routes to a file, with the routes found the first time this runs
+        Route[] routes = new Route[QUERY_COUNT];
+        File geometry = new File(directory, "routes.bin");
+        benchmarks.put("routeGeometryWrite", i -> {
+            if (routes[0] == null)
+                for (int j = 0; j < QUERY_COUNT; j++)
+                    routes[j] = routeFinder.findRoute(starts[j], goals[j], false, false, false);
+
+            try (RouteGeometryWriter writer = new RouteGeometryWriter(geometry, RouteGeometryWriter.Format.VARINT)) {
+                for (int j = 0; j < QUERY_COUNT; j++)
+                    writer.write(j, routes[j]);
+                return writer;
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return benchmarks;
+    }
+
+    /**
+     * Runs a single benchmark, returning the average time per operation of each measured iteration in microseconds
+     */
+    private static double[] measure(IntFunction<Object> benchmark, int warmup, int iterations, double seconds) {
+        long iterationNanos = (long) (seconds * 1e9);
+        double[] results = new double[iterations];
+        int op = 0;
+
+        for (int i = 0; i < warmup + iterations; i++) {
+            long start = System.nanoTime();
+            long end = start + iterationNanos;
+            long now;
+            int ops = 0;
+
+            //Always run at least one operation, even if it takes longer than the iteration
+            do {
+                sink = benchmark.apply(op++);
+                ops++;
+                now = System.nanoTime();
+            }
+            while (now < end);
+
+            if (i >= warmup)
+                results[i - warmup] = (now - start) / 1e3 / ops;
+        }
+
+        return results;
+    }
+
+    private static BoundingBox boundsOf(List<Node> nodes) {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (Node node : nodes) {
+            Location location = node.getLocation();
+            minX = Math.min(minX, location.x);
+            minY = Math.min(minY, location.y);
+            maxX = Math.max(maxX, location.x);
+            maxY = Math.max(maxY, location.y);
+        }
+
+        return new BoundingBox(new Location(minX, minY), Math.max(maxX - minX, maxY - minY) + 1e-9);
+    }
+
+    public static void main(String[] args) throws IOException {
+        SyntheticRoadNetwork.Topology topology = SyntheticRoadNetwork.Topology.GRID;
+        int[] sizes = {10000};
+        int warmup = 3;
+        int iterations = 5;
+        double seconds = 1;
+        Pattern filter = Pattern.compile(".*");
+        long seed = 261;
+        File json = null;
+        boolean metrics = false;
+        int forks = 1;
+        File data = null; //Set in a fork, to the network the JVM that forked it generated
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--topology":
+                    topology = SyntheticRoadNetwork.Topology.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--nodes":
+                    sizes = Arrays.stream(args[++i].split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--forks":
+                    forks = Integer.parseInt(args[++i]);
+                    break;
+                case "--fork-data":
+                    data = new File(args[++i]);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    seconds = Double.parseDouble(args[++i]);
+                    break;
+                case "--filter":
+                    filter = Pattern.compile(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--json":
+                    json = new File(args[++i]);
+                    break;
+                case "--metrics":
+                    metrics = true;
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        //A fork runs the one benchmark it was given, and reports its scores back to the JVM that forked it
+        if (data != null) {
+            RoadsBenchmark bench = new RoadsBenchmark(topology, sizes[0], seed);
+            bench.directory = data;
+            bench.setUp();
+
+            for (Map.Entry<String, IntFunction<Object>> entry : bench.benchmarks().entrySet()) {
+                if (filter.matcher(entry.getKey()).find()) {
+                    double[] scores = measure(entry.getValue(), warmup, iterations, seconds);
+                    System.out.println(SCORES_PREFIX + Arrays.toString(scores));
+                }
+            }
+
+            if (metrics)
+                System.out.print(Metrics.dump());
+            return;
+        }
+
+        List<Result> results = new ArrayList<>();
+        System.out.printf("%-28s %-10s %10s %14s %12s%n", "Benchmark", "Topology", "Nodes", "Score", "Error");
+
+        for (int size : sizes) {
+            RoadsBenchmark bench = new RoadsBenchmark(topology, size, seed);
+            bench.generate();
+
+            try {
+                //Without forks the network is loaded here, otherwise only the benchmarks' names are needed, which are
+                //the same for any network, so they're read from a tiny one
+                Map<String, IntFunction<Object>> benchmarks;
+                if (forks == 0) {
+                    bench.setUp();
+                    benchmarks = bench.benchmarks();
+                }
+                else {
+                    benchmarks = benchmarkNames(topology, seed);
+                }
+
+                for (Map.Entry<String, IntFunction<Object>> entry : benchmarks.entrySet()) {
+                    if (!filter.matcher(entry.getKey()).find())
+                        continue;
+
+                    double[][] scores = new double[Math.max(1, forks)][];
+                    for (int fork = 0; fork < scores.length; fork++) {
+                        scores[fork] = forks == 0 ? measure(entry.getValue(), warmup, iterations, seconds)
+                                : fork(bench.directory, "--topology", topology.name(), "--nodes", String.valueOf(size),
+                                "--seed", String.valueOf(seed), "--warmup", String.valueOf(warmup),
+                                "--iterations", String.valueOf(iterations), "--time", String.valueOf(seconds),
+                                "--filter", "^" + Pattern.quote(entry.getKey()) + "$", metrics ? "--metrics" : "");
+                    }
+
+                    Result result = new Result(entry.getKey(), topology, size, warmup, forks, scores);
+                    results.add(result);
+
+                    System.out.printf("%-28s %-10s %10d %14.3f %12.3f us/op%n", result.name,
+                            topology.name().toLowerCase(), size, result.mean(), result.error());
+                }
+            }
+            finally {
+                bench.tearDown();
+            }
+        }
+
+        if (json != null) {
+            try (PrintWriter writer = new PrintWriter(json, "UTF-8")) {
+                writer.println(Result.toJson(results));
+            }
+        }
+
+        //Forks print their own metrics
+        if (metrics && forks == 0)
+            System.out.print(Metrics.dump());
+    }
+
+    /**
+     * @return the benchmarks of a tiny network, for their names
+     */
+    private static Map<String, IntFunction<Object>> benchmarkNames(SyntheticRoadNetwork.Topology topology, long seed)
+            throws IOException {
+        RoadsBenchmark bench = new RoadsBenchmark(topology, 100, seed);
+        bench.generate();
+
+        try {
+            bench.setUp();
+            return bench.benchmarks();
+        }
+        finally {
+            bench.tearDown();
+        }
+    }
+
+    /**
+     * Runs a benchmark in a new JVM with the same JVM options and class path as this one, on the network already
+     * generated in the directory. Anything the fork prints other than its scores is passed through
+     *
+     * @param args the options for the fork, with a filter that only matches the one benchmark
+     * @return the average time per operation of each measured iteration in microseconds
+     */
+    private static double[] fork(File directory, String... args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(RoadsBenchmark.class.getName());
+        command.add("--fork-data");
+        command.add(directory.getPath());
+        for (String arg : args)
+            if (!arg.isEmpty())
+                command.add(arg);
+
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        double[] scores = null;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(SCORES_PREFIX)) {
+                    String list = line.substring(SCORES_PREFIX.length() + 1, line.length() - 1);
+                    scores = Arrays.stream(list.split(", ")).mapToDouble(Double::parseDouble).toArray();
+                }
+                else {
+                    System.out.println(line);
+                }
+            }
+        }
+
+        try {
+            int exitCode = process.waitFor();
+            if (exitCode != 0 || scores == null)
+                throw new IOException("Fork exited with code " + exitCode + " without reporting its scores");
+        }
+        catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a fork", e);
+        }
+
+        return scores;
+    }
+
+    /**
+     * The measurements of one benchmark at one network size
+     */
+    private static class Result {
+        private final String name;
+        private final SyntheticRoadNetwork.Topology topology;
+        private final int nodeCount;
+        private final int warmup;
+        private final int forks;
+        private final double[][] forkScores; //The scores of each fork, or of this JVM if there were no forks
+        private final double[] scores; //Every fork's scores together
+
+        private Result(String name, SyntheticRoadNetwork.Topology topology, int nodeCount, int warmup, int forks,
+                       double[][] forkScores) {
+            this.name = name;
+            this.topology = topology;
+            this.nodeCount = nodeCount;
+            this.warmup = warmup;
+            this.forks = forks;
+            this.forkScores = forkScores;
+            this.scores = Arrays.stream(forkScores).flatMapToDouble(Arrays::stream).toArray();
+        }
+
+        private double mean() {
+            return Arrays.stream(scores).average().orElse(Double.NaN);
+        }
+
+        /**
+         * Half-width of the 99.9% confidence interval, using the normal approximation
+         */
+        private double error() {
+            if (scores.length < 2)
+                return Double.NaN;
+
+            double mean = mean();
+            double variance = Arrays.stream(scores).map(s -> (s - mean) * (s - mean)).sum() / (scores.length - 1);
+            return 3.291 * Math.sqrt(variance / scores.length);
+        }
+
+        private static String toJson(List<Result> results) {
+            StringBuilder sb = new StringBuilder("[\n");
+
+            for (int i = 0; i < results.size(); i++) {
+                Result r = results.get(i);
+                double error = r.error();
+
+                sb.append("    {\n");
+                sb.append("        \"benchmark\" : \"RoadsBenchmark.").append(r.name).append("\",\n");
+                sb.append("        \"mode\" : \"avgt\",\n");
+                sb.append("        \"threads\" : 1,\n");
+                sb.append("        \"forks\" : ").append(r.forks).append(",\n");
+                sb.append("        \"warmupIterations\" : ").append(r.warmup).append(",\n");
+                sb.append("        \"measurementIterations\" : ").append(r.forkScores[0].length).append(",\n");
+                sb.append("        \"params\" : {\n");
+                sb.append("            \"topology\" : \"").append(r.topology.name().toLowerCase()).append("\",\n");
+                sb.append("            \"nodes\" : \"").append(r.nodeCount).append("\"\n");
+                sb.append("        },\n");
+                sb.append("        \"primaryMetric\" : {\n");
+                sb.append("            \"score\" : ").append(jsonNumber(r.mean())).append(",\n");
+                sb.append("            \"scoreError\" : ").append(jsonNumber(error)).append(",\n");
+                sb.append("            \"scoreConfidence\" : [").append(jsonNumber(r.mean() - error)).append(", ")
+                        .append(jsonNumber(r.mean() + error)).append("],\n");
+                sb.append("            \"scoreUnit\" : \"us/op\",\n");
+                sb.append("            \"rawData\" : [");
+                for (int f = 0; f < r.forkScores.length; f++) {
+                    sb.append(f == 0 ? "[" : ", [");
+                    for (int j = 0; j < r.forkScores[f].length; j++)
+                        sb.append(j == 0 ? "" : ", ").append(jsonNumber(r.forkScores[f][j]));
+                    sb.append("]");
+                }
+                sb.append("]\n");
+                sb.append("        }\n");
+                sb.append(i == results.size() - 1 ? "    }\n" : "    },\n");
+            }
+
+            return sb.append("]").toString();
+        }
+
+        private static String jsonNumber(double value) {
+            return Double.isFinite(value) ? Double.toString(value) : "\"NaN\"";
+        }
+    }
+}
@@ -0,0 +1,690 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writes synthetic road networks in the same tab separated format as the NZ data, so that anything which reads the
+ * real data can be run against a network of any size.
+ * <p>
+ * Two topologies are supported:
+ * <ul>
+ * <li>GRID: a street grid with every intersection nudged off the grid, some residential segments removed, and a road
+ * hierarchy of residential streets, collectors, arterials, highways, and paired one way motorways. Road classes and one
+ * way roads roughly follow their proportions in data/large. Turn restrictions, traffic lights, and polygons (parks,
+ * lakes with islands, industrial areas, and cemeteries) are written as well. Every property of a node or segment is
+ * derived from a hash of its grid position, so the files are written one row at a time and generating tens of millions
+ * of nodes needs no more memory than generating a hundred.</li>
+ * <li>GEOMETRIC: nodes scattered uniformly and joined to every other node within a fixed radius. This holds all of
+ * the nodes in memory while writing, so it's only meant for benchmark sized networks.</li>
+ * </ul>
+ * Run from the Roads directory with:
+ * <pre>
+ *     javac -d out src/*.java bench/*.java
+ *     java -cp out SyntheticRoadNetwork --nodes 20000000 --out data/synthetic
+ * </pre>
+ * Options are --topology grid|geometric, --nodes n, --seed n, --perturbation fraction (how far intersections move,
+ * as a fraction of the grid spacing, default 0.3), --shuffled (write a grid's nodes and segments in a random order,
+ * with random node IDs), and --out directory.
+ */
+public class SyntheticRoadNetwork {
+    public static final String NODES_FILENAME = "nodeID-lat-lon.tab";
+    public static final String ROADS_FILENAME = "roadID-roadInfo.tab";
+    public static final String SEGS_FILENAME = "roadSeg-roadID-length-nodeID-nodeID-coords.tab";
+    public static final String POLYS_FILENAME = "polygon-shapes.mp";
+    public static final String RESTRICTIONS_FILENAME = "restrictions.tab";
+    public static final String TRAFFIC_FILENAME = "traffic-lights.tab";
+
+    //The networks are centred on Auckland so they line up with the real data
+    private static final double CENTRE_LAT = -36.847622;
+    private static final double CENTRE_LON = 174.763444;
+    private static final double SPACING = 0.001; //Roughly 100m between intersections
+
+    private static final int BLOCK_LENGTH = 10; //Number of segments in each residential road
+    private static final int DISTRICT_SIZE = 20; //Width of the area each polygon is placed in, in grid cells
+    private static final double DROPPED_SEGMENTS = 0.08; //Fraction of residential segments removed from the grid
+    private static final double CURVED_SEGMENTS = 0.3; //Fraction of residential segments with a bend in the middle
+    private static final int FLUSH_SIZE = 1 << 16;
+
+    //Chance that a road of each class is one way, taken from data/large. Motorways are always one way
+    private static final double[] ONE_WAY_CHANCE = {0.006, 0.47, 0.12, 0.09, 1};
+    private static final int[] ROAD_TYPES = {6, 4, 3, 2, 1};
+
+    //Salts so that each property of a grid position is hashed independently
+    private static final long SALT_LAT = 1, SALT_LON = 2, SALT_DROP = 3, SALT_CURVE = 4, SALT_ONE_WAY = 5,
+            SALT_DIRECTION = 6, SALT_NAME = 7, SALT_SPEED = 8, SALT_RESTRICTION = 9, SALT_POLYGON = 10,
+            SALT_ACCESS = 11, SALT_SHUFFLE_ID = 12, SALT_SHUFFLE_ORDER = 13;
+
+    private static final String[] NAME_PARTS = {
+            "kowhai", "rimu", "totara", "matai", "kauri", "miro", "puriri", "karaka", "manuka", "nikau", "harbour",
+            "beach", "hill", "valley", "park", "church", "mill", "station", "school", "queen", "victoria", "albert",
+            "great north", "great south", "dominion", "mount eden", "remuera", "parnell", "ponsonby", "karangahape"
+    };
+    private static final String[] NAME_SUFFIXES = {"st", "rd", "ave", "tce", "pl", "dr", "cres", "way", "lane"};
+    private static final String[] CITIES = {"auckland", "manukau", "waitakere", "north shore", "papakura"};
+
+    public enum Topology {
+        GRID, GEOMETRIC
+    }
+
+    private final Topology topology;
+    private final int nodeCount;
+    private final long seed;
+    private double perturbation = 0.3;
+    private boolean shuffled = false;
+
+    /**
+     * @param topology  shape of the network
+     * @param nodeCount approximate number of nodes to generate (grids are rounded up to a square)
+     * @param seed      seed for the random generator, so the same network can be generated again
+     */
+    public SyntheticRoadNetwork(Topology topology, int nodeCount, long seed) {
+        this.topology = topology;
+        this.nodeCount = nodeCount;
+        this.seed = seed;
+    }
+
+    /**
+     * Sets how far each grid intersection is moved from its grid position
+     *
+     * @param perturbation maximum distance moved, as a fraction of the grid spacing
+     */
+    public void setPerturbation(double perturbation) {
+        this.perturbation = perturbation;
+    }
+
+    /**
+     * Sets whether a grid's nodes and segments are written in a random order, with random node IDs, like a file that
+     * wasn't written in any order to do with where things are. A grid is otherwise written one row at a time, with the
+     * nodes numbered along the rows, which already keeps nodes near each other close together in the file. The same
+     * network is written either way, apart from the IDs. Geometric networks are always scattered, so this has no effect
+     * on them
+     */
+    public void setShuffled(boolean shuffled) {
+        this.shuffled = shuffled;
+    }
+
+    /**
+     * @param nodeID the ID of a grid node when the grid isn't shuffled
+     * @return the ID of the same node when the grid is shuffled
+     */
+    public int shuffledNodeID(int nodeID) {
+        long side = gridSide();
+        return 1 + (int) permute(SALT_SHUFFLE_ID, nodeID - 1, side * side);
+    }
+
+    /**
+     * Writes the network's files into the given directory
+     *
+     * @param directory directory to write to, which is created if it doesn't exist
+     */
+    public void write(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create " + directory);
+
+        switch (topology) {
+            case GRID:
+                new GridWriter().write(directory);
+                break;
+            case GEOMETRIC:
+                writeGeometric(directory);
+                break;
+        }
+    }
+
+    /**
+     * Writes the grid network. Roads run along grid lines: line i of the rows (or columns) has the class given by
+     * {@link #lineClass(int)}, and residential lines are split into roads of BLOCK_LENGTH segments, while every other
+     * line is split into roads of 4 * BLOCK_LENGTH segments
+     */
+    private class GridWriter {
+        private final int side = gridSide();
+        private final int blocksPerLine = (side + BLOCK_LENGTH - 1) / BLOCK_LENGTH;
+
+        private void write(File directory) throws IOException {
+            if ((long) side * side >= Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Too many nodes for integer node IDs: " + nodeCount);
+
+            writeNodes(directory);
+            writeRoads(directory);
+            writeSegments(directory);
+            writeRestrictions(directory);
+            writeTrafficLights(directory);
+            writePolygons(directory);
+        }
+
+        private void writeNodes(File directory) throws IOException {
+            try (Writer writer = open(directory, NODES_FILENAME)) {
+                StringBuilder sb = new StringBuilder(FLUSH_SIZE * 2);
+                for (long i = 0; i < (long) side * side; i++) {
+                    long position = position(i);
+                    int row = (int) (position / side), col = (int) (position % side);
+
+                    sb.append(nodeID(row, col)).append('\t');
+                    appendFixed(sb, lat(row, col)).append('\t');
+                    appendFixed(sb, lon(row, col)).append('\n');
+                    flushIfFull(writer, sb);
+                }
+                writer.append(sb);
+            }
+        }
+
+        private void writeRoads(File directory) throws IOException {
+            try (Writer writer = open(directory, ROADS_FILENAME)) {
+                writer.write("roadid\ttype\tlabel\tcity\toneway\tspeed\troadclass\tnotforcar\tnotforpede\tnotforbicy\n");
+
+                StringBuilder sb = new StringBuilder(FLUSH_SIZE * 2);
+                for (int vertical = 0; vertical < 2; vertical++) {
+                    for (int line = 0; line < side; line++) {
+                        int roadClass = lineClass(line);
+                        int lastBlock = roadClass == 0 ? blocksPerLine : (blocksPerLine + 3) / 4;
+
+                        for (int block = 0; block < lastBlock; block++) {
+                            int roadID = roadID(vertical == 1, line, block * (roadClass == 0 ? 1 : 4) * BLOCK_LENGTH);
+                            double speedRoll = unit(hash(SALT_SPEED, roadID, 0));
+                            int speed = roadClass == 0 ? (speedRoll < 0.1 ? 1 : 2)
+                                    : roadClass == 4 ? (speedRoll < 0.5 ? 5 : 6)
+                                    : roadClass + 1 + (speedRoll < 0.3 ? 1 : 0);
+                            boolean notForCars = roadClass == 0 && unit(hash(SALT_ACCESS, roadID, 0)) < 0.01;
+                            boolean motorway = roadClass == 4;
+
+                            sb.append(roadID).append('\t').append(ROAD_TYPES[roadClass]).append('\t')
+                                    .append(roadName(vertical == 1, line, block, roadClass)).append('\t')
+                                    .append(CITIES[(line / 200 + block) % CITIES.length]).append('\t')
+                                    .append(isOneWay(roadID, roadClass) ? 1 : 0).append('\t')
+                                    .append(speed).append('\t').append(roadClass).append('\t')
+                                    .append(notForCars ? 1 : 0).append('\t')
+                                    .append(motorway ? 1 : 0).append('\t')
+                                    .append(motorway ? 1 : 0).append('\n');
+                            flushIfFull(writer, sb);
+                        }
+                    }
+                }
+                writer.append(sb);
+            }
+        }
+
+        private void writeSegments(File directory) throws IOException {
+            try (Writer writer = open(directory, SEGS_FILENAME)) {
+                writer.write("roadID\tlength\tnodeID1\tnodeID2\tcoords\n");
+
+                StringBuilder sb = new StringBuilder(FLUSH_SIZE * 2);
+                for (long i = 0; i < (long) side * side; i++) {
+                    long position = position(i);
+                    int row = (int) (position / side), col = (int) (position % side);
+
+                    if (col + 1 < side && hasSegment(false, row, col))
+                        appendSegment(sb, false, row, col);
+                    if (row + 1 < side && hasSegment(true, col, row))
+                        appendSegment(sb, true, col, row);
+
+                    flushIfFull(writer, sb);
+                }
+                writer.append(sb);
+            }
+        }
+
+        /**
+         * Adds a no-turn restriction at a few of the intersections between two non-residential roads, banning the
+         * turn from the western segment of the row onto the northern segment of the column
+         */
+        private void writeRestrictions(File directory) throws IOException {
+            try (Writer writer = open(directory, RESTRICTIONS_FILENAME)) {
+                writer.write("NodeID\tRoadID\tNodeID\tRoadID\tNodeID\n");
+
+                StringBuilder sb = new StringBuilder(FLUSH_SIZE * 2);
+                for (int row = 0; row + 1 < side; row++) {
+                    if (lineClass(row) == 0)
+                        continue;
+
+                    for (int col = 1; col < side; col++) {
+                        if (lineClass(col) == 0 || unit(hash(SALT_RESTRICTION, row, col)) >= 0.05)
+                            continue;
+
+                        sb.append(nodeID(row, col - 1)).append('\t').append(roadID(false, row, col - 1)).append('\t')
+                                .append(nodeID(row, col)).append('\t').append(roadID(true, col, row)).append('\t')
+                                .append(nodeID(row + 1, col)).append('\n');
+                        flushIfFull(writer, sb);
+                    }
+                }
+                writer.append(sb);
+            }
+        }
+
+        /**
+         * Puts traffic lights at every intersection between two arterials (or bigger roads), except motorways
+         */
+        private void writeTrafficLights(File directory) throws IOException {
+            try (Writer writer = open(directory, TRAFFIC_FILENAME)) {
+                writer.write("GEOMETRY_X\tGEOMETRY_Y\n");
+
+                StringBuilder sb = new StringBuilder(FLUSH_SIZE * 2);
+                for (int row = 0; row < side; row++) {
+                    if (lineClass(row) < 2 || lineClass(row) == 4)
+                        continue;
+
+                    for (int col = 0; col < side; col++) {
+                        if (lineClass(col) < 2 || lineClass(col) == 4)
+                            continue;
+
+                        appendFixed(sb, lon(row, col)).append('\t');
+                        appendFixed(sb, lat(row, col)).append('\n');
+                        flushIfFull(writer, sb);
+                    }
+                }
+                writer.append(sb);
+            }
+        }
+
+        /**
+         * Places at most one polygon in each district. The polygon is an octagon inset into the district, with its
+         * corners nudged the same way as the intersections. Lakes get an island as a hole
+         */
+        private void writePolygons(File directory) throws IOException {
+            try (Writer writer = open(directory, POLYS_FILENAME)) {
+                StringBuilder sb = new StringBuilder(FLUSH_SIZE * 2);
+                int districts = (side + DISTRICT_SIZE - 1) / DISTRICT_SIZE;
+
+                for (int dRow = 0; dRow < districts; dRow++) {
+                    for (int dCol = 0; dCol < districts; dCol++) {
+                        double roll = unit(hash(SALT_POLYGON, dRow, dCol));
+                        String type, label = null;
+                        int endLevel;
+                        boolean island = false;
+
+                        if (roll < 0.2) {
+                            type = "0x17";
+                            label = NAME_PARTS[(int) (unit(hash(SALT_NAME, dRow, dCol)) * NAME_PARTS.length)] + " park";
+                            endLevel = 1;
+                        }
+                        else if (roll < 0.25) {
+                            type = "0x3c";
+                            label = "lake " + NAME_PARTS[(int) (unit(hash(SALT_NAME, dRow, dCol)) * NAME_PARTS.length)];
+                            endLevel = 2;
+                            island = true;
+                        }
+                        else if (roll < 0.35) {
+                            type = "0x0c";
+                            endLevel = 1;
+                        }
+                        else if (roll < 0.38) {
+                            type = "0x1a";
+                            endLevel = 1;
+                        }
+                        else {
+                            continue;
+                        }
+
+                        double lat = CENTRE_LAT + (dRow + 0.5) * DISTRICT_SIZE * SPACING;
+                        double lon = CENTRE_LON + (dCol + 0.5) * DISTRICT_SIZE * SPACING;
+                        double radius = DISTRICT_SIZE * SPACING * (0.15 + 0.25 * roll);
+
+                        sb.append("[POLYGON]\nType=").append(type).append('\n');
+                        if (label != null)
+                            sb.append("Label=").append(label).append('\n');
+                        sb.append("EndLevel=").append(endLevel).append('\n');
+                        appendRing(sb.append("Data0="), lat, lon, radius, dRow, dCol);
+                        if (island)
+                            appendRing(sb.append("Data1="), lat, lon, radius / 3, dCol, dRow);
+                        sb.append("[END]\n\n");
+
+                        flushIfFull(writer, sb);
+                    }
+                }
+                writer.append(sb);
+            }
+        }
+
+        private void appendRing(StringBuilder sb, double lat, double lon, double radius, int a, int b) {
+            for (int i = 0; i < 8; i++) {
+                double angle = i * Math.PI / 4;
+                double r = radius * (1 + perturbation * (unit(hash(SALT_LAT, a * 8 + i, b)) - 0.5));
+
+                if (i > 0)
+                    sb.append(',');
+                appendFixed(sb.append('('), lat + r * Math.sin(angle)).append(',');
+                appendFixed(sb, lon + r * Math.cos(angle)).append(')');
+            }
+            sb.append('\n');
+        }
+
+        /**
+         * Writes the segment leaving the given position along a row (or a column if vertical), which joins it to the
+         * next node along the line
+         */
+        private void appendSegment(StringBuilder sb, boolean vertical, int line, int position) {
+            int row1 = vertical ? position : line, col1 = vertical ? line : position;
+            int row2 = vertical ? position + 1 : line, col2 = vertical ? line : position + 1;
+            int roadID = roadID(vertical, line, position);
+
+            //One way roads go the other way if their direction bit is set, and paired motorways alternate direction
+            if (isOneWay(roadID, lineClass(line)) && reversed(roadID, line)) {
+                int t = row1; row1 = row2; row2 = t;
+                t = col1; col1 = col2; col2 = t;
+            }
+
+            double lat1 = lat(row1, col1), lon1 = lon(row1, col1);
+            double lat2 = lat(row2, col2), lon2 = lon(row2, col2);
+            Location start = Location.fromLatLon(lat1, lon1);
+            Location end = Location.fromLatLon(lat2, lon2);
+
+            //Bend some residential segments by moving their midpoint sideways
+            long curve = hash(SALT_CURVE, vertical ? -line - 1 : line, position);
+            boolean curved = lineClass(line) == 0 && unit(curve) < CURVED_SEGMENTS;
+            double bend = (unit(mix(curve)) - 0.5) * 0.4 * SPACING;
+            double midLat = (lat1 + lat2) / 2 + (vertical ? 0 : bend);
+            double midLon = (lon1 + lon2) / 2 + (vertical ? bend : 0);
+
+            double length = start.distance(end);
+            if (curved) {
+                Location middle = Location.fromLatLon(midLat, midLon);
+                length = start.distance(middle) + middle.distance(end);
+            }
+
+            sb.append(roadID).append('\t').append(length).append('\t')
+                    .append(nodeID(row1, col1)).append('\t').append(nodeID(row2, col2));
+            appendFixed(sb.append('\t'), lat1);
+            appendFixed(sb.append('\t'), lon1);
+            if (curved) {
+                appendFixed(sb.append('\t'), midLat);
+                appendFixed(sb.append('\t'), midLon);
+            }
+            appendFixed(sb.append('\t'), lat2);
+            appendFixed(sb.append('\t'), lon2).append('\n');
+        }
+
+        /**
+         * Residential segments are occasionally missing, so that the grid isn't perfectly regular
+         */
+        private boolean hasSegment(boolean vertical, int line, int position) {
+            return lineClass(line) != 0 || unit(hash(SALT_DROP, vertical ? -line - 1 : line, position)) >= DROPPED_SEGMENTS;
+        }
+
+        private boolean isOneWay(int roadID, int roadClass) {
+            return roadClass == 4 || unit(hash(SALT_ONE_WAY, roadID, 0)) < ONE_WAY_CHANCE[roadClass];
+        }
+
+        private boolean reversed(int roadID, int line) {
+            if (lineClass(line) == 4)
+                return line % 2 == 1;
+
+            return (hash(SALT_DIRECTION, roadID, 0) & 1) == 1;
+        }
+
+        /**
+         * The ID of the road the segment leaving the given position along a line belongs to. Row roads are numbered
+         * before column roads
+         */
+        private int roadID(boolean vertical, int line, int position) {
+            int block = position / BLOCK_LENGTH;
+            if (lineClass(line) != 0)
+                block -= block % 4;
+
+            return 1 + (vertical ? side * blocksPerLine : 0) + line * blocksPerLine + block;
+        }
+
+        /**
+         * Non-residential roads keep the same name along the whole line, like a real arterial would
+         */
+        private String roadName(boolean vertical, int line, int block, int roadClass) {
+            long h = hash(SALT_NAME, vertical ? -line - 1 : line, roadClass == 0 ? block : -1);
+            if (roadClass == 4)
+                return (vertical ? "northern" : "southern") + " motorway " + (line / 64 + 1);
+
+            return NAME_PARTS[(int) (unit(h) * NAME_PARTS.length)] + ' '
+                    + NAME_SUFFIXES[(int) (unit(h * 31) * NAME_SUFFIXES.length)];
+        }
+
+        private int nodeID(int row, int col) {
+            long index = (long) row * side + col;
+            return 1 + (int) (shuffled ? permute(SALT_SHUFFLE_ID, index, (long) side * side) : index);
+        }
+
+        /**
+         * The grid position (row * side + col) of the i-th node written, which is the i-th position along the rows
+         * unless the grid is shuffled
+         */
+        private long position(long i) {
+            return shuffled ? permute(SALT_SHUFFLE_ORDER, i, (long) side * side) : i;
+        }
+
+        private double lat(int row, int col) {
+            return CENTRE_LAT + (row + perturbation * (unit(hash(SALT_LAT, row, col)) - 0.5)) * SPACING;
+        }
+
+        private double lon(int row, int col) {
+            return CENTRE_LON + (col + perturbation * (unit(hash(SALT_LON, row, col)) - 0.5)) * SPACING;
+        }
+    }
+
+    private int gridSide() {
+        return (int) Math.ceil(Math.sqrt(nodeCount));
+    }
+
+    /**
+     * Maps an index in [0, count) to another index in [0, count), with every index mapped to a different one, so a
+     * grid can be shuffled while it's streamed out. The index is put through a four round Feistel network over the
+     * smallest even number of bits that can hold the count, and put through again until it lands inside the range
+     * (which takes fewer than four goes on average)
+     */
+    private long permute(long salt, long index, long count) {
+        int halfBits = (64 - Long.numberOfLeadingZeros(Math.max(1, count - 1)) + 1) / 2;
+        long mask = (1L << halfBits) - 1;
+
+        do {
+            long left = index >>> halfBits;
+            long right = index & mask;
+            for (int round = 0; round < 4; round++) {
+                long next = left ^ (hash(salt, round, right) & mask);
+                left = right;
+                right = next;
+            }
+            index = left << halfBits | right;
+        }
+        while (index >= count);
+
+        return index;
+    }
+
+    /**
+     * The class of the roads along a grid line: pairs of one way motorways every 64 lines, then highways, arterials,
+     * and collectors at decreasing spacing, with residential streets everywhere else
+     */
+    private static int lineClass(int line) {
+        if (line % 64 < 2)
+            return 4;
+        if (line % 32 == 16)
+            return 3;
+        if (line % 16 == 8)
+            return 2;
+        if (line % 8 == 4)
+            return 1;
+        return 0;
+    }
+
+    /**
+     * Writes a random geometric graph, joining every pair of nodes closer than a radius chosen to give an average
+     * degree of about four. Each node and its neighbours are bucketed into cells of the radius' size so that only the
+     * surrounding cells need to be checked
+     */
+    private void writeGeometric(File directory) throws IOException {
+        Random random = new Random(seed);
+        double side = Math.sqrt(nodeCount) * SPACING;
+        double radius = SPACING * Math.sqrt(4 / Math.PI);
+        int cells = Math.max(1, (int) (side / radius));
+
+        double[] lats = new double[nodeCount];
+        double[] lons = new double[nodeCount];
+        List<List<Integer>> buckets = new ArrayList<>(cells * cells);
+        for (int i = 0; i < cells * cells; i++)
+            buckets.add(new ArrayList<>());
+
+        try (Writer writer = open(directory, NODES_FILENAME)) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < nodeCount; i++) {
+                lats[i] = CENTRE_LAT - side / 2 + random.nextDouble() * side;
+                lons[i] = CENTRE_LON - side / 2 + random.nextDouble() * side;
+                buckets.get(cell(lats[i], CENTRE_LAT, side, cells) * cells + cell(lons[i], CENTRE_LON, side, cells)).add(i);
+
+                sb.setLength(0);
+                sb.append(i + 1).append('\t');
+                appendFixed(sb, lats[i]).append('\t');
+                appendFixed(sb, lons[i]).append('\n');
+                writer.write(sb.toString());
+            }
+        }
+
+        int roadCount = Math.max(1, nodeCount / 10);
+        try (Writer writer = open(directory, ROADS_FILENAME)) {
+            writer.write("roadid\ttype\tlabel\tcity\toneway\tspeed\troadclass\tnotforcar\tnotforpede\tnotforbicy\n");
+            for (int road = 1; road <= roadCount; road++)
+                writeRoad(writer, road, randomName(random), random.nextInt(10) == 0 ? 3 : 0, random.nextInt(20) == 0);
+        }
+
+        try (Writer writer = open(directory, SEGS_FILENAME)) {
+            writer.write("roadID\tlength\tnodeID1\tnodeID2\tcoords\n");
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < nodeCount; i++) {
+                int row = cell(lats[i], CENTRE_LAT, side, cells);
+                int col = cell(lons[i], CENTRE_LON, side, cells);
+
+                for (int r = Math.max(0, row - 1); r <= Math.min(cells - 1, row + 1); r++) {
+                    for (int c = Math.max(0, col - 1); c <= Math.min(cells - 1, col + 1); c++) {
+                        for (int j : buckets.get(r * cells + c)) {
+                            //Only write each pair once
+                            if (j <= i || Math.hypot(lats[i] - lats[j], lons[i] - lons[j]) > radius)
+                                continue;
+
+                            writeSegment(writer, sb, 1 + random.nextInt(roadCount), i + 1, j + 1,
+                                    lats[i], lons[i], lats[j], lons[j]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static Writer open(File directory, String name) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(new File(directory, name)),
+                StandardCharsets.UTF_8), FLUSH_SIZE);
+    }
+
+    private static void flushIfFull(Writer writer, StringBuilder sb) throws IOException {
+        if (sb.length() < FLUSH_SIZE)
+            return;
+
+        writer.append(sb);
+        sb.setLength(0);
+    }
+
+    private static void writeRoad(Writer writer, int id, String label, int roadClass, boolean oneWay) throws IOException {
+        int speed = roadClass == 0 ? 2 : 4;
+        writer.write(id + "\t6\t" + label + "\tauckland\t" + (oneWay ? 1 : 0) + '\t' + speed + '\t' + roadClass
+                + "\t0\t0\t0\n");
+    }
+
+    private static void writeSegment(Writer writer, StringBuilder sb, int roadID, int nodeID1, int nodeID2,
+                                     double lat1, double lon1, double lat2, double lon2) throws IOException {
+        double length = Location.fromLatLon(lat1, lon1).distance(Location.fromLatLon(lat2, lon2));
+
+        sb.setLength(0);
+        sb.append(roadID).append('\t').append(length).append('\t').append(nodeID1).append('\t').append(nodeID2);
+        appendFixed(sb.append('\t'), lat1);
+        appendFixed(sb.append('\t'), lon1);
+        appendFixed(sb.append('\t'), lat2);
+        appendFixed(sb.append('\t'), lon2).append('\n');
+        writer.write(sb.toString());
+    }
+
+    /**
+     * Appends the value with six decimal places, which is the precision of the real data. This is much faster than
+     * String.format, which matters when writing millions of coordinates
+     */
+    static StringBuilder appendFixed(StringBuilder sb, double value) {
+        long scaled = Math.round(Math.abs(value) * 1_000_000);
+        if (value < 0 && scaled != 0)
+            sb.append('-');
+
+        sb.append(scaled / 1_000_000).append('.');
+        String fraction = Long.toString(scaled % 1_000_000);
+        for (int i = fraction.length(); i < 6; i++)
+            sb.append('0');
+
+        return sb.append(fraction);
+    }
+
+    private static String randomName(Random random) {
+        return NAME_PARTS[random.nextInt(NAME_PARTS.length)] + ' ' + NAME_SUFFIXES[random.nextInt(NAME_SUFFIXES.length)];
+    }
+
+    private static int cell(double value, double centre, double side, int cells) {
+        return Math.min(cells - 1, (int) ((value - centre + side / 2) / side * cells));
+    }
+
+    /**
+     * Hashes a grid position (with a salt for the property being generated) into 64 random looking bits, using the
+     * SplitMix64 finaliser
+     */
+    private long hash(long salt, long a, long b) {
+        return mix(mix(mix(seed ^ salt) ^ a) ^ b);
+    }
+
+    private static long mix(long z) {
+        z += 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return the hash as a double in [0, 1)
+     */
+    private static double unit(long hash) {
+        return (hash >>> 11) * 0x1.0p-53;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Topology topology = Topology.GRID;
+        int nodes = 1_000_000;
+        long seed = 261;
+        double perturbation = 0.3;
+        boolean shuffled = false;
+        File out = new File("synthetic");
+
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--topology":
+                    topology = Topology.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--nodes":
+                    nodes = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--perturbation":
+                    perturbation = Double.parseDouble(args[++i]);
+                    break;
+                case "--shuffled":
+                    shuffled = true;
+                    break;
+                case "--out":
+                    out = new File(args[++i]);
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    System.exit(1);
+            }
+        }
+
+        SyntheticRoadNetwork network = new SyntheticRoadNetwork(topology, nodes, seed);
+        network.setPerturbation(perturbation);
+        network.setShuffled(shuffled);
+
+        long start = System.nanoTime();
+        network.write(out);
+        System.out.printf("Wrote %s network of %d nodes to %s in %.1fs%n", topology.name().toLowerCase(), nodes, out,
+                (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,344 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Ranks the road segments by betweenness centrality: how many quickest routes between pairs of nodes go along each
+ * segment. A segment with a high centrality carries a lot of traffic, and routes would have to go a long way around if
+ * it were closed.
+ * <p>
+ * The centrality is found with Brandes' algorithm. A Dijkstra search from each source counts the quickest routes to
+ * every other node, then walks back through the nodes from the furthest to the source, handing each node's share of
+ * the routes back to the segments (and nodes) before it. Travel time is the cost, one way roads are followed, and turn
+ * restrictions are ignored.
+ * <p>
+ * Sources are split up between the threads of a fork-join pool. Each thread keeps its search state in primitive
+ * arrays that are reused for every source it runs, and adds its shares straight into the one shared array of
+ * centralities with compare-and-set, so the threads never wait on each other. The search can also be run from a random
+ * sample of the sources, with the result scaled up to estimate the centrality over all of them.
+ */
+public class BetweennessCentrality {
+    private static final int SOURCES_PER_TASK = 16; //Sources run one after the other on a thread before splitting
+    private static final VarHandle CENTRALITY = MethodHandles.arrayElementVarHandle(double[].class);
+
+    private final int[] arcOffsets; //Arcs out of node i are arcOffsets[i] up to arcOffsets[i + 1]
+    private final int[] arcHeads;
+    private final double[] arcTimes;
+    private final int[] arcSegments; //Maps arc -> index of its segment
+    private final RoadSegment[] segments; //Maps index -> segment, with each segment once
+    private final Map<RoadSegment, Integer> segmentIndices = new IdentityHashMap<>();
+
+    private double[] centrality;
+    private int sourceCount;
+    private double time;
+
+    /**
+     * Copies the graph into flat arrays. Nothing is computed until {@link #compute} is called
+     *
+     * @param nodeLookupTable     maps node ID -> node
+     * @param nodeAdjacencyTable  maps node ID -> segments that can be travelled out of the node
+     * @param roadInfoLookupTable maps road ID -> road info
+     */
+    public BetweennessCentrality(Map<Integer, Node> nodeLookupTable, Map<Integer, List<RoadSegment>> nodeAdjacencyTable,
+                                 Map<Integer, RoadInfo> roadInfoLookupTable) {
+        int count = nodeLookupTable.size();
+        int maxID = -1;
+        for (int id : nodeLookupTable.keySet())
+            maxID = Math.max(maxID, id);
+
+        int[] ids = new int[count];
+        int[] indexOfID = new int[maxID + 1];
+        Arrays.fill(indexOfID, -1);
+        int n = 0;
+        for (int id : nodeLookupTable.keySet()) {
+            indexOfID[id] = n;
+            ids[n++] = id;
+        }
+
+        arcOffsets = new int[count + 1];
+        for (int i = 0; i < count; i++)
+            arcOffsets[i + 1] = arcOffsets[i] + nodeAdjacencyTable.getOrDefault(ids[i], Collections.emptyList()).size();
+
+        arcHeads = new int[arcOffsets[count]];
+        arcTimes = new double[arcOffsets[count]];
+        arcSegments = new int[arcOffsets[count]];
+        List<RoadSegment> unique = new ArrayList<>();
+        int arc = 0;
+        for (int i = 0; i < count; i++) {
+            for (RoadSegment segment : nodeAdjacencyTable.getOrDefault(ids[i], Collections.emptyList())) {
+                int head = segment.getOtherNode(ids[i]);
+                arcHeads[arc] = head >= 0 && head <= maxID ? indexOfID[head] : -1;
+                arcTimes[arc] = segment.getLength() / roadInfoLookupTable.get(segment.getID()).getWeightedRoadSpeed();
+                arcSegments[arc] = segmentIndices.computeIfAbsent(segment, s -> {
+                    unique.add(s);
+                    return unique.size() - 1;
+                });
+                arc++;
+            }
+        }
+
+        segments = unique.toArray(new RoadSegment[0]);
+        centrality = new double[segments.length];
+    }
+
+    /**
+     * Computes the centrality of every segment, replacing any previous result
+     *
+     * @param samples number of random sources to search from, or 0 (or anything at least the number of nodes) to
+     *                search from every node for the exact centrality
+     * @param seed    seed for picking the sampled sources
+     */
+    public void compute(int samples, long seed) {
+        long start = System.nanoTime();
+        int count = arcOffsets.length - 1;
+
+        int[] sources;
+        if (samples <= 0 || samples >= count) {
+            sources = new int[count];
+            for (int i = 0; i < count; i++)
+                sources[i] = i;
+        }
+        else {
+            //Partial Fisher-Yates shuffle, so no source is picked twice
+            int[] all = new int[count];
+            for (int i = 0; i < count; i++)
+                all[i] = i;
+
+            Random random = new Random(seed);
+            for (int i = 0; i < samples; i++) {
+                int j = i + random.nextInt(count - i);
+                int t = all[i];
+                all[i] = all[j];
+                all[j] = t;
+            }
+            sources = Arrays.copyOf(all, samples);
+        }
+
+        double[] result = new double[segments.length];
+        ThreadLocal<SearchSpace> spaces = ThreadLocal.withInitial(() -> new SearchSpace(count, arcHeads.length));
+        ForkJoinPool.commonPool().invoke(new SourceTask(sources, 0, sources.length, result, spaces));
+
+        //Scale a sample up to the number of sources it stands for
+        if (sources.length < count) {
+            double scale = (double) count / sources.length;
+            for (int i = 0; i < result.length; i++)
+                result[i] *= scale;
+        }
+
+        centrality = result;
+        sourceCount = sources.length;
+        time = (System.nanoTime() - start) / 1e9;
+    }
+
+    /**
+     * Runs Brandes' algorithm from one source, adding the shares of the routes from it into the centralities
+     */
+    private void accumulate(int source, SearchSpace space, double[] result) {
+        space.reset();
+        space.reach(source, 0);
+        space.sigma[source] = 1;
+        int settledCount = 0;
+
+        //Dijkstra, counting the number of quickest routes (sigma) to every node and remembering the arcs they arrive
+        //along. Nodes are kept in the order they're settled, which is the order of their distance from the source
+        while (!space.heap.isEmpty()) {
+            int node = space.heap.poll();
+            if (space.settled[node] == space.stamp)
+                continue;
+
+            space.settled[node] = space.stamp;
+            space.delta[node] = 0;
+            space.order[settledCount++] = node;
+            double cost = space.cost[node];
+
+            for (int arc = arcOffsets[node]; arc < arcOffsets[node + 1]; arc++) {
+                int head = arcHeads[arc];
+                if (head < 0 || space.settled[head] == space.stamp)
+                    continue;
+
+                double headCost = cost + arcTimes[arc];
+                if (space.reached[head] != space.stamp || headCost < space.cost[head]) {
+                    space.reach(head, headCost);
+                    space.sigma[head] = space.sigma[node];
+                    space.addPredecessor(head, node, arc);
+                }
+                else if (headCost == space.cost[head]) {
+                    space.sigma[head] += space.sigma[node];
+                    space.addPredecessor(head, node, arc);
+                }
+            }
+        }
+
+        //Walk back from the furthest node, handing each node's routes back along the arcs they arrived on
+        for (int i = settledCount - 1; i > 0; i--) {
+            int node = space.order[i];
+            double share = (1 + space.delta[node]) / space.sigma[node];
+
+            for (int p = space.predecessorHeads[node]; p >= 0; p = space.predecessorNext[p]) {
+                int predecessor = space.predecessorNodes[p];
+                double c = space.sigma[predecessor] * share;
+                add(result, arcSegments[space.predecessorArcs[p]], c);
+                space.delta[predecessor] += c;
+            }
+        }
+    }
+
+    /**
+     * Adds to a shared centrality without a lock, retrying if another thread changed it first
+     */
+    private static void add(double[] result, int index, double value) {
+        double current;
+        do {
+            current = (double) CENTRALITY.getVolatile(result, index);
+        }
+        while (!CENTRALITY.weakCompareAndSet(result, index, current, current + value));
+    }
+
+    /**
+     * @return the centrality of the segment: the number of quickest routes along it (estimated if the sources were
+     * sampled), or 0 if it isn't in the graph or nothing has been computed yet
+     */
+    public double getCentrality(RoadSegment segment) {
+        Integer index = segmentIndices.get(segment);
+        return index == null ? 0 : centrality[index];
+    }
+
+    /**
+     * @return the largest centrality of any segment
+     */
+    public double getMaxCentrality() {
+        double max = 0;
+        for (double c : centrality)
+            max = Math.max(max, c);
+
+        return max;
+    }
+
+    /**
+     * @param count most segments to return
+     * @return the segments with the highest centrality, highest first
+     */
+    public List<RoadSegment> getTopSegments(int count) {
+        Integer[] indices = new Integer[segments.length];
+        for (int i = 0; i < indices.length; i++)
+            indices[i] = i;
+
+        Arrays.sort(indices, (a, b) -> Double.compare(centrality[b], centrality[a]));
+
+        List<RoadSegment> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(count, indices.length); i++)
+            top.add(segments[indices[i]]);
+
+        return top;
+    }
+
+    /**
+     * @return the number of sources the last computation searched from
+     */
+    public int getSourceCount() {
+        return sourceCount;
+    }
+
+    /**
+     * @return how long the last computation took, in seconds
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Runs a range of sources, splitting it in half until it's small enough to run on one thread
+     */
+    private class SourceTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] sources;
+        private final int from;
+        private final int to;
+        private final double[] result;
+        private final ThreadLocal<SearchSpace> spaces;
+
+        private SourceTask(int[] sources, int from, int to, double[] result, ThreadLocal<SearchSpace> spaces) {
+            this.sources = sources;
+            this.from = from;
+            this.to = to;
+            this.result = result;
+            this.spaces = spaces;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SOURCES_PER_TASK) {
+                SearchSpace space = spaces.get();
+                for (int i = from; i < to; i++)
+                    accumulate(sources[i], space, result);
+
+                return;
+            }
+
+            int middle = (from + to) >>> 1;
+            invokeAll(new SourceTask(sources, from, middle, result, spaces),
+                    new SourceTask(sources, middle, to, result, spaces));
+        }
+    }
+
+    /**
+     * The state of one thread's searches, indexed by node. Each search gets a new stamp rather than clearing the
+     * arrays. The predecessors of every node are kept as linked lists in one pool of entries, which is emptied for
+     * each search, as a node only gains a predecessor when an arc into it is relaxed
+     */
+    private static class SearchSpace {
+        private final double[] cost;
+        private final double[] sigma; //Number of quickest routes from the source to the node
+        private final double[] delta; //Share of the routes from the source through the node
+        private final int[] reached; //Stamp of the search which last reached the node
+        private final int[] settled; //Stamp of the search which last settled the node
+        private final int[] order; //Nodes in the order they were settled
+        private final int[] predecessorHeads; //Maps node -> first entry in its list of predecessors, or -1
+        private final int[] predecessorNext;
+        private final int[] predecessorNodes;
+        private final int[] predecessorArcs;
+        private final NodeHeap heap = new NodeHeap();
+        private int stamp = 0;
+        private int predecessorCount = 0;
+
+        private SearchSpace(int count, int arcCount) {
+            cost = new double[count];
+            sigma = new double[count];
+            delta = new double[count];
+            reached = new int[count];
+            settled = new int[count];
+            order = new int[count];
+            predecessorHeads = new int[count];
+            predecessorNext = new int[arcCount];
+            predecessorNodes = new int[arcCount];
+            predecessorArcs = new int[arcCount];
+        }
+
+        private void reset() {
+            stamp++;
+            predecessorCount = 0;
+            heap.clear();
+        }
+
+        /**
+         * Records a new quickest cost to the node, forgetting the predecessors it had at the old cost
+         */
+        private void reach(int node, double newCost) {
+            reached[node] = stamp;
+            cost[node] = newCost;
+            predecessorHeads[node] = -1;
+            heap.add(node, newCost);
+        }
+
+        private void addPredecessor(int node, int predecessor, int arc) {
+            int entry = predecessorCount++;
+            predecessorNodes[entry] = predecessor;
+            predecessorArcs[entry] = arc;
+            predecessorNext[entry] = predecessorHeads[node];
+            predecessorHeads[node] = entry;
+        }
+    }
+}
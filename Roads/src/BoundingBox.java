@@ -16,7 +16,11 @@ public class BoundingBox {
     }
 
     public boolean containsPoint(Location p) {
-        return p.x >= location.x && p.x < location.x + size && p.y >= location.y && p.y < location.y + size;
+        return containsPoint(p.x, p.y);
+    }
+
+    public boolean containsPoint(double x, double y) {
+        return x >= location.x && x < location.x + size && y >= location.y && y < location.y + size;
     }
 
     /**
@@ -0,0 +1,302 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Labels every node with the component it's in, both ignoring the direction of one way roads (weakly connected) and
+ * following it (strongly connected). The labels are kept in arrays indexed by node ID, so checking whether one node
+ * can't possibly reach another is just a couple of array lookups.
+ * <p>
+ * The strong components are numbered in the order Tarjan's algorithm finishes them, which puts every component after
+ * all of the components it can reach. So a node can only reach nodes whose strong component number is no bigger than
+ * its own, even when they're in different components.
+ */
+public class ConnectedComponents {
+    /**
+     * The ways a node's component can be worked out
+     */
+    public enum Kind {
+        UNDIRECTED("Undirected Components"),
+        STRONG("Strong Components");
+
+        private final String name;
+
+        Kind(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private int[] weak = new int[0]; //Maps node ID -> weak component, or -1 if there's no such node
+    private int[] strong = new int[0]; //Maps node ID -> strong component, or -1 if there's no such node
+    private int weakCount = 0;
+    private int strongCount = 0;
+    private int largestWeak = -1;
+    private int largestStrong = -1;
+
+    /**
+     * Labels the components of a graph, replacing any labels from a previous graph
+     *
+     * @param nodeLookupTable    maps node ID -> node
+     * @param nodeAdjacencyTable maps node ID -> segments that can be travelled out of the node
+     */
+    public void build(Map<Integer, Node> nodeLookupTable, Map<Integer, List<RoadSegment>> nodeAdjacencyTable) {
+        //Give every node a dense index, then lay the edges out flat so the searches below only touch int arrays
+        int count = nodeLookupTable.size();
+        int maxID = -1;
+        for (int id : nodeLookupTable.keySet())
+            maxID = Math.max(maxID, id);
+
+        int[] indexOf = new int[maxID + 1];
+        Arrays.fill(indexOf, -1);
+        int[] ids = new int[count];
+        int n = 0;
+        for (int id : nodeLookupTable.keySet()) {
+            indexOf[id] = n;
+            ids[n++] = id;
+        }
+
+        //Segments leading to a node missing from the nodes file are left out
+        int[] offsets = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            offsets[i + 1] = offsets[i];
+            for (RoadSegment segment : nodeAdjacencyTable.getOrDefault(ids[i], List.of()))
+                if (indexOf(indexOf, segment.getOtherNode(ids[i])) >= 0)
+                    offsets[i + 1]++;
+        }
+
+        int[] heads = new int[offsets[count]];
+        for (int i = 0; i < count; i++) {
+            int e = offsets[i];
+            for (RoadSegment segment : nodeAdjacencyTable.getOrDefault(ids[i], List.of())) {
+                int head = indexOf(indexOf, segment.getOtherNode(ids[i]));
+                if (head >= 0)
+                    heads[e++] = head;
+            }
+        }
+
+        int[] weakOfIndex = new int[count];
+        int[] strongOfIndex = new int[count];
+        int[] weakSizes = labelWeak(offsets, heads, weakOfIndex);
+        int[] strongSizes = labelStrong(offsets, heads, strongOfIndex);
+
+        int[] weak = new int[maxID + 1];
+        int[] strong = new int[maxID + 1];
+        Arrays.fill(weak, -1);
+        Arrays.fill(strong, -1);
+        for (int i = 0; i < count; i++) {
+            weak[ids[i]] = weakOfIndex[i];
+            strong[ids[i]] = strongOfIndex[i];
+        }
+
+        this.weak = weak;
+        this.strong = strong;
+        weakCount = weakSizes.length;
+        strongCount = strongSizes.length;
+        largestWeak = largest(weakSizes);
+        largestStrong = largest(strongSizes);
+    }
+
+    /**
+     * @return the dense index of the node, or -1 if there's no node with the ID
+     */
+    private static int indexOf(int[] indexOf, int id) {
+        return id >= 0 && id < indexOf.length ? indexOf[id] : -1;
+    }
+
+    /**
+     * Finds the weak components with union-find
+     *
+     * @param labels the array to put each node's component in
+     * @return the size of each component
+     */
+    private static int[] labelWeak(int[] offsets, int[] heads, int[] labels) {
+        int count = labels.length;
+        int[] parents = new int[count];
+        for (int i = 0; i < count; i++)
+            parents[i] = i;
+
+        for (int i = 0; i < count; i++) {
+            for (int e = offsets[i]; e < offsets[i + 1]; e++) {
+                int a = find(parents, i);
+                int b = find(parents, heads[e]);
+                if (a != b)
+                    parents[Math.max(a, b)] = Math.min(a, b);
+            }
+        }
+
+        //Number the roots in order, then label every node with its root's number
+        int components = 0;
+        int[] sizes = new int[count];
+        for (int i = 0; i < count; i++) {
+            int root = find(parents, i);
+            if (root == i)
+                labels[i] = components++;
+            else
+                labels[i] = labels[root]; //Roots are always the smallest index in their set, so are numbered first
+
+            sizes[labels[i]]++;
+        }
+
+        return Arrays.copyOf(sizes, components);
+    }
+
+    private static int find(int[] parents, int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]]; //Path halving
+            i = parents[i];
+        }
+
+        return i;
+    }
+
+    /**
+     * Finds the strong components with Tarjan's algorithm. The recursion is kept on an explicit stack so that long
+     * chains of roads can't overflow the call stack
+     *
+     * @param labels the array to put each node's component in
+     * @return the size of each component
+     */
+    private static int[] labelStrong(int[] offsets, int[] heads, int[] labels) {
+        int count = labels.length;
+        int[] order = new int[count]; //When each node was first visited, or 0 if it hasn't been
+        int[] low = new int[count];
+        int[] nextEdge = new int[count];
+        int[] callStack = new int[count];
+        int[] componentStack = new int[count];
+        boolean[] onStack = new boolean[count];
+        int[] sizes = new int[count];
+        int visited = 0;
+        int components = 0;
+        int componentTop = 0;
+
+        for (int root = 0; root < count; root++) {
+            if (order[root] != 0)
+                continue;
+
+            int callTop = 0;
+            callStack[callTop++] = root;
+            order[root] = low[root] = ++visited;
+            nextEdge[root] = offsets[root];
+            componentStack[componentTop++] = root;
+            onStack[root] = true;
+
+            while (callTop > 0) {
+                int node = callStack[callTop - 1];
+
+                if (nextEdge[node] < offsets[node + 1]) {
+                    int head = heads[nextEdge[node]++];
+
+                    if (order[head] == 0) {
+                        order[head] = low[head] = ++visited;
+                        nextEdge[head] = offsets[head];
+                        componentStack[componentTop++] = head;
+                        onStack[head] = true;
+                        callStack[callTop++] = head;
+                    }
+                    else if (onStack[head]) {
+                        low[node] = Math.min(low[node], order[head]);
+                    }
+
+                    continue;
+                }
+
+                //All of the node's edges have been followed, so it's finished
+                callTop--;
+                if (callTop > 0) {
+                    int parent = callStack[callTop - 1];
+                    low[parent] = Math.min(low[parent], low[node]);
+                }
+
+                if (low[node] == order[node]) {
+                    int member;
+                    do {
+                        member = componentStack[--componentTop];
+                        onStack[member] = false;
+                        labels[member] = components;
+                        sizes[components]++;
+                    } while (member != node);
+
+                    components++;
+                }
+            }
+        }
+
+        return Arrays.copyOf(sizes, components);
+    }
+
+    private static int largest(int[] sizes) {
+        int largest = -1;
+        for (int i = 0; i < sizes.length; i++)
+            if (largest < 0 || sizes[i] > sizes[largest])
+                largest = i;
+
+        return largest;
+    }
+
+    /**
+     * Checks whether there can't be a path between two nodes. A false result doesn't mean there is a path, as turn
+     * restrictions and roads closed to a vehicle aren't taken into account, only that one isn't ruled out
+     *
+     * @param startID        ID of the node the path would leave from
+     * @param goalID         ID of the node the path would arrive at
+     * @param followsOneWays true if the path has to follow one way roads
+     * @return true if there is definitely no path
+     */
+    public boolean isUnreachable(int startID, int goalID, boolean followsOneWays) {
+        if (!contains(startID) || !contains(goalID))
+            return false;
+
+        if (weak[startID] != weak[goalID])
+            return true;
+
+        return followsOneWays && strong[startID] < strong[goalID];
+    }
+
+    /**
+     * @return true if the node was in the graph the components were built from
+     */
+    public boolean contains(int nodeID) {
+        return nodeID >= 0 && nodeID < weak.length && weak[nodeID] >= 0;
+    }
+
+    /**
+     * @return the node's component, or -1 if the node wasn't in the graph
+     */
+    public int getComponent(Kind kind, int nodeID) {
+        if (!contains(nodeID))
+            return -1;
+
+        return kind == Kind.UNDIRECTED ? weak[nodeID] : strong[nodeID];
+    }
+
+    /**
+     * @return the component with the most nodes in it, or -1 if there are no components
+     */
+    public int getLargestComponent(Kind kind) {
+        return kind == Kind.UNDIRECTED ? largestWeak : largestStrong;
+    }
+
+    /**
+     * @return the number of components
+     */
+    public int size(Kind kind) {
+        return kind == Kind.UNDIRECTED ? weakCount : strongCount;
+    }
+
+    /**
+     * Throws away all of the labels
+     */
+    public void clear() {
+        weak = new int[0];
+        strong = new int[0];
+        weakCount = 0;
+        strongCount = 0;
+        largestWeak = -1;
+        largestStrong = -1;
+    }
+}
@@ -0,0 +1,335 @@
+import java.util.Arrays;
+
+/**
+ * Contracts a directed graph one node at a time, least important first, as in a contraction hierarchy. Removing a node
+ * adds a shortcut between each pair of its neighbours whose shortest path went through it, unless a short witness
+ * search finds another path that's at least as good. Nodes are picked by how many arcs contracting them would add
+ * compared to how many it removes, plus how many of their neighbours have already gone, which spreads the contraction
+ * evenly over the graph.
+ * <p>
+ * What's left is each node's rank, and the arcs (including shortcuts) from each node to the higher ranked nodes it was
+ * still joined to when it was contracted. Every shortest path can be found going up these arcs from both ends.
+ */
+public class ContractionOrder {
+    private static final int WITNESS_SETTLE_LIMIT = 500; //Witness searches give up after this many nodes
+
+    private final int count;
+    private final int[] ranks; //Maps node -> rank, with 0 contracted first
+
+    //Arcs out of each node, and into each node, that are still in the graph being contracted
+    private final int[][] outHeads;
+    private final double[][] outCosts;
+    private final int[] outSizes;
+    private final int[][] inTails;
+    private final double[][] inCosts;
+    private final int[] inSizes;
+
+    //Upward arcs, filled in as nodes are contracted
+    private final int[][] upHeads; //Arcs from the node to higher nodes
+    private final double[][] upCosts;
+    private final int[][] downTails; //Arcs from higher nodes into the node
+    private final double[][] downCosts;
+
+    private final boolean[] contracted;
+    private final int[] contractedNeighbours;
+    private int shortcutCount = 0;
+
+    //Witness search state, reused by every search
+    private final double[] witnessCosts;
+    private final int[] witnessStamps;
+    private final NodeHeap witnessHeap = new NodeHeap();
+    private int witnessStamp = 0;
+
+    /**
+     * Contracts the graph
+     *
+     * @param count number of nodes, which are numbered from 0
+     * @param tails the node each arc leaves from
+     * @param heads the node each arc goes to
+     * @param costs the cost of each arc, which mustn't be negative
+     */
+    public ContractionOrder(int count, int[] tails, int[] heads, double[] costs) {
+        this.count = count;
+        ranks = new int[count];
+        outHeads = new int[count][2];
+        outCosts = new double[count][2];
+        outSizes = new int[count];
+        inTails = new int[count][2];
+        inCosts = new double[count][2];
+        inSizes = new int[count];
+        upHeads = new int[count][];
+        upCosts = new double[count][];
+        downTails = new int[count][];
+        downCosts = new double[count][];
+        contracted = new boolean[count];
+        contractedNeighbours = new int[count];
+        witnessCosts = new double[count];
+        witnessStamps = new int[count];
+
+        for (int i = 0; i < tails.length; i++)
+            if (tails[i] != heads[i])
+                addArc(tails[i], heads[i], costs[i]);
+
+        contract();
+    }
+
+    private void contract() {
+        NodeHeap queue = new NodeHeap();
+        for (int node = 0; node < count; node++)
+            queue.add(node, priority(node));
+
+        int rank = 0;
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            if (contracted[node])
+                continue;
+
+            //Priorities go stale as the graph changes, so check it again before contracting
+            double priority = priority(node);
+            if (!queue.isEmpty() && priority > queue.peekKey()) {
+                queue.add(node, priority);
+                continue;
+            }
+
+            ranks[node] = rank++;
+            contractNode(node);
+        }
+    }
+
+    /**
+     * @return how many arcs contracting the node would add, less how many it removes, plus its contracted neighbours
+     */
+    private double priority(int node) {
+        int removed = 0;
+        for (int i = 0; i < outSizes[node]; i++)
+            if (!contracted[outHeads[node][i]]) removed++;
+        for (int i = 0; i < inSizes[node]; i++)
+            if (!contracted[inTails[node][i]]) removed++;
+
+        return shortcuts(node, false) - removed + contractedNeighbours[node];
+    }
+
+    private void contractNode(int node) {
+        shortcutCount += shortcuts(node, true);
+
+        //The arcs left to uncontracted nodes all go up the hierarchy
+        int ups = 0;
+        int[] heads = new int[outSizes[node]];
+        double[] costs = new double[outSizes[node]];
+        for (int i = 0; i < outSizes[node]; i++) {
+            int head = outHeads[node][i];
+            if (!contracted[head]) {
+                heads[ups] = head;
+                costs[ups++] = outCosts[node][i];
+                contractedNeighbours[head]++;
+            }
+        }
+        upHeads[node] = Arrays.copyOf(heads, ups);
+        upCosts[node] = Arrays.copyOf(costs, ups);
+
+        int downs = 0;
+        int[] tails = new int[inSizes[node]];
+        costs = new double[inSizes[node]];
+        for (int i = 0; i < inSizes[node]; i++) {
+            int tail = inTails[node][i];
+            if (!contracted[tail]) {
+                tails[downs] = tail;
+                costs[downs++] = inCosts[node][i];
+                contractedNeighbours[tail]++;
+            }
+        }
+        downTails[node] = Arrays.copyOf(tails, downs);
+        downCosts[node] = Arrays.copyOf(costs, downs);
+
+        contracted[node] = true;
+
+        //Take the node out of its neighbours' arcs, so later searches don't keep stepping over it
+        for (int i = 0; i < outSizes[node]; i++)
+            removeTail(outHeads[node][i], node);
+        for (int i = 0; i < inSizes[node]; i++)
+            removeHead(inTails[node][i], node);
+
+        //Nothing searches the contracted node's own arcs again
+        outHeads[node] = null;
+        outCosts[node] = null;
+        inTails[node] = null;
+        inCosts[node] = null;
+        outSizes[node] = 0;
+        inSizes[node] = 0;
+    }
+
+    /**
+     * Works out the shortcuts needed to contract a node
+     *
+     * @param add true to add them to the graph, or false to just count them
+     * @return the number of shortcuts
+     */
+    private int shortcuts(int node, boolean add) {
+        int shortcuts = 0;
+
+        for (int i = 0; i < inSizes[node]; i++) {
+            int tail = inTails[node][i];
+            if (contracted[tail])
+                continue;
+
+            double inCost = inCosts[node][i];
+            double limit = -1;
+            for (int j = 0; j < outSizes[node]; j++)
+                if (outHeads[node][j] != tail && !contracted[outHeads[node][j]])
+                    limit = Math.max(limit, inCost + outCosts[node][j]);
+
+            if (limit < 0)
+                continue;
+
+            witnessSearch(tail, node, limit);
+
+            for (int j = 0; j < outSizes[node]; j++) {
+                int head = outHeads[node][j];
+                if (head == tail || contracted[head])
+                    continue;
+
+                double viaCost = inCost + outCosts[node][j];
+                if (witnessCost(head) > viaCost) {
+                    shortcuts++;
+                    if (add)
+                        addArc(tail, head, viaCost);
+                }
+            }
+        }
+
+        return shortcuts;
+    }
+
+    /**
+     * Runs Dijkstra's algorithm from a node over the uncontracted nodes, without going through the node being
+     * contracted, until the costs pass the limit or too many nodes have been settled
+     */
+    private void witnessSearch(int source, int avoid, double limit) {
+        witnessStamp++;
+        witnessHeap.clear();
+        witnessCosts[source] = 0;
+        witnessStamps[source] = witnessStamp;
+        witnessHeap.add(source, 0);
+
+        int settled = 0;
+        while (!witnessHeap.isEmpty() && settled < WITNESS_SETTLE_LIMIT) {
+            double key = witnessHeap.peekKey();
+            int node = witnessHeap.poll();
+            if (key > witnessCosts[node])
+                continue;
+            if (key > limit)
+                break;
+
+            settled++;
+            for (int i = 0; i < outSizes[node]; i++) {
+                int head = outHeads[node][i];
+                if (head == avoid || contracted[head])
+                    continue;
+
+                double cost = key + outCosts[node][i];
+                if (witnessStamps[head] != witnessStamp || cost < witnessCosts[head]) {
+                    witnessStamps[head] = witnessStamp;
+                    witnessCosts[head] = cost;
+                    witnessHeap.add(head, cost);
+                }
+            }
+        }
+    }
+
+    private double witnessCost(int node) {
+        return witnessStamps[node] == witnessStamp ? witnessCosts[node] : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Adds an arc to the graph being contracted, or lowers the cost of the arc if there already is one
+     */
+    private void addArc(int tail, int head, double cost) {
+        for (int i = 0; i < outSizes[tail]; i++) {
+            if (outHeads[tail][i] == head) {
+                if (cost < outCosts[tail][i]) {
+                    outCosts[tail][i] = cost;
+                    for (int j = 0; j < inSizes[head]; j++)
+                        if (inTails[head][j] == tail)
+                            inCosts[head][j] = cost;
+                }
+                return;
+            }
+        }
+
+        if (outSizes[tail] == outHeads[tail].length) {
+            outHeads[tail] = Arrays.copyOf(outHeads[tail], outSizes[tail] * 2);
+            outCosts[tail] = Arrays.copyOf(outCosts[tail], outSizes[tail] * 2);
+        }
+        outHeads[tail][outSizes[tail]] = head;
+        outCosts[tail][outSizes[tail]++] = cost;
+
+        if (inSizes[head] == inTails[head].length) {
+            inTails[head] = Arrays.copyOf(inTails[head], inSizes[head] * 2);
+            inCosts[head] = Arrays.copyOf(inCosts[head], inSizes[head] * 2);
+        }
+        inTails[head][inSizes[head]] = tail;
+        inCosts[head][inSizes[head]++] = cost;
+    }
+
+    private void removeHead(int tail, int head) {
+        for (int i = 0; i < outSizes[tail]; i++) {
+            if (outHeads[tail][i] == head) {
+                int last = --outSizes[tail];
+                outHeads[tail][i] = outHeads[tail][last];
+                outCosts[tail][i] = outCosts[tail][last];
+                return;
+            }
+        }
+    }
+
+    private void removeTail(int head, int tail) {
+        for (int i = 0; i < inSizes[head]; i++) {
+            if (inTails[head][i] == tail) {
+                int last = --inSizes[head];
+                inTails[head][i] = inTails[head][last];
+                inCosts[head][i] = inCosts[head][last];
+                return;
+            }
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the node's rank, with 0 contracted first
+     */
+    public int getRank(int node) {
+        return ranks[node];
+    }
+
+    /**
+     * @return the higher ranked nodes the node has an arc to
+     */
+    public int[] getUpHeads(int node) {
+        return upHeads[node];
+    }
+
+    public double[] getUpCosts(int node) {
+        return upCosts[node];
+    }
+
+    /**
+     * @return the higher ranked nodes which have an arc to the node
+     */
+    public int[] getDownTails(int node) {
+        return downTails[node];
+    }
+
+    public double[] getDownCosts(int node) {
+        return downCosts[node];
+    }
+
+    /**
+     * @return the number of shortcuts added while contracting
+     */
+    public int getShortcutCount() {
+        return shortcutCount;
+    }
+}
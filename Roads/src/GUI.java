@@ -47,10 +47,11 @@ public abstract class GUI {
     protected abstract void onDrag(MouseEvent e);
 
     /**
-     * Is called whenever the search box is updated. Use getSearchBox to get the
-     * JTextField object that is the search box itself.
+     * Is called whenever the search box is updated. This shouldn't wait for
+     * the search to finish: the suggestions for the text are given back
+     * afterwards with {@link #setSuggestions(String, List)}.
      */
-    protected abstract List<String> onSearch(String text);
+    protected abstract void onSearch(String text);
 
     /**
      * Is called whenever a navigation button is pressed. An instance of the
@@ -60,8 +61,28 @@ public abstract class GUI {
 
     protected abstract void onArtPtsButton();
 
+    /**
+     * Is called when the centrality button shows or hides the roads coloured
+     * by betweenness centrality.
+     */
+    protected abstract void onCentralityButton();
+
     protected abstract void onAStarModeChange();
 
+    protected abstract void onComponentsChange();
+
+    /**
+     * Is called when the tour button starts or finishes picking the stops of a
+     * tour (see {@link #planningTour}).
+     */
+    protected abstract void onTourChange();
+
+    /**
+     * Is called when the metrics button shows or hides the timings drawn over
+     * the map (see {@link #showMetrics}).
+     */
+    protected abstract void onMetricsChange();
+
     protected abstract void onScroll(MouseWheelEvent e);
 
     /**
@@ -76,8 +97,16 @@ public abstract class GUI {
      * @param polygons      a File for polygon-shapes.mp
      * @param restrictions  a File for restrictions.tab
      * @param trafficLights a File for traffic-lights.tab
+     * @param speedProfiles a File for roadID-speedProfile.tab
      */
-    protected abstract void onLoad(File nodes, File roads, File segments, File polygons, File restrictions, File trafficLights);
+    protected abstract void onLoad(File nodes, File roads, File segments, File polygons, File restrictions, File trafficLights,
+                                   File speedProfiles);
+
+    /**
+     * Is called when the load button is pressed while a load is running (see
+     * {@link #setLoading(boolean)}).
+     */
+    protected abstract void onCancelLoad();
 
     // here are some useful methods you'll need.
 
@@ -104,6 +133,46 @@ public abstract class GUI {
         frame.repaint();
     }
 
+    /**
+     * Shows the suggestions found for some search text. They're ignored if
+     * the search box no longer holds that text, as they're out of date.
+     * Must be called on the event dispatch thread.
+     *
+     * @param text        the text that was searched for
+     * @param suggestions the suggestions for the text, in the order to show them
+     */
+    public void setSuggestions(String text, List<String> suggestions) {
+        if (!text.equals(searchTextToString()))
+            return;
+
+        this.suggestions = new ArrayList<>(suggestions);
+        suggestionIndex = 0;
+        setSearchBoxText(this.suggestions.size() > 0 ? this.suggestions.get(0) : null, search.getCaretPosition());
+    }
+
+    /**
+     * Shows or hides the load progress bar. While loading, the load button
+     * cancels the load instead of choosing a new folder.
+     */
+    public void setLoading(boolean loading) {
+        this.loading = loading;
+        loadButton.setText(loading ? "Cancel" : "Load");
+        progressBar.setVisible(loading);
+        progressBar.setValue(0);
+        progressBar.setString("");
+    }
+
+    /**
+     * Updates the load progress bar.
+     *
+     * @param stage    description of what is being loaded
+     * @param fraction how much of the load is done, between 0 and 1
+     */
+    public void setLoadProgress(String stage, double fraction) {
+        progressBar.setValue((int) (fraction * 100));
+        progressBar.setString(stage);
+    }
+
     // --------------------------------------------------------------------
     // Everything below here is Swing-related and, while it's worth
     // understanding, you don't need to look any further to finish the
@@ -120,6 +189,7 @@ public abstract class GUI {
     private static final String POLYS_FILENAME = "polygon-shapes.mp";
     private static final String RESTRICTIONS_FILENAME = "restrictions.tab";
     private static final String TRAFFIC_FILENAME = "traffic-lights.tab";
+    private static final String SPEED_PROFILES_FILENAME = "roadID-speedProfile.tab";
 
     /*
      * In Swing, everything is a component; buttons, graphics panes, tool tips,
@@ -138,6 +208,9 @@ public abstract class GUI {
     private JPanel controls;
     private JComponent drawing; // we customise this to make it a drawing pane.
     private JTextArea textOutputArea;
+    private JButton loadButton;
+    private JProgressBar progressBar;
+    private boolean loading = false;
 
     private JTextPane search;
     private StyledDocument document;
@@ -145,6 +218,14 @@ public abstract class GUI {
 
     protected boolean isSpeedHeuristic = false;
     protected boolean useTrafficLights = false;
+    protected boolean useBidirectionalSearch = false;
+    protected boolean useOverlaySearch = false; //Search the customised overlay graph instead of A*
+    protected boolean useTiledStorage = false; //Only takes effect on the next load
+    protected double departureTime = -1; //Time of day to leave at in hours, or negative to route on fixed speeds
+    protected VehicleProfile vehicleProfile = null; //Profile to route for, or null to route on every road
+    protected ConnectedComponents.Kind componentColouring = null; //Components to colour the roads by, or null for none
+    protected boolean planningTour = false; //True while clicks pick the stops of a tour rather than a route
+    protected boolean showMetrics = false; //True while the timings are drawn over the map
 
     private final AttributeSet defaultAset = StyleContext.getDefaultStyleContext().addAttribute(SimpleAttributeSet.EMPTY, StyleConstants.Foreground, Color.BLACK);
     private final AttributeSet suggestionAset = StyleContext.getDefaultStyleContext().addAttribute(SimpleAttributeSet.EMPTY, StyleConstants.Foreground, Color.LIGHT_GRAY);
@@ -209,8 +290,15 @@ public abstract class GUI {
 
         fileChooser = new JFileChooser();
         JButton load = new JButton("Load");
+        loadButton = load;
         load.addActionListener(ev -> {
-            File nodes = null, roads = null, segments = null, polygons = null, restrictions = null, trafficLights = null;
+            if (loading) {
+                onCancelLoad();
+                return;
+            }
+
+            File nodes = null, roads = null, segments = null, polygons = null, restrictions = null, trafficLights = null,
+                    speedProfiles = null;
 
             // set up the file chooser
             fileChooser.setCurrentDirectory(new File("."));
@@ -243,6 +331,9 @@ public abstract class GUI {
                     else if (f.getName().equals(TRAFFIC_FILENAME)) {
                         trafficLights = f;
                     }
+                    else if (f.getName().equals(SPEED_PROFILES_FILENAME)) {
+                        speedProfiles = f;
+                    }
                 }
 
                 // check none of the files are missing, and call the load
@@ -253,7 +344,7 @@ public abstract class GUI {
                             "Error", JOptionPane.ERROR_MESSAGE);
                 }
                 else {
-                    onLoad(nodes, roads, segments, polygons, restrictions, trafficLights);
+                    onLoad(nodes, roads, segments, polygons, restrictions, trafficLights, speedProfiles);
                     redraw();
                 }
             }
@@ -302,6 +393,12 @@ public abstract class GUI {
             redraw();
         });
 
+        JButton centrality = new JButton("Road Centrality");
+        centrality.addActionListener(ev -> {
+            onCentralityButton();
+            redraw();
+        });
+
         JButton heuristic = new JButton("Distance Mode");
         heuristic.addActionListener(ev -> {
             isSpeedHeuristic = !isSpeedHeuristic;
@@ -318,6 +415,74 @@ public abstract class GUI {
             redraw();
         });
 
+        //Cycles through unidirectional A*, bidirectional A*, then the overlay graph
+        JButton bidirectional = new JButton("Unidirectional Search");
+        bidirectional.addActionListener(ev -> {
+            boolean overlay = useBidirectionalSearch;
+            useBidirectionalSearch = !useBidirectionalSearch && !useOverlaySearch;
+            useOverlaySearch = overlay;
+            bidirectional.setText(useOverlaySearch ? "Overlay Search"
+                    : useBidirectionalSearch ? "Bidirectional Search" : "Unidirectional Search");
+            onAStarModeChange();
+            redraw();
+        });
+
+        JButton storage = new JButton("Heap Storage");
+        storage.addActionListener(ev -> {
+            useTiledStorage = !useTiledStorage;
+            storage.setText(useTiledStorage ? "Tiled Storage" : "Heap Storage");
+        });
+
+        //Leaving at a time of day routes on the roads' speed profiles, every half hour can be picked
+        JComboBox<String> departure = new JComboBox<>();
+        departure.addItem("Fixed Speeds");
+        for (int i = 0; i < 48; i++)
+            departure.addItem(String.format("Depart %02d:%02d", i / 2, i % 2 * 30));
+        departure.addActionListener(ev -> {
+            departureTime = departure.getSelectedIndex() <= 0 ? -1 : (departure.getSelectedIndex() - 1) / 2.0;
+            onAStarModeChange();
+            redraw();
+        });
+
+        //Cycles through routing on every road, then each of the vehicle profiles
+        JButton vehicle = new JButton("All Roads");
+        vehicle.addActionListener(ev -> {
+            VehicleProfile[] profiles = VehicleProfile.values();
+            vehicleProfile = vehicleProfile == null ? profiles[0]
+                    : vehicleProfile.ordinal() + 1 < profiles.length ? profiles[vehicleProfile.ordinal() + 1] : null;
+            vehicle.setText(vehicleProfile == null ? "All Roads" : vehicleProfile.toString());
+            onAStarModeChange();
+            redraw();
+        });
+
+        //Cycles through colouring the roads by each kind of connected component, then back to no colouring
+        JButton components = new JButton("No Components");
+        components.addActionListener(ev -> {
+            ConnectedComponents.Kind[] kinds = ConnectedComponents.Kind.values();
+            componentColouring = componentColouring == null ? kinds[0]
+                    : componentColouring.ordinal() + 1 < kinds.length ? kinds[componentColouring.ordinal() + 1] : null;
+            components.setText(componentColouring == null ? "No Components" : componentColouring.toString());
+            onComponentsChange();
+            redraw();
+        });
+
+        //Starts picking the stops of a tour, then plans the tour through them on the second press
+        JButton tour = new JButton("Plan Tour");
+        tour.addActionListener(ev -> {
+            planningTour = !planningTour;
+            tour.setText(planningTour ? "Finish Tour" : "Plan Tour");
+            onTourChange();
+            redraw();
+        });
+
+        JButton metrics = new JButton("Show Metrics");
+        metrics.addActionListener(ev -> {
+            showMetrics = !showMetrics;
+            metrics.setText(showMetrics ? "Hide Metrics" : "Show Metrics");
+            onMetricsChange();
+            redraw();
+        });
+
         //Changed the search box to use JTextPane as it has multicolour text support
         //The search box is also modified to have custom input handling
         search = new JTextPane() {
@@ -423,9 +588,12 @@ public abstract class GUI {
                         break;
                 }
 
-                suggestions = onSearch(searchTextToString());
+                //Keep showing the old suggestions that still match until the search for the new text comes back
+                String text = searchTextToString();
+                suggestions.removeIf(suggestion -> !suggestion.startsWith(text));
                 suggestionIndex = 0;
                 setSearchBoxText(suggestions.size() > 0 ? suggestions.get(0) : null, caretPos);
+                onSearch(text);
                 redraw();
             }
         });
@@ -475,14 +643,29 @@ public abstract class GUI {
         controls.add(Box.createRigidArea(new Dimension(15, 0)));
 
         JPanel buttons = new JPanel();
-        buttons.setMaximumSize(new Dimension(300, 60));
-        buttons.setLayout(new GridLayout(2, 2));
+        buttons.setMaximumSize(new Dimension(900, 60));
+        buttons.setLayout(new GridLayout(2, 6));
         buttons.add(artPts);
         buttons.add(heuristic);
         buttons.add(trafficLights);
+        buttons.add(bidirectional);
+        buttons.add(storage);
+        buttons.add(departure);
+        buttons.add(vehicle);
+        buttons.add(components);
+        buttons.add(tour);
+        buttons.add(centrality);
+        buttons.add(metrics);
         controls.add(buttons);
         controls.add(Box.createRigidArea(new Dimension(15, 0)));
 
+        //Only shown while a map is loading
+        progressBar = new JProgressBar(0, 100);
+        progressBar.setStringPainted(true);
+        progressBar.setMaximumSize(new Dimension(300, 25));
+        progressBar.setVisible(false);
+        controls.add(progressBar);
+
         // glue is another invisible component that grows to take up all the
         // space it can on resize.
         controls.add(Box.createHorizontalGlue());
@@ -0,0 +1,88 @@
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Orders nodes along a Hilbert curve through their locations. Nodes that are close on the map are close along the
+ * curve, so numbering the nodes in this order keeps the neighbours of a node near it in memory, which is what a
+ * search expanding outwards across the graph (or drawing one part of the map) touches next
+ */
+public class HilbertOrder {
+    private static final int ORDER = 15; //Bits per axis, so a curve position fits in 30 bits
+    private static final int SIDE = 1 << ORDER;
+
+    private HilbertOrder() {
+    }
+
+    /**
+     * Sorts the nodes along the curve. The curve is fitted to the bounding box of the nodes, and nodes in the same
+     * cell of the curve keep the order they were given in
+     *
+     * @param nodes nodes to sort
+     * @return the nodes in curve order
+     */
+    public static Node[] sort(Collection<Node> nodes) {
+        Node[] sorted = nodes.toArray(new Node[0]);
+        if (sorted.length < 2)
+            return sorted;
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (Node node : sorted) {
+            minX = Math.min(minX, node.getX());
+            minY = Math.min(minY, node.getY());
+            maxX = Math.max(maxX, node.getX());
+            maxY = Math.max(maxY, node.getY());
+        }
+
+        //Both axes share a scale so the curve isn't stretched along the longer side of the map
+        double scale = (SIDE - 1) / Math.max(Math.max(maxX - minX, maxY - minY), 1e-9);
+
+        //Each key is the curve position in the high bits and the node's index in the low bits, so sorting the keys
+        //sorts the indices without boxing anything
+        long[] keys = new long[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            int x = (int) ((sorted[i].getX() - minX) * scale);
+            int y = (int) ((sorted[i].getY() - minY) * scale);
+            keys[i] = (long) index(x, y) << 32 | i;
+        }
+        Arrays.parallelSort(keys);
+
+        Node[] unsorted = sorted.clone();
+        for (int i = 0; i < keys.length; i++)
+            sorted[i] = unsorted[(int) keys[i]];
+
+        return sorted;
+    }
+
+    /**
+     * Finds the position of a cell along the curve
+     *
+     * @param x column of the cell, from 0 to 2^ORDER - 1
+     * @param y row of the cell, from 0 to 2^ORDER - 1
+     * @return the number of cells before it along the curve
+     */
+    static int index(int x, int y) {
+        int d = 0;
+        for (int s = SIDE >> 1; s > 0; s >>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+
+            //Rotate the quadrant so the curve inside it joins up with the quadrants either side
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = SIDE - 1 - x;
+                    y = SIDE - 1 - y;
+                }
+
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+
+        return d;
+    }
+}
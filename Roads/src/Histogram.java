@@ -0,0 +1,127 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how often values are recorded in buckets whose width grows with the value, in the style of an HDR histogram:
+ * every power of two is split into 32 buckets, so any value is known to within about 3% however large it is, in a
+ * fixed array of counts. Recording only does atomic updates, so any number of threads can record at once without
+ * locking.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final boolean nanoseconds;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param nanoseconds true if the values are durations in nanoseconds, which are shown in milliseconds
+     */
+    public Histogram(boolean nanoseconds) {
+        this.nanoseconds = nanoseconds;
+    }
+
+    /**
+     * Records a value. Negative values are recorded as 0
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+
+        counts.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @return the bucket a value goes in. Values below 32 get a bucket each, and above that the bucket is the value's
+     * power of two and its next five bits
+     */
+    static int bucketOf(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int mantissa = (int) (value >>> (exponent - SUB_BUCKET_BITS));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + mantissa - SUB_BUCKETS;
+    }
+
+    /**
+     * @return the largest value that goes in the bucket
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long mantissa = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) total.get() / n;
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return a value that at least the given percentage of the recorded values are no bigger than, accurate to the
+     * width of its bucket, or 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile) {
+        long n = count.get();
+        if (n == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += counts.get(bucket);
+            if (seen >= rank)
+                return Math.min(highestValueIn(bucket), max.get());
+        }
+
+        return max.get();
+    }
+
+    public boolean isNanoseconds() {
+        return nanoseconds;
+    }
+
+    /**
+     * Forgets everything recorded so far. Values recorded while resetting may be partly kept
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS; bucket++)
+            counts.set(bucket, 0);
+
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * @return the count, mean, median, 99th percentile, and maximum on one line, durations in milliseconds
+     */
+    @Override
+    public String toString() {
+        if (nanoseconds)
+            return String.format("n=%d mean=%.3fms p50=%.3fms p99=%.3fms max=%.3fms", getCount(), getMean() / 1e6,
+                    getPercentile(50) / 1e6, getPercentile(99) / 1e6, getMax() / 1e6);
+
+        return String.format("n=%d mean=%.1f p50=%d p99=%d max=%d", getCount(), getMean(), getPercentile(50),
+                getPercentile(99), getMax());
+    }
+}
@@ -0,0 +1,416 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A hub labelling of the road graph, for looking up the length of the shortest route between two nodes without a
+ * search. Every node gets a forward label, the hubs it can reach and how far away they are, and a backward label, the
+ * hubs that can reach it. Any two nodes share a hub on a shortest route between them, so the distance is found by
+ * walking the start's forward label and the goal's backward label together.
+ * <p>
+ * The labels come from a {@link ContractionOrder}: a node's label is its own, plus the labels of the higher nodes its
+ * upward arcs go to, with any hub dropped if the labels already built give a shorter way to it. Hubs are numbered by
+ * rank, and each label is sorted by hub, so the two labels can be intersected in a single merge.
+ * <p>
+ * All of the labels are packed into flat int and float arrays, which are written to disk as they are and can be
+ * memory mapped straight back in. Routes follow one way roads, but not turn restrictions.
+ */
+public class HubLabels {
+    private static final int MAGIC = 0x4855424c; //"HUBL"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 32; //magic, version, node count, index length, forward size, backward size
+
+    private final IntBuffer indexOfID; //Maps node ID -> node, or -1
+    private final IntBuffer forwardOffsets; //Node i's forward label is forwardOffsets[i] up to forwardOffsets[i + 1]
+    private final IntBuffer forwardHubs;
+    private final FloatBuffer forwardDistances; //Distances in km
+    private final IntBuffer backwardOffsets;
+    private final IntBuffer backwardHubs;
+    private final FloatBuffer backwardDistances;
+    private final int nodeCount;
+
+    private HubLabels(IntBuffer indexOfID, IntBuffer forwardOffsets, IntBuffer forwardHubs, FloatBuffer forwardDistances,
+                      IntBuffer backwardOffsets, IntBuffer backwardHubs, FloatBuffer backwardDistances) {
+        this.indexOfID = indexOfID;
+        this.forwardOffsets = forwardOffsets;
+        this.forwardHubs = forwardHubs;
+        this.forwardDistances = forwardDistances;
+        this.backwardOffsets = backwardOffsets;
+        this.backwardHubs = backwardHubs;
+        this.backwardDistances = backwardDistances;
+        this.nodeCount = forwardOffsets.limit() - 1;
+    }
+
+    /**
+     * Contracts the graph and builds the labels from the contraction order, using segment lengths as the costs
+     *
+     * @param nodeLookupTable    maps node ID -> node
+     * @param nodeAdjacencyTable maps node ID -> segments that can be travelled out of the node
+     * @return the labels, held on the heap
+     */
+    public static HubLabels build(Map<Integer, Node> nodeLookupTable, Map<Integer, List<RoadSegment>> nodeAdjacencyTable) {
+        int count = nodeLookupTable.size();
+        int maxID = -1;
+        for (int id : nodeLookupTable.keySet())
+            maxID = Math.max(maxID, id);
+
+        int[] indexOfID = new int[maxID + 1];
+        int[] ids = new int[count];
+        Arrays.fill(indexOfID, -1);
+        int n = 0;
+        for (int id : nodeLookupTable.keySet()) {
+            indexOfID[id] = n;
+            ids[n++] = id;
+        }
+
+        int arcCount = 0;
+        for (int id : ids)
+            arcCount += nodeAdjacencyTable.getOrDefault(id, Collections.emptyList()).size();
+
+        //Segments leading to a node missing from the nodes file are left out
+        int[] tails = new int[arcCount];
+        int[] heads = new int[arcCount];
+        double[] costs = new double[arcCount];
+        int arc = 0;
+        for (int i = 0; i < count; i++) {
+            for (RoadSegment segment : nodeAdjacencyTable.getOrDefault(ids[i], Collections.emptyList())) {
+                int head = segment.getOtherNode(ids[i]);
+                head = head >= 0 && head <= maxID ? indexOfID[head] : -1;
+                if (head < 0)
+                    continue;
+
+                tails[arc] = i;
+                heads[arc] = head;
+                costs[arc++] = segment.getLength();
+            }
+        }
+
+        ContractionOrder order = new ContractionOrder(count, Arrays.copyOf(tails, arc), Arrays.copyOf(heads, arc),
+                Arrays.copyOf(costs, arc));
+
+        //Build the labels from the top of the hierarchy down, as each label is made from the labels above it
+        int[] byRank = new int[count];
+        for (int i = 0; i < count; i++)
+            byRank[order.getRank(i)] = i;
+
+        int[][] forwardHubs = new int[count][];
+        float[][] forwardDistances = new float[count][];
+        int[][] backwardHubs = new int[count][];
+        float[][] backwardDistances = new float[count][];
+        LabelBuilder builder = new LabelBuilder(count);
+
+        for (int rank = count - 1; rank >= 0; rank--) {
+            int node = byRank[rank];
+
+            builder.start(rank);
+            int[] ups = order.getUpHeads(node);
+            for (int i = 0; i < ups.length; i++)
+                builder.merge(forwardHubs[ups[i]], forwardDistances[ups[i]], order.getUpCosts(node)[i]);
+            builder.finish(backwardHubs, backwardDistances, byRank, true);
+            forwardHubs[node] = builder.getHubs();
+            forwardDistances[node] = builder.getDistances();
+
+            builder.start(rank);
+            int[] downs = order.getDownTails(node);
+            for (int i = 0; i < downs.length; i++)
+                builder.merge(backwardHubs[downs[i]], backwardDistances[downs[i]], order.getDownCosts(node)[i]);
+            builder.finish(forwardHubs, forwardDistances, byRank, false);
+            backwardHubs[node] = builder.getHubs();
+            backwardDistances[node] = builder.getDistances();
+        }
+
+        //Pack the labels into flat arrays, in node order
+        IntBuffer[] forward = pack(forwardHubs);
+        IntBuffer[] backward = pack(backwardHubs);
+        return new HubLabels(IntBuffer.wrap(indexOfID), forward[0], forward[1],
+                FloatBuffer.wrap(packDistances(forwardDistances, forward[1].limit())),
+                backward[0], backward[1], FloatBuffer.wrap(packDistances(backwardDistances, backward[1].limit())));
+    }
+
+    /**
+     * @return the offsets and the hubs of the labels, packed together
+     */
+    private static IntBuffer[] pack(int[][] hubs) {
+        int[] offsets = new int[hubs.length + 1];
+        for (int i = 0; i < hubs.length; i++)
+            offsets[i + 1] = offsets[i] + hubs[i].length;
+
+        int[] packed = new int[offsets[hubs.length]];
+        for (int i = 0; i < hubs.length; i++)
+            System.arraycopy(hubs[i], 0, packed, offsets[i], hubs[i].length);
+
+        return new IntBuffer[]{IntBuffer.wrap(offsets), IntBuffer.wrap(packed)};
+    }
+
+    private static float[] packDistances(float[][] distances, int size) {
+        float[] packed = new float[size];
+        int position = 0;
+        for (float[] label : distances) {
+            System.arraycopy(label, 0, packed, position, label.length);
+            position += label.length;
+        }
+
+        return packed;
+    }
+
+    /**
+     * Finds the length of the shortest route between two nodes
+     *
+     * @param startID ID of the node the route leaves from
+     * @param goalID  ID of the node the route arrives at
+     * @return the length in km, or infinity if there is no route or either node isn't in the graph
+     */
+    public double distance(int startID, int goalID) {
+        int start = indexOf(startID);
+        int goal = indexOf(goalID);
+        if (start < 0 || goal < 0)
+            return Double.POSITIVE_INFINITY;
+        if (start == goal)
+            return 0;
+
+        int i = forwardOffsets.get(start);
+        int forwardEnd = forwardOffsets.get(start + 1);
+        int j = backwardOffsets.get(goal);
+        int backwardEnd = backwardOffsets.get(goal + 1);
+        double best = Double.POSITIVE_INFINITY;
+
+        while (i < forwardEnd && j < backwardEnd) {
+            int forwardHub = forwardHubs.get(i);
+            int backwardHub = backwardHubs.get(j);
+
+            if (forwardHub < backwardHub) {
+                i++;
+            }
+            else if (forwardHub > backwardHub) {
+                j++;
+            }
+            else {
+                best = Math.min(best, (double) forwardDistances.get(i++) + backwardDistances.get(j++));
+            }
+        }
+
+        return best;
+    }
+
+    private int indexOf(int nodeID) {
+        return nodeID >= 0 && nodeID < indexOfID.limit() ? indexOfID.get(nodeID) : -1;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * @return the total number of hubs in all of the labels
+     */
+    public long getEntryCount() {
+        return (long) forwardHubs.limit() + backwardHubs.limit();
+    }
+
+    /**
+     * @return the number of bytes the labels take up, which is also the size of the file they're written to less its
+     * header
+     */
+    public long getSizeInBytes() {
+        return 4L * (indexOfID.limit() + forwardOffsets.limit() + backwardOffsets.limit()) + 8 * getEntryCount();
+    }
+
+    /**
+     * Writes the labels to a file, in the layout {@link #open(File)} maps back in
+     */
+    public void write(File file) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw");
+             FileChannel channel = out.getChannel()) {
+            out.setLength(0);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(nodeCount).putInt(indexOfID.limit())
+                    .putInt(forwardHubs.limit()).putInt(backwardHubs.limit());
+            header.clear();
+            channel.write(header);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            for (Buffer section : sections()) {
+                for (int i = 0; i < section.limit(); i++) {
+                    if (buffer.remaining() < 4) {
+                        buffer.flip();
+                        channel.write(buffer);
+                        buffer.clear();
+                    }
+
+                    if (section instanceof IntBuffer)
+                        buffer.putInt(((IntBuffer) section).get(i));
+                    else
+                        buffer.putFloat(((FloatBuffer) section).get(i));
+                }
+            }
+
+            buffer.flip();
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * @return every array in the order they're laid out in the file
+     */
+    private Buffer[] sections() {
+        return new Buffer[]{indexOfID, forwardOffsets, backwardOffsets, forwardHubs, backwardHubs, forwardDistances,
+                backwardDistances};
+    }
+
+    /**
+     * Memory maps labels written by {@link #write(File)}. Nothing is read until it's queried, so only the labels of the
+     * nodes that are looked up are paged in
+     *
+     * @throws IOException if the file can't be read, isn't a labels file, or is too big to map in one piece
+     */
+    public static HubLabels open(File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r");
+             FileChannel channel = in.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Hub labels file is too big to map: " + file);
+
+            //The mapping stays valid after the channel is closed
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+
+            if (map.getInt(0) != MAGIC || map.getInt(4) != FORMAT_VERSION)
+                throw new IOException("Not a hub labels file: " + file);
+
+            int nodeCount = map.getInt(8);
+            int indexLength = map.getInt(12);
+            int forwardSize = map.getInt(16);
+            int backwardSize = map.getInt(20);
+
+            int[] position = {HEADER_SIZE};
+            IntBuffer indexOfID = slice(map, position, indexLength).asIntBuffer();
+            IntBuffer forwardOffsets = slice(map, position, nodeCount + 1).asIntBuffer();
+            IntBuffer backwardOffsets = slice(map, position, nodeCount + 1).asIntBuffer();
+            IntBuffer forwardHubs = slice(map, position, forwardSize).asIntBuffer();
+            IntBuffer backwardHubs = slice(map, position, backwardSize).asIntBuffer();
+            FloatBuffer forwardDistances = slice(map, position, forwardSize).asFloatBuffer();
+            FloatBuffer backwardDistances = slice(map, position, backwardSize).asFloatBuffer();
+
+            return new HubLabels(indexOfID, forwardOffsets, forwardHubs, forwardDistances, backwardOffsets, backwardHubs,
+                    backwardDistances);
+        }
+    }
+
+    /**
+     * Slices the next section of 4 byte values out of the mapped file
+     *
+     * @param position where the section starts, which is moved on to the end of it
+     */
+    private static ByteBuffer slice(MappedByteBuffer map, int[] position, int values) {
+        ByteBuffer section = map.duplicate();
+        section.position(position[0]).limit(position[0] + values * 4);
+        position[0] += values * 4;
+        return section.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Builds one label at a time by merging the labels it's made from, keeping the shortest distance to each hub
+     */
+    private static class LabelBuilder {
+        private final double[] distances; //Indexed by hub
+        private final int[] stamps;
+        private int[] hubs = new int[64];
+        private int size = 0;
+        private int stamp = 0;
+
+        private int[] resultHubs;
+        private float[] resultDistances;
+
+        private LabelBuilder(int count) {
+            distances = new double[count];
+            stamps = new int[count];
+        }
+
+        /**
+         * Starts a new label, with the node itself as a hub
+         */
+        private void start(int rank) {
+            stamp++;
+            size = 0;
+            add(rank, 0);
+        }
+
+        private void add(int hub, double distance) {
+            if (stamps[hub] == stamp) {
+                distances[hub] = Math.min(distances[hub], distance);
+                return;
+            }
+
+            if (size == hubs.length)
+                hubs = Arrays.copyOf(hubs, size * 2);
+
+            stamps[hub] = stamp;
+            distances[hub] = distance;
+            hubs[size++] = hub;
+        }
+
+        /**
+         * Adds every hub of another label, the given distance further away
+         */
+        private void merge(int[] labelHubs, float[] labelDistances, double distance) {
+            for (int i = 0; i < labelHubs.length; i++)
+                add(labelHubs[i], labelDistances[i] + distance);
+        }
+
+        /**
+         * Sorts the hubs, and drops any hub which the labels already built give a shorter way to
+         *
+         * @param otherHubs      the labels going the other way, by node
+         * @param otherDistances their distances
+         * @param byRank         maps rank -> node
+         * @param forward        true if this is a forward label
+         */
+        private void finish(int[][] otherHubs, float[][] otherDistances, int[] byRank, boolean forward) {
+            Arrays.sort(hubs, 0, size);
+
+            int kept = 0;
+            int[] keptHubs = new int[size];
+            float[] keptDistances = new float[size];
+            for (int i = 0; i < size; i++) {
+                int hub = hubs[i];
+                double distance = distances[hub];
+
+                //The node's own hub has no other label to check against yet
+                int hubNode = byRank[hub];
+                if (otherHubs[hubNode] == null || shortest(otherHubs[hubNode], otherDistances[hubNode]) >= distance) {
+                    keptHubs[kept] = hub;
+                    keptDistances[kept++] = (float) distance;
+                }
+            }
+
+            resultHubs = Arrays.copyOf(keptHubs, kept);
+            resultDistances = Arrays.copyOf(keptDistances, kept);
+        }
+
+        /**
+         * @return the shortest distance through any hub shared by the label being built and another label
+         */
+        private double shortest(int[] labelHubs, float[] labelDistances) {
+            double best = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < labelHubs.length; i++)
+                if (stamps[labelHubs[i]] == stamp)
+                    best = Math.min(best, distances[labelHubs[i]] + labelDistances[i]);
+
+            return best;
+        }
+
+        private int[] getHubs() {
+            return resultHubs;
+        }
+
+        private float[] getDistances() {
+            return resultDistances;
+        }
+    }
+}
@@ -0,0 +1,272 @@
+import java.util.Arrays;
+
+/**
+ * Splits a road graph into nested cells with inertial flow. A set of nodes is cut in two by projecting them onto a few
+ * straight lines, taking the nodes at either end of each line as sources and sinks, and finding the smallest cut
+ * between them with a max flow. The line with the smallest cut wins, and both halves are split again until they're
+ * small enough. Road networks have few roads crossing any straight line, so the cuts come out small.
+ * <p>
+ * The halves of each split form a tree, and a level's cells are the highest subtrees which fit in its size limit, so
+ * every cell is made of whole cells from the level below.
+ */
+public class InertialFlowPartitioner {
+    private static final double BALANCE = 0.25; //Fraction of the nodes at each end of a line used as sources and sinks
+    private static final double[][] DIRECTIONS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] offsets; //Edges out of node i are offsets[i] up to offsets[i + 1]
+    private final int[] heads;
+    private final int[] reverses; //The same edge listed from its other node
+    private final int[] levelSizes;
+
+    private final int[][] cells; //Maps level -> node -> cell
+    private final int[] cellCounts;
+
+    //Reused by every cut, indexed by node
+    private final int[] local;
+    private final int[] depth;
+    private final int[] nextEdge;
+    private final int[] flow; //Flow along each edge, which is 1, 0, or -1 for flow the other way
+
+    /**
+     * @param xs         x coordinate of each node
+     * @param ys         y coordinate of each node
+     * @param edgeCount  number of edges
+     * @param ends       the two nodes of edge i are ends[2 * i] and ends[2 * i + 1]. Direction doesn't matter
+     * @param levelSizes the most nodes a cell may have on each level, smallest first
+     */
+    public InertialFlowPartitioner(double[] xs, double[] ys, int edgeCount, int[] ends, int[] levelSizes) {
+        this.xs = xs;
+        this.ys = ys;
+        this.levelSizes = levelSizes;
+
+        //List every edge from both of its nodes, remembering where each copy went so flow can be sent back
+        int count = xs.length;
+        offsets = new int[count + 1];
+        for (int i = 0; i < edgeCount * 2; i++)
+            offsets[ends[i] + 1]++;
+        for (int i = 0; i < count; i++)
+            offsets[i + 1] += offsets[i];
+
+        int[] position = Arrays.copyOf(offsets, count);
+        heads = new int[edgeCount * 2];
+        reverses = new int[edgeCount * 2];
+        for (int i = 0; i < edgeCount; i++) {
+            int a = ends[2 * i];
+            int b = ends[2 * i + 1];
+            int forward = position[a]++;
+            int backward = position[b]++;
+            heads[forward] = b;
+            heads[backward] = a;
+            reverses[forward] = backward;
+            reverses[backward] = forward;
+        }
+
+        cells = new int[levelSizes.length][count];
+        cellCounts = new int[levelSizes.length];
+        local = new int[count];
+        depth = new int[count];
+        nextEdge = new int[count];
+        flow = new int[heads.length];
+        Arrays.fill(local, -1);
+    }
+
+    /**
+     * Partitions the graph
+     *
+     * @return the cell of every node on every level, indexed by level then node. Cells are numbered from 0 on each
+     * level
+     */
+    public int[][] partition() {
+        int[] all = new int[xs.length];
+        for (int i = 0; i < all.length; i++)
+            all[i] = i;
+
+        split(all, Integer.MAX_VALUE);
+        return cells;
+    }
+
+    /**
+     * @return the number of cells on each level
+     */
+    public int[] getCellCounts() {
+        return cellCounts;
+    }
+
+    private void split(int[] nodes, int parentSize) {
+        //Start a new cell on each level this is the first set small enough for
+        for (int level = 0; level < levelSizes.length; level++) {
+            if (nodes.length <= levelSizes[level] && levelSizes[level] < parentSize) {
+                int cell = cellCounts[level]++;
+                for (int node : nodes)
+                    cells[level][node] = cell;
+            }
+        }
+
+        if (nodes.length <= levelSizes[0])
+            return;
+
+        boolean[] bestSide = null;
+        int bestCut = Integer.MAX_VALUE;
+        int bestBalance = 0;
+        for (double[] direction : DIRECTIONS) {
+            boolean[] side = new boolean[nodes.length];
+            int cut = cut(nodes, direction, side);
+
+            int sourceSide = 0;
+            for (boolean s : side)
+                if (s) sourceSide++;
+            int balance = Math.min(sourceSide, nodes.length - sourceSide);
+
+            if (cut < bestCut || cut == bestCut && balance > bestBalance) {
+                bestSide = side;
+                bestCut = cut;
+                bestBalance = balance;
+            }
+        }
+
+        int[] first = new int[nodes.length];
+        int[] second = new int[nodes.length];
+        int firstCount = 0;
+        int secondCount = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            if (bestSide[i])
+                first[firstCount++] = nodes[i];
+            else
+                second[secondCount++] = nodes[i];
+        }
+
+        split(Arrays.copyOf(first, firstCount), nodes.length);
+        split(Arrays.copyOf(second, secondCount), nodes.length);
+    }
+
+    /**
+     * Finds the smallest cut between the nodes at either end of a line, using Dinic's algorithm on the edges between
+     * the given nodes
+     *
+     * @param side set to true for the nodes on the sources' side of the cut
+     * @return the number of edges cut
+     */
+    private int cut(int[] nodes, double[] direction, boolean[] side) {
+        int count = nodes.length;
+        int ends = Math.max(1, (int) (count * BALANCE));
+
+        //Order the nodes along the line
+        Integer[] order = new Integer[count];
+        double[] projection = new double[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+            projection[i] = xs[nodes[i]] * direction[0] + ys[nodes[i]] * direction[1];
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(projection[a], projection[b]));
+
+        //Local numbers are positions along the line, so the sources are below ends and the sinks at or above count - ends
+        for (int i = 0; i < count; i++) {
+            local[nodes[order[i]]] = i;
+            for (int e = offsets[nodes[order[i]]]; e < offsets[nodes[order[i]] + 1]; e++)
+                flow[e] = 0;
+        }
+
+        int[] queue = new int[count];
+        int[] path = new int[count];
+        int total = 0;
+        while (true) {
+            //Level the residual graph out from every source at once
+            for (int node : nodes)
+                depth[node] = -1;
+
+            int head = 0;
+            int tail = 0;
+            for (int i = 0; i < ends; i++) {
+                int node = nodes[order[i]];
+                depth[node] = 0;
+                queue[tail++] = node;
+            }
+
+            boolean reachedSink = false;
+            while (head < tail) {
+                int node = queue[head++];
+                for (int e = offsets[node]; e < offsets[node + 1]; e++) {
+                    int next = heads[e];
+                    if (local[next] < 0 || depth[next] >= 0 || flow[e] >= 1)
+                        continue;
+
+                    depth[next] = depth[node] + 1;
+                    queue[tail++] = next;
+                    if (local[next] >= count - ends)
+                        reachedSink = true;
+                }
+            }
+
+            if (!reachedSink)
+                break;
+
+            //Push flow along paths that step one level at a time, until every path to a sink is blocked
+            for (int node : nodes)
+                nextEdge[node] = offsets[node];
+
+            for (int i = 0; i < ends; i++) {
+                int source = nodes[order[i]];
+
+                while (true) {
+                    int length = 0;
+                    int node = source;
+
+                    while (local[node] < count - ends) {
+                        int e = nextEdge[node];
+                        while (e < offsets[node + 1] && (local[heads[e]] < 0 || flow[e] >= 1
+                                || depth[heads[e]] != depth[node] + 1))
+                            e++;
+                        nextEdge[node] = e;
+
+                        if (e < offsets[node + 1]) {
+                            path[length++] = e;
+                            node = heads[e];
+                        }
+                        else {
+                            //Dead end, so nothing can get through this node again this round
+                            depth[node] = -1;
+                            if (length == 0)
+                                break;
+
+                            length--;
+                            node = tail(path[length]);
+                        }
+                    }
+
+                    if (local[node] < count - ends)
+                        break;
+
+                    for (int j = 0; j < length; j++)
+                        push(path[j]);
+                    total++;
+                }
+            }
+        }
+
+        //Whatever can still be reached from the sources is on their side of the cut
+        for (int i = 0; i < count; i++)
+            side[i] = depth[nodes[i]] >= 0;
+
+        for (int node : nodes)
+            local[node] = -1;
+
+        return total;
+    }
+
+    /**
+     * @return the node an edge leaves from
+     */
+    private int tail(int edge) {
+        return heads[reverses[edge]];
+    }
+
+    /**
+     * Sends one unit of flow along an edge, which takes it back off the edge the other way
+     */
+    private void push(int edge) {
+        flow[edge]++;
+        flow[reverses[edge]]--;
+    }
+}
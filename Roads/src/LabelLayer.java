@@ -0,0 +1,130 @@
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Places and draws the polygon labels so that they don't overlap. Labels are placed greedily, most important first,
+ * and a label is dropped if its box hits one already placed in an {@link OccupancyGrid}.
+ * <p>
+ * A placement is made in pixels relative to the map's origin rather than the window, so it only depends on the zoom.
+ * Each zoom level's placement is cached, and panning just moves it. Drawing only looks at the grid cells on screen, so
+ * the cost is in the labels shown rather than every label on the map.
+ */
+public class LabelLayer {
+    private static final double MIN_CELL_SIZE = 64; //Smallest size of an occupancy grid cell, in pixels
+    private static final int MAX_CACHED_ZOOMS = 16;
+    private static final double MIN_LABEL_SIZE = 8; //Labels smaller than this aren't drawn
+    private static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, true, true);
+
+    private final List<Polygon> candidates = new ArrayList<>();
+    private final Map<String, Rectangle2D> metrics = new HashMap<>(); //Bounds of each label at LABEL_SIZE
+    private final Map<Float, Font> fonts = new HashMap<>();
+    private final Map<Double, OccupancyGrid<PlacedLabel>> placements = new LinkedHashMap<Double, OccupancyGrid<PlacedLabel>>(
+            16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Double, OccupancyGrid<PlacedLabel>> eldest) {
+            return size() > MAX_CACHED_ZOOMS;
+        }
+    };
+    private final List<PlacedLabel> visible = new ArrayList<>(); //Reused by every draw
+    private final Rectangle clip = new Rectangle();
+
+    /**
+     * @param polygons the polygons whose labels to draw
+     */
+    public LabelLayer(Collection<Polygon> polygons) {
+        for (Polygon polygon : polygons)
+            if (polygon.getLabel() != null && !polygon.getLabel().equals(""))
+                candidates.add(polygon);
+
+        //Always visible labels go first, then larger polygons before smaller ones. The sort is stable, so ties keep
+        //the order they were drawn in
+        candidates.sort(Comparator.comparingInt(Polygon::getEndLevel).reversed()
+                .thenComparing(Comparator.comparingDouble(Polygon::getBoundingArea).reversed()));
+    }
+
+    /**
+     * Draws all of the labels that fit on screen
+     *
+     * @param g      graphics object to draw to
+     * @param offset offset from the origin (how much the map has been translated by)
+     * @param centre centre of the window
+     * @param zoom   zoom factor of the map
+     */
+    public void draw(Graphics g, Point offset, Point centre, double zoom) {
+        if (candidates.isEmpty() || zoom < MapViewer.LABEL_ZOOM_CUTOFF)
+            return;
+
+        OccupancyGrid<PlacedLabel> placement = placements.computeIfAbsent(zoom, this::place);
+
+        //Move the clip into placement space to find the labels on screen
+        double translateX = offset.x * zoom + centre.x;
+        double translateY = offset.y * zoom + centre.y;
+        PointBuffer.visibleBounds(g, centre, clip);
+        visible.clear();
+        placement.query(clip.x - translateX, clip.y - translateY,
+                clip.x + clip.width - translateX, clip.y + clip.height - translateY, visible);
+
+        Font current = null;
+        for (PlacedLabel label : visible) {
+            if (label.font != current) {
+                current = label.font;
+                g.setFont(current);
+            }
+
+            g.drawString(label.text, (int) (label.baselineX + translateX), (int) (label.baselineY + translateY));
+        }
+    }
+
+    /**
+     * Places the labels for a zoom level
+     */
+    private OccupancyGrid<PlacedLabel> place(double zoom) {
+        //Labels grow as the map is zoomed in, so the cells grow with them to keep the number each label covers small
+        OccupancyGrid<PlacedLabel> placement = new OccupancyGrid<>(Math.max(MIN_CELL_SIZE, MapViewer.LABEL_SIZE * zoom));
+        double scale = MapViewer.WINDOW_SCALE * zoom;
+
+        for (Polygon polygon : candidates) {
+            double size = polygon.getEndLevel() == 3 ? MapViewer.LABEL_SIZE : MapViewer.LABEL_SIZE * zoom / 6;
+            if (size < MIN_LABEL_SIZE)
+                continue;
+
+            //Glyph metrics scale with the font size, so they're only measured once per label
+            Rectangle2D bounds = metrics.computeIfAbsent(polygon.getLabel(),
+                    label -> MapViewer.LABEL_FONT.getStringBounds(label, FONT_RENDER_CONTEXT));
+            double ratio = size / MapViewer.LABEL_SIZE;
+            double width = bounds.getWidth() * ratio;
+            double height = bounds.getHeight() * ratio;
+
+            //The label is centred above the middle of the polygon
+            Location centre = polygon.getApproximateCentre();
+            double baselineX = centre.x * scale - width / 2;
+            double baselineY = -centre.y * scale - height / 2;
+            Rectangle2D box = new Rectangle2D.Double(baselineX, baselineY + bounds.getY() * ratio, width, height);
+
+            if (placement.overlaps(box))
+                continue;
+
+            Font font = fonts.computeIfAbsent((float) size, MapViewer.LABEL_FONT::deriveFont);
+            placement.add(box, new PlacedLabel(polygon.getLabel(), font, baselineX, baselineY));
+        }
+
+        return placement;
+    }
+
+    private static class PlacedLabel {
+        private final String text;
+        private final Font font;
+        private final double baselineX; //Where the text is drawn from, in pixels from the map's origin
+        private final double baselineY;
+
+        private PlacedLabel(String text, Font font, double baselineX, double baselineY) {
+            this.text = text;
+            this.font = font;
+            this.baselineX = baselineX;
+            this.baselineY = baselineY;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import java.io.File;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks how far through loading a map is, and lets the load be cancelled. A load reads its files on several threads
+ * at once, which all report to the same progress object, while the GUI polls it from the event dispatch thread.
+ * <p>
+ * Progress is measured in bytes read out of the total size of the files being read.
+ */
+public class LoadProgress {
+    private final long totalBytes;
+    private final LongAdder bytesRead = new LongAdder();
+    private volatile String stage = "";
+    private volatile boolean cancelled = false;
+
+    /**
+     * @param files the files that will be read. Any that are null are ignored
+     */
+    public LoadProgress(File... files) {
+        long total = 0;
+        for (File file : files)
+            if (file != null)
+                total += file.length();
+
+        totalBytes = total;
+    }
+
+    /**
+     * Records that some of a file has been read. This is also where loading threads find out that the load has been
+     * cancelled
+     *
+     * @param bytes the number of bytes read
+     * @throws CancellationException if the load has been cancelled
+     */
+    public void read(long bytes) {
+        if (cancelled)
+            throw new CancellationException("Load cancelled");
+
+        bytesRead.add(bytes);
+    }
+
+    /**
+     * @return the fraction of the files read so far, between 0 and 1
+     */
+    public double getFraction() {
+        return totalBytes == 0 ? 0 : Math.min(1, bytesRead.sum() / (double) totalBytes);
+    }
+
+    public String getStage() {
+        return stage;
+    }
+
+    public void setStage(String stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * Asks the load to stop. The loading threads stop the next time they report progress
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
@@ -84,9 +84,69 @@ public class Location {
      * is the format used in the data files.
      */
     public static Location fromLatLon(double lat, double lon) {
-        double y = (lat - CENTRE_LAT) * SCALE_LAT;
-        double x = (lon - CENTRE_LON) * (SCALE_LAT * Math.cos((lat - CENTRE_LAT) * DEG_TO_RAD));
-        return new Location(x, y);
+        return new Location(xFromLatLon(lat, lon), yFromLatLon(lat));
+    }
+
+    /**
+     * The x coordinate of the Location for the given latitude and longitude,
+     * for filling coordinate arrays without creating a Location.
+     */
+    public static double xFromLatLon(double lat, double lon) {
+        return (lon - CENTRE_LON) * (SCALE_LAT * Math.cos((lat - CENTRE_LAT) * DEG_TO_RAD));
+    }
+
+    /**
+     * The y coordinate of the Location for the given latitude.
+     */
+    public static double yFromLatLon(double lat) {
+        return (lat - CENTRE_LAT) * SCALE_LAT;
+    }
+
+    /**
+     * The latitude of a Location's y coordinate, the inverse of
+     * {@link #yFromLatLon(double)}.
+     */
+    public static double latFromY(double y) {
+        return y / SCALE_LAT + CENTRE_LAT;
+    }
+
+    /**
+     * The longitude of a Location's coordinates, the inverse of
+     * {@link #xFromLatLon(double, double)}.
+     */
+    public static double lonFromXY(double x, double y) {
+        return x / (SCALE_LAT * Math.cos((latFromY(y) - CENTRE_LAT) * DEG_TO_RAD)) + CENTRE_LON;
+    }
+
+    /**
+     * Converts many locations into points at once. The locations are given as
+     * separate arrays of x and y coordinates, and the points are written into
+     * separate arrays of u and v pixel positions. The loop is kept simple so
+     * that the JIT can vectorise it.
+     *
+     * @param xs     x coordinates of the locations
+     * @param ys     y coordinates of the locations
+     * @param count  number of locations to convert
+     * @param scale  window scale
+     * @param offset offset from the origin (how much the map has been translated by)
+     * @param zoom   zoom factor of the map
+     * @param centre centre of the window
+     * @param us     array to write the converted x pixel positions to
+     * @param vs     array to write the converted y pixel positions to
+     */
+    public static void toPoints(double[] xs, double[] ys, int count, double scale, Point offset, double zoom,
+                                Point centre, int[] us, int[] vs) {
+        //Same arithmetic as toPoint, so single and bulk conversions agree to the pixel
+        double offsetX = offset.x;
+        double offsetY = offset.y;
+        int centreX = centre.x;
+        int centreY = centre.y;
+
+        for (int i = 0; i < count; i++)
+            us[i] = (int) ((offsetX + (xs[i] * scale)) * zoom) + centreX;
+
+        for (int i = 0; i < count; i++)
+            vs[i] = (int) ((offsetY - (ys[i] * scale)) * zoom) + centreY;
     }
 
     // ------------------------------------------
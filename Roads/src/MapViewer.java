@@ -1,12 +1,14 @@
+import javax.swing.*;
+import javax.swing.Timer;
 import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseWheelEvent;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.util.List;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BooleanSupplier;
 
 public class MapViewer extends GUI {
     public static final double ZOOM_RATE = 1.5;
@@ -17,20 +19,51 @@ public class MapViewer extends GUI {
     public static final double CLOSE_ZOOM_CUTOFF = 1.4;
     public static final double MEDIUM_ZOOM_CUTOFF = 0.2;
     public static final double LABEL_ZOOM_CUTOFF = 0.3;
+    public static final double ROAD_LABEL_ZOOM_CUTOFF = 3;
+    public static final long TOUR_TIME_BUDGET = 2000; //Milliseconds spent improving the order of a tour's stops
+    public static final int CENTRALITY_SAMPLES = 1000; //Sources the centrality is estimated from
+    public static final long SEARCH_DELAY = 150; //Milliseconds to wait for the user to stop typing before searching
 
     public static final Font LABEL_FONT = new Font("TimesRoman", Font.BOLD, (int) LABEL_SIZE);
+    public static final Font METRICS_FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+    public static final Color METRICS_BACKGROUND_COLOR = new Color(255, 255, 255, 200);
     public static final Color BACKGROUND_COLOR = new Color(226, 226, 226);
+    public static final Color[] COMPONENT_COLORS = new Color[32];
+    public static final Color[] CENTRALITY_COLORS = new Color[64];
 
-    private HashMap<Integer, Node> nodeLookupTable = new HashMap<>();
-    private HashMap<Integer, List<RoadSegment>> nodeAdjacencyTable = new HashMap<>();
-    private HashMap<Integer, List<Node>> neighbouringNodesTable = new HashMap<>();
-    private HashMap<Integer, List<RoadSegment>> roadToRoadSegmentsTable = new HashMap<>();
-    private HashMap<Integer, RoadInfo> roadInfoLookupTable = new HashMap<>();
-    private HashMap<Integer, List<Restriction>> restrictionsMap = new HashMap<>();
-    private List<Polygon> polygons = new ArrayList<>();
+    static {
+        //Step around the colour wheel by the golden ratio, so that components numbered close together look different
+        for (int i = 0; i < COMPONENT_COLORS.length; i++)
+            COMPONENT_COLORS[i] = Color.getHSBColor(i * 0.618034f % 1, 0.8f, 0.85f);
 
-    private SearchTrie<RoadInfo> roadSearchTrie = new SearchTrie<>();
-    private QuadTree nodeQuadTree = QuadTree.EMPTY;
+        //From blue for the quietest roads to red for the busiest
+        for (int i = 0; i < CENTRALITY_COLORS.length; i++)
+            CENTRALITY_COLORS[i] = Color.getHSBColor(0.66f * (1 - i / (CENTRALITY_COLORS.length - 1f)), 0.9f, 0.85f);
+    }
+
+    private static final Histogram REDRAW_POLYGONS = Metrics.timer("redraw.polygons");
+    private static final Histogram REDRAW_ROADS = Metrics.timer("redraw.roads");
+    private static final Histogram REDRAW_HIGHLIGHTS = Metrics.timer("redraw.highlights");
+    private static final Histogram REDRAW_LABELS = Metrics.timer("redraw.labels");
+    private static final Histogram REDRAW_NODES = Metrics.timer("redraw.nodes");
+    private static final Histogram REDRAW_TOTAL = Metrics.timer("redraw.total");
+    private static final Histogram LOAD_TOTAL = Metrics.timer("load.total");
+    private static final Histogram SEARCH_TRIE = Metrics.timer("search.trie");
+    private static final Histogram SEARCH_MATCHES = Metrics.counts("search.matches");
+
+    private RoadMap roadMap = new RoadMap();
+    private RouteCache routeCache = new RouteCache().registerMetrics("routeCache");
+    private SearchScheduler<SearchResult> searches = new SearchScheduler<>(SEARCH_DELAY);
+    private LabelLayer labelLayer = new LabelLayer(Collections.emptyList());
+    private RoadLabelLayer roadLabelLayer = new RoadLabelLayer(new RoadMap());
+
+    //Only set while a map is loading
+    private SwingWorker<LoadedMap, Void> loadWorker = null;
+    private LoadProgress loadProgress = null;
+    private Timer progressTimer = new Timer(100, e -> {
+        if (loadProgress != null)
+            setLoadProgress(loadProgress.getStage(), loadProgress.getFraction());
+    });
 
     private int xOffset = 0;
     private int yOffset = 0;
@@ -40,20 +73,39 @@ public class MapViewer extends GUI {
 
     private Node highlightedNodeA = null;
     private Node highlightedNodeB = null;
-    private Set<RoadSegment> highlightedSegments = new HashSet<>();
+    private Set<RoadSegment> highlightedSegments = new HashSet<>(); //Replaced, never changed, by a search
     private Set<RoadSegment> pathFinding = new HashSet<>();
     private Set<Node> articulationPoints = new HashSet<>();
+    private List<Node> tourStops = new ArrayList<>();
+    private SwingWorker<TourPlanner.Tour, Void> tourWorker = null; //Only set while a tour is being planned
+    private BetweennessCentrality centrality = null; //Only set while the roads are coloured by centrality
+    private SwingWorker<BetweennessCentrality, Void> centralityWorker = null; //Only set while it's being computed
 
     /**
-     * Draws all of the roads, intersections, and polygons to the given graphics object
+     * Draws all of the roads, intersections, and polygons to the given graphics object, timing each layer, then the
+     * timings over the top if they're being shown
      *
      * @param g graphics object to draw to
      */
     @Override
     protected void redraw(Graphics g) {
-        if (nodeLookupTable == null || nodeLookupTable.size() == 0)
+        if (roadMap.isEmpty())
             return;
 
+        long start = System.nanoTime();
+        drawMap(g, start);
+        Metrics.recordSince(REDRAW_TOTAL, start);
+
+        if (showMetrics)
+            drawMetrics(g);
+    }
+
+    /**
+     * Draws the map, recording how long each layer takes
+     *
+     * @param start when the redraw started, from {@link System#nanoTime()}
+     */
+    private void drawMap(Graphics g, long start) {
         //Fill the background with a single colour
         g.setColor(BACKGROUND_COLOR);
         g.fillRect(0, 0, getDrawingAreaDimension().width, getDrawingAreaDimension().height);
@@ -61,16 +113,32 @@ public class MapViewer extends GUI {
         //Pre-calculate drawing offsets
         Point centre = new Point(getDrawingAreaDimension().width / 2, getDrawingAreaDimension().height / 2);
         Point offset = new Point(xOffset, yOffset);
+        Location min = Location.fromPoint(new Point(0, getDrawingAreaDimension().height), centre, zoom, offset, WINDOW_SCALE);
+        Location max = Location.fromPoint(new Point(getDrawingAreaDimension().width, 0), centre, zoom, offset, WINDOW_SCALE);
 
         //Draw polygons first as they lie underneath the roads
-        polygons.forEach(polygon -> polygon.draw(g, offset, centre, zoom));
+        roadMap.getPolygons().forEach(polygon -> polygon.draw(g, offset, centre, zoom));
+        start = Metrics.recordSince(REDRAW_POLYGONS, start);
 
         //Draw all of the roads that are not highlighted next
         g.setColor(Color.BLACK);
-        nodeAdjacencyTable.forEach((id, segments) -> segments.forEach((segment) -> {
-            if (!highlightedSegments.contains(segment) && !pathFinding.contains(segment))
-                segment.draw(g, offset, centre, zoom, roadInfoLookupTable.get(segment.getID()).getRoadClass());
+        if (roadMap.isTiled())
+            roadMap.getTiledStore().drawSegments(g, offset, centre, zoom, min, max);
+
+        ConnectedComponents.Kind colouring = componentColouring;
+        BetweennessCentrality centrality = this.centrality;
+        double maxCentrality = centrality == null ? 0 : Math.log1p(centrality.getMaxCentrality());
+        roadMap.getNodeAdjacencyTable().forEach((id, segments) -> segments.forEach((segment) -> {
+            if (!highlightedSegments.contains(segment) && !pathFinding.contains(segment)) {
+                if (colouring != null)
+                    g.setColor(getComponentColor(colouring, segment));
+                else if (centrality != null)
+                    g.setColor(getCentralityColor(centrality, maxCentrality, segment));
+
+                segment.draw(g, offset, centre, zoom, roadMap.getRoadInfoLookupTable().get(segment.getID()).getRoadClass());
+            }
         }));
+        start = Metrics.recordSince(REDRAW_ROADS, start);
 
         //Next draw any path found by A*
         g.setColor(Color.RED);
@@ -79,14 +147,32 @@ public class MapViewer extends GUI {
         //Draw the highlighted roads on top
         g.setColor(Color.MAGENTA);
         highlightedSegments.forEach(segment -> segment.draw(g, offset, centre, zoom, 5));
+        start = Metrics.recordSince(REDRAW_HIGHLIGHTS, start);
+
+        //Draw the road names along the roads, then the polygon labels above that
+        g.setColor(Color.DARK_GRAY);
+        roadLabelLayer.draw(g, offset, centre, zoom);
 
-        //Draw the polygon labels above that
         g.setColor(Color.BLACK);
-        polygons.forEach(polygon -> polygon.drawLabel(g, offset, centre, zoom));
+        labelLayer.draw(g, offset, centre, zoom);
+        start = Metrics.recordSince(REDRAW_LABELS, start);
 
         //Draw all of the nodes
         g.setColor(Color.WHITE);
-        nodeLookupTable.forEach((id, node) -> {
+        if (roadMap.isTiled()) {
+            roadMap.getTiledStore().drawNodes(g, offset, centre, zoom, zoom * 1.25, min, max);
+
+            //The store creates new node objects, so the highlighted nodes are drawn over the top instead
+            g.setColor(Color.red);
+            for (Node node : new Node[]{highlightedNodeA, highlightedNodeB})
+                if (node != null)
+                    node.draw(g, offset, centre, zoom, zoom * 2);
+
+            Metrics.recordSince(REDRAW_NODES, start);
+            return;
+        }
+
+        roadMap.getNodeLookupTable().forEach((id, node) -> {
             if (articulationPoints.contains(node)) {
                 g.setColor(Color.CYAN);
                 node.draw(g, offset, centre, zoom, zoom * 2);
@@ -101,6 +187,58 @@ public class MapViewer extends GUI {
 
             node.draw(g, offset, centre, zoom, zoom * 1.25);
         });
+
+        //The stops of a tour go on top of everything else
+        g.setColor(Color.ORANGE);
+        tourStops.forEach(node -> node.draw(g, offset, centre, zoom, zoom * 2.5));
+        Metrics.recordSince(REDRAW_NODES, start);
+    }
+
+    /**
+     * Draws every metric that has recorded something in a box in the top left corner
+     */
+    private void drawMetrics(Graphics g) {
+        List<String> lines = Metrics.summarise("");
+        g.setFont(METRICS_FONT);
+        FontMetrics fontMetrics = g.getFontMetrics();
+
+        int width = 0;
+        for (String line : lines)
+            width = Math.max(width, fontMetrics.stringWidth(line));
+
+        g.setColor(METRICS_BACKGROUND_COLOR);
+        g.fillRect(0, 0, width + 10, lines.size() * fontMetrics.getHeight() + 10);
+
+        g.setColor(Color.BLACK);
+        for (int i = 0; i < lines.size(); i++)
+            g.drawString(lines.get(i), 5, 5 + i * fontMetrics.getHeight() + fontMetrics.getAscent());
+    }
+
+    /**
+     * Picks the colour to draw a segment in when the roads are coloured by component. The largest component is left
+     * black so the smaller ones stand out, and segments joining two strong components are grey
+     */
+    private Color getComponentColor(ConnectedComponents.Kind kind, RoadSegment segment) {
+        ConnectedComponents components = roadMap.getComponents();
+        int component = components.getComponent(kind, segment.getNodeID1());
+
+        if (component != components.getComponent(kind, segment.getNodeID2()))
+            return Color.GRAY;
+        if (component == components.getLargestComponent(kind))
+            return Color.BLACK;
+
+        return COMPONENT_COLORS[component % COMPONENT_COLORS.length];
+    }
+
+    /**
+     * Picks the colour to draw a segment in when the roads are coloured by centrality. Centralities span several
+     * orders of magnitude, so the colour follows their logarithm
+     *
+     * @param maxCentrality logarithm of one more than the largest centrality
+     */
+    private static Color getCentralityColor(BetweennessCentrality centrality, double maxCentrality, RoadSegment segment) {
+        double fraction = maxCentrality > 0 ? Math.log1p(centrality.getCentrality(segment)) / maxCentrality : 0;
+        return CENTRALITY_COLORS[(int) Math.round(fraction * (CENTRALITY_COLORS.length - 1))];
     }
 
     /**
@@ -125,7 +263,12 @@ public class MapViewer extends GUI {
         //compare
         Node closest = null;
         double closestDist = Double.POSITIVE_INFINITY;
-        for (Node node : nodeQuadTree.queryRange(new BoundingBox(bbLocation, 0.02))) {
+        if (roadMap.isTiled()) {
+            int closestID = roadMap.getTiledStore().findClosestNode(clickLocation, 0.01);
+            closest = closestID < 0 ? null : roadMap.getTiledStore().getNode(closestID);
+        }
+
+        for (Node node : roadMap.getNodeQuadTree().queryRange(new BoundingBox(bbLocation, 0.02))) {
             double dist = node.getLocation().distance(clickLocation);
             if (dist < closestDist) {
                 closestDist = dist;
@@ -135,6 +278,15 @@ public class MapViewer extends GUI {
 
         Node selectedNode = closest;
 
+        if (planningTour) {
+            if (selectedNode != null && !roadMap.isTiled()) {
+                tourStops.add(selectedNode);
+                getTextOutputArea().append(String.format("Stop %d: [%d]\n", tourStops.size(), selectedNode.getSourceID()));
+            }
+
+            return;
+        }
+
         if (selectedNode == null) {
             highlightedNodeA = null;
             highlightedNodeB = null;
@@ -153,11 +305,14 @@ public class MapViewer extends GUI {
         int id = selectedNode.getID();
         Set<String> roadNames = new HashSet<>();
 
-        nodeAdjacencyTable.get(id).forEach(segment -> roadNames.add(roadInfoLookupTable.get(segment.getID()).getLabel()));
+        if (roadMap.isTiled())
+            roadMap.getTiledStore().forEachEdge(id, (headID, roadID, length, weightedSpeed, segmentRef) -> roadNames.add(roadMap.getRoadInfoLookupTable().get(roadID).getLabel()));
+        else
+            roadMap.getNodeAdjacencyTable().get(id).forEach(segment -> roadNames.add(roadMap.getRoadInfoLookupTable().get(segment.getID()).getLabel()));
 
         //Parentheses fix weird bug where "[" doesn't get displayed.
         //I think it's because adding a char to an int results in another int
-        getTextOutputArea().append('[' + (id + "]: ") + String.join(", ", roadNames) + '\n');
+        getTextOutputArea().append('[' + (selectedNode.getSourceID() + "]: ") + String.join(", ", roadNames) + '\n');
 
         if (highlightedNodeA != null && highlightedNodeB != null) {
             aStarSearch();
@@ -184,39 +339,81 @@ public class MapViewer extends GUI {
     }
 
     /**
-     * Event handler for when the user has typed something into the text box
+     * Event handler for when the user has typed something into the text box. The search runs in the background once
+     * the user stops typing, then the suggestions and highlighted roads are replaced together
      *
      * @param term the term/prefix to search for
-     * @return all of the results that match the term
      */
     @Override
-    protected List<String> onSearch(String term) {
-        List<String> suggestions = new ArrayList<>();
-        highlightedSegments.clear();
-
+    protected void onSearch(String term) {
         //No results if there is no input
-        if (term == null || term.equals(""))
-            return suggestions;
+        if (term == null || term.equals("")) {
+            searches.cancel();
+            highlightedSegments = new HashSet<>();
+            setSuggestions("", Collections.emptyList());
+            return;
+        }
 
-        List<RoadInfo> result = roadSearchTrie.findAll(term);
+        RoadMap map = roadMap;
+        searches.submit(superseded -> search(map, term, superseded), result -> {
+            if (roadMap != map)
+                return;
 
-        if (result.size() == 0) {
-            getTextOutputArea().append("No matches found\n");
-            return suggestions;
-        }
+            if (result.suggestions.isEmpty())
+                getTextOutputArea().append("No matches found\n");
+
+            highlightedSegments = result.segments;
+            setSuggestions(term, result.suggestions);
+            redraw();
+        });
+    }
+
+    /**
+     * Finds the road names starting with the term, and all of the segments along those roads. Runs off the event
+     * dispatch thread, so it only reads the map, and builds new collections for the results
+     *
+     * @param superseded becomes true once a newer search has been submitted
+     * @return the results, or null if the search was superseded before it finished
+     */
+    private static SearchResult search(RoadMap map, String term, BooleanSupplier superseded) {
+        long start = System.nanoTime();
+        List<RoadInfo> result = map.getRoadSearchTrie().findAll(term);
+        Metrics.recordSince(SEARCH_TRIE, start);
+        SEARCH_MATCHES.record(result.size());
+        if (superseded.getAsBoolean())
+            return null;
 
         //Build the list of unique street names
         Set<String> streetNames = new HashSet<>();
         result.forEach(roadInfo -> streetNames.add(roadInfo.getLabel()));
-        suggestions.addAll(streetNames);
+        List<String> suggestions = new ArrayList<>(streetNames);
         suggestions.sort(String::compareTo);
 
         //Highlight all of the road segments
-        for (RoadInfo roadInfo : result)
-            if (roadToRoadSegmentsTable.containsKey(roadInfo.getID()))
-                highlightedSegments.addAll(roadToRoadSegmentsTable.get(roadInfo.getID()));
+        Set<RoadSegment> segments = new HashSet<>();
+        for (RoadInfo roadInfo : result) {
+            if (superseded.getAsBoolean())
+                return null;
+
+            List<RoadSegment> roadSegments = map.getRoadToRoadSegmentsTable().get(roadInfo.getID());
+            if (roadSegments != null)
+                segments.addAll(roadSegments);
+        }
+
+        return new SearchResult(suggestions, segments);
+    }
+
+    /**
+     * The suggestions and highlighted segments found by a search
+     */
+    private static class SearchResult {
+        private final List<String> suggestions;
+        private final Set<RoadSegment> segments;
 
-        return suggestions;
+        private SearchResult(List<String> suggestions, Set<RoadSegment> segments) {
+            this.suggestions = suggestions;
+            this.segments = segments;
+        }
     }
 
     /**
@@ -248,493 +445,396 @@ public class MapViewer extends GUI {
 
     @Override
     protected void onArtPtsButton() {
-        if (nodeLookupTable.size() == 0)
+        if (roadMap.isEmpty())
             return;
 
-        articulationPoints = calculateAPs();
-        getTextOutputArea().append(String.format("Found %d articulation points\n", articulationPoints.size()));
-    }
-
-    @Override
-    protected void onAStarModeChange() {
-        if (highlightedNodeA != null && highlightedNodeB != null) {
-            aStarSearch();
+        if (roadMap.isTiled()) {
+            getTextOutputArea().append("Articulation points need the map to be loaded with heap storage\n");
+            return;
         }
-    }
 
-    /**
-     * Event handler for when the user scrolls in or out
-     */
-    @Override
-    protected void onScroll(MouseWheelEvent e) {
-        //Scroll in or out depending on the scroll direction
-        if (e.getUnitsToScroll() > 0) {
-            zoom /= ZOOM_RATE;
-        }
-        else {
-            zoom *= ZOOM_RATE;
-        }
+        articulationPoints = roadMap.calculateAPs();
+        getTextOutputArea().append(String.format("Found %d articulation points\n", articulationPoints.size()));
     }
 
     /**
-     * Event handler for when the data folder has been selected
-     *
-     * @param nodes         a File for nodeID-lat-lon.tab
-     * @param roads         a File for roadID-roadInfo.tab
-     * @param segments      a File for roadSeg-roadID-length-nodeID-nodeID-coords.tab
-     * @param polygons      a File for polygon-shapes.mp
-     * @param restrictions  a File for restrictions.tab
-     * @param trafficLights a File for traffic-lights.tab
+     * Colours the roads by their betweenness centrality, estimated from a sample of sources off the event dispatch
+     * thread, or goes back to plain roads if they're already coloured
      */
     @Override
-    protected void onLoad(File nodes, File roads, File segments, File polygons, File restrictions, File trafficLights) {
-        //Reset all of the variables
-        xOffset = 0;
-        yOffset = 0;
-        zoom = 1;
-
-        double minX = Double.POSITIVE_INFINITY;
-        double minY = Double.POSITIVE_INFINITY;
-        double maxX = Double.NEGATIVE_INFINITY;
-        double maxY = Double.NEGATIVE_INFINITY;
-
-        nodeLookupTable.clear();
-        nodeAdjacencyTable.clear();
-        neighbouringNodesTable.clear();
-        roadToRoadSegmentsTable.clear();
-        roadInfoLookupTable.clear();
-        restrictionsMap.clear();
-        this.polygons.clear();
-
-        roadSearchTrie = new SearchTrie<>();
-        nodeQuadTree = QuadTree.EMPTY;
-
-        highlightedNodeA = null;
-        highlightedNodeB = null;
-        highlightedSegments.clear();
-        pathFinding.clear();
-        articulationPoints.clear();
-
-        //Attempt to read the nodes file
-        try (BufferedReader reader = new BufferedReader(new FileReader(nodes))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                Node node = new Node(line);
-                nodeLookupTable.put(node.getID(), node);
-
-                Location location = node.getLocation();
-                if (location.x < minX) minX = location.x;
-                if (location.y < minY) minY = location.y;
-                if (location.x > maxX) maxX = location.x;
-                if (location.y > maxY) maxY = location.y;
-            }
-
-            //Calculate the size of the bounding box for the quad tree
-            double width = maxX - minX;
-            double height = maxY - minY;
-            double size = width > height ? width : height;
+    protected void onCentralityButton() {
+        if (roadMap.isEmpty() || centralityWorker != null)
+            return;
 
-            //Initialise the quad tree
-            nodeQuadTree = new QuadTree(new BoundingBox(new Location(minX, minY), size));
-            nodeLookupTable.values().forEach(node -> nodeQuadTree.insert(node));
-        }
-        catch (Exception e) {
-            e.printStackTrace();
+        if (centrality != null) {
+            centrality = null;
             return;
         }
 
-        //Attempt to read the roads file
-        try (BufferedReader reader = new BufferedReader(new FileReader(roads))) {
-            reader.readLine(); //Ignore header line
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                RoadInfo roadInfo = new RoadInfo(line);
-
-                //Add the roadInfo to the lookup table and the trie
-                roadInfoLookupTable.put(roadInfo.getID(), roadInfo);
-                roadSearchTrie.insert(roadInfo.getLabel(), roadInfo);
-            }
-        }
-        catch (Exception e) {
-            e.printStackTrace();
+        if (roadMap.isTiled()) {
+            getTextOutputArea().append("Centrality needs the map to be loaded with heap storage\n");
             return;
         }
 
-        //Attempt to read the segments file
-        try (BufferedReader reader = new BufferedReader(new FileReader(segments))) {
-            reader.readLine(); //Ignore header line
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                RoadSegment roadSegment = new RoadSegment(line);
+        RoadMap map = roadMap;
+        getTextOutputArea().append("Computing road centrality...\n");
 
-                //Add the roadSegment to all of the required tables and positions
-                nodeAdjacencyTable.computeIfAbsent(roadSegment.getNodeID1(), v -> new ArrayList<>()).add(roadSegment);
-                List<RoadSegment> list = nodeAdjacencyTable.computeIfAbsent(roadSegment.getNodeID2(), v -> new ArrayList<>());
-                if (!roadInfoLookupTable.get(roadSegment.getID()).isOneWay())
-                    list.add(roadSegment);
-
-                neighbouringNodesTable.computeIfAbsent(roadSegment.getNodeID1(), v -> new ArrayList<>()).add(nodeLookupTable.get(roadSegment.getNodeID2()));
-                neighbouringNodesTable.computeIfAbsent(roadSegment.getNodeID2(), v -> new ArrayList<>()).add(nodeLookupTable.get(roadSegment.getNodeID1()));
-                roadToRoadSegmentsTable.computeIfAbsent(roadSegment.getID(), v -> new ArrayList<>()).add(roadSegment);
+        centralityWorker = new SwingWorker<BetweennessCentrality, Void>() {
+            @Override
+            protected BetweennessCentrality doInBackground() {
+                BetweennessCentrality result = map.getCentrality();
+                result.compute(CENTRALITY_SAMPLES, System.nanoTime());
+                return result;
             }
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-            return;
-        }
 
-        //Attempt to read the restrictions file
-        try (BufferedReader reader = new BufferedReader(new FileReader(restrictions))) {
-            reader.readLine(); //Ignore header line
+            @Override
+            protected void done() {
+                centralityWorker = null;
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                Restriction restriction = new Restriction(line);
-
-                restrictionsMap.computeIfAbsent(restriction.getNodeID(), v -> new ArrayList<>()).add(restriction);
-            }
-        }
-        catch (NullPointerException ignored) { }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
+                //Throw away the result if the map has since been replaced
+                if (roadMap != map)
+                    return;
 
-        //Attempt to read the polygons file
-        try (BufferedReader reader = new BufferedReader(new FileReader(polygons))) {
-            String line, type = "0", label = "", endLevel = "";
-            List<String> data = new ArrayList<>();
-            while ((line = reader.readLine()) != null) {
-                if (line.equals("[POLYGON]")) { //Starting construction of a new polygon
-                    type = "0";
-                    label = "";
-                    endLevel = "";
-                    data.clear();
-                }
-                else if (line.startsWith("Type")) { //Only parse the lines we want
-                    type = line.substring(7);
-                }
-                else if (line.startsWith("Label")) {
-                    label = line.substring(6);
-                }
-                else if (line.startsWith("EndLevel")) {
-                    endLevel = line.substring(9);
+                try {
+                    centrality = get();
                 }
-                else if (line.startsWith("Data")) {
-                    data.add(line.substring(6));
+                catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    getTextOutputArea().append("Centrality failed\n");
+                    return;
                 }
-                else if (line.equals("[END]")) { //Finished construction of the polygon
-                    this.polygons.add(new Polygon(type, label, endLevel, data));
+                catch (InterruptedException e) {
+                    return;
                 }
-            }
-
-            //Sort the polygon list
-            Collections.sort(this.polygons);
-        }
-        catch (NullPointerException ignored) { }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
 
-        List<Location> lights = new ArrayList<>();
-        //Attempt to read the traffic lights file
-        //Traffic lights data from https://raw.githubusercontent.com/d1Ng0/COMP261/master/comp261-a02/data/large/NZtrafficLightCoords.txt
-        try (BufferedReader reader = new BufferedReader(new FileReader(trafficLights))) {
-            reader.readLine(); //Ignore the header line
+                //List the busiest roads, only naming each road once
+                Set<String> names = new LinkedHashSet<>();
+                for (RoadSegment segment : centrality.getTopSegments(100)) {
+                    names.add(roadMap.getRoadInfoLookupTable().get(segment.getID()).getLabel());
+                    if (names.size() == 10)
+                        break;
+                }
 
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\s+");
+                getTextOutputArea().append(String.format("Centrality from %d sources in %.1fs. Busiest roads: %s\n",
+                        centrality.getSourceCount(), centrality.getTime(), String.join(", ", names)));
+                redraw();
+            }
+        };
+        centralityWorker.execute();
+    }
 
-                if (parts.length < 2)
-                    continue;
+    @Override
+    protected void onComponentsChange() {
+        if (roadMap.isEmpty() || componentColouring == null)
+            return;
 
-                lights.add(Location.fromLatLon(Double.parseDouble(parts[1]), Double.parseDouble(parts[0])));
-            }
-        }
-        catch (NullPointerException ignored) { }
-        catch (Exception e) {
-            e.printStackTrace();
+        if (roadMap.isTiled()) {
+            getTextOutputArea().append("Components need the map to be loaded with heap storage\n");
+            return;
         }
 
-        for (int nodeID : neighbouringNodesTable.keySet()) {
-            Node node = nodeLookupTable.get(nodeID);
-            //Can't use a set.contains method here because of the imprecision of doubles, so we use an equality method instead
-            for (Location light : lights) {
-                if (light.equals(node.getLocation())) {
-                    node.setHasTrafficLight(true);
-                    break;
-                }
-            }
-        }
+        getTextOutputArea().append(String.format("Found %d %s\n", roadMap.getComponents().size(componentColouring),
+                componentColouring.toString().toLowerCase()));
     }
 
     /**
-     * Uses A* to search the graph for a route between the two highlighted nodes, then displays the route on the map
+     * Writes every metric to the text output area when they stop being drawn over the map, so they can be copied out
      */
-    private void aStarSearch() {
-        List<Node> nodePath = aStarSearch(highlightedNodeA, highlightedNodeB);
+    @Override
+    protected void onMetricsChange() {
+        if (!showMetrics)
+            getTextOutputArea().append(Metrics.dump());
+    }
 
-        pathFinding.clear();
+    /**
+     * Starts picking the stops of a tour, or plans the tour through the stops that were picked. Planning runs off the
+     * event dispatch thread, and the tour is shown like a route once it's done
+     */
+    @Override
+    protected void onTourChange() {
+        if (planningTour) {
+            tourStops.clear();
+            pathFinding.clear();
+            getTextOutputArea().append(roadMap.isTiled()
+                    ? "Tours need the map to be loaded with heap storage\n"
+                    : "Click the stops to visit, starting with the depot, then press Finish Tour\n");
+            return;
+        }
 
-        //A path is only found if there are two or more nodes in the path
-        if (nodePath.size() <= 1) {
-            getTextOutputArea().append("No path found\n");
+        if (tourStops.size() < 2) {
+            tourStops.clear();
             return;
         }
 
-        //Construct the list of segments along the route
-        ArrayList<String> pathNames = new ArrayList<>();
-        ArrayList<Double> pathCosts = new ArrayList<>();
-        int pathIndex = -1;
-        for (int i = 0; i < nodePath.size() - 1; i++) {
-            int nodeID1 = nodePath.get(i).getID();
-            int nodeID2 = nodePath.get(i + 1).getID();
-
-            //Prevents null pointer exception
-            String prevName;
-            if (pathIndex < 0)
-                prevName = "";
-            else
-                prevName = pathNames.get(pathIndex);
+        RoadMap map = roadMap;
+        List<Node> stops = new ArrayList<>(tourStops);
+        getTextOutputArea().append(String.format("Planning a tour of %d stops...\n", stops.size()));
 
-            //Find the segment between the two nodes
-            for (RoadSegment r : nodeAdjacencyTable.get(nodeID1)) {
-                if (r.getOtherNode(nodeID1) == nodeID2) {
-                    String roadName = roadInfoLookupTable.get(r.getID()).getLabel();
+        tourWorker = new SwingWorker<TourPlanner.Tour, Void>() {
+            @Override
+            protected TourPlanner.Tour doInBackground() {
+                return map.getTourPlanner().plan(stops, true, TOUR_TIME_BUDGET);
+            }
 
-                    if (roadName.equals(prevName)) {
-                        pathCosts.set(pathIndex, pathCosts.get(pathIndex) + r.getLength());
-                    }
-                    else {
-                        pathNames.add(roadName);
-                        pathCosts.add(r.getLength());
-                        pathIndex++;
-                    }
+            @Override
+            protected void done() {
+                //Throw away tours planned on a map that has since been replaced, or replaced by a newer tour
+                if (tourWorker != this || roadMap != map)
+                    return;
 
-                    pathFinding.add(r);
-                    break;
+                tourWorker = null;
+
+                TourPlanner.Tour tour;
+                try {
+                    tour = get();
+                }
+                catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    getTextOutputArea().append("Tour planning failed\n");
+                    return;
                 }
+                catch (InterruptedException e) {
+                    return;
+                }
+
+                pathFinding.clear();
+                pathFinding.addAll(tour.getRoute().getSegments());
+
+                StringBuilder order = new StringBuilder("Tour:");
+                for (Node stop : tour.getStops())
+                    order.append(" [").append(stop.getSourceID()).append(']');
+                getTextOutputArea().append(order.append('\n').toString());
+                getTextOutputArea().append(tour.isComplete()
+                        ? String.format("%.0f minutes, planned in %.2fs\n", tour.getTravelTime() * 60,
+                        tour.getMatrixTime() + tour.getOrderTime() + tour.getRouteTime())
+                        : "Some stops can't be reached from the others\n");
+                redraw();
             }
+        };
+        tourWorker.execute();
+    }
+
+    @Override
+    protected void onAStarModeChange() {
+        if (highlightedNodeA != null && highlightedNodeB != null) {
+            aStarSearch();
         }
+    }
 
-        //Write the path (without duplicates) to the text output area
-        getTextOutputArea().append("Path:\n");
-        for (int i = 0; i < pathNames.size(); i++) {
-            getTextOutputArea().append(String.format("%s: %.3fkm\n", pathNames.get(i), pathCosts.get(i)));
+    /**
+     * Event handler for when the user scrolls in or out
+     */
+    @Override
+    protected void onScroll(MouseWheelEvent e) {
+        //Scroll in or out depending on the scroll direction
+        if (e.getUnitsToScroll() > 0) {
+            zoom /= ZOOM_RATE;
+        }
+        else {
+            zoom *= ZOOM_RATE;
         }
     }
 
     /**
-     * Implements A* to search the map for a path from the given node to the goal
+     * Event handler for when the data folder has been selected
      *
-     * @param start the node to start searching from
-     * @param goal  the node to look for a path to
-     * @return the path between the two nodes
+     * @param nodes         a File for nodeID-lat-lon.tab
+     * @param roads         a File for roadID-roadInfo.tab
+     * @param segments      a File for roadSeg-roadID-length-nodeID-nodeID-coords.tab
+     * @param polygons      a File for polygon-shapes.mp
+     * @param restrictions  a File for restrictions.tab
+     * @param trafficLights a File for traffic-lights.tab
+     * @param speedProfiles a File for roadID-speedProfile.tab
      */
-    private List<Node> aStarSearch(Node start, Node goal) {
-        if (start.equals(goal))
-            return new ArrayList<>();
-
-        HashMap<Node, Node> exploredPath = new HashMap<>(); //Maps parent -> child
-
-        //Maps to keep track of distance costs
-        HashMap<Node, Double> costToGoal = new HashMap<>();
-        HashMap<Node, Double> pathCost = new HashMap<>();
+    @Override
+    protected void onLoad(File nodes, File roads, File segments, File polygons, File restrictions, File trafficLights,
+                          File speedProfiles) {
+        onCancelLoad();
+
+        //The tiled store is kept next to the data files, and only rebuilt when they change
+        boolean tiled = useTiledStorage;
+        File tileDirectory = new File(nodes.getParentFile(), "tiles");
+        LoadProgress progress = tiled
+                ? new LoadProgress(roads, polygons, restrictions)
+                : new LoadProgress(nodes, roads, segments, polygons, restrictions, trafficLights, speedProfiles);
+        long start = System.nanoTime();
+
+        //The map is loaded into a new RoadMap off the event dispatch thread, and only replaces the current map once
+        // it's finished, so the window keeps working with the old map in the meantime. The label layers are built
+        // there too, as joining up every road's segments takes a while on a large map
+        loadProgress = progress;
+        loadWorker = new SwingWorker<LoadedMap, Void>() {
+            @Override
+            protected LoadedMap doInBackground() {
+                RoadMap map = new RoadMap();
+                boolean loaded = tiled
+                        ? map.loadTiled(nodes, roads, segments, polygons, restrictions, trafficLights, tileDirectory, progress)
+                        : map.load(nodes, roads, segments, polygons, restrictions, trafficLights, speedProfiles, progress);
+                if (!loaded)
+                    return null;
+
+                progress.setStage("Placing labels");
+                LoadedMap loadedMap = new LoadedMap(map, new LabelLayer(map.getPolygons()), new RoadLabelLayer(map));
+                if (progress.isCancelled()) {
+                    map.close();
+                    throw new CancellationException("Load cancelled");
+                }
 
-        //The fringe is a priority queue with sorting based on the estimated cost from the node to the goal
-        PriorityQueue<Node> fringe = new PriorityQueue<>(Comparator.comparingDouble(costToGoal::get));
-        Set<Node> visited = new HashSet<>();
+                return loadedMap;
+            }
 
-        //We have to scale the heuristic function if the search is speed based so that it's still a lower bound
-        double heuristicScaleFactor = isSpeedHeuristic ? 0.0083 : 1;
+            @Override
+            protected void done() {
+                //Throw away loads which were replaced by a newer one
+                if (loadWorker != this) {
+                    try {
+                        LoadedMap loaded = get();
+                        if (loaded != null)
+                            loaded.map.close();
+                    }
+                    catch (InterruptedException | ExecutionException ignored) { }
 
-        //Add the starting node to the fringe, and add its costs to the maps
-        costToGoal.put(start, start.getLocation().distance(goal.getLocation()) * heuristicScaleFactor);
-        pathCost.put(start, 0d);
-        fringe.add(start);
+                    return;
+                }
 
-        //Loop until either the goal is found or we run out of nodes
-        while (!fringe.isEmpty()) {
-            //Get the node at the top of the queue
-            Node node = fringe.poll();
+                loadWorker = null;
+                loadProgress = null;
+                progressTimer.stop();
+                setLoading(false);
 
-            //Don't revisit already visited nodes
-            if (visited.contains(node))
-                continue;
+                LoadedMap loaded;
+                try {
+                    loaded = get();
+                }
+                catch (ExecutionException e) {
+                    if (!(e.getCause() instanceof CancellationException))
+                        e.getCause().printStackTrace();
 
-            visited.add(node);
+                    getTextOutputArea().append(progress.isCancelled() ? "Load cancelled\n" : "Load failed\n");
+                    return;
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
 
-            if (node.equals(goal))
-                break;
+                if (loaded == null) {
+                    getTextOutputArea().append("Load failed\n");
+                    return;
+                }
 
-            //Create a set of nodes that we cannot path to, based off of data from the restrictions map
-            Set<Node> restrictedNodes = restrictionsMap.getOrDefault(node.getID(), new ArrayList<>())
-                    .stream()
-                    .filter(r -> exploredPath.containsKey(node) && r.getNodeID1() == exploredPath.get(node).getID())
-                    .map(r -> nodeLookupTable.get(r.getNodeID2()))
-                    .collect(Collectors.toSet());
-
-            for (RoadSegment segment : nodeAdjacencyTable.get(node.getID())) {
-                Node neighbour = nodeLookupTable.get(segment.getOtherNode(node.getID()));
-                RoadInfo roadInfo = roadInfoLookupTable.get(segment.getID());
-
-                if (visited.contains(neighbour) || restrictedNodes.contains(neighbour))
-                    continue;
-
-                //The heuristic function for this implementation is the segments length, augmented by the road weight
-                // (the road speed and class) if we are using speed as the heuristic, further augmented by a weight
-                // which depends on if we want to avoid traffic lights or not (this weight is arbitrary).
-                //This function should be admissible as it always tries to underestimate the cost
-                double cost = pathCost.get(node) + segment.getLength()
-                        / (isSpeedHeuristic ? roadInfo.getWeightedRoadSpeed() : 1)
-                        * (useTrafficLights && neighbour.hasTrafficLight() ? 1 : 2);
-
-                //Assign the relevant costs to the neighbour, queue it, and put it into the explored path map
-                pathCost.put(neighbour, cost);
-                costToGoal.put(neighbour, cost + neighbour.getLocation().distance(goal.getLocation()) * heuristicScaleFactor);
-                fringe.add(neighbour);
-                exploredPath.put(neighbour, node);
+                onMapLoaded(loaded);
+                LOAD_TOTAL.record(System.nanoTime() - start);
+                getTextOutputArea().append(String.format("Loaded in %.2fs\n", (System.nanoTime() - start) / 1e9));
+                redraw();
             }
-        }
-
-        //Reconstruct the path
-        List<Node> path = new ArrayList<>();
-        path.add(goal);
+        };
 
-        Node current = goal;
-        while (exploredPath.containsKey(current)) {
-            current = exploredPath.get(current);
-            path.add(current);
-        }
-
-        //Put the start node at the beginning, and the goal node at the end.
-        // Kind of unnecessary for this implementation, but it makes a little sense, and doesn't really add much to the
-        // run time.
-        Collections.reverse(path);
-
-        return path;
+        setLoading(true);
+        progressTimer.start();
+        loadWorker.execute();
     }
 
     /**
-     * Calculates all of the articulation points in the entire graph
-     *
-     * @return a set of all of the articulation points
+     * Cancels the running load, if there is one. The old map stays loaded
      */
-    private Set<Node> calculateAPs() {
-        Set<Node> aps = new HashSet<>();
-
-        Set<Node> visited = new HashSet<>();
-
-        for (int nodeID : neighbouringNodesTable.keySet()) {
-            Node node = nodeLookupTable.get(nodeID);
+    @Override
+    protected void onCancelLoad() {
+        if (loadProgress != null)
+            loadProgress.cancel();
+    }
 
-            if (!visited.contains(node)) {
-                //Get the aps in the component
-                aps.addAll(calculateAPs(node));
+    /**
+     * Replaces the current map and its label layers with a newly loaded one, and resets the view
+     */
+    private void onMapLoaded(LoadedMap loaded) {
+        roadMap.close();
+        roadMap = loaded.map;
+        labelLayer = loaded.labelLayer;
+        roadLabelLayer = loaded.roadLabelLayer;
 
-                //Visit the rest of the nodes in the component
-                Stack<Node> toCheck = new Stack<>();
-                toCheck.push(node);
-                while (!toCheck.empty()) {
-                    Node n = toCheck.pop();
+        //Reset all of the variables
+        xOffset = 0;
+        yOffset = 0;
+        zoom = 1;
 
-                    if (visited.contains(n))
-                        continue;
+        highlightedNodeA = null;
+        highlightedNodeB = null;
+        searches.cancel();
+        highlightedSegments = new HashSet<>();
+        pathFinding.clear();
+        articulationPoints.clear();
+        tourStops.clear();
+        centrality = null;
+    }
 
-                    for (Node neighbour : neighbouringNodesTable.get(n.getID()))
-                        toCheck.push(neighbour);
+    /**
+     * A map loaded in the background, with the label layers built for it
+     */
+    private static class LoadedMap {
+        private final RoadMap map;
+        private final LabelLayer labelLayer;
+        private final RoadLabelLayer roadLabelLayer;
 
-                    visited.add(n);
-                }
-            }
+        private LoadedMap(RoadMap map, LabelLayer labelLayer, RoadLabelLayer roadLabelLayer) {
+            this.map = map;
+            this.labelLayer = labelLayer;
+            this.roadLabelLayer = roadLabelLayer;
         }
-
-        return aps;
     }
 
     /**
-     * Finds all of the articulation points in the given component
-     *
-     * @param root the root node to start the search from
-     * @return the set of all articulation points in the component
+     * Uses A* to search the graph for a route between the two highlighted nodes, then displays the route on the map.
+     * Routes are cached, so repeating a query (or switching back to a previous mode) doesn't search again
      */
-    private Set<Node> calculateAPs(Node root) {
-        Set<Node> aps = new HashSet<>();
-
-        Set<Node> explored = new HashSet<>(); //Keep track of the nodes we've visited so there's no doubling up
-        Stack<Node> fringe = new Stack<>(); //Stack of nodes to examine
-        HashMap<Node, Node> parents = new HashMap<>(); //Maps node -> parent node
-        HashMap<Node, Stack<Node>> children = new HashMap<>(); //Using a stack so it's easier to get and remove children
-        HashMap<Node, Integer> depths = new HashMap<>(); //Maps node -> current depth of node
-        HashMap<Node, Integer> reachBacks = new HashMap<>(); //Maps node -> node's reach back value
-
-        //Initialise in the maps for the root node
-        depths.put(root, 0);
-        reachBacks.put(root, 0);
-
-        int numSubTrees = 0;
-        for (Node rootNeighbour : neighbouringNodesTable.get(root.getID())) {
-            parents.put(rootNeighbour, root);
-
-            if (!explored.contains(rootNeighbour)) { //If the root neighbour hasn't yet been explored
-                fringe.push(rootNeighbour);
-
-                while (!fringe.empty()) {
-                    Node node = fringe.peek();
-
-                    if (!explored.contains(node)) { //If the node has not yet been explored
-                        int depth = depths.get(parents.get(node)) + 1;
-                        depths.put(node, depth);
-                        reachBacks.put(node, depth);
-                        Stack<Node> neighbours = new Stack<>();
-                        neighbouringNodesTable.get(node.getID()).forEach((n) -> {
-                            if (!n.equals(parents.get(node)))
-                                neighbours.push(n);
-                        });
-                        children.put(node, neighbours);
-                        explored.add(node);
-                    }
-                    else if (children.containsKey(node) && !children.get(node).isEmpty()) {
-                        Node child = children.get(node).pop();
-
-                        if (depths.containsKey(child)) {
-                            reachBacks.put(node, Math.min(depths.get(child), reachBacks.get(node)));
-                        }
-                        else {
-                            depths.put(child, depths.get(node) + 1);
-                            reachBacks.put(child, depths.get(node) + 1);
-                            parents.put(child, node);
-                            fringe.push(child);
-                        }
-                    }
-                    else {
-                        if (!node.equals(rootNeighbour)) {
-                            Node parent = parents.get(node);
+    private void aStarSearch() {
+        int startID = highlightedNodeA.getID();
+        int goalID = highlightedNodeB.getID();
+
+        //A vehicle profile routes on its own travel times, and leaving at a time of day always routes on travel time,
+        //so the other modes don't matter for either
+        VehicleProfile profile = vehicleProfile;
+        boolean timeDependent = profile == null && departureTime >= 0;
+        boolean speed = isSpeedHeuristic || timeDependent || profile != null;
+        boolean lights = useTrafficLights && !timeDependent && profile == null;
+        double departure = timeDependent ? departureTime : -1;
+
+        Route route = routeCache.get(roadMap.getVersion(), startID, goalID, speed, lights, departure, profile);
+        if (route == null) {
+            if (profile != null)
+                route = roadMap.findRoute(highlightedNodeA, highlightedNodeB, profile);
+            else if (timeDependent)
+                route = roadMap.findRoute(highlightedNodeA, highlightedNodeB, departureTime);
+            else if (useOverlaySearch)
+                route = roadMap.findOverlayRoute(highlightedNodeA, highlightedNodeB, isSpeedHeuristic, useTrafficLights);
+            else
+                route = roadMap.findRoute(highlightedNodeA, highlightedNodeB, isSpeedHeuristic, useTrafficLights, useBidirectionalSearch);
+            routeCache.put(roadMap.getVersion(), startID, goalID, speed, lights, departure, profile, route);
+        }
 
-                            reachBacks.put(parent, Math.min(reachBacks.get(node), reachBacks.get(parent)));
+        pathFinding.clear();
 
-                            if (reachBacks.get(node) >= depths.get(parent))
-                                aps.add(parent);
-                        }
+        if (!route.isFound()) {
+            getTextOutputArea().append("No path found\n");
+            return;
+        }
 
-                        fringe.pop();
-                    }
-                }
+        pathFinding.addAll(route.getSegments());
 
-                numSubTrees++;
-            }
+        //Write the path (without duplicates) to the text output area
+        getTextOutputArea().append("Path:\n");
+        for (int i = 0; i < route.getRoadNames().size(); i++) {
+            getTextOutputArea().append(String.format("%s: %.3fkm\n", route.getRoadNames().get(i), route.getRoadLengths().get(i)));
         }
 
-        //If there exist more than two subtrees, then the root is an ap
-        if (numSubTrees > 1)
-            aps.add(root);
-
-        return aps;
+        if (timeDependent) {
+            double arrival = roadMap.getRouteFinder().getArrivalTime(route, departureTime);
+            int minutes = (int) Math.round(arrival * 60) % (24 * 60);
+            getTextOutputArea().append(String.format("Arrive at %02d:%02d\n", minutes / 60, minutes % 60));
+        }
     }
 
     public static void main(String[] args) {
+        Metrics.registerMBean();
         new MapViewer();
     }
 }
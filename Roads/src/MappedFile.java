@@ -0,0 +1,158 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Random access to a file of any size through memory mapped chunks. Only a bounded number of chunks are mapped at a
+ * time, with the least recently used chunk being dropped when another is needed, so the part of the file that is
+ * resident is limited to what has been touched recently (and the operating system is free to page out the rest).
+ * <p>
+ * Values are read and written at absolute byte positions, and may lie anywhere within the file's length.
+ */
+public class MappedFile implements Closeable {
+    private static final int CHUNK_BITS = 24; //16MB chunks
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int OVERLAP = 8; //Chunks overlap so a value starting in one chunk never runs off its end
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final FileChannel.MapMode mode;
+    private final long size;
+    private final LinkedHashMap<Long, MappedByteBuffer> chunks;
+
+    //The most recently used chunk is kept aside, as most accesses are close together
+    private long lastChunk = -1;
+    private MappedByteBuffer lastBuffer = null;
+
+    private long mappedChunks = 0;
+
+    /**
+     * Opens an existing file for reading
+     *
+     * @param path      the file to open
+     * @param maxChunks the maximum number of chunks to have mapped at once
+     */
+    public static MappedFile openReadOnly(File path, int maxChunks) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "r");
+        return new MappedFile(file, FileChannel.MapMode.READ_ONLY, file.length(), maxChunks);
+    }
+
+    /**
+     * Creates (or truncates) a file of the given size for writing. The file starts out filled with zeroes
+     *
+     * @param path      the file to create
+     * @param size      the size of the file in bytes
+     * @param maxChunks the maximum number of chunks to have mapped at once
+     */
+    public static MappedFile create(File path, long size, int maxChunks) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        file.setLength(size);
+        return new MappedFile(file, FileChannel.MapMode.READ_WRITE, size, maxChunks);
+    }
+
+    private MappedFile(RandomAccessFile file, FileChannel.MapMode mode, long size, int maxChunks) {
+        this.file = file;
+        this.channel = file.getChannel();
+        this.mode = mode;
+        this.size = size;
+
+        chunks = new LinkedHashMap<Long, MappedByteBuffer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MappedByteBuffer> eldest) {
+                //The buffer is unmapped once it's garbage collected
+                return size() > maxChunks;
+            }
+        };
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return the number of times a chunk has been mapped, which counts how much of the file has been paged in
+     */
+    public long getMappedChunkCount() {
+        return mappedChunks;
+    }
+
+    public int getInt(long position) {
+        return chunk(position).getInt((int) (position & CHUNK_MASK));
+    }
+
+    public long getLong(long position) {
+        return chunk(position).getLong((int) (position & CHUNK_MASK));
+    }
+
+    public float getFloat(long position) {
+        return chunk(position).getFloat((int) (position & CHUNK_MASK));
+    }
+
+    public double getDouble(long position) {
+        return chunk(position).getDouble((int) (position & CHUNK_MASK));
+    }
+
+    public void putInt(long position, int value) {
+        chunk(position).putInt((int) (position & CHUNK_MASK), value);
+    }
+
+    public void putLong(long position, long value) {
+        chunk(position).putLong((int) (position & CHUNK_MASK), value);
+    }
+
+    public void putFloat(long position, float value) {
+        chunk(position).putFloat((int) (position & CHUNK_MASK), value);
+    }
+
+    public void putDouble(long position, double value) {
+        chunk(position).putDouble((int) (position & CHUNK_MASK), value);
+    }
+
+    /**
+     * Finds the chunk containing the given position, mapping it if it isn't already
+     */
+    private MappedByteBuffer chunk(long position) {
+        long index = position >>> CHUNK_BITS;
+        if (index == lastChunk)
+            return lastBuffer;
+
+        MappedByteBuffer buffer = chunks.get(index);
+        if (buffer == null) {
+            long start = index << CHUNK_BITS;
+            try {
+                buffer = channel.map(mode, start, Math.min(CHUNK_SIZE + OVERLAP, size - start));
+            }
+            catch (IOException e) {
+                throw new IllegalStateException("Could not map chunk " + index, e);
+            }
+
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            chunks.put(index, buffer);
+            mappedChunks++;
+        }
+
+        lastChunk = index;
+        lastBuffer = buffer;
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (mode == FileChannel.MapMode.READ_WRITE)
+            for (MappedByteBuffer buffer : chunks.values())
+                buffer.force();
+
+        chunks.clear();
+        lastChunk = -1;
+        lastBuffer = null;
+        file.close();
+    }
+}
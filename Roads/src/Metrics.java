@@ -0,0 +1,201 @@
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * The named histograms that the viewer records its timings and counts in: how long each part of a redraw takes, how
+ * long each stage of loading takes, how long route searches take and how many nodes they settle, and how many road
+ * names searches look up. Callers keep hold of the histograms they record into, so recording never looks a name up.
+ * Counts kept elsewhere, like the route cache's hits and misses, are registered as gauges, which are read whenever the
+ * metrics are.
+ * <p>
+ * The histograms can be read back as lines of text, or through JMX once {@link #registerMBean()} has been called,
+ * where every histogram shows up as attributes named after it, like {@code redraw.roads.p99}, and every gauge as an
+ * attribute with its own name.
+ */
+public class Metrics {
+    public static final String OBJECT_NAME = "roads:type=Metrics";
+
+    private static final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>(); //Sorted for the dump
+    private static final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+    private static final String[] STATISTICS = {"count", "mean", "p50", "p99", "max"};
+
+    private Metrics() {
+    }
+
+    /**
+     * @return the histogram of durations in nanoseconds with the name, created if there isn't one yet
+     */
+    public static Histogram timer(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram(true));
+    }
+
+    /**
+     * @return the histogram of counts with the name, created if there isn't one yet
+     */
+    public static Histogram counts(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram(false));
+    }
+
+    /**
+     * Registers a gauge: a value kept by something else, read whenever the metrics are. A gauge registered under the
+     * same name before is replaced
+     */
+    public static void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Records the time since the start in a timer, so that timing a run of steps only reads the clock once per step
+     *
+     * @param start the value of {@link System#nanoTime()} when the step started
+     * @return the value of {@link System#nanoTime()} now, when the next step starts
+     */
+    public static long recordSince(Histogram timer, long start) {
+        long now = System.nanoTime();
+        timer.record(now - start);
+        return now;
+    }
+
+    /**
+     * @return every histogram with a name starting with the prefix, one per line, in order of name, then the gauges
+     */
+    public static List<String> summarise(String prefix) {
+        List<String> lines = new ArrayList<>();
+        histograms.forEach((name, histogram) -> {
+            if (name.startsWith(prefix) && histogram.getCount() > 0)
+                lines.add(name + ": " + histogram);
+        });
+        gauges.forEach((name, value) -> {
+            if (name.startsWith(prefix))
+                lines.add(name + ": " + value.getAsLong());
+        });
+
+        return lines;
+    }
+
+    /**
+     * @return every histogram that has recorded something, one per line, in order of name, then the gauges
+     */
+    public static String dump() {
+        return String.join("\n", summarise("")) + "\n";
+    }
+
+    /**
+     * Forgets everything recorded by every histogram. Gauges are left alone, as their values belong to something else
+     */
+    public static void reset() {
+        histograms.values().forEach(Histogram::reset);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server under {@link #OBJECT_NAME}, unless they already are
+     */
+    public static synchronized void registerMBean() {
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name))
+                server.registerMBean(new MetricsMBean(), name);
+        }
+        catch (JMException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Shows every histogram as read only attributes, one for each statistic, and every gauge as a read only attribute.
+     * Durations are in milliseconds. The attributes are listed afresh each time, so histograms created after
+     * registering show up too
+     */
+    private static class MetricsMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongSupplier gauge = gauges.get(attribute);
+            if (gauge != null)
+                return gauge.getAsLong();
+
+            int dot = attribute.lastIndexOf('.');
+            Histogram histogram = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+            if (histogram == null)
+                throw new AttributeNotFoundException(attribute);
+
+            double scale = histogram.isNanoseconds() ? 1e6 : 1;
+            switch (attribute.substring(dot + 1)) {
+                case "count":
+                    return (double) histogram.getCount();
+                case "mean":
+                    return histogram.getMean() / scale;
+                case "p50":
+                    return histogram.getPercentile(50) / scale;
+                case "p99":
+                    return histogram.getPercentile(99) / scale;
+                case "max":
+                    return histogram.getMax() / scale;
+                default:
+                    throw new AttributeNotFoundException(attribute);
+            }
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                }
+                catch (AttributeNotFoundException ignored) { }
+            }
+
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            switch (actionName) {
+                case "dump":
+                    return dump();
+                case "reset":
+                    reset();
+                    return null;
+                default:
+                    throw new ReflectionException(new NoSuchMethodException(actionName));
+            }
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : histograms.keySet())
+                for (String statistic : STATISTICS)
+                    attributes.add(new MBeanAttributeInfo(name + "." + statistic, "double", statistic + " of " + name,
+                            true, false, false));
+            for (String name : gauges.keySet())
+                attributes.add(new MBeanAttributeInfo(name, "long", name, true, false, false));
+
+            MBeanOperationInfo[] operations = {
+                    new MBeanOperationInfo("dump", "Every histogram as a line of text", new MBeanParameterInfo[0],
+                            "java.lang.String", MBeanOperationInfo.INFO),
+                    new MBeanOperationInfo("reset", "Forgets everything recorded", new MBeanParameterInfo[0],
+                            "void", MBeanOperationInfo.ACTION)
+            };
+
+            return new MBeanInfo(Metrics.class.getName(), "Timings and counts recorded by the map viewer",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, operations, null);
+        }
+    }
+}
@@ -1,22 +1,62 @@
 import java.awt.*;
 
 public class Node {
+    private static final PointBuffer BUFFER = new PointBuffer(); //Only used for its clip rectangle
+
     private int id;
-    private Location location;
+    private int sourceID; //ID in the nodes file, which is different from id if the nodes have been renumbered
+    private double x; //Coordinates are stored directly, a Location is only created when asked for
+    private double y;
     private boolean trafficLight = false;
 
     public Node(String line) {
         String[] parts = line.split("\t");
         id = Integer.parseInt(parts[0]);
-        location = Location.fromLatLon(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+        sourceID = id;
+        double lat = Double.parseDouble(parts[1]);
+        x = Location.xFromLatLon(lat, Double.parseDouble(parts[2]));
+        y = Location.yFromLatLon(lat);
+    }
+
+    public Node(int id, Location location) {
+        this.id = id;
+        this.sourceID = id;
+        this.x = location.x;
+        this.y = location.y;
+    }
+
+    /**
+     * Copies a node under a new ID, keeping the ID it had in the nodes file
+     */
+    public Node(int id, Node node) {
+        this.id = id;
+        this.sourceID = node.sourceID;
+        this.x = node.x;
+        this.y = node.y;
+        this.trafficLight = node.trafficLight;
     }
 
     public int getID() {
         return id;
     }
 
+    /**
+     * @return the ID of the node in the nodes file
+     */
+    public int getSourceID() {
+        return sourceID;
+    }
+
     public Location getLocation() {
-        return location;
+        return new Location(x, y);
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
     }
 
     public void setHasTrafficLight(boolean hasTrafficLight) {
@@ -41,13 +81,12 @@ public class Node {
             return;
 
         int hSize = (int) (size / 2);
-        Point p = location.toPoint(MapViewer.WINDOW_SCALE, offset, zoom, centre);
+        int u = (int) ((offset.x + (x * MapViewer.WINDOW_SCALE)) * zoom) + centre.x;
+        int v = (int) ((offset.y - (y * MapViewer.WINDOW_SCALE)) * zoom) + centre.y;
 
-        if (!g.getClipBounds().contains(p)) //Only draw if on screen
+        if (!BUFFER.clip(g).contains(u, v)) //Only draw if on screen
             return;
 
-        p.translate(-hSize, -hSize);
-
-        g.fillOval(p.x, p.y, (int) size, (int) size);
+        g.fillOval(u - hSize, v - hSize, (int) size, (int) size);
     }
 }
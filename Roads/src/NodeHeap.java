@@ -0,0 +1,76 @@
+import java.util.Arrays;
+
+/**
+ * A binary min heap of node indices keyed by cost, kept in two flat arrays so searches over large graphs don't create
+ * an object for every entry. Nodes aren't moved when their cost drops, they're just added again, so a search has to
+ * skip the stale entries it polls.
+ */
+public class NodeHeap {
+    private double[] keys = new double[64];
+    private int[] values = new int[64];
+    private int size = 0;
+
+    public void add(int value, double key) {
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+
+        int i = size++;
+        while (i > 0 && keys[(i - 1) / 2] > key) {
+            keys[i] = keys[(i - 1) / 2];
+            values[i] = values[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * Removes the node with the smallest key
+     *
+     * @return the node
+     */
+    public int poll() {
+        int top = values[0];
+        double key = keys[--size];
+        int value = values[size];
+
+        int i = 0;
+        while (2 * i + 1 < size) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && keys[child + 1] < keys[child])
+                child++;
+            if (keys[child] >= key)
+                break;
+
+            keys[i] = keys[child];
+            values[i] = values[child];
+            i = child;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        return top;
+    }
+
+    /**
+     * @return the smallest key, without removing it
+     */
+    public double peekKey() {
+        return keys[0];
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,90 @@
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+import java.util.List;
+
+/**
+ * A screen space grid of the boxes taken up by placed labels, used to stop labels overlapping. Each box is kept in
+ * every cell it covers, so a new box only has to be checked against the boxes near it. Cells are kept in a hash map, so
+ * the grid can cover the whole map at any zoom while only storing the cells that have something in them.
+ *
+ * @param <T> the type of item each box belongs to
+ */
+public class OccupancyGrid<T> {
+    private final double cellSize;
+    private final Map<Long, List<Entry<T>>> occupied = new HashMap<>(); //Every cell each box covers
+    private final Map<Long, List<Entry<T>>> anchored = new HashMap<>(); //Only the cell each box starts in
+    private double maxWidth = 0;
+    private double maxHeight = 0;
+
+    /**
+     * @param cellSize size of a cell, in pixels. This works best when it's about the size of a typical box
+     */
+    public OccupancyGrid(double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * @return true if the box intersects any box already in the grid
+     */
+    public boolean overlaps(Rectangle2D box) {
+        for (long x = cell(box.getMinX()); x <= cell(box.getMaxX()); x++)
+            for (long y = cell(box.getMinY()); y <= cell(box.getMaxY()); y++)
+                for (Entry<T> entry : occupied.getOrDefault(key(x, y), Collections.emptyList()))
+                    if (entry.box.intersects(box))
+                        return true;
+
+        return false;
+    }
+
+    /**
+     * Marks the box as taken by the given item
+     */
+    public void add(Rectangle2D box, T item) {
+        Entry<T> entry = new Entry<>(box, item);
+        for (long x = cell(box.getMinX()); x <= cell(box.getMaxX()); x++)
+            for (long y = cell(box.getMinY()); y <= cell(box.getMaxY()); y++)
+                occupied.computeIfAbsent(key(x, y), v -> new ArrayList<>()).add(entry);
+
+        anchored.computeIfAbsent(key(cell(box.getMinX()), cell(box.getMinY())), v -> new ArrayList<>()).add(entry);
+        maxWidth = Math.max(maxWidth, box.getWidth());
+        maxHeight = Math.max(maxHeight, box.getHeight());
+    }
+
+    /**
+     * Finds the items whose boxes might be in an area. Each item is only found once, and only the cells around the
+     * area are looked at, so this costs about as much as the number of items found
+     *
+     * @param results list to add the items to
+     */
+    public void query(double minX, double minY, double maxX, double maxY, List<T> results) {
+        //A box is only anchored in the cell it starts in, so look far enough back to find the biggest box
+        for (long x = cell(minX - maxWidth); x <= cell(maxX); x++) {
+            for (long y = cell(minY - maxHeight); y <= cell(maxY); y++) {
+                List<Entry<T>> entries = anchored.get(key(x, y));
+                if (entries == null)
+                    continue;
+
+                for (Entry<T> entry : entries)
+                    results.add(entry.item);
+            }
+        }
+    }
+
+    private long cell(double pixel) {
+        return (long) Math.floor(pixel / cellSize);
+    }
+
+    private static long key(long x, long y) {
+        return (x << 32) ^ (y & 0xffffffffL);
+    }
+
+    private static class Entry<T> {
+        private final Rectangle2D box;
+        private final T item;
+
+        private Entry(Rectangle2D box, T item) {
+            this.box = box;
+            this.item = item;
+        }
+    }
+}
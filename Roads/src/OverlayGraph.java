@@ -0,0 +1,496 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Customisable route planning (CRP) over the road graph. The graph is split into nested cells once, by
+ * {@link InertialFlowPartitioner}, which doesn't depend on what routes cost. Each cost metric (distance or travel
+ * time, with or without preferring traffic lights) is then "customised" on top of the same cells: for every cell, the
+ * cost between each pair of its boundary nodes is found and kept in a clique. A cell on a higher level is customised
+ * with searches over the cliques of the cells inside it, so the work stays small, and the cells on a level don't depend
+ * on each other so they're customised in parallel.
+ * <p>
+ * A query only goes into the original graph inside the cells of the start and goal. Everywhere else it jumps across
+ * whole cells along the cliques, on the highest level that doesn't contain the start or goal. The jumps are unpacked
+ * into segments once the goal is found.
+ * <p>
+ * Turn restrictions aren't part of the overlay, so routes found on it have to be checked against them separately.
+ * Nothing changes once a metric has been customised, so queries can run at the same time.
+ */
+public class OverlayGraph {
+    private static final int[] LEVEL_SIZES = {256, 4096, 65536}; //Most nodes in a cell on each level
+
+    private final Node[] nodes; //Maps index -> node
+    private final int[] indexOfID; //Maps node ID -> index, or -1
+    private final int[] arcOffsets; //Arcs out of node i are arcOffsets[i] up to arcOffsets[i + 1]
+    private final int[] arcHeads;
+    private final RoadSegment[] arcSegments;
+    private final RoadInfo[] arcRoads;
+
+    private final int levels;
+    private final int[][] cells; //Maps level -> node -> cell
+    private final int[] cellCounts;
+    private final int[][] boundaryOffsets; //Boundary nodes of a cell are boundaryOffsets[level][cell] up to [cell + 1]
+    private final int[][] boundaryNodes;
+    private final int[][] boundaryPositions; //Maps level -> node -> position among its cell's boundary nodes, or -1
+    private final int[][] cliqueOffsets; //Maps level -> cell -> where its clique starts in a metric's clique costs
+
+    private final Map<Integer, Metric> metrics = new HashMap<>();
+    private final ThreadLocal<SearchSpace> searchSpaces;
+
+    /**
+     * Partitions the graph into cells. No metric is customised until one is asked for
+     *
+     * @param nodeLookupTable     maps node ID -> node
+     * @param nodeAdjacencyTable  maps node ID -> segments that can be travelled out of the node
+     * @param roadInfoLookupTable maps road ID -> road info
+     */
+    public OverlayGraph(Map<Integer, Node> nodeLookupTable, Map<Integer, List<RoadSegment>> nodeAdjacencyTable,
+                        Map<Integer, RoadInfo> roadInfoLookupTable) {
+        int count = nodeLookupTable.size();
+        int maxID = -1;
+        for (int id : nodeLookupTable.keySet())
+            maxID = Math.max(maxID, id);
+
+        nodes = new Node[count];
+        indexOfID = new int[maxID + 1];
+        Arrays.fill(indexOfID, -1);
+        int n = 0;
+        for (Node node : nodeLookupTable.values()) {
+            indexOfID[node.getID()] = n;
+            nodes[n++] = node;
+        }
+
+        //Lay the arcs out flat, and collect every segment once as an undirected edge for the partitioner. Segments
+        //leading to a node missing from the nodes file are left out
+        arcOffsets = new int[count + 1];
+        int edgeCount = 0;
+        for (int i = 0; i < count; i++) {
+            int id = nodes[i].getID();
+            arcOffsets[i + 1] = arcOffsets[i];
+            for (RoadSegment segment : nodeAdjacencyTable.getOrDefault(id, Collections.emptyList())) {
+                if (indexOf(segment.getOtherNode(id)) < 0)
+                    continue;
+
+                arcOffsets[i + 1]++;
+                if (segment.getNodeID1() == id)
+                    edgeCount++;
+            }
+        }
+
+        arcHeads = new int[arcOffsets[count]];
+        arcSegments = new RoadSegment[arcOffsets[count]];
+        arcRoads = new RoadInfo[arcOffsets[count]];
+        int[] ends = new int[edgeCount * 2];
+        int arc = 0;
+        int edge = 0;
+        double[] xs = new double[count];
+        double[] ys = new double[count];
+        for (int i = 0; i < count; i++) {
+            int id = nodes[i].getID();
+            xs[i] = nodes[i].getX();
+            ys[i] = nodes[i].getY();
+
+            for (RoadSegment segment : nodeAdjacencyTable.getOrDefault(id, Collections.emptyList())) {
+                int head = indexOf(segment.getOtherNode(id));
+                if (head < 0)
+                    continue;
+
+                arcHeads[arc] = head;
+                arcSegments[arc] = segment;
+                arcRoads[arc] = roadInfoLookupTable.get(segment.getID());
+                arc++;
+
+                if (segment.getNodeID1() == id) {
+                    ends[edge++] = i;
+                    ends[edge++] = head;
+                }
+            }
+        }
+
+        //Only keep the levels whose cells are smaller than the whole graph
+        int levels = 0;
+        while (levels < LEVEL_SIZES.length && LEVEL_SIZES[levels] < count)
+            levels++;
+        this.levels = Math.max(1, levels);
+
+        InertialFlowPartitioner partitioner = new InertialFlowPartitioner(xs, ys, edgeCount, ends,
+                Arrays.copyOf(LEVEL_SIZES, this.levels));
+        cells = partitioner.partition();
+        cellCounts = partitioner.getCellCounts();
+
+        //A node is on the boundary of its cell if an arc joins it to another cell
+        boundaryOffsets = new int[this.levels][];
+        boundaryNodes = new int[this.levels][];
+        boundaryPositions = new int[this.levels][count];
+        cliqueOffsets = new int[this.levels][];
+        for (int level = 0; level < this.levels; level++) {
+            int[] cell = cells[level];
+            boolean[] boundary = new boolean[count];
+            for (int i = 0; i < count; i++) {
+                for (int a = arcOffsets[i]; a < arcOffsets[i + 1]; a++) {
+                    if (cell[i] != cell[arcHeads[a]]) {
+                        boundary[i] = true;
+                        boundary[arcHeads[a]] = true;
+                    }
+                }
+            }
+
+            int[] offsets = new int[cellCounts[level] + 1];
+            for (int i = 0; i < count; i++)
+                if (boundary[i])
+                    offsets[cell[i] + 1]++;
+            for (int c = 0; c < cellCounts[level]; c++)
+                offsets[c + 1] += offsets[c];
+
+            int[] position = Arrays.copyOf(offsets, cellCounts[level]);
+            int[] members = new int[offsets[cellCounts[level]]];
+            Arrays.fill(boundaryPositions[level], -1);
+            for (int i = 0; i < count; i++) {
+                if (boundary[i]) {
+                    boundaryPositions[level][i] = position[cell[i]] - offsets[cell[i]];
+                    members[position[cell[i]]++] = i;
+                }
+            }
+
+            int[] cliques = new int[cellCounts[level] + 1];
+            for (int c = 0; c < cellCounts[level]; c++) {
+                int size = offsets[c + 1] - offsets[c];
+                cliques[c + 1] = cliques[c] + size * size;
+            }
+
+            boundaryOffsets[level] = offsets;
+            boundaryNodes[level] = members;
+            cliqueOffsets[level] = cliques;
+        }
+
+        searchSpaces = ThreadLocal.withInitial(() -> new SearchSpace(count));
+    }
+
+    /**
+     * Gets the customisation for a metric, customising it first if it hasn't been used before
+     *
+     * @param isSpeedHeuristic true if the cost should be travel time rather than distance
+     * @param useTrafficLights true if routes through traffic lights should be preferred
+     * @return the customised metric
+     */
+    public synchronized Metric getMetric(boolean isSpeedHeuristic, boolean useTrafficLights) {
+        return metrics.computeIfAbsent((isSpeedHeuristic ? 2 : 0) + (useTrafficLights ? 1 : 0),
+                v -> customise(isSpeedHeuristic, useTrafficLights));
+    }
+
+    /**
+     * Works out the clique costs of every cell for a metric. Each level is built from the one below it, and the cells
+     * within a level are customised in parallel
+     *
+     * @param isSpeedHeuristic true if the cost should be travel time rather than distance
+     * @param useTrafficLights true if routes through traffic lights should be preferred
+     * @return the customised metric
+     */
+    public Metric customise(boolean isSpeedHeuristic, boolean useTrafficLights) {
+        long start = System.nanoTime();
+
+        //Arc costs are the same as RouteFinder's edge costs
+        double[] arcCosts = new double[arcHeads.length];
+        for (int a = 0; a < arcCosts.length; a++) {
+            arcCosts[a] = arcSegments[a].getLength()
+                    / (isSpeedHeuristic ? arcRoads[a].getWeightedRoadSpeed() : 1)
+                    * (useTrafficLights && nodes[arcHeads[a]].hasTrafficLight() ? 1 : 2);
+        }
+
+        double[][] cliques = new double[levels][];
+        Metric metric = new Metric(arcCosts, cliques);
+        for (int level = 0; level < levels; level++) {
+            cliques[level] = new double[cliqueOffsets[level][cellCounts[level]]];
+
+            int l = level;
+            IntStream.range(0, cellCounts[level]).parallel().forEach(cell -> customiseCell(metric, l, cell));
+        }
+
+        metric.customisationTime = (System.nanoTime() - start) / 1e9;
+        return metric;
+    }
+
+    /**
+     * Finds the cost from each boundary node of a cell to every other one, only travelling inside the cell
+     */
+    private void customiseCell(Metric metric, int level, int cell) {
+        SearchSpace space = searchSpaces.get();
+        int from = boundaryOffsets[level][cell];
+        int size = boundaryOffsets[level][cell + 1] - from;
+        double[] clique = metric.cliques[level];
+        int base = cliqueOffsets[level][cell];
+
+        for (int i = 0; i < size; i++) {
+            searchCell(space, metric, level, cell, boundaryNodes[level][from + i], -1);
+
+            for (int j = 0; j < size; j++)
+                clique[base + i * size + j] = space.costOf(boundaryNodes[level][from + j]);
+        }
+    }
+
+    /**
+     * Runs Dijkstra's algorithm inside a cell. On the lowest level this searches the original graph, and on the levels
+     * above it searches the cliques of the cells one level down, along with the arcs between them
+     *
+     * @param source the node to search from
+     * @param target the node to stop at, or -1 to search the whole cell
+     */
+    private void searchCell(SearchSpace space, Metric metric, int level, int cell, int source, int target) {
+        space.reset();
+        space.relax(source, 0, -1, -1, -1);
+
+        while (!space.heap.isEmpty()) {
+            int node = space.heap.poll();
+            if (!space.settle(node))
+                continue;
+            if (node == target)
+                break;
+
+            double cost = space.cost[node];
+            if (level == 0) {
+                for (int a = arcOffsets[node]; a < arcOffsets[node + 1]; a++)
+                    if (cells[0][arcHeads[a]] == cell)
+                        space.relax(arcHeads[a], cost + metric.arcCosts[a], node, a, -1);
+            }
+            else {
+                //Cross the cell below along its clique, then step out of it into the next cell below. The clique
+                //already holds the cheapest way across, so a node reached along it doesn't need to cross again
+                int below = level - 1;
+                if (space.parentLevels[node] < 0)
+                    relaxClique(space, metric, below, node, cost);
+
+                int subcell = cells[below][node];
+                for (int a = arcOffsets[node]; a < arcOffsets[node + 1]; a++) {
+                    int head = arcHeads[a];
+                    if (cells[below][head] != subcell && cells[level][head] == cell)
+                        space.relax(head, cost + metric.arcCosts[a], node, a, -1);
+                }
+            }
+        }
+    }
+
+    /**
+     * Relaxes the clique arcs from a boundary node to the other boundary nodes of its cell on a level
+     */
+    private void relaxClique(SearchSpace space, Metric metric, int level, int node, double cost) {
+        int position = boundaryPositions[level][node];
+        if (position < 0)
+            return;
+
+        int cell = cells[level][node];
+        int from = boundaryOffsets[level][cell];
+        int size = boundaryOffsets[level][cell + 1] - from;
+        int row = cliqueOffsets[level][cell] + position * size;
+        double[] clique = metric.cliques[level];
+
+        for (int j = 0; j < size; j++)
+            if (j != position && clique[row + j] < Double.POSITIVE_INFINITY)
+                space.relax(boundaryNodes[level][from + j], cost + clique[row + j], node, -1, level);
+    }
+
+    /**
+     * Finds the cheapest path between two nodes on a customised metric, ignoring turn restrictions
+     *
+     * @param start    the node to start searching from
+     * @param goal     the node to look for a path to
+     * @param metric   the customised metric to search on
+     * @param nodePath the list to add the nodes along the path to, which is left empty if there isn't one
+     * @param segments the list to add the segments along the path to
+     * @return the number of nodes settled by the search
+     */
+    public int findPath(Node start, Node goal, Metric metric, List<Node> nodePath, List<RoadSegment> segments) {
+        int s = indexOf(start);
+        int t = indexOf(goal);
+        if (s < 0 || t < 0 || s == t)
+            return 0;
+
+        SearchSpace space = searchSpaces.get();
+        space.reset();
+        space.relax(s, 0, -1, -1, -1);
+        int settled = 0;
+
+        while (!space.heap.isEmpty()) {
+            int node = space.heap.poll();
+            if (!space.settle(node))
+                continue;
+
+            settled++;
+            if (node == t)
+                break;
+
+            double cost = space.cost[node];
+            int level = queryLevel(node, s, t);
+            if (level >= 0 && space.parentLevels[node] < 0)
+                relaxClique(space, metric, level, node, cost);
+
+            //Only leave the node's cell along an arc, as the clique covers everything inside it
+            for (int a = arcOffsets[node]; a < arcOffsets[node + 1]; a++)
+                if (level < 0 || cells[level][arcHeads[a]] != cells[level][node])
+                    space.relax(arcHeads[a], cost + metric.arcCosts[a], node, a, -1);
+        }
+
+        if (!space.isSettled(t))
+            return settled;
+
+        //Walk back to the start, keeping each step to be unpacked once the search space is free again
+        List<int[]> steps = new ArrayList<>();
+        for (int node = t; node != s; node = space.parents[node])
+            steps.add(new int[]{space.parents[node], node, space.parentArcs[node], space.parentLevels[node]});
+        Collections.reverse(steps);
+
+        nodePath.add(start);
+        addSteps(steps, metric, nodePath, segments);
+
+        return settled;
+    }
+
+    /**
+     * Finds the query level of a node: the highest level on which it is in neither the start's nor the goal's cell,
+     * or -1 if it's in one of their cells on every level
+     */
+    private int queryLevel(int node, int start, int goal) {
+        for (int level = levels - 1; level >= 0; level--)
+            if (cells[level][node] != cells[level][start] && cells[level][node] != cells[level][goal])
+                return level;
+
+        return -1;
+    }
+
+    /**
+     * Turns a clique arc back into the segments it stands for. The path across the cell is found on the level below,
+     * and any clique arcs along that are unpacked in turn, so each search only covers one small cell
+     */
+    private void unpack(int from, int to, int level, Metric metric, List<Node> nodePath, List<RoadSegment> segments) {
+        SearchSpace space = searchSpaces.get();
+        searchCell(space, metric, level, cells[level][from], from, to);
+
+        //Keep the steps before unpacking any of them, as unpacking reuses the search space
+        List<int[]> steps = new ArrayList<>();
+        for (int node = to; node != from; node = space.parents[node])
+            steps.add(new int[]{space.parents[node], node, space.parentArcs[node], space.parentLevels[node]});
+        Collections.reverse(steps);
+
+        addSteps(steps, metric, nodePath, segments);
+    }
+
+    /**
+     * Adds the nodes and segments along each step of a path, unpacking the steps which are clique arcs
+     *
+     * @param steps the steps, each as {from, to, arc, level}. The arc is -1 for a clique arc on the level
+     */
+    private void addSteps(List<int[]> steps, Metric metric, List<Node> nodePath, List<RoadSegment> segments) {
+        for (int[] step : steps) {
+            if (step[2] >= 0) {
+                nodePath.add(nodes[step[1]]);
+                segments.add(arcSegments[step[2]]);
+            }
+            else {
+                unpack(step[0], step[1], step[3], metric, nodePath, segments);
+            }
+        }
+    }
+
+    private int indexOf(Node node) {
+        return indexOf(node.getID());
+    }
+
+    private int indexOf(int id) {
+        return id >= 0 && id < indexOfID.length ? indexOfID[id] : -1;
+    }
+
+    public int getLevelCount() {
+        return levels;
+    }
+
+    public int getCellCount(int level) {
+        return cellCounts[level];
+    }
+
+    /**
+     * @return the number of boundary nodes on a level
+     */
+    public int getBoundaryCount(int level) {
+        return boundaryNodes[level].length;
+    }
+
+    /**
+     * The costs of a metric customised over the cells
+     */
+    public static class Metric {
+        private final double[] arcCosts;
+        private final double[][] cliques; //Maps level -> row major clique of every cell, one after the other
+        private double customisationTime;
+
+        private Metric(double[] arcCosts, double[][] cliques) {
+            this.arcCosts = arcCosts;
+            this.cliques = cliques;
+        }
+
+        /**
+         * @return how long customising the metric took, in seconds
+         */
+        public double getCustomisationTime() {
+            return customisationTime;
+        }
+    }
+
+    /**
+     * The state of one Dijkstra search, indexed by node. Each search gets a new stamp rather than clearing the arrays,
+     * so starting a search costs nothing however big the graph is
+     */
+    private static class SearchSpace {
+        private final double[] cost;
+        private final int[] parents;
+        private final int[] parentArcs; //Arc the node was reached along, or -1 if it was a clique arc
+        private final int[] parentLevels; //Level of the clique arc the node was reached along
+        private final int[] reached; //Stamp of the search which last reached the node
+        private final int[] settled; //Stamp of the search which last settled the node
+        private final NodeHeap heap = new NodeHeap();
+        private int stamp = 0;
+
+        private SearchSpace(int count) {
+            cost = new double[count];
+            parents = new int[count];
+            parentArcs = new int[count];
+            parentLevels = new int[count];
+            reached = new int[count];
+            settled = new int[count];
+        }
+
+        private void reset() {
+            stamp++;
+            heap.clear();
+        }
+
+        private void relax(int node, double newCost, int parent, int arc, int level) {
+            if (settled[node] == stamp || reached[node] == stamp && newCost >= cost[node])
+                return;
+
+            reached[node] = stamp;
+            cost[node] = newCost;
+            parents[node] = parent;
+            parentArcs[node] = arc;
+            parentLevels[node] = level;
+            heap.add(node, newCost);
+        }
+
+        /**
+         * @return false if the node was already settled, which means the heap entry was a stale one
+         */
+        private boolean settle(int node) {
+            if (settled[node] == stamp)
+                return false;
+
+            settled[node] = stamp;
+            return true;
+        }
+
+        private boolean isSettled(int node) {
+            return settled[node] == stamp;
+        }
+
+        private double costOf(int node) {
+            return reached[node] == stamp ? cost[node] : Double.POSITIVE_INFINITY;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+import java.awt.*;
+
+/**
+ * Reusable arrays of screen positions for projecting many locations at once with {@link Location#toPoints}. The
+ * arrays only grow, so once they are big enough for the largest shape drawn, projecting doesn't allocate anything.
+ * The buffer also holds a rectangle for reading clip bounds into, which would otherwise be allocated on every call.
+ * <p>
+ * A buffer is not thread safe. Drawing only happens on the event dispatch thread, so each shape class shares one.
+ */
+public class PointBuffer {
+    private int[] us = new int[64];
+    private int[] vs = new int[64];
+    private Rectangle clip = new Rectangle();
+
+    /**
+     * Projects the given coordinates into the buffer. The results are in {@link #getUs()} and {@link #getVs()} until
+     * the next call
+     *
+     * @param xs     x coordinates of the locations
+     * @param ys     y coordinates of the locations
+     * @param count  number of locations to project
+     * @param offset offset from the origin (how much the map has been translated by)
+     * @param zoom   zoom factor of the map
+     * @param centre centre of the window
+     */
+    public void project(double[] xs, double[] ys, int count, Point offset, double zoom, Point centre) {
+        if (count > us.length) {
+            int capacity = Math.max(count, us.length * 2);
+            us = new int[capacity];
+            vs = new int[capacity];
+        }
+
+        Location.toPoints(xs, ys, count, MapViewer.WINDOW_SCALE, offset, zoom, centre, us, vs);
+    }
+
+    /**
+     * Reads the clip bounds of the graphics object into a rectangle owned by the buffer, rather than a new one
+     *
+     * @return the clip bounds, valid until the next call
+     * @see #clipBounds(Graphics, Rectangle)
+     */
+    public Rectangle clip(Graphics g) {
+        return clipBounds(g, clip);
+    }
+
+    /**
+     * Reads the clip bounds of the graphics object into the given rectangle. A graphics object with no clip (such as
+     * one from {@link java.awt.image.BufferedImage#getGraphics()}) leaves the rectangle untouched, so the rectangle is
+     * emptied first, and if it's still empty afterwards it's made big enough that nothing is culled
+     *
+     * @return the rectangle
+     */
+    public static Rectangle clipBounds(Graphics g, Rectangle into) {
+        into.setBounds(0, 0, -1, -1);
+        g.getClipBounds(into);
+        if (into.width < 0)
+            into.setBounds(Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+        return into;
+    }
+
+    /**
+     * Reads the area of the graphics object that's drawn to into the given rectangle: its clip bounds, or if it has no
+     * clip, the window around the centre. Unlike {@link #clipBounds(Graphics, Rectangle)} this is never unbounded, for
+     * layers that look through what's on screen cell by cell
+     *
+     * @param centre centre of the window
+     * @return the rectangle
+     */
+    public static Rectangle visibleBounds(Graphics g, Point centre, Rectangle into) {
+        into.setBounds(0, 0, -1, -1);
+        g.getClipBounds(into);
+        if (into.width < 0)
+            into.setBounds(0, 0, centre.x * 2, centre.y * 2);
+
+        return into;
+    }
+
+    /**
+     * @return the x pixel positions of the last projection. The array may be longer than the number projected
+     */
+    public int[] getUs() {
+        return us;
+    }
+
+    /**
+     * @return the y pixel positions of the last projection. The array may be longer than the number projected
+     */
+    public int[] getVs() {
+        return vs;
+    }
+}
@@ -1,6 +1,8 @@
 import java.awt.*;
-import java.awt.geom.Rectangle2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -11,6 +13,9 @@ public class Polygon implements Comparable<Polygon> {
     private static final Color COLOR_GREENERY = new Color(0, 182, 0);
     private static final Color COLOR_WATER = new Color(47, 43, 240);
     private static final Color COLOR_LAKE = new Color(76, 103, 240);
+    private static final int MAX_LAYER;
+    private static final PointBuffer BUFFER = new PointBuffer(); //Shared by all polygons, as drawing is single threaded
+    private static final AffineTransform TRANSFORM = new AffineTransform();
 
     static {
         //Mappings from polygon type to display colour and sorting level
@@ -65,13 +70,18 @@ public class Polygon implements Comparable<Polygon> {
         COLOR_MAP.put(0x51, COLOR_GREENERY); SORTING_MAP.put(0x51, 10); //wetland
         COLOR_MAP.put(0x52, COLOR_GREENERY); SORTING_MAP.put(0x52, 10); //tundra
         COLOR_MAP.put(0x53, COLOR_GREENERY); SORTING_MAP.put(0x53, 10); //flats
+
+        MAX_LAYER = Collections.max(SORTING_MAP.values());
     }
 
     private int type;
     private String label;
     private int endLevel; //3 = always visible, 2 = minZoom(1), 1 = minZoom(5)
-    private List<Location> points = new ArrayList<>();
-    private List<List<Location>> holes = new ArrayList<>();
+    private int layer; //Sorting level, higher layers are drawn underneath lower ones
+    private Color color;
+    private Path2D shape = new Path2D.Double(Path2D.WIND_EVEN_ODD); //The outline and holes, in map coordinates
+    private double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY; //Bounds of the outline
+    private double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
     private Location approximateCentre;
 
     public Polygon(String type, String label, String endLevel, List<String> data) {
@@ -79,49 +89,72 @@ public class Polygon implements Comparable<Polygon> {
         this.label = label;
         this.endLevel = endLevel.equals("") ? 1 : Integer.parseInt(endLevel);
 
-        String line = data.get(0);
-        String[] parts = line.split(",");
-        double lat = 0, lon = 0;
-        for (int j = 0; j < parts.length; j++) {
-            if (j % 2 == 0) {
-                lat = Double.parseDouble(parts[j].substring(1));
-            }
-            else {
-                lon = Double.parseDouble(parts[j].substring(0, parts[j].length() - 1));
+        this.layer = SORTING_MAP.getOrDefault(this.type, 0);
+        this.color = COLOR_MAP.getOrDefault(this.type, COLOR_MAP.get(0));
+
+        //The first line is the outline, the rest are holes. Each line is a separate subpath of the shape, and the shape
+        //is filled with the even-odd rule, so the holes are left unfilled
+        double sumX = 0;
+        double sumY = 0;
+        int outlineCount = 0;
+
+        for (int i = 0; i < data.size(); i++) {
+            CoordinateTokenizer tokenizer = new CoordinateTokenizer(data.get(i));
+            double[] ringXs = new double[tokenizer.countPoints()];
+            double[] ringYs = new double[ringXs.length];
 
-                points.add(Location.fromLatLon(lat, lon));
+            for (int j = 0; j < ringXs.length; j++) {
+                double lat = tokenizer.next();
+                double lon = tokenizer.next();
+                ringXs[j] = Location.xFromLatLon(lat, lon);
+                ringYs[j] = Location.yFromLatLon(lat);
             }
-        }
 
-        for (int i = 1; i < data.size(); i++) {
-            List<Location> hole = new ArrayList<>();
-            line = data.get(i);
-            parts = line.split(",");
-            lat = 0;
-            lon = 0;
-            for (int j = 0; j < parts.length; j++) {
-                if (j % 2 == 0) {
-                    lat = Double.parseDouble(parts[j].substring(1));
-                }
-                else {
-                    lon = Double.parseDouble(parts[j].substring(0, parts[j].length() - 1));
+            if (ringXs.length == 0)
+                continue;
+
+            shape.moveTo(ringXs[0], ringYs[0]);
+            for (int j = 1; j < ringXs.length; j++)
+                shape.lineTo(ringXs[j], ringYs[j]);
+            shape.closePath();
 
-                    hole.add(Location.fromLatLon(lat, lon));
+            if (i == 0) {
+                for (int j = 0; j < ringXs.length; j++) {
+                    minX = Math.min(minX, ringXs[j]);
+                    minY = Math.min(minY, ringYs[j]);
+                    maxX = Math.max(maxX, ringXs[j]);
+                    maxY = Math.max(maxY, ringYs[j]);
+                    sumX += ringXs[j];
+                    sumY += ringYs[j];
                 }
-            }
-            holes.add(hole);
 
+                outlineCount = ringXs.length;
+            }
         }
 
+        ((Path2D.Double) shape).trimToSize();
+
         //Find the average of the points to find the approximate middle
-        double sumX = 0;
-        double sumY = 0;
-        for (Location point : points) {
-            sumX += point.x;
-            sumY += point.y;
-        }
+        approximateCentre = new Location(sumX / outlineCount, sumY / outlineCount);
+    }
+
+    /**
+     * Sorts the polygons into the order they should be drawn in, from the bottom layer (the highest sorting level) to
+     * the top. Polygons in the same layer keep their order. There are only a few layers, so this is a bucket sort
+     *
+     * @param polygons the list to sort
+     */
+    public static void sortByLayer(List<Polygon> polygons) {
+        List<List<Polygon>> layers = new ArrayList<>();
+        for (int i = 0; i <= MAX_LAYER; i++)
+            layers.add(new ArrayList<>());
+
+        for (Polygon polygon : polygons)
+            layers.get(polygon.layer).add(polygon);
 
-        approximateCentre = new Location(sumX / points.size(), sumY / points.size());
+        polygons.clear();
+        for (int i = MAX_LAYER; i >= 0; i--)
+            polygons.addAll(layers.get(i));
     }
 
     public int getType() {
@@ -136,73 +169,130 @@ public class Polygon implements Comparable<Polygon> {
         return endLevel;
     }
 
+    public Location getApproximateCentre() {
+        return approximateCentre;
+    }
+
     /**
-     * Internal method for drawing the polygon
+     * @return the area of the polygon's bounding box, in square map units
      */
-    private void draw(List<Location> points, int type, Graphics g, Point offset, Point centre, double zoom) {
-        g.setColor(COLOR_MAP.getOrDefault(type, COLOR_MAP.get(0)));
-
-        int[] xPoints = new int[points.size()];
-        int[] yPoints = new int[points.size()];
+    public double getBoundingArea() {
+        return (maxX - minX) * (maxY - minY);
+    }
 
-        for (int i = 0; i < points.size(); i++) {
-            Point point = points.get(i).toPoint(MapViewer.WINDOW_SCALE, offset, zoom, centre);
+    public void draw(Graphics g, Point offset, Point centre, double zoom) {
+        //Don't draw if the zoom value is less than the given cutoff
+        if (endLevel == 1 && zoom < MapViewer.CLOSE_ZOOM_CUTOFF || endLevel == 2 && zoom < MapViewer.MEDIUM_ZOOM_CUTOFF)
+            return;
 
-            xPoints[i] = point.x;
-            yPoints[i] = point.y;
-        }
+        //Map coordinates are projected onto the screen by u = x * scale + translateX, and v = -y * scale + translateY
+        double scale = MapViewer.WINDOW_SCALE * zoom;
+        double translateX = offset.x * zoom + centre.x;
+        double translateY = offset.y * zoom + centre.y;
 
-        //Create an awt polygon from the points in order to see if the polygon should be drawn
-        java.awt.Polygon p = new java.awt.Polygon(xPoints, yPoints, points.size());
-        if (!p.intersects(g.getClipBounds()))
+        //Only draw the polygon if its bounds are on screen
+        double minU = minX * scale + translateX;
+        double minV = -maxY * scale + translateY;
+        if (!BUFFER.clip(g).intersects(minU, minV, (maxX - minX) * scale, (maxY - minY) * scale))
             return;
 
-        g.fillPolygon(p);
+        //The shape is filled through the projection, rather than projecting every point into a new shape
+        Graphics2D g2d = (Graphics2D) g;
+        AffineTransform saved = g2d.getTransform();
+        TRANSFORM.setTransform(scale, 0, 0, -scale, translateX, translateY);
+
+        g2d.setColor(color);
+        g2d.transform(TRANSFORM);
+        g2d.fill(shape);
+        g2d.setTransform(saved);
+    }
+
+    @Override
+    public int compareTo(Polygon p) {
+        return Integer.compare(p.layer, layer);
     }
 
     /**
-     * Draws the polygon to the given graphics object
-     *
-     * @param g      graphics object to draw the polygon to
-     * @param offset window offset from the origin
-     * @param centre approximateCentre of the window
-     * @param zoom   zoom factor of the map
+     * Reads the numbers out of a line of polygon data, in the form (lat,lon),(lat,lon),... The line is scanned once
+     * by hand, rather than split into strings which are then parsed
      */
-    public void draw(Graphics g, Point offset, Point centre, double zoom) {
-        //Don't draw if the zoom value is less than the given cutoff
-        if (endLevel == 1 && zoom < MapViewer.CLOSE_ZOOM_CUTOFF || endLevel == 2 && zoom < MapViewer.MEDIUM_ZOOM_CUTOFF)
-            return;
+    private static class CoordinateTokenizer {
+        //Every power of ten up to here is exactly representable as a double
+        private static final double[] POWERS_OF_TEN = {
+                1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+                1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+        };
+        private static final int MAX_EXACT_DIGITS = 15; //Any 15 digit integer is exactly representable as a double
 
-        draw(points, type, g, offset, centre, zoom);
+        private final String line;
+        private int position = 0;
 
-        //Draw all of the holes in the polygon with the background colour
-        for (List<Location> hole : holes)
-            draw(hole, 0x4b, g, offset, centre, zoom);
-    }
+        private CoordinateTokenizer(String line) {
+            this.line = line;
+        }
 
-    public void drawLabel(Graphics g, Point offset, Point centre, double zoom) {
-        if (label == null || label.equals("") || zoom < MapViewer.LABEL_ZOOM_CUTOFF)
-            return;
+        /**
+         * @return the number of points in the line, which is the number of opening brackets
+         */
+        private int countPoints() {
+            int count = 0;
+            for (int i = 0; i < line.length(); i++)
+                if (line.charAt(i) == '(')
+                    count++;
 
-        double labelSize = endLevel == 3 ? MapViewer.LABEL_SIZE : MapViewer.LABEL_SIZE * zoom / 6;
+            return count;
+        }
 
-        //Don't draw if the render size is too small
-        if (labelSize < 8)
-            return;
+        /**
+         * Reads the next number, skipping over the brackets and commas before it
+         */
+        private double next() {
+            while (position < line.length() && !isNumberChar(line.charAt(position)))
+                position++;
 
-        g.setFont(MapViewer.LABEL_FONT.deriveFont((float) labelSize));
-        Point labelLocation = approximateCentre.toPoint(MapViewer.WINDOW_SCALE, offset, zoom, centre);
-        Rectangle2D bounds = g.getFontMetrics().getStringBounds(label, g);
+            int start = position;
+            boolean negative = false;
+            boolean fraction = false;
+            boolean simple = true; //False if the number has an exponent, which is left to Double.parseDouble
+            long mantissa = 0;
+            int digits = 0;
+            int fractionDigits = 0;
 
-        if (!g.getClipBounds().contains(labelLocation))
-            return;
+            if (position < line.length() && (line.charAt(position) == '-' || line.charAt(position) == '+'))
+                negative = line.charAt(position++) == '-';
 
-        labelLocation.translate((int) (-bounds.getWidth() / 2), (int) (-bounds.getHeight() / 2));
-        g.drawString(label, labelLocation.x, labelLocation.y);
-    }
+            for (; position < line.length(); position++) {
+                char c = line.charAt(position);
 
-    @Override
-    public int compareTo(Polygon p) {
-        return Integer.compare(SORTING_MAP.get(p.type), SORTING_MAP.get(type));
+                if (c >= '0' && c <= '9') {
+                    if (simple) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        digits++;
+                        if (fraction)
+                            fractionDigits++;
+                    }
+                }
+                else if (c == '.' && !fraction && simple) {
+                    fraction = true;
+                }
+                else if (c == 'e' || c == 'E' || (c == '-' || c == '+') && !simple) {
+                    simple = false;
+                }
+                else {
+                    break;
+                }
+            }
+
+            //Dividing two exact doubles is correctly rounded, so this gives the same result as Double.parseDouble
+            if (!simple || digits > MAX_EXACT_DIGITS || digits == 0)
+                return Double.parseDouble(line.substring(start, position));
+
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+
+        private static boolean isNumberChar(char c) {
+            return c >= '0' && c <= '9' || c == '-' || c == '+' || c == '.';
+        }
     }
 }
@@ -0,0 +1,69 @@
+import java.util.Arrays;
+
+/**
+ * The segments that can be travelled out of a node by any {@link VehicleProfile}. Each segment has a bitmask of the
+ * profiles allowed along it in this direction, and the time each profile takes to travel it, all worked out when the
+ * map is loaded. A search for one profile then just checks its bit against the mask, rather than looking at the road's
+ * access flags, one way flag, and speed for every segment it tries.
+ * <p>
+ * Nothing changes after loading, so searches for different profiles can share the same adjacency at the same time.
+ */
+public class ProfileAdjacency {
+    private RoadSegment[] segments = new RoadSegment[2];
+    private int[] heads = new int[2]; //ID of the node at the other end of each segment
+    private int[] masks = new int[2];
+    private double[][] times = new double[VehicleProfile.values().length][2]; //Travel time in hours, by profile
+    private int size = 0;
+
+    /**
+     * Adds a segment out of the node
+     *
+     * @param segment  the segment
+     * @param headID   ID of the node at the other end of the segment
+     * @param roadInfo the road the segment is part of
+     * @param against  true if the segment is travelled from its second node to its first
+     */
+    public void add(RoadSegment segment, int headID, RoadInfo roadInfo, boolean against) {
+        if (size == segments.length) {
+            segments = Arrays.copyOf(segments, size * 2);
+            heads = Arrays.copyOf(heads, size * 2);
+            masks = Arrays.copyOf(masks, size * 2);
+            for (int i = 0; i < times.length; i++)
+                times[i] = Arrays.copyOf(times[i], size * 2);
+        }
+
+        segments[size] = segment;
+        heads[size] = headID;
+        masks[size] = VehicleProfile.accessMask(roadInfo, against);
+        for (VehicleProfile profile : VehicleProfile.values())
+            times[profile.ordinal()][size] = segment.getLength() / profile.getSpeed(roadInfo);
+
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public RoadSegment getSegment(int index) {
+        return segments[index];
+    }
+
+    public int getHeadID(int index) {
+        return heads[index];
+    }
+
+    /**
+     * @return true if the profile can travel along the segment at the index
+     */
+    public boolean allows(int index, int profileBit) {
+        return (masks[index] & profileBit) != 0;
+    }
+
+    /**
+     * @return the time in hours for the profile to travel along the segment at the index
+     */
+    public double getTime(int index, int profileOrdinal) {
+        return times[profileOrdinal][index];
+    }
+}
@@ -31,7 +31,7 @@ public class QuadTree {
      */
     public boolean insert(Node node) {
         //Check to see if the boundary could contain the node
-        if (!boundary.containsPoint(node.getLocation()))
+        if (!boundary.containsPoint(node.getX(), node.getY()))
             return false;
 
         //Add the node if there is enough room
@@ -81,7 +81,7 @@ public class QuadTree {
 
         //Add any nodes that are within the range to the result list
         for (Node node : nodes)
-            if (range.containsPoint(node.getLocation()))
+            if (range.containsPoint(node.getX(), node.getY()))
                 result.add(node);
 
         if (children[0] == null)
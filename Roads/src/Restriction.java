@@ -17,6 +17,14 @@ public class Restriction {
         nodeID2 = Integer.parseInt(parts[4]);
     }
 
+    public Restriction(int nodeID1, int roadID1, int nodeID, int roadID2, int nodeID2) {
+        this.nodeID1 = nodeID1;
+        this.roadID1 = roadID1;
+        this.nodeID = nodeID;
+        this.roadID2 = roadID2;
+        this.nodeID2 = nodeID2;
+    }
+
     public int getNodeID1() {
         return nodeID1;
     }
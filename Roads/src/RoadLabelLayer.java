@@ -0,0 +1,472 @@
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.font.LineMetrics;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Draws road names along the roads. The segments of each road are joined end to end into polylines once, when the map
+ * is loaded, and each name is bent along its polyline one glyph at a time.
+ * <p>
+ * Placement is done per zoom band (a step of {@link MapViewer#ZOOM_RATE}), in pixels relative to the map's origin, and
+ * only for the tiles of that space that have been on screen. A tile is placed the first time it's drawn, from just the
+ * polylines crossing it (found through a coarse grid of the polylines' bounds), and each name belongs to the tile its
+ * middle lands in. All of a band's tiles share one {@link OccupancyGrid}, so names still don't overlap across tiles.
+ * <p>
+ * Each name's glyph vector is made once and shared by every placement of the name, which only keeps where each glyph
+ * goes and how it's turned. Drawing a frame sets those on the glyph vector of each name on screen and draws it through
+ * a transform, scaled for any zoom between bands.
+ */
+public class RoadLabelLayer {
+    private static final Font FONT = new Font("SansSerif", Font.PLAIN, 11);
+    private static final FontRenderContext FONT_RENDER_CONTEXT = new FontRenderContext(null, true, true);
+    private static final double BASELINE_SHIFT; //Moves the baseline down so the text is centred on the road
+    private static final double CELL_SIZE = 64;
+    private static final double TILE_SIZE = 512; //Pixels along each side of a tile placed at once
+    private static final double INDEX_CELL_SIZE = 1; //Map units along each side of a cell of the polyline grid
+    private static final double REPEAT_DISTANCE = 600; //Pixels between repeats of a name along a long road
+    private static final int MAX_REPEATS = 64; //Most times a name is repeated along one polyline
+    private static final double MAX_BEND = Math.toRadians(40); //Biggest turn allowed between neighbouring glyphs
+    private static final int MAX_CACHED_BANDS = 8;
+
+    static {
+        LineMetrics metrics = FONT.getLineMetrics("Road", FONT_RENDER_CONTEXT);
+        BASELINE_SHIFT = (metrics.getAscent() - metrics.getDescent()) / 2;
+    }
+
+    private final List<Polyline> polylines = new ArrayList<>();
+    private final Map<Long, List<Integer>> polylineGrid = new HashMap<>(); //Indices of the polylines in each cell
+    private final int[] seen; //Stamp of the last tile each polyline was looked at for, so it's only placed once
+    private int stamp = 0;
+    private final Map<String, Glyphs> glyphs = new HashMap<>();
+    private final Map<Integer, Band> bands = new LinkedHashMap<Integer, Band>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Band> eldest) {
+            return size() > MAX_CACHED_BANDS;
+        }
+    };
+    private final List<PlacedName> visible = new ArrayList<>(); //Reused by every draw
+    private final Rectangle clip = new Rectangle();
+    private final AffineTransform transform = new AffineTransform();
+    private final AffineTransform glyphTransform = new AffineTransform();
+    private final Point2D.Double glyphPosition = new Point2D.Double();
+
+    /**
+     * @param map the map whose road names to draw
+     */
+    public RoadLabelLayer(RoadMap map) {
+        map.getRoadToRoadSegmentsTable().forEach((roadID, segments) -> {
+            RoadInfo info = map.getRoadInfoLookupTable().get(roadID);
+            if (info == null || info.getLabel().equals("Unnamed road"))
+                return;
+
+            for (double[][] points : join(segments))
+                polylines.add(new Polyline(info.getLabel(), info.getRoadClass(), points[0], points[1]));
+        });
+
+        //Bigger roads get their names placed first, then longer roads before shorter ones
+        polylines.sort(Comparator.comparingInt((Polyline polyline) -> polyline.roadClass).reversed()
+                .thenComparing(Comparator.comparingDouble((Polyline polyline) -> polyline.length).reversed()));
+
+        for (int i = 0; i < polylines.size(); i++) {
+            Polyline polyline = polylines.get(i);
+            for (long x = indexCell(polyline.minX); x <= indexCell(polyline.maxX); x++)
+                for (long y = indexCell(polyline.minY); y <= indexCell(polyline.maxY); y++)
+                    polylineGrid.computeIfAbsent(key(x, y), v -> new ArrayList<>()).add(i);
+        }
+
+        seen = new int[polylines.size()];
+    }
+
+    /**
+     * Draws the road names that fit on screen
+     *
+     * @param g      graphics object to draw to
+     * @param offset offset from the origin (how much the map has been translated by)
+     * @param centre centre of the window
+     * @param zoom   zoom factor of the map
+     */
+    public void draw(Graphics g, Point offset, Point centre, double zoom) {
+        if (polylines.isEmpty() || zoom < MapViewer.ROAD_LABEL_ZOOM_CUTOFF)
+            return;
+
+        int bandNumber = (int) Math.round(Math.log(zoom) / Math.log(MapViewer.ZOOM_RATE));
+        Band band = bands.computeIfAbsent(bandNumber, Band::new);
+
+        //Placement space is pixels from the origin at the band's zoom, so it's scaled by how far the zoom is from that
+        double bandScale = zoom / Math.pow(MapViewer.ZOOM_RATE, bandNumber);
+        double translateX = offset.x * zoom + centre.x;
+        double translateY = offset.y * zoom + centre.y;
+        PointBuffer.visibleBounds(g, centre, clip);
+        if (clip.isEmpty())
+            return;
+
+        double minU = (clip.x - translateX) / bandScale;
+        double minV = (clip.y - translateY) / bandScale;
+        double maxU = (clip.x + clip.width - translateX) / bandScale;
+        double maxV = (clip.y + clip.height - translateY) / bandScale;
+        for (long tileX = tile(minU); tileX <= tile(maxU); tileX++)
+            for (long tileY = tile(minV); tileY <= tile(maxV); tileY++)
+                if (band.placedTiles.add(key(tileX, tileY)))
+                    place(band, tileX, tileY);
+
+        visible.clear();
+        band.placement.query(minU, minV, maxU, maxV, visible);
+        if (visible.isEmpty())
+            return;
+
+        Graphics2D g2d = (Graphics2D) g;
+        AffineTransform saved = g2d.getTransform();
+        Object antialiasing = g2d.getRenderingHint(RenderingHints.KEY_ANTIALIASING);
+        transform.setTransform(bandScale, 0, 0, bandScale, translateX, translateY);
+
+        //Each name's glyphs are moved and turned into place on its label's shared glyph vector just before drawing it
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g2d.transform(transform);
+        for (PlacedName name : visible) {
+            GlyphVector glyphVector = name.glyphs.glyphVector;
+            for (int i = 0; i < name.angles.length; i++) {
+                glyphPosition.setLocation(name.xs[i], name.ys[i]);
+                glyphVector.setGlyphPosition(i, glyphPosition);
+                glyphTransform.setToRotation(name.angles[i]);
+                glyphVector.setGlyphTransform(i, glyphTransform);
+            }
+
+            g2d.drawGlyphVector(glyphVector, 0, 0);
+        }
+
+        g2d.setTransform(saved);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, antialiasing);
+    }
+
+    /**
+     * Places the road names whose middles land in a tile of a zoom band, most important first. Names from tiles placed
+     * earlier are already in the band's grid, so they take priority near the tile's edges
+     */
+    private void place(Band band, long tileX, long tileY) {
+        double scale = band.scale;
+        double minU = tileX * TILE_SIZE;
+        double minV = tileY * TILE_SIZE;
+        double maxU = minU + TILE_SIZE;
+        double maxV = minV + TILE_SIZE;
+
+        //Find the polylines near the tile, in map units, where y points up
+        stamp++;
+        List<Integer> nearby = new ArrayList<>();
+        for (long x = indexCell(minU / scale); x <= indexCell(maxU / scale); x++) {
+            for (long y = indexCell(-maxV / scale); y <= indexCell(-minV / scale); y++) {
+                for (int i : polylineGrid.getOrDefault(key(x, y), Collections.emptyList())) {
+                    if (seen[i] != stamp) {
+                        seen[i] = stamp;
+                        nearby.add(i);
+                    }
+                }
+            }
+        }
+
+        Collections.sort(nearby); //Back into order of importance
+        double[] point = new double[3];
+        for (int index : nearby) {
+            Polyline polyline = polylines.get(index);
+            if (polyline.maxX * scale < minU || polyline.minX * scale > maxU
+                    || -polyline.minY * scale < minV || -polyline.maxY * scale > maxV)
+                continue;
+
+            Glyphs name = glyphs.computeIfAbsent(polyline.label, Glyphs::new);
+            double length = polyline.length * scale;
+
+            //Leave a bit of road showing at each end of the name
+            if (length < name.width * 1.25)
+                continue;
+
+            //Project the polyline, and find how far along it each point is
+            int n = polyline.xs.length;
+            double[] us = new double[n];
+            double[] vs = new double[n];
+            double[] distances = new double[n];
+            for (int i = 0; i < n; i++) {
+                us[i] = polyline.xs[i] * scale;
+                vs[i] = -polyline.ys[i] * scale;
+                if (i > 0)
+                    distances[i] = distances[i - 1] + Math.hypot(us[i] - us[i - 1], vs[i] - vs[i - 1]);
+            }
+
+            //Long roads get their name repeated, spaced evenly along them, but only the repeats in this tile are laid out
+            int repeats = Math.min(MAX_REPEATS, Math.max(1, (int) (length / REPEAT_DISTANCE)));
+            for (int i = 0; i < repeats; i++) {
+                double middle = length * (i + 0.5) / repeats;
+                pointAt(us, vs, distances, middle, point);
+                if (point[0] < minU || point[0] >= maxU || point[1] < minV || point[1] >= maxV)
+                    continue;
+
+                PlacedName placed = layout(name, us, vs, distances, middle - name.width / 2);
+                if (placed != null && !band.placement.overlaps(placed.box))
+                    band.placement.add(placed.box, placed);
+            }
+        }
+    }
+
+    /**
+     * Bends a name along part of a polyline, placing each glyph's middle on the line and turning it to follow it. The
+     * name is flipped if the line runs right to left, so it's never upside down
+     *
+     * @param start distance along the polyline the name starts at
+     * @return where each glyph of the name goes, or null if the line bends too sharply under it
+     */
+    private static PlacedName layout(Glyphs name, double[] us, double[] vs, double[] distances, double start) {
+        double[] point = new double[3];
+        pointAt(us, vs, distances, start, point);
+        double startU = point[0];
+        pointAt(us, vs, distances, start + name.width, point);
+        boolean flipped = point[0] < startU;
+
+        int count = name.bounds.length;
+        PlacedName placed = new PlacedName(name);
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double previousAngle = Double.NaN;
+        for (int i = 0; i < count; i++) {
+            double middle = name.middles[i];
+            pointAt(us, vs, distances, flipped ? start + name.width - middle : start + middle, point);
+            double angle = flipped ? point[2] + Math.PI : point[2];
+
+            double bend = Math.IEEEremainder(angle - previousAngle, 2 * Math.PI);
+            if (!Double.isNaN(previousAngle) && Math.abs(bend) > MAX_BEND)
+                return null;
+
+            previousAngle = angle;
+
+            //The glyph's origin is moved so that its middle lands on the line once it's rotated about the origin
+            double cos = Math.cos(angle);
+            double sin = Math.sin(angle);
+            double dx = name.xs[i] - middle;
+            double x = point[0] + dx * cos - BASELINE_SHIFT * sin;
+            double y = point[1] + dx * sin + BASELINE_SHIFT * cos;
+            placed.xs[i] = (float) x;
+            placed.ys[i] = (float) y;
+            placed.angles[i] = (float) angle;
+
+            //Grow the box by the corners of the glyph's bounds, turned with it
+            Rectangle2D bounds = name.bounds[i];
+            for (int corner = 0; corner < 4; corner++) {
+                double cornerX = corner < 2 ? bounds.getMinX() : bounds.getMaxX();
+                double cornerY = corner % 2 == 0 ? bounds.getMinY() : bounds.getMaxY();
+                double u = x + cornerX * cos - cornerY * sin;
+                double v = y + cornerX * sin + cornerY * cos;
+                minX = Math.min(minX, u);
+                minY = Math.min(minY, v);
+                maxX = Math.max(maxX, u);
+                maxY = Math.max(maxY, v);
+            }
+        }
+
+        placed.box = new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+        return placed;
+    }
+
+    /**
+     * Finds the point a distance along a polyline, and the direction of the line there
+     *
+     * @param result set to the x and y of the point, and the angle of the line in radians
+     */
+    private static void pointAt(double[] us, double[] vs, double[] distances, double distance, double[] result) {
+        int i = Arrays.binarySearch(distances, distance);
+        if (i < 0)
+            i = -i - 2; //The index of the point before the distance
+
+        i = Math.max(0, Math.min(i, us.length - 2));
+
+        double segmentLength = distances[i + 1] - distances[i];
+        double t = segmentLength == 0 ? 0 : (distance - distances[i]) / segmentLength;
+        result[0] = us[i] + (us[i + 1] - us[i]) * t;
+        result[1] = vs[i] + (vs[i + 1] - vs[i]) * t;
+        result[2] = Math.atan2(vs[i + 1] - vs[i], us[i + 1] - us[i]);
+    }
+
+    /**
+     * Joins the segments of a road end to end into as few polylines as possible. Segments run from their first node to
+     * their second, so a segment is reversed when it's joined the other way around
+     *
+     * @return the x and y coordinates of each polyline
+     */
+    private static List<double[][]> join(List<RoadSegment> segments) {
+        Map<Integer, List<Integer>> segmentsAtNode = new HashMap<>();
+        for (int i = 0; i < segments.size(); i++) {
+            segmentsAtNode.computeIfAbsent(segments.get(i).getNodeID1(), v -> new ArrayList<>()).add(i);
+            segmentsAtNode.computeIfAbsent(segments.get(i).getNodeID2(), v -> new ArrayList<>()).add(i);
+        }
+
+        boolean[] used = new boolean[segments.size()];
+        List<double[][]> polylines = new ArrayList<>();
+
+        for (int first = 0; first < segments.size(); first++) {
+            if (used[first])
+                continue;
+
+            //Each segment in the chain is stored as its index, negated (less one) if it's reversed
+            Deque<Integer> chain = new ArrayDeque<>();
+            chain.add(first);
+            used[first] = true;
+
+            //Grow the chain forwards from the end, then backwards from the start
+            int end = segments.get(first).getNodeID2();
+            for (int next; (next = unused(segmentsAtNode, used, end)) >= 0; ) {
+                used[next] = true;
+                boolean reversed = segments.get(next).getNodeID1() != end;
+                chain.addLast(reversed ? -next - 1 : next);
+                end = reversed ? segments.get(next).getNodeID1() : segments.get(next).getNodeID2();
+            }
+
+            int start = segments.get(first).getNodeID1();
+            for (int previous; (previous = unused(segmentsAtNode, used, start)) >= 0; ) {
+                used[previous] = true;
+                boolean reversed = segments.get(previous).getNodeID2() != start;
+                chain.addFirst(reversed ? -previous - 1 : previous);
+                start = reversed ? segments.get(previous).getNodeID2() : segments.get(previous).getNodeID1();
+            }
+
+            //Copy the points along the chain, skipping the point each segment shares with the one before it
+            int count = 1;
+            for (int entry : chain)
+                count += segments.get(entry < 0 ? -entry - 1 : entry).getPointCount() - 1;
+
+            double[] xs = new double[count];
+            double[] ys = new double[count];
+            int k = 0;
+            for (int entry : chain) {
+                RoadSegment segment = segments.get(entry < 0 ? -entry - 1 : entry);
+                int n = segment.getPointCount();
+                for (int j = k == 0 ? 0 : 1; j < n; j++) {
+                    int index = entry < 0 ? n - 1 - j : j;
+                    xs[k] = segment.getXs()[index];
+                    ys[k] = segment.getYs()[index];
+                    k++;
+                }
+            }
+
+            if (count >= 2)
+                polylines.add(new double[][]{xs, ys});
+        }
+
+        return polylines;
+    }
+
+    /**
+     * @return the index of a segment at the node that hasn't been joined yet, or -1 if there isn't one
+     */
+    private static int unused(Map<Integer, List<Integer>> segmentsAtNode, boolean[] used, int nodeID) {
+        for (int i : segmentsAtNode.getOrDefault(nodeID, Collections.emptyList()))
+            if (!used[i])
+                return i;
+
+        return -1;
+    }
+
+    private static long tile(double pixel) {
+        return (long) Math.floor(pixel / TILE_SIZE);
+    }
+
+    private static long indexCell(double mapUnits) {
+        return (long) Math.floor(mapUnits / INDEX_CELL_SIZE);
+    }
+
+    private static long key(long x, long y) {
+        return (x << 32) ^ (y & 0xffffffffL);
+    }
+
+    /**
+     * The names placed so far at one zoom band, and which of its tiles have been placed
+     */
+    private static class Band {
+        private final double scale; //Pixels per map unit
+        private final OccupancyGrid<PlacedName> placement = new OccupancyGrid<>(CELL_SIZE);
+        private final Set<Long> placedTiles = new HashSet<>();
+
+        private Band(int band) {
+            this.scale = MapViewer.WINDOW_SCALE * Math.pow(MapViewer.ZOOM_RATE, band);
+        }
+    }
+
+    /**
+     * The glyph vector of a name, made once and shared by every placement of it, with where each glyph sits along the
+     * unbent name. Each glyph's bounds are relative to its own origin, so a placement only needs to move and turn them
+     */
+    private static class Glyphs {
+        private final GlyphVector glyphVector;
+        private final Rectangle2D[] bounds;
+        private final double[] xs; //Where each glyph's origin is along the unbent name
+        private final double[] middles; //Where the middle of each glyph is along the unbent name
+        private final double width;
+
+        private Glyphs(String label) {
+            glyphVector = FONT.createGlyphVector(FONT_RENDER_CONTEXT, label);
+            int count = glyphVector.getNumGlyphs();
+            bounds = new Rectangle2D[count];
+            xs = new double[count];
+            middles = new double[count];
+            width = glyphVector.getLogicalBounds().getWidth();
+
+            for (int i = 0; i < count; i++) {
+                Point2D position = glyphVector.getGlyphPosition(i);
+                bounds[i] = glyphVector.getGlyphOutline(i, (float) -position.getX(), (float) -position.getY())
+                        .getBounds2D();
+                xs[i] = position.getX();
+                middles[i] = xs[i] + glyphVector.getGlyphMetrics(i).getAdvance() / 2;
+            }
+        }
+    }
+
+    /**
+     * A name placed along a road: the position and rotation of each of its glyphs, in pixels from the map's origin at
+     * its band's zoom
+     */
+    private static class PlacedName {
+        private final Glyphs glyphs;
+        private final float[] xs;
+        private final float[] ys;
+        private final float[] angles;
+        private Rectangle2D box;
+
+        private PlacedName(Glyphs glyphs) {
+            this.glyphs = glyphs;
+            this.xs = new float[glyphs.bounds.length];
+            this.ys = new float[glyphs.bounds.length];
+            this.angles = new float[glyphs.bounds.length];
+        }
+    }
+
+    private static class Polyline {
+        private final String label;
+        private final int roadClass;
+        private final double[] xs;
+        private final double[] ys;
+        private final double length; //In map units
+        private final double minX;
+        private final double minY;
+        private final double maxX;
+        private final double maxY;
+
+        private Polyline(String label, int roadClass, double[] xs, double[] ys) {
+            this.label = label;
+            this.roadClass = roadClass;
+            this.xs = xs;
+            this.ys = ys;
+
+            double length = 0;
+            for (int i = 1; i < xs.length; i++)
+                length += Math.hypot(xs[i] - xs[i - 1], ys[i] - ys[i - 1]);
+
+            this.length = length;
+            this.minX = Arrays.stream(xs).min().orElse(0);
+            this.minY = Arrays.stream(ys).min().orElse(0);
+            this.maxX = Arrays.stream(xs).max().orElse(0);
+            this.maxY = Arrays.stream(ys).max().orElse(0);
+        }
+    }
+}
@@ -0,0 +1,907 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Holds all of the data loaded for a map, along with the indices built over it. Nothing in here depends on the GUI,
+ * so a map can be loaded and searched headlessly
+ */
+public class RoadMap {
+    private static final int POLYGONS_PER_CHUNK = 256; //Number of polygons parsed together on one thread
+    //Every load gets a new version, unique across all maps, so that anything cached against an old map can be thrown away
+    private static final AtomicInteger VERSIONS = new AtomicInteger();
+
+    private static final Histogram LOAD_NODES_AND_ROADS = Metrics.timer("load.nodesAndRoads");
+    private static final Histogram LOAD_SEGMENTS = Metrics.timer("load.segments");
+    private static final Histogram LOAD_EXTRAS = Metrics.timer("load.extras");
+    private static final Histogram LOAD_TILED_STORE = Metrics.timer("load.tiledStore");
+    private static final Histogram LOAD_TILED_EXTRAS = Metrics.timer("load.tiledExtras");
+
+    private HashMap<Integer, Node> nodeLookupTable = new HashMap<>();
+    private HashMap<Integer, List<RoadSegment>> nodeAdjacencyTable = new HashMap<>();
+    private HashMap<Integer, List<RoadSegment>> reverseAdjacencyTable = new HashMap<>();
+    private HashMap<Integer, ProfileAdjacency> profileAdjacencyTable = new HashMap<>();
+    private HashMap<Integer, List<Node>> neighbouringNodesTable = new HashMap<>();
+    private HashMap<Integer, List<RoadSegment>> roadToRoadSegmentsTable = new HashMap<>();
+    private HashMap<Integer, RoadInfo> roadInfoLookupTable = new HashMap<>();
+    private HashMap<Integer, List<Restriction>> restrictionsMap = new HashMap<>();
+    private List<Polygon> polygons = new ArrayList<>();
+    private SpeedProfiles speedProfiles = new SpeedProfiles();
+    private ConnectedComponents components = new ConnectedComponents();
+
+    private SearchTrie<RoadInfo> roadSearchTrie = new SearchTrie<>();
+    private QuadTree nodeQuadTree = QuadTree.EMPTY;
+
+    private RouteFinder routeFinder = new RouteFinder(nodeLookupTable, nodeAdjacencyTable, reverseAdjacencyTable,
+            profileAdjacencyTable, roadInfoLookupTable, restrictionsMap, speedProfiles, components);
+    private OverlayGraph overlayGraph = null; //Only built once it's first needed
+    private HubLabels hubLabels = null; //Only built once they're first needed
+    private TourPlanner tourPlanner = null; //Only built once it's first needed
+    private BetweennessCentrality centrality = null; //Only built once it's first needed
+    private TiledRoadStore tiledStore = null; //Only set if the map was loaded with loadTiled
+    private TiledRouteFinder tiledRouteFinder = null;
+    private int version = 0;
+
+    private boolean hilbertOrdering = true;
+    private HashMap<Integer, Integer> renumbering = new HashMap<>(); //Maps file node ID -> node ID, only while loading
+
+    /**
+     * Loads the map from the given files, replacing anything that was previously loaded. Only the nodes, roads, and
+     * segments files are required, the rest may be null
+     *
+     * @param nodes         a File for nodeID-lat-lon.tab
+     * @param roads         a File for roadID-roadInfo.tab
+     * @param segments      a File for roadSeg-roadID-length-nodeID-nodeID-coords.tab
+     * @param polygons      a File for polygon-shapes.mp
+     * @param restrictions  a File for restrictions.tab
+     * @param trafficLights a File for traffic-lights.tab
+     * @return true if the required files were loaded
+     */
+    public boolean load(File nodes, File roads, File segments, File polygons, File restrictions, File trafficLights) {
+        return load(nodes, roads, segments, polygons, restrictions, trafficLights, null, new LoadProgress());
+    }
+
+    /**
+     * Loads the map from the given files in stages, reading the files within each stage in parallel:
+     * <ol>
+     * <li>nodes (renumbering them along a Hilbert curve, then building the quad tree) and roads (building the search
+     * trie)</li>
+     * <li>segments, which need both the nodes and the roads</li>
+     * <li>restrictions, polygons, traffic lights, and speed profiles, while the connected components are labelled</li>
+     * </ol>
+     *
+     * @param speedProfiles a File for roadID-speedProfile.tab, which may be null
+     * @param progress      where to report progress to, and check for cancellation
+     * @return true if the required files were loaded
+     * @throws CancellationException if the load was cancelled through the progress object
+     * @see #load(File, File, File, File, File, File)
+     */
+    public boolean load(File nodes, File roads, File segments, File polygons, File restrictions, File trafficLights,
+                        File speedProfiles, LoadProgress progress) {
+        clear();
+
+        try {
+            long start = System.nanoTime();
+            progress.setStage("Reading nodes and roads");
+            CompletableFuture.allOf(
+                    async(() -> loadNodes(nodes, progress)),
+                    async(() -> loadRoads(roads, progress))
+            ).join();
+            start = Metrics.recordSince(LOAD_NODES_AND_ROADS, start);
+
+            progress.setStage("Reading segments");
+            loadSegments(segments, progress);
+            start = Metrics.recordSince(LOAD_SEGMENTS, start);
+
+            progress.setStage("Reading restrictions, polygons, traffic lights, and speed profiles");
+            CompletableFuture.allOf(
+                    async(() -> components.build(nodeLookupTable, nodeAdjacencyTable)),
+                    async(optional(() -> loadRestrictions(restrictions, progress))),
+                    async(optional(() -> loadPolygons(polygons, progress))),
+                    async(optional(() -> loadTrafficLights(trafficLights, progress))),
+                    async(optional(() -> loadSpeedProfiles(speedProfiles, progress)))
+            ).join();
+            Metrics.recordSince(LOAD_EXTRAS, start);
+        }
+        catch (CompletionException e) {
+            return failed(e.getCause());
+        }
+        catch (Exception e) {
+            return failed(e);
+        }
+        finally {
+            renumbering = new HashMap<>();
+        }
+
+        return true;
+    }
+
+    /**
+     * Sets whether loading renumbers the nodes along a Hilbert curve (which it does by default), so that nodes near
+     * each other on the map are near each other in memory. Otherwise the nodes keep the IDs from the nodes file. Only
+     * affects maps loaded afterwards, and not tiled maps, whose tiles already group nodes by location
+     */
+    public void setHilbertOrdering(boolean hilbertOrdering) {
+        this.hilbertOrdering = hilbertOrdering;
+    }
+
+    /**
+     * Loads the map with the nodes and segments kept on disk in a {@link TiledRoadStore}, replacing anything that was
+     * previously loaded. The store is built in the given directory first if it is missing or older than the files.
+     * Roads, restrictions, and polygons are still loaded onto the heap, but the node and segment tables stay empty
+     *
+     * @param nodes         a File for nodeID-lat-lon.tab
+     * @param roads         a File for roadID-roadInfo.tab
+     * @param segments      a File for roadSeg-roadID-length-nodeID-nodeID-coords.tab
+     * @param polygons      a File for polygon-shapes.mp
+     * @param restrictions  a File for restrictions.tab
+     * @param trafficLights a File for traffic-lights.tab
+     * @param directory     the directory to keep the store in
+     * @param progress      where to report progress to, and check for cancellation. Building the store isn't
+     *                      counted towards the progress, and can't be cancelled part way through
+     * @return true if the required files were loaded
+     * @throws CancellationException if the load was cancelled through the progress object
+     */
+    public boolean loadTiled(File nodes, File roads, File segments, File polygons, File restrictions, File trafficLights,
+                             File directory, LoadProgress progress) {
+        clear();
+
+        try {
+            long start = System.nanoTime();
+            progress.setStage("Opening tiled store and reading roads");
+            CompletableFuture.allOf(
+                    async(() -> {
+                        if (!TiledRoadStore.isUpToDate(directory, nodes, roads, segments, trafficLights))
+                            TiledRoadStore.build(nodes, roads, segments, trafficLights, directory);
+
+                        tiledStore = TiledRoadStore.open(directory);
+                    }),
+                    async(() -> loadRoads(roads, progress))
+            ).join();
+
+            tiledRouteFinder = new TiledRouteFinder(tiledStore, roadInfoLookupTable, restrictionsMap);
+            start = Metrics.recordSince(LOAD_TILED_STORE, start);
+
+            progress.setStage("Reading restrictions and polygons");
+            CompletableFuture.allOf(
+                    async(optional(() -> loadRestrictions(restrictions, progress))),
+                    async(optional(() -> loadPolygons(polygons, progress)))
+            ).join();
+            Metrics.recordSince(LOAD_TILED_EXTRAS, start);
+        }
+        catch (CompletionException e) {
+            return failed(e.getCause());
+        }
+        catch (Exception e) {
+            return failed(e);
+        }
+
+        return true;
+    }
+
+    /**
+     * Handles a load that didn't finish. Cancellation is passed on to the caller, anything else is printed
+     *
+     * @return false
+     */
+    private boolean failed(Throwable cause) {
+        if (cause instanceof CancellationException)
+            throw (CancellationException) cause;
+
+        cause.printStackTrace();
+        return false;
+    }
+
+    /**
+     * Throws away the loaded map, closing the tiled store if there is one
+     */
+    private void clear() {
+        nodeLookupTable.clear();
+        nodeAdjacencyTable.clear();
+        reverseAdjacencyTable.clear();
+        profileAdjacencyTable.clear();
+        neighbouringNodesTable.clear();
+        roadToRoadSegmentsTable.clear();
+        roadInfoLookupTable.clear();
+        restrictionsMap.clear();
+        this.polygons.clear();
+        speedProfiles.clear();
+        components.clear();
+        overlayGraph = null;
+        hubLabels = null;
+        tourPlanner = null;
+        centrality = null;
+
+        roadSearchTrie = new SearchTrie<>();
+        nodeQuadTree = QuadTree.EMPTY;
+        version = VERSIONS.incrementAndGet();
+
+        close();
+    }
+
+    /**
+     * Closes the tiled store, if the map was loaded with one. The map is unusable afterwards until it is loaded again
+     */
+    public void close() {
+        if (tiledStore != null) {
+            try {
+                tiledStore.close();
+            }
+            catch (IOException e) {
+                e.printStackTrace();
+            }
+
+            tiledStore = null;
+            tiledRouteFinder = null;
+        }
+    }
+
+    /**
+     * A step of loading, which reads a file
+     */
+    private interface LoadStep {
+        void run() throws IOException;
+    }
+
+    /**
+     * Runs a step of loading on another thread
+     */
+    private static CompletableFuture<Void> async(LoadStep step) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                step.run();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Wraps a step which reads an optional file, so that a missing or broken file is printed rather than stopping
+     * the load
+     */
+    private static LoadStep optional(LoadStep step) {
+        return () -> {
+            try {
+                step.run();
+            }
+            catch (CancellationException e) {
+                throw e;
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        };
+    }
+
+    /**
+     * Reads the nodes into the lookup table, renumbers them if the map is ordered along a Hilbert curve, then builds
+     * the quad tree over them
+     */
+    private void loadNodes(File nodes, LoadProgress progress) throws IOException {
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(nodes))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                progress.read(line.length() + 1);
+
+                Node node = new Node(line);
+                nodeLookupTable.put(node.getID(), node);
+
+                if (node.getX() < minX) minX = node.getX();
+                if (node.getY() < minY) minY = node.getY();
+                if (node.getX() > maxX) maxX = node.getX();
+                if (node.getY() > maxY) maxY = node.getY();
+            }
+        }
+
+        //Copy the nodes in curve order, so they're allocated (and hashed into the tables) in that order
+        if (hilbertOrdering) {
+            Node[] sorted = HilbertOrder.sort(nodeLookupTable.values());
+            nodeLookupTable.clear();
+
+            for (int id = 0; id < sorted.length; id++) {
+                renumbering.put(sorted[id].getID(), id);
+                nodeLookupTable.put(id, new Node(id, sorted[id]));
+            }
+        }
+
+        //Calculate the size of the bounding box for the quad tree
+        double width = maxX - minX;
+        double height = maxY - minY;
+        double size = width > height ? width : height;
+
+        //Initialise the quad tree
+        QuadTree quadTree = new QuadTree(new BoundingBox(new Location(minX, minY), size));
+        nodeLookupTable.values().forEach(quadTree::insert);
+        nodeQuadTree = quadTree;
+    }
+
+    /**
+     * Reads the roads into the lookup table and search trie
+     */
+    private void loadRoads(File roads, LoadProgress progress) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(roads))) {
+            reader.readLine(); //Ignore header line
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                progress.read(line.length() + 1);
+
+                RoadInfo roadInfo = new RoadInfo(line);
+
+                //Add the roadInfo to the lookup table and the trie
+                roadInfoLookupTable.put(roadInfo.getID(), roadInfo);
+                roadSearchTrie.insert(roadInfo.getLabel(), roadInfo);
+            }
+        }
+    }
+
+    /**
+     * Gets the node ID a node in the files was given when the nodes were renumbered
+     */
+    private int renumber(int nodeID) {
+        if (renumbering.isEmpty())
+            return nodeID;
+
+        Integer id = renumbering.get(nodeID);
+        return id != null ? id : ~nodeID; //A node missing from the nodes file can't be given the ID of one that isn't
+    }
+
+    /**
+     * @return the lower of the renumbered IDs of a segment's nodes, read straight from its line in the segments file
+     */
+    private int firstRenumberedNode(String line) {
+        int nodeStart = line.indexOf('\t', line.indexOf('\t') + 1) + 1;
+        int nodeEnd = line.indexOf('\t', nodeStart);
+        int secondEnd = line.indexOf('\t', nodeEnd + 1);
+        if (secondEnd < 0)
+            secondEnd = line.length();
+
+        return Math.min(renumber(Integer.parseInt(line, nodeStart, nodeEnd, 10)),
+                renumber(Integer.parseInt(line, nodeEnd + 1, secondEnd, 10)));
+    }
+
+    /**
+     * Reads the segments into the adjacency tables. If the nodes were renumbered, the segments are renumbered to match
+     * and added in the order of their first node, so each node's segments sit together in memory
+     */
+    private void loadSegments(File segments, LoadProgress progress) throws IOException {
+        List<String> lines = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(segments))) {
+            reader.readLine(); //Ignore header line
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                progress.read(line.length() + 1);
+
+                lines.add(line);
+            }
+        }
+
+        List<RoadSegment> roadSegments = new ArrayList<>(lines.size());
+        if (renumbering.isEmpty()) {
+            for (String line : lines)
+                roadSegments.add(new RoadSegment(line));
+        }
+        else {
+            //Sort the lines by the segment's first node once renumbered, with the line's index as the tie break, then
+            //make each segment (and its coordinates) just once, in that order
+            long[] order = new long[lines.size()];
+            for (int i = 0; i < order.length; i++)
+                order[i] = (long) firstRenumberedNode(lines.get(i)) << 32 | i;
+
+            Arrays.sort(order);
+            for (long entry : order)
+                roadSegments.add(new RoadSegment(lines.get((int) entry), this::renumber));
+        }
+
+        lines = null; //The lines aren't needed once the segments are made
+
+        for (RoadSegment roadSegment : roadSegments) {
+            //Add the roadSegment to all of the required tables and positions
+            //One way roads can only be travelled from nodeID1 to nodeID2, so they only go out of nodeID1 and only
+            // come into nodeID2
+            RoadInfo roadInfo = roadInfoLookupTable.get(roadSegment.getID());
+            boolean oneWay = roadInfo.isOneWay();
+            nodeAdjacencyTable.computeIfAbsent(roadSegment.getNodeID1(), v -> new ArrayList<>()).add(roadSegment);
+            List<RoadSegment> list = nodeAdjacencyTable.computeIfAbsent(roadSegment.getNodeID2(), v -> new ArrayList<>());
+            if (!oneWay)
+                list.add(roadSegment);
+
+            reverseAdjacencyTable.computeIfAbsent(roadSegment.getNodeID2(), v -> new ArrayList<>()).add(roadSegment);
+            list = reverseAdjacencyTable.computeIfAbsent(roadSegment.getNodeID1(), v -> new ArrayList<>());
+            if (!oneWay)
+                list.add(roadSegment);
+
+            //Every segment goes out of both of its nodes here, with the one way rule left to the access masks
+            profileAdjacencyTable.computeIfAbsent(roadSegment.getNodeID1(), v -> new ProfileAdjacency())
+                    .add(roadSegment, roadSegment.getNodeID2(), roadInfo, false);
+            profileAdjacencyTable.computeIfAbsent(roadSegment.getNodeID2(), v -> new ProfileAdjacency())
+                    .add(roadSegment, roadSegment.getNodeID1(), roadInfo, true);
+
+            neighbouringNodesTable.computeIfAbsent(roadSegment.getNodeID1(), v -> new ArrayList<>()).add(nodeLookupTable.get(roadSegment.getNodeID2()));
+            neighbouringNodesTable.computeIfAbsent(roadSegment.getNodeID2(), v -> new ArrayList<>()).add(nodeLookupTable.get(roadSegment.getNodeID1()));
+            roadToRoadSegmentsTable.computeIfAbsent(roadSegment.getID(), v -> new ArrayList<>()).add(roadSegment);
+        }
+    }
+
+    /**
+     * Reads the turn restrictions, if there is a restrictions file
+     */
+    private void loadRestrictions(File restrictions, LoadProgress progress) throws IOException {
+        if (restrictions == null)
+            return;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(restrictions))) {
+            reader.readLine(); //Ignore header line
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                progress.read(line.length() + 1);
+
+                Restriction restriction = new Restriction(line);
+                if (!renumbering.isEmpty())
+                    restriction = new Restriction(renumber(restriction.getNodeID1()), restriction.getRoadID1(),
+                            renumber(restriction.getNodeID()), restriction.getRoadID2(),
+                            renumber(restriction.getNodeID2()));
+
+                restrictionsMap.computeIfAbsent(restriction.getNodeID(), v -> new ArrayList<>()).add(restriction);
+            }
+        }
+    }
+
+    /**
+     * Reads and sorts the polygons, if there is a polygons file
+     */
+    private void loadPolygons(File polygons, LoadProgress progress) throws IOException {
+        if (polygons == null)
+            return;
+
+        //The records are split into chunks as they're read, and each chunk's coordinates are parsed on another thread
+        //while the rest of the file is read. The chunks are joined back together in the order they were read
+        List<CompletableFuture<List<Polygon>>> chunks = new ArrayList<>();
+        List<Supplier<Polygon>> chunk = new ArrayList<>();
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(polygons))) {
+            String line, type = "0", label = "", endLevel = "";
+            List<String> data = new ArrayList<>();
+            while ((line = reader.readLine()) != null) {
+                progress.read(line.length() + 1);
+
+                if (line.equals("[POLYGON]")) { //Starting construction of a new polygon
+                    type = "0";
+                    label = "";
+                    endLevel = "";
+                    data = new ArrayList<>();
+                }
+                else if (line.startsWith("Type")) { //Only parse the lines we want
+                    type = line.substring(7);
+                }
+                else if (line.startsWith("Label")) {
+                    label = line.substring(6);
+                }
+                else if (line.startsWith("EndLevel")) {
+                    endLevel = line.substring(9);
+                }
+                else if (line.startsWith("Data")) {
+                    data.add(line.substring(6));
+                }
+                else if (line.equals("[END]")) { //Finished reading the polygon, so it can be parsed
+                    String t = type, l = label, e = endLevel;
+                    List<String> d = data;
+                    chunk.add(() -> new Polygon(t, l, e, d));
+
+                    if (chunk.size() == POLYGONS_PER_CHUNK) {
+                        chunks.add(parseAsync(chunk));
+                        chunk = new ArrayList<>();
+                    }
+                }
+            }
+        }
+        chunks.add(parseAsync(chunk));
+
+        List<Polygon> parsed = new ArrayList<>();
+        for (CompletableFuture<List<Polygon>> future : chunks)
+            parsed.addAll(future.join());
+
+        //Sort the polygon list
+        Polygon.sortByLayer(parsed);
+        this.polygons.addAll(parsed);
+    }
+
+    /**
+     * Parses a chunk of polygon records on another thread
+     */
+    private static CompletableFuture<List<Polygon>> parseAsync(List<Supplier<Polygon>> chunk) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<Polygon> parsed = new ArrayList<>(chunk.size());
+            for (Supplier<Polygon> record : chunk)
+                parsed.add(record.get());
+
+            return parsed;
+        });
+    }
+
+    /**
+     * Marks the nodes which have traffic lights, if there is a traffic lights file
+     */
+    private void loadTrafficLights(File trafficLights, LoadProgress progress) throws IOException {
+        if (trafficLights == null)
+            return;
+
+        TrafficLightIndex lights = new TrafficLightIndex();
+        //Traffic lights data from https://raw.githubusercontent.com/d1Ng0/COMP261/master/comp261-a02/data/large/NZtrafficLightCoords.txt
+        try (BufferedReader reader = new BufferedReader(new FileReader(trafficLights))) {
+            reader.readLine(); //Ignore the header line
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                progress.read(line.length() + 1);
+
+                String[] parts = line.split("\\s+");
+
+                if (parts.length < 2)
+                    continue;
+
+                lights.add(Location.fromLatLon(Double.parseDouble(parts[1]), Double.parseDouble(parts[0])));
+            }
+        }
+
+        //Can't use a set.contains method here because of the imprecision of doubles, so the index compares against
+        // the nearby lights with an equality method instead
+        for (int nodeID : neighbouringNodesTable.keySet()) {
+            Node node = nodeLookupTable.get(nodeID);
+            if (lights.contains(node.getLocation()))
+                node.setHasTrafficLight(true);
+        }
+    }
+
+    /**
+     * Loads the time of day speeds along roads. Each line is a road ID followed by pairs of a time of day in hours and
+     * the speed in km/h at that time, all separated by tabs
+     */
+    private void loadSpeedProfiles(File speedProfiles, LoadProgress progress) throws IOException {
+        if (speedProfiles == null)
+            return;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(speedProfiles))) {
+            reader.readLine(); //Ignore the header line
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                progress.read(line.length() + 1);
+
+                String[] parts = line.split("\t");
+                if (parts.length < 3)
+                    continue;
+
+                double[] times = new double[(parts.length - 1) / 2];
+                double[] speeds = new double[times.length];
+                for (int i = 0; i < times.length; i++) {
+                    times[i] = Double.parseDouble(parts[1 + i * 2]);
+                    speeds[i] = Double.parseDouble(parts[2 + i * 2]);
+                }
+
+                this.speedProfiles.add(Integer.parseInt(parts[0]), times, speeds);
+            }
+        }
+    }
+
+    public Map<Integer, Node> getNodeLookupTable() {
+        return nodeLookupTable;
+    }
+
+    public Map<Integer, List<RoadSegment>> getNodeAdjacencyTable() {
+        return nodeAdjacencyTable;
+    }
+
+    public Map<Integer, ProfileAdjacency> getProfileAdjacencyTable() {
+        return profileAdjacencyTable;
+    }
+
+    public Map<Integer, List<RoadSegment>> getReverseAdjacencyTable() {
+        return reverseAdjacencyTable;
+    }
+
+    public Map<Integer, List<Node>> getNeighbouringNodesTable() {
+        return neighbouringNodesTable;
+    }
+
+    public Map<Integer, List<RoadSegment>> getRoadToRoadSegmentsTable() {
+        return roadToRoadSegmentsTable;
+    }
+
+    public Map<Integer, RoadInfo> getRoadInfoLookupTable() {
+        return roadInfoLookupTable;
+    }
+
+    public Map<Integer, List<Restriction>> getRestrictionsMap() {
+        return restrictionsMap;
+    }
+
+    public List<Polygon> getPolygons() {
+        return polygons;
+    }
+
+    public SpeedProfiles getSpeedProfiles() {
+        return speedProfiles;
+    }
+
+    /**
+     * @return the connected components of the graph, which are empty if the map is tiled
+     */
+    public ConnectedComponents getComponents() {
+        return components;
+    }
+
+    public SearchTrie<RoadInfo> getRoadSearchTrie() {
+        return roadSearchTrie;
+    }
+
+    public QuadTree getNodeQuadTree() {
+        return nodeQuadTree;
+    }
+
+    public RouteFinder getRouteFinder() {
+        return routeFinder;
+    }
+
+    /**
+     * @return the store holding the nodes and segments, or null if they are on the heap
+     */
+    public TiledRoadStore getTiledStore() {
+        return tiledStore;
+    }
+
+    public boolean isTiled() {
+        return tiledStore != null;
+    }
+
+    /**
+     * @return true if no map has been loaded
+     */
+    public boolean isEmpty() {
+        return tiledStore == null && nodeLookupTable.isEmpty();
+    }
+
+    /**
+     * Finds a route with whichever route finder matches how the map was loaded. Bidirectional search is only
+     * available when the map is on the heap
+     *
+     * @see RouteFinder#findRoute
+     */
+    public Route findRoute(Node start, Node goal, boolean isSpeedHeuristic, boolean useTrafficLights, boolean useBidirectionalSearch) {
+        if (tiledStore != null)
+            return tiledRouteFinder.findRoute(start.getID(), goal.getID(), isSpeedHeuristic, useTrafficLights);
+
+        return routeFinder.findRoute(start, goal, isSpeedHeuristic, useTrafficLights, useBidirectionalSearch);
+    }
+
+    /**
+     * Finds a route on the overlay graph, building the overlay first if this is the first time it's been used. The
+     * overlay is only built for maps on the heap, so when the map is tiled this uses A* on the tiled route finder
+     *
+     * @see RouteFinder#findRoute(Node, Node, OverlayGraph, boolean, boolean)
+     */
+    public Route findOverlayRoute(Node start, Node goal, boolean isSpeedHeuristic, boolean useTrafficLights) {
+        if (tiledStore != null)
+            return tiledRouteFinder.findRoute(start.getID(), goal.getID(), isSpeedHeuristic, useTrafficLights);
+
+        return routeFinder.findRoute(start, goal, getOverlayGraph(), isSpeedHeuristic, useTrafficLights);
+    }
+
+    /**
+     * Gets the overlay graph, partitioning the map into cells first if it hasn't been built yet
+     *
+     * @return the overlay graph, or null if the map is tiled
+     */
+    public synchronized OverlayGraph getOverlayGraph() {
+        if (overlayGraph == null && tiledStore == null)
+            overlayGraph = new OverlayGraph(nodeLookupTable, nodeAdjacencyTable, roadInfoLookupTable);
+
+        return overlayGraph;
+    }
+
+    /**
+     * Gets the hub labels, contracting the map and labelling every node first if they haven't been built yet
+     *
+     * @return the hub labels, or null if the map is tiled
+     */
+    public synchronized HubLabels getHubLabels() {
+        if (hubLabels == null && tiledStore == null)
+            hubLabels = HubLabels.build(nodeLookupTable, nodeAdjacencyTable);
+
+        return hubLabels;
+    }
+
+    /**
+     * Gets the tour planner, copying the graph into it first if it hasn't been built yet
+     *
+     * @return the tour planner, or null if the map is tiled
+     */
+    public synchronized TourPlanner getTourPlanner() {
+        if (tourPlanner == null && tiledStore == null)
+            tourPlanner = new TourPlanner(nodeLookupTable, nodeAdjacencyTable, roadInfoLookupTable, restrictionsMap,
+                    routeFinder);
+
+        return tourPlanner;
+    }
+
+    /**
+     * Gets the betweenness centrality of the segments, copying the graph into it first if it hasn't been built yet.
+     * Nothing is computed until {@link BetweennessCentrality#compute} is called
+     *
+     * @return the betweenness centrality, or null if the map is tiled
+     */
+    public synchronized BetweennessCentrality getCentrality() {
+        if (centrality == null && tiledStore == null)
+            centrality = new BetweennessCentrality(nodeLookupTable, nodeAdjacencyTable, roadInfoLookupTable);
+
+        return centrality;
+    }
+
+    /**
+     * Finds the quickest route when leaving at the given time, using the roads' speed profiles. The tiled route finder
+     * doesn't have the profiles, so when the map is tiled this finds the route on fixed speeds instead
+     *
+     * @see RouteFinder#findRoute(Node, Node, double)
+     */
+    public Route findRoute(Node start, Node goal, double departureTime) {
+        if (tiledStore != null)
+            return tiledRouteFinder.findRoute(start.getID(), goal.getID(), true, false);
+
+        return routeFinder.findRoute(start, goal, departureTime);
+    }
+
+    /**
+     * Finds the quickest route for a vehicle profile, only using the roads it's allowed on. The tiled route finder
+     * doesn't have the profiles, so when the map is tiled this finds the route on every road instead
+     *
+     * @see RouteFinder#findRoute(Node, Node, VehicleProfile)
+     */
+    public Route findRoute(Node start, Node goal, VehicleProfile profile) {
+        if (tiledStore != null)
+            return tiledRouteFinder.findRoute(start.getID(), goal.getID(), true, false);
+
+        return routeFinder.findRoute(start, goal, profile);
+    }
+
+    /**
+     * @return a number which changes every time the map is loaded
+     */
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Calculates all of the articulation points in the entire graph
+     *
+     * @return a set of all of the articulation points
+     */
+    public Set<Node> calculateAPs() {
+        Set<Node> aps = new HashSet<>();
+
+        Set<Node> visited = new HashSet<>();
+
+        for (int nodeID : neighbouringNodesTable.keySet()) {
+            Node node = nodeLookupTable.get(nodeID);
+
+            if (!visited.contains(node)) {
+                //Get the aps in the component
+                aps.addAll(calculateAPs(node));
+
+                //Visit the rest of the nodes in the component
+                Stack<Node> toCheck = new Stack<>();
+                toCheck.push(node);
+                while (!toCheck.empty()) {
+                    Node n = toCheck.pop();
+
+                    if (visited.contains(n))
+                        continue;
+
+                    for (Node neighbour : neighbouringNodesTable.get(n.getID()))
+                        toCheck.push(neighbour);
+
+                    visited.add(n);
+                }
+            }
+        }
+
+        return aps;
+    }
+
+    /**
+     * Finds all of the articulation points in the given component
+     *
+     * @param root the root node to start the search from
+     * @return the set of all articulation points in the component
+     */
+    private Set<Node> calculateAPs(Node root) {
+        Set<Node> aps = new HashSet<>();
+
+        Set<Node> explored = new HashSet<>(); //Keep track of the nodes we've visited so there's no doubling up
+        Stack<Node> fringe = new Stack<>(); //Stack of nodes to examine
+        HashMap<Node, Node> parents = new HashMap<>(); //Maps node -> parent node
+        HashMap<Node, Stack<Node>> children = new HashMap<>(); //Using a stack so it's easier to get and remove children
+        HashMap<Node, Integer> depths = new HashMap<>(); //Maps node -> current depth of node
+        HashMap<Node, Integer> reachBacks = new HashMap<>(); //Maps node -> node's reach back value
+
+        //Initialise in the maps for the root node
+        depths.put(root, 0);
+        reachBacks.put(root, 0);
+
+        int numSubTrees = 0;
+        for (Node rootNeighbour : neighbouringNodesTable.get(root.getID())) {
+            parents.put(rootNeighbour, root);
+
+            if (!explored.contains(rootNeighbour)) { //If the root neighbour hasn't yet been explored
+                fringe.push(rootNeighbour);
+
+                while (!fringe.empty()) {
+                    Node node = fringe.peek();
+
+                    if (!explored.contains(node)) { //If the node has not yet been explored
+                        int depth = depths.get(parents.get(node)) + 1;
+                        depths.put(node, depth);
+                        reachBacks.put(node, depth);
+                        Stack<Node> neighbours = new Stack<>();
+                        neighbouringNodesTable.get(node.getID()).forEach((n) -> {
+                            if (!n.equals(parents.get(node)))
+                                neighbours.push(n);
+                        });
+                        children.put(node, neighbours);
+                        explored.add(node);
+                    }
+                    else if (children.containsKey(node) && !children.get(node).isEmpty()) {
+                        Node child = children.get(node).pop();
+
+                        if (depths.containsKey(child)) {
+                            reachBacks.put(node, Math.min(depths.get(child), reachBacks.get(node)));
+                        }
+                        else {
+                            depths.put(child, depths.get(node) + 1);
+                            reachBacks.put(child, depths.get(node) + 1);
+                            parents.put(child, node);
+                            fringe.push(child);
+                        }
+                    }
+                    else {
+                        if (!node.equals(rootNeighbour)) {
+                            Node parent = parents.get(node);
+
+                            reachBacks.put(parent, Math.min(reachBacks.get(node), reachBacks.get(parent)));
+
+                            if (reachBacks.get(node) >= depths.get(parent))
+                                aps.add(parent);
+                        }
+
+                        fringe.pop();
+                    }
+                }
+
+                numSubTrees++;
+            }
+        }
+
+        //If there exist more than two subtrees, then the root is an ap
+        if (numSubTrees > 1)
+            aps.add(root);
+
+        return aps;
+    }
+}
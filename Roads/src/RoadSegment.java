@@ -1,27 +1,53 @@
 import java.awt.*;
-import java.awt.geom.Line2D;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.IntUnaryOperator;
 
 public class RoadSegment {
+    private static final PointBuffer BUFFER = new PointBuffer(); //Shared by all segments, as drawing is single threaded
+    static final StrokeCache STROKES = new StrokeCache(); //Also used by the tiled store, which draws the same way
+
     private int id;
     private double length;
     private int nodeID1;
     private int nodeID2;
-    private List<Location> points = new ArrayList<>();
+    private double[] xs; //Coordinates of the points along the segment
+    private double[] ys;
 
     public RoadSegment(String line) {
+        this(line, IntUnaryOperator.identity());
+    }
+
+    /**
+     * Reads a segment from a line of the segments file, giving its nodes new IDs
+     *
+     * @param renumber maps each node ID in the file to the ID the node was given
+     */
+    public RoadSegment(String line, IntUnaryOperator renumber) {
         String[] parts = line.split("\t");
         id = Integer.parseInt(parts[0]);
         length = Double.parseDouble(parts[1]);
-        nodeID1 = Integer.parseInt(parts[2]);
-        nodeID2 = Integer.parseInt(parts[3]);
+        nodeID1 = renumber.applyAsInt(Integer.parseInt(parts[2]));
+        nodeID2 = renumber.applyAsInt(Integer.parseInt(parts[3]));
 
-        for (int i = 4; i < parts.length; i += 2) {
-            points.add(Location.fromLatLon(Double.parseDouble(parts[i]), Double.parseDouble(parts[i + 1])));
+        xs = new double[(parts.length - 4) / 2];
+        ys = new double[xs.length];
+        for (int i = 0; i < xs.length; i++) {
+            double lat = Double.parseDouble(parts[4 + i * 2]);
+            xs[i] = Location.xFromLatLon(lat, Double.parseDouble(parts[5 + i * 2]));
+            ys[i] = Location.yFromLatLon(lat);
         }
     }
 
+    public RoadSegment(int id, double length, int nodeID1, int nodeID2, double[] xs, double[] ys) {
+        this.id = id;
+        this.length = length;
+        this.nodeID1 = nodeID1;
+        this.nodeID2 = nodeID2;
+        this.xs = xs;
+        this.ys = ys;
+    }
+
     public int getID() {
         return id;
     }
@@ -38,6 +64,35 @@ public class RoadSegment {
         return nodeID2;
     }
 
+    /**
+     * @return a new list of the points along the segment
+     */
+    public List<Location> getPoints() {
+        List<Location> points = new ArrayList<>(xs.length);
+        for (int i = 0; i < xs.length; i++)
+            points.add(new Location(xs[i], ys[i]));
+
+        return points;
+    }
+
+    public int getPointCount() {
+        return xs.length;
+    }
+
+    /**
+     * @return the x coordinates of the points along the segment. The array is not copied, so it shouldn't be modified
+     */
+    public double[] getXs() {
+        return xs;
+    }
+
+    /**
+     * @return the y coordinates of the points along the segment. The array is not copied, so it shouldn't be modified
+     */
+    public double[] getYs() {
+        return ys;
+    }
+
     public int getOtherNode(int node) {
         return node == nodeID1 ? nodeID2 : nodeID1;
     }
@@ -58,18 +113,27 @@ public class RoadSegment {
         if (roadClass == 0 && zoom < MapViewer.CLOSE_ZOOM_CUTOFF || roadClass == 1 && zoom < MapViewer.MEDIUM_ZOOM_CUTOFF)
             return;
 
-        for (int i = 0; i < points.size() - 1; i++) {
-            Point p1 = points.get(i).toPoint(MapViewer.WINDOW_SCALE, offset, zoom, centre);
-            Point p2 = points.get(i + 1).toPoint(MapViewer.WINDOW_SCALE, offset, zoom, centre);
+        BUFFER.project(xs, ys, xs.length, offset, zoom, centre);
+        int[] us = BUFFER.getUs();
+        int[] vs = BUFFER.getVs();
+        Rectangle clip = BUFFER.clip(g);
+
+        //Cast the graphics object so that the line width can be manipulated
+        Graphics2D g2d = (Graphics2D) g;
+        boolean strokeSet = false;
 
+        for (int i = 0; i < xs.length - 1; i++) {
             //Only render if the line intersects the viewing area
-            if (!(new Line2D.Double(p1.x, p1.y, p2.x, p2.y).intersects(g.getClipBounds())))
+            if (!clip.intersectsLine(us[i], vs[i], us[i + 1], vs[i + 1]))
                 continue;
 
-            //Cast the graphics object so that the line width can be manipulated
-            Graphics2D g2d = (Graphics2D) g;
-            g2d.setStroke(new BasicStroke((float) size));
-            g2d.drawLine(p1.x, p1.y, p2.x, p2.y);
+            //The stroke is only set for segments that are actually drawn
+            if (!strokeSet) {
+                g2d.setStroke(STROKES.get((float) size));
+                strokeSet = true;
+            }
+
+            g2d.drawLine(us[i], vs[i], us[i + 1], vs[i + 1]);
         }
     }
 }
@@ -0,0 +1,51 @@
+import java.util.Collections;
+import java.util.List;
+
+public class Route {
+    public static final Route NOT_FOUND = new Route(Collections.emptyList(), Collections.emptyList(),
+            Collections.emptyList(), Collections.emptyList());
+
+    private List<Node> nodes;
+    private List<RoadSegment> segments;
+    private List<String> roadNames;
+    private List<Double> roadLengths;
+
+    /**
+     * Holds a route found by the route finder, along with the per-road summary shown to the user. Routes are shared
+     * through the route cache, so the lists given should not be modified afterwards
+     *
+     * @param nodes       nodes along the route, from the start to the goal
+     * @param segments    segments along the route, in order
+     * @param roadNames   names of the roads travelled along, with consecutive duplicates merged
+     * @param roadLengths total length travelled along each road in roadNames
+     */
+    public Route(List<Node> nodes, List<RoadSegment> segments, List<String> roadNames, List<Double> roadLengths) {
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.segments = Collections.unmodifiableList(segments);
+        this.roadNames = Collections.unmodifiableList(roadNames);
+        this.roadLengths = Collections.unmodifiableList(roadLengths);
+    }
+
+    /**
+     * @return true if there was a path between the start and goal
+     */
+    public boolean isFound() {
+        return !segments.isEmpty();
+    }
+
+    public List<Node> getNodes() {
+        return nodes;
+    }
+
+    public List<RoadSegment> getSegments() {
+        return segments;
+    }
+
+    public List<String> getRoadNames() {
+        return roadNames;
+    }
+
+    public List<Double> getRoadLengths() {
+        return roadLengths;
+    }
+}
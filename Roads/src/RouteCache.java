@@ -0,0 +1,168 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RouteCache {
+    public static final int DEFAULT_CAPACITY = 512;
+
+    private final int capacity;
+    private final LinkedHashMap<Key, Route> routes;
+    private int graphVersion = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public RouteCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * A bounded cache of routes, which throws away the least recently used route once it is full
+     *
+     * @param capacity the maximum number of routes to hold
+     */
+    public RouteCache(int capacity) {
+        this.capacity = capacity;
+
+        //Access ordered so that iteration order goes from least to most recently used
+        routes = new LinkedHashMap<Key, Route>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Route> eldest) {
+                if (size() <= RouteCache.this.capacity)
+                    return false;
+
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Looks up a previously found route. If the graph has been reloaded since the cache was last used, all of the
+     * cached routes are thrown away first
+     *
+     * @param graphVersion     version of the graph being searched, which changes whenever the graph is reloaded
+     * @param startID          ID of the start node
+     * @param goalID           ID of the goal node
+     * @param isSpeedHeuristic if the route was found using the speed heuristic
+     * @param useTrafficLights if the route was found preferring traffic lights
+     * @param departureTime    the time of day the route leaves at, or negative if it was found on fixed speeds
+     * @param profile          the vehicle profile the route was found for, or null if it could use any road
+     * @return the cached route, or null if there isn't one
+     */
+    public synchronized Route get(int graphVersion, int startID, int goalID, boolean isSpeedHeuristic, boolean useTrafficLights,
+                                  double departureTime, VehicleProfile profile) {
+        checkVersion(graphVersion);
+
+        Route route = routes.get(new Key(startID, goalID, isSpeedHeuristic, useTrafficLights, departureTime, profile));
+
+        if (route == null)
+            misses++;
+        else
+            hits++;
+
+        return route;
+    }
+
+    /**
+     * Adds a route to the cache
+     *
+     * @see #get(int, int, int, boolean, boolean, double, VehicleProfile)
+     */
+    public synchronized void put(int graphVersion, int startID, int goalID, boolean isSpeedHeuristic, boolean useTrafficLights,
+                                 double departureTime, VehicleProfile profile, Route route) {
+        checkVersion(graphVersion);
+
+        routes.put(new Key(startID, goalID, isSpeedHeuristic, useTrafficLights, departureTime, profile), route);
+    }
+
+    /**
+     * Throws away all of the cached routes. The hit and miss counts are kept
+     */
+    public synchronized void invalidate() {
+        routes.clear();
+    }
+
+    /**
+     * Shows the cache's hits, misses, evictions, and size as {@link Metrics} gauges named after the cache
+     *
+     * @param name prefix of the gauges' names
+     * @return this cache
+     */
+    public RouteCache registerMetrics(String name) {
+        Metrics.gauge(name + ".hits", this::getHits);
+        Metrics.gauge(name + ".misses", this::getMisses);
+        Metrics.gauge(name + ".evictions", this::getEvictions);
+        Metrics.gauge(name + ".size", this::size);
+        return this;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return routes.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        long total = hits + misses;
+
+        return String.format("Route cache: %d/%d routes, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+                routes.size(), capacity, hits, misses, total == 0 ? 0 : 100.0 * hits / total, evictions);
+    }
+
+    private void checkVersion(int graphVersion) {
+        if (graphVersion != this.graphVersion) {
+            routes.clear();
+            this.graphVersion = graphVersion;
+        }
+    }
+
+    private static final class Key {
+        private final int startID;
+        private final int goalID;
+        private final boolean isSpeedHeuristic;
+        private final boolean useTrafficLights;
+        private final double departureTime;
+        private final VehicleProfile profile;
+
+        private Key(int startID, int goalID, boolean isSpeedHeuristic, boolean useTrafficLights, double departureTime,
+                    VehicleProfile profile) {
+            this.startID = startID;
+            this.goalID = goalID;
+            this.isSpeedHeuristic = isSpeedHeuristic;
+            this.useTrafficLights = useTrafficLights;
+            this.departureTime = departureTime;
+            this.profile = profile;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key))
+                return false;
+
+            Key other = (Key) obj;
+            return startID == other.startID && goalID == other.goalID
+                    && isSpeedHeuristic == other.isSpeedHeuristic && useTrafficLights == other.useTrafficLights
+                    && Double.compare(departureTime, other.departureTime) == 0 && profile == other.profile;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = 31 * startID + goalID;
+            hash = 4 * hash + (isSpeedHeuristic ? 2 : 0) + (useTrafficLights ? 1 : 0);
+            hash = 31 * hash + Double.hashCode(departureTime);
+            return 31 * hash + (profile == null ? 0 : profile.ordinal() + 1);
+        }
+    }
+}
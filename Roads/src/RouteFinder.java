@@ -0,0 +1,805 @@
+import java.util.*;
+
+public class RouteFinder {
+    //We have to scale the heuristic function if the search is speed based so that it's still a lower bound
+    static final double SPEED_HEURISTIC_SCALE = 0.0083;
+
+    //Searches record their own settled counts, from the count they kept locally
+    private static final Histogram A_STAR_TIME = Metrics.timer("route.aStar");
+    private static final Histogram A_STAR_SETTLED = Metrics.counts("route.aStar.settled");
+    private static final Histogram OVERLAY_TIME = Metrics.timer("route.overlay");
+    private static final Histogram OVERLAY_SETTLED = Metrics.counts("route.overlay.settled");
+    private static final Histogram TIME_DEPENDENT_TIME = Metrics.timer("route.timeDependent");
+    private static final Histogram TIME_DEPENDENT_SETTLED = Metrics.counts("route.timeDependent.settled");
+    private static final Histogram PROFILE_TIME = Metrics.timer("route.profile");
+    private static final Histogram PROFILE_SETTLED = Metrics.counts("route.profile.settled");
+
+    private Map<Integer, Node> nodeLookupTable;
+    private Map<Integer, List<RoadSegment>> nodeAdjacencyTable;
+    private Map<Integer, List<RoadSegment>> reverseAdjacencyTable;
+    private Map<Integer, ProfileAdjacency> profileAdjacencyTable;
+    private Map<Integer, RoadInfo> roadInfoLookupTable;
+    private Map<Integer, List<Restriction>> restrictionsMap;
+    private SpeedProfiles speedProfiles;
+    private ConnectedComponents components;
+
+    private volatile int settledCount = 0;
+
+    /**
+     * Searches the road graph described by the given tables. The tables are not copied, so the route finder will see
+     * any changes made to them.
+     *
+     * @param nodeLookupTable       maps node ID -> node
+     * @param nodeAdjacencyTable    maps node ID -> segments that can be travelled out of the node
+     * @param reverseAdjacencyTable maps node ID -> segments that can be travelled into the node
+     * @param profileAdjacencyTable maps node ID -> segments out of the node, with the vehicle profiles allowed on them
+     * @param roadInfoLookupTable   maps road ID -> road info
+     * @param restrictionsMap       maps node ID -> turn restrictions through the node
+     * @param speedProfiles         time of day speeds for the roads that have them
+     * @param components            connected components of the graph, used to give up straight away on unreachable
+     *                              goals
+     */
+    public RouteFinder(Map<Integer, Node> nodeLookupTable, Map<Integer, List<RoadSegment>> nodeAdjacencyTable,
+                       Map<Integer, List<RoadSegment>> reverseAdjacencyTable,
+                       Map<Integer, ProfileAdjacency> profileAdjacencyTable, Map<Integer, RoadInfo> roadInfoLookupTable,
+                       Map<Integer, List<Restriction>> restrictionsMap, SpeedProfiles speedProfiles,
+                       ConnectedComponents components) {
+        this.nodeLookupTable = nodeLookupTable;
+        this.nodeAdjacencyTable = nodeAdjacencyTable;
+        this.reverseAdjacencyTable = reverseAdjacencyTable;
+        this.profileAdjacencyTable = profileAdjacencyTable;
+        this.roadInfoLookupTable = roadInfoLookupTable;
+        this.restrictionsMap = restrictionsMap;
+        this.speedProfiles = speedProfiles;
+        this.components = components;
+    }
+
+    /**
+     * @return the number of nodes settled by the most recent search
+     */
+    public int getSettledCount() {
+        return settledCount;
+    }
+
+    /**
+     * Searches for a path between the two nodes, then builds the list of segments along it and a summary of how far
+     * is travelled along each road
+     *
+     * @param start                  the node to start searching from
+     * @param goal                   the node to look for a path to
+     * @param isSpeedHeuristic       true if the cost should be travel time rather than distance
+     * @param useTrafficLights       true if routes through traffic lights should be preferred
+     * @param useBidirectionalSearch true to use bidirectional A*
+     * @return the route between the two nodes, or {@link Route#NOT_FOUND}
+     */
+    public Route findRoute(Node start, Node goal, boolean isSpeedHeuristic, boolean useTrafficLights, boolean useBidirectionalSearch) {
+        long startTime = System.nanoTime();
+        List<Node> nodePath = useBidirectionalSearch
+                ? bidirectionalAStarSearch(start, goal, isSpeedHeuristic, useTrafficLights)
+                : aStarSearch(start, goal, isSpeedHeuristic, useTrafficLights);
+
+        Route route = buildRoute(nodePath);
+        Metrics.recordSince(A_STAR_TIME, startTime);
+        return route;
+    }
+
+    /**
+     * Searches for a path between the two nodes on a customised overlay graph, then builds the route along it. The
+     * overlay doesn't know about turn restrictions, so if the path it finds takes a restricted turn, the route is
+     * found again with A*
+     *
+     * @param start            the node to start searching from
+     * @param goal             the node to look for a path to
+     * @param overlay          the overlay graph built over this route finder's graph
+     * @param isSpeedHeuristic true if the cost should be travel time rather than distance
+     * @param useTrafficLights true if routes through traffic lights should be preferred
+     * @return the route between the two nodes, or {@link Route#NOT_FOUND}
+     */
+    public Route findRoute(Node start, Node goal, OverlayGraph overlay, boolean isSpeedHeuristic, boolean useTrafficLights) {
+        long startTime = System.nanoTime();
+        if (start.equals(goal) || components.isUnreachable(start.getID(), goal.getID(), true)) {
+            settledCount = 0;
+            Metrics.recordSince(OVERLAY_TIME, startTime);
+            OVERLAY_SETTLED.record(0);
+            return Route.NOT_FOUND;
+        }
+
+        List<Node> nodePath = new ArrayList<>();
+        List<RoadSegment> segments = new ArrayList<>();
+        int settled = overlay.findPath(start, goal, overlay.getMetric(isSpeedHeuristic, useTrafficLights), nodePath,
+                segments);
+        settledCount = settled;
+        Metrics.recordSince(OVERLAY_TIME, startTime);
+        OVERLAY_SETTLED.record(settled);
+
+        for (int i = 1; i < nodePath.size() - 1; i++)
+            if (isRestricted(nodePath.get(i - 1), nodePath.get(i), nodePath.get(i + 1)))
+                return findRoute(start, goal, isSpeedHeuristic, useTrafficLights, false);
+
+        return buildRoute(nodePath, segments);
+    }
+
+    /**
+     * Searches for the quickest path between the two nodes when leaving at the given time, with the speed along roads
+     * that have a {@link SpeedProfiles speed profile} depending on the time they're reached, then builds the route
+     * along it
+     *
+     * @param start         the node to start searching from
+     * @param goal          the node to look for a path to
+     * @param departureTime the time of day to leave at, in hours
+     * @return the route between the two nodes, or {@link Route#NOT_FOUND}
+     * @see #timeDependentSearch(Node, Node, double)
+     */
+    public Route findRoute(Node start, Node goal, double departureTime) {
+        long startTime = System.nanoTime();
+        Route route = buildRoute(timeDependentSearch(start, goal, departureTime));
+        Metrics.recordSince(TIME_DEPENDENT_TIME, startTime);
+        return route;
+    }
+
+    /**
+     * Builds the list of segments along a path of nodes, and a summary of how far is travelled along each road
+     */
+    private Route buildRoute(List<Node> nodePath) {
+        //A path is only found if there are two or more nodes in the path
+        if (nodePath.size() <= 1)
+            return Route.NOT_FOUND;
+
+        //Find the segment between each pair of nodes
+        List<RoadSegment> segments = new ArrayList<>();
+        for (int i = 0; i < nodePath.size() - 1; i++) {
+            int nodeID1 = nodePath.get(i).getID();
+            int nodeID2 = nodePath.get(i + 1).getID();
+
+            for (RoadSegment r : nodeAdjacencyTable.get(nodeID1)) {
+                if (r.getOtherNode(nodeID1) == nodeID2) {
+                    segments.add(r);
+                    break;
+                }
+            }
+        }
+
+        return buildRoute(nodePath, segments);
+    }
+
+    /**
+     * Builds a route from the nodes and segments along it, merging consecutive segments on the same road into the
+     * summary
+     *
+     * @return the route, or {@link Route#NOT_FOUND} if there are no segments
+     */
+    public Route buildRoute(List<Node> nodePath, List<RoadSegment> segments) {
+        if (segments.isEmpty())
+            return Route.NOT_FOUND;
+
+        List<String> pathNames = new ArrayList<>();
+        List<Double> pathCosts = new ArrayList<>();
+        for (RoadSegment r : segments) {
+            String prevName = pathNames.isEmpty() ? "" : pathNames.get(pathNames.size() - 1);
+            String roadName = roadInfoLookupTable.get(r.getID()).getLabel();
+
+            if (roadName.equals(prevName)) {
+                pathCosts.set(pathCosts.size() - 1, pathCosts.get(pathCosts.size() - 1) + r.getLength());
+            }
+            else {
+                pathNames.add(roadName);
+                pathCosts.add(r.getLength());
+            }
+        }
+
+        return new Route(nodePath, segments, pathNames, pathCosts);
+    }
+
+    /**
+     * Searches for the quickest route between the two nodes for a vehicle profile, only using the roads the profile is
+     * allowed on, in the directions it's allowed to travel them. Walking ignores one way roads and turn restrictions,
+     * while the other profiles settle states like {@link #aStarSearch} to find the quickest path through them.
+     * <p>
+     * The search only reads the precomputed {@link ProfileAdjacency}, and keeps all of its state in local variables,
+     * so searches for different profiles can run at the same time on the same route finder. Only the settled count is
+     * shared, and it's set once the search is done.
+     *
+     * @param start   the node to start searching from
+     * @param goal    the node to look for a path to
+     * @param profile the vehicle profile to route for
+     * @return the route between the two nodes, or {@link Route#NOT_FOUND}
+     */
+    public Route findRoute(Node start, Node goal, VehicleProfile profile) {
+        long startTime = System.nanoTime();
+        if (start.equals(goal) || components.isUnreachable(start.getID(), goal.getID(), profile.followsTrafficRules())) {
+            settledCount = 0;
+            Metrics.recordSince(PROFILE_TIME, startTime);
+            PROFILE_SETTLED.record(0);
+            return Route.NOT_FOUND;
+        }
+
+        int bit = profile.getBit();
+        int ordinal = profile.ordinal();
+        boolean followsTrafficRules = profile.followsTrafficRules();
+        double maxSpeed = profile.getMaxSpeed();
+        int settled = 0;
+
+        HashMap<Long, Long> exploredPath = new HashMap<>(); //Maps child state -> parent state
+        HashMap<Long, RoadSegment> exploredSegments = new HashMap<>(); //Maps child state -> segment from its parent
+        HashMap<Long, Double> pathCost = new HashMap<>();
+        PriorityQueue<FringeEntry> fringe = new PriorityQueue<>();
+        Set<Long> visited = new HashSet<>();
+
+        long startState = state(start, null);
+        pathCost.put(startState, 0d);
+        fringe.add(new FringeEntry(start, startState, distance(start, goal) / maxSpeed));
+
+        long goalState = -1;
+        while (!fringe.isEmpty()) {
+            FringeEntry entry = fringe.poll();
+            Node node = entry.node;
+
+            if (!visited.add(entry.state))
+                continue;
+
+            settled++;
+
+            if (node.equals(goal)) {
+                goalState = entry.state;
+                break;
+            }
+
+            ProfileAdjacency adjacency = profileAdjacencyTable.get(node.getID());
+            if (adjacency == null)
+                continue;
+
+            Long parentState = exploredPath.get(entry.state);
+            Node parent = parentState == null ? null : nodeOf(parentState);
+            double nodeCost = pathCost.get(entry.state);
+
+            for (int i = 0; i < adjacency.size(); i++) {
+                if (!adjacency.allows(i, bit))
+                    continue;
+
+                Node neighbour = nodeLookupTable.get(adjacency.getHeadID(i));
+
+                //Profiles that ignore turn restrictions only need one state per node
+                long neighbourState = state(neighbour, followsTrafficRules ? node : null);
+
+                if (visited.contains(neighbourState) || followsTrafficRules && isRestricted(parent, node, neighbour))
+                    continue;
+
+                double cost = nodeCost + adjacency.getTime(i, ordinal);
+
+                if (cost >= pathCost.getOrDefault(neighbourState, Double.POSITIVE_INFINITY))
+                    continue;
+
+                pathCost.put(neighbourState, cost);
+                exploredPath.put(neighbourState, entry.state);
+                exploredSegments.put(neighbourState, adjacency.getSegment(i));
+                fringe.add(new FringeEntry(neighbour, neighbourState, cost + distance(neighbour, goal) / maxSpeed));
+            }
+        }
+
+        settledCount = settled;
+
+        //Walk back from the goal, picking up the segments as well as the nodes
+        List<Node> path = new ArrayList<>();
+        List<RoadSegment> segments = new ArrayList<>();
+        path.add(goal);
+        for (Long current = goalState; exploredPath.containsKey(current); current = exploredPath.get(current)) {
+            segments.add(exploredSegments.get(current));
+            path.add(nodeOf(exploredPath.get(current)));
+        }
+
+        Collections.reverse(path);
+        Collections.reverse(segments);
+
+        //The settled count is recorded from the local, as another search may have set the shared one since
+        Route route = buildRoute(path, segments);
+        Metrics.recordSince(PROFILE_TIME, startTime);
+        PROFILE_SETTLED.record(settled);
+        return route;
+    }
+
+    /**
+     * Implements A* to search the map for a path from the given node to the goal. The search settles states rather
+     * than nodes (see {@link #state}), so the best path is still found through nodes with turn restrictions
+     *
+     * @param start            the node to start searching from
+     * @param goal             the node to look for a path to
+     * @param isSpeedHeuristic true if the cost should be travel time rather than distance
+     * @param useTrafficLights true if routes through traffic lights should be preferred
+     * @return the path between the two nodes, or a list with at most one node if there is none
+     */
+    public List<Node> aStarSearch(Node start, Node goal, boolean isSpeedHeuristic, boolean useTrafficLights) {
+        if (start.equals(goal) || components.isUnreachable(start.getID(), goal.getID(), true)) {
+            settledCount = 0;
+            A_STAR_SETTLED.record(0);
+            return new ArrayList<>();
+        }
+
+        int settled = 0; //Counted locally, as searches on other threads share the published count
+
+        HashMap<Long, Long> exploredPath = new HashMap<>(); //Maps child state -> parent state
+        HashMap<Long, Double> pathCost = new HashMap<>();
+
+        //The fringe is a priority queue with sorting based on the estimated cost from the node to the goal. The
+        // estimate is stored in the entry so that later updates can't reorder the queue underneath it
+        PriorityQueue<FringeEntry> fringe = new PriorityQueue<>();
+        Set<Long> visited = new HashSet<>();
+
+        long startState = state(start, null);
+        pathCost.put(startState, 0d);
+        fringe.add(new FringeEntry(start, startState, heuristic(start, goal, isSpeedHeuristic)));
+
+        //Loop until either the goal is found or we run out of states
+        long goalState = -1;
+        while (!fringe.isEmpty()) {
+            FringeEntry entry = fringe.poll();
+            Node node = entry.node;
+
+            //Don't revisit already visited states
+            if (!visited.add(entry.state))
+                continue;
+
+            settled++;
+
+            if (node.equals(goal)) {
+                goalState = entry.state;
+                break;
+            }
+
+            Long parentState = exploredPath.get(entry.state);
+            Node parent = parentState == null ? null : nodeOf(parentState);
+
+            for (RoadSegment segment : nodeAdjacencyTable.getOrDefault(node.getID(), Collections.emptyList())) {
+                Node neighbour = nodeLookupTable.get(segment.getOtherNode(node.getID()));
+                long neighbourState = state(neighbour, node);
+
+                if (visited.contains(neighbourState) || isRestricted(parent, node, neighbour))
+                    continue;
+
+                double cost = pathCost.get(entry.state)
+                        + edgeCost(segment, neighbour, isSpeedHeuristic, useTrafficLights);
+
+                //Only requeue the neighbour if this is a cheaper way of reaching it
+                if (cost >= pathCost.getOrDefault(neighbourState, Double.POSITIVE_INFINITY))
+                    continue;
+
+                pathCost.put(neighbourState, cost);
+                exploredPath.put(neighbourState, entry.state);
+                fringe.add(new FringeEntry(neighbour, neighbourState,
+                        cost + heuristic(neighbour, goal, isSpeedHeuristic)));
+            }
+        }
+
+        settledCount = settled;
+        A_STAR_SETTLED.record(settled);
+
+        //Reconstruct the path, which is just the goal if it wasn't reached
+        List<Node> path = new ArrayList<>();
+        path.add(goal);
+
+        for (Long current = exploredPath.get(goalState); current != null; current = exploredPath.get(current))
+            path.add(nodeOf(current));
+
+        //Put the start node at the beginning, and the goal node at the end
+        Collections.reverse(path);
+
+        return path;
+    }
+
+    /**
+     * Implements time dependent A* to search the map for the quickest path from the given node to the goal. Instead of
+     * a path cost, each node is labelled with the earliest time it can be reached, and the time to travel along a
+     * segment is worked out from the speed on its road from the time the segment is entered. Leaving later never means
+     * arriving earlier (see {@link SpeedProfiles#getTravelTime}), so the first time a state is settled is the earliest
+     * it can be reached, just like the path cost in normal A*. States are kept the same way as in {@link #aStarSearch},
+     * so the quickest path is still found through nodes with turn restrictions.
+     *
+     * @param start         the node to start searching from
+     * @param goal          the node to look for a path to
+     * @param departureTime the time of day to leave at, in hours
+     * @return the path between the two nodes, or a list with at most one node if there is none
+     */
+    public List<Node> timeDependentSearch(Node start, Node goal, double departureTime) {
+        if (start.equals(goal) || components.isUnreachable(start.getID(), goal.getID(), true)) {
+            settledCount = 0;
+            TIME_DEPENDENT_SETTLED.record(0);
+            return new ArrayList<>();
+        }
+
+        int settled = 0; //Counted locally, as searches on other threads share the published count
+
+        //The heuristic is the time to get to the goal in a straight line at the fastest speed on the map
+        double maxSpeed = Math.max(1 / SPEED_HEURISTIC_SCALE, speedProfiles.getMaxSpeed());
+
+        HashMap<Long, Long> exploredPath = new HashMap<>(); //Maps child state -> parent state
+        HashMap<Long, Double> arrivalTime = new HashMap<>();
+        PriorityQueue<FringeEntry> fringe = new PriorityQueue<>();
+        Set<Long> visited = new HashSet<>();
+
+        long startState = state(start, null);
+        arrivalTime.put(startState, departureTime);
+        fringe.add(new FringeEntry(start, startState, departureTime + distance(start, goal) / maxSpeed));
+
+        long goalState = -1;
+        while (!fringe.isEmpty()) {
+            FringeEntry entry = fringe.poll();
+            Node node = entry.node;
+
+            if (!visited.add(entry.state))
+                continue;
+
+            settled++;
+
+            if (node.equals(goal)) {
+                goalState = entry.state;
+                break;
+            }
+
+            Long parentState = exploredPath.get(entry.state);
+            Node parent = parentState == null ? null : nodeOf(parentState);
+            double time = arrivalTime.get(entry.state);
+
+            for (RoadSegment segment : nodeAdjacencyTable.getOrDefault(node.getID(), Collections.emptyList())) {
+                Node neighbour = nodeLookupTable.get(segment.getOtherNode(node.getID()));
+                long neighbourState = state(neighbour, node);
+
+                if (visited.contains(neighbourState) || isRestricted(parent, node, neighbour))
+                    continue;
+
+                double arrival = time + travelTime(segment, time);
+
+                if (arrival >= arrivalTime.getOrDefault(neighbourState, Double.POSITIVE_INFINITY))
+                    continue;
+
+                arrivalTime.put(neighbourState, arrival);
+                exploredPath.put(neighbourState, entry.state);
+                fringe.add(new FringeEntry(neighbour, neighbourState, arrival + distance(neighbour, goal) / maxSpeed));
+            }
+        }
+
+        settledCount = settled;
+        TIME_DEPENDENT_SETTLED.record(settled);
+
+        List<Node> path = new ArrayList<>();
+        path.add(goal);
+
+        for (Long current = exploredPath.get(goalState); current != null; current = exploredPath.get(current))
+            path.add(nodeOf(current));
+
+        Collections.reverse(path);
+
+        return path;
+    }
+
+    /**
+     * Works out when a route arrives at its goal, travelling at the speeds {@link #timeDependentSearch} uses
+     *
+     * @param route         the route to travel along
+     * @param departureTime the time of day to leave at, in hours
+     * @return the time of arrival in hours since the start of the departure day, so it may be more than 24
+     */
+    public double getArrivalTime(Route route, double departureTime) {
+        double time = departureTime;
+        for (RoadSegment segment : route.getSegments())
+            time += travelTime(segment, time);
+
+        return time;
+    }
+
+    /**
+     * Implements bidirectional A* to search the map for a path from the given node to the goal. A forward search from
+     * the start and a backward search from the goal run at the same time, which roughly halves the number of nodes
+     * settled on long routes.
+     * <p>
+     * Both searches use the averaged potential p(v) = (h_goal(v) - h_start(v)) / 2 (negated for the backward search),
+     * which keeps the reduced edge costs the same in both directions, so the search can stop as soon as the smallest
+     * keys of the two fringes add up to at least the best path seen so far.
+     * <p>
+     * Like {@link #aStarSearch}, both searches settle states rather than nodes. A backward state at a node with turn
+     * restrictions is keyed by the node the path goes on to, so the two searches can only be joined across a segment
+     * where neither end's turn is banned.
+     *
+     * @param start            the node to start searching from
+     * @param goal             the node to look for a path to
+     * @param isSpeedHeuristic true if the cost should be travel time rather than distance
+     * @param useTrafficLights true if routes through traffic lights should be preferred
+     * @return the path between the two nodes, or a list with at most one node if there is none
+     */
+    public List<Node> bidirectionalAStarSearch(Node start, Node goal, boolean isSpeedHeuristic, boolean useTrafficLights) {
+        if (start.equals(goal) || components.isUnreachable(start.getID(), goal.getID(), true)) {
+            settledCount = 0;
+            A_STAR_SETTLED.record(0);
+            return new ArrayList<>();
+        }
+
+        int settled = 0; //Counted locally, as searches on other threads share the published count
+
+        HashMap<Long, Double> forwardCost = new HashMap<>();
+        HashMap<Long, Double> backwardCost = new HashMap<>();
+        HashMap<Long, Long> forwardParents = new HashMap<>(); //Maps child state -> parent state (towards the start)
+        HashMap<Long, Long> backwardParents = new HashMap<>(); //Maps child state -> parent state (towards the goal)
+        Set<Long> forwardVisited = new HashSet<>();
+        Set<Long> backwardVisited = new HashSet<>();
+        PriorityQueue<FringeEntry> forwardFringe = new PriorityQueue<>();
+        PriorityQueue<FringeEntry> backwardFringe = new PriorityQueue<>();
+
+        long startState = state(start, null);
+        long goalState = state(goal, null);
+        forwardCost.put(startState, 0d);
+        backwardCost.put(goalState, 0d);
+        forwardFringe.add(new FringeEntry(start, startState, potential(start, start, goal, isSpeedHeuristic)));
+        backwardFringe.add(new FringeEntry(goal, goalState, -potential(goal, start, goal, isSpeedHeuristic)));
+
+        //The best path found so far is stored as the states at either end of the segment joining the two search trees
+        double bestCost = Double.POSITIVE_INFINITY;
+        long meetingTail = -1;
+        long meetingHead = -1;
+
+        while (true) {
+            //Throw away any stale entries so the tops of the fringes are real keys
+            while (!forwardFringe.isEmpty() && forwardVisited.contains(forwardFringe.peek().state))
+                forwardFringe.poll();
+            while (!backwardFringe.isEmpty() && backwardVisited.contains(backwardFringe.peek().state))
+                backwardFringe.poll();
+
+            if (forwardFringe.isEmpty() || backwardFringe.isEmpty())
+                break;
+
+            //Stopping criterion: no path through an unsettled state can be shorter than the best path found
+            if (forwardFringe.peek().estimate + backwardFringe.peek().estimate >= bestCost)
+                break;
+
+            //Expand whichever side has the smaller fringe to keep the two searches balanced
+            boolean forward = forwardFringe.size() <= backwardFringe.size();
+            FringeEntry entry = (forward ? forwardFringe : backwardFringe).poll();
+            Node node = entry.node;
+            settled++;
+
+            if (forward) {
+                forwardVisited.add(entry.state);
+                Long parentState = forwardParents.get(entry.state);
+                Node parent = parentState == null ? null : nodeOf(parentState);
+
+                for (RoadSegment segment : nodeAdjacencyTable.getOrDefault(node.getID(), Collections.emptyList())) {
+                    Node neighbour = nodeLookupTable.get(segment.getOtherNode(node.getID()));
+                    long neighbourState = state(neighbour, node);
+
+                    if (forwardVisited.contains(neighbourState) || isRestricted(parent, node, neighbour))
+                        continue;
+
+                    double cost = forwardCost.get(entry.state)
+                            + edgeCost(segment, neighbour, isSpeedHeuristic, useTrafficLights);
+
+                    //Join the two search trees if the backward search has already settled the neighbour
+                    long joined = settledState(neighbour, node, false, backwardVisited, backwardCost);
+                    if (joined >= 0 && cost + backwardCost.get(joined) < bestCost) {
+                        bestCost = cost + backwardCost.get(joined);
+                        meetingTail = entry.state;
+                        meetingHead = joined;
+                    }
+
+                    if (cost >= forwardCost.getOrDefault(neighbourState, Double.POSITIVE_INFINITY))
+                        continue;
+
+                    forwardCost.put(neighbourState, cost);
+                    forwardParents.put(neighbourState, entry.state);
+                    forwardFringe.add(new FringeEntry(neighbour, neighbourState,
+                            cost + potential(neighbour, start, goal, isSpeedHeuristic)));
+                }
+            }
+            else {
+                backwardVisited.add(entry.state);
+                Long parentState = backwardParents.get(entry.state);
+                Node parent = parentState == null ? null : nodeOf(parentState);
+
+                //Walk the segments that lead into the node, so the neighbour is the tail of the segment
+                for (RoadSegment segment : reverseAdjacencyTable.getOrDefault(node.getID(), Collections.emptyList())) {
+                    Node neighbour = nodeLookupTable.get(segment.getOtherNode(node.getID()));
+                    long neighbourState = state(neighbour, node);
+
+                    if (backwardVisited.contains(neighbourState) || isRestricted(neighbour, node, parent))
+                        continue;
+
+                    double cost = backwardCost.get(entry.state)
+                            + edgeCost(segment, node, isSpeedHeuristic, useTrafficLights);
+
+                    long joined = settledState(neighbour, node, true, forwardVisited, forwardCost);
+                    if (joined >= 0 && cost + forwardCost.get(joined) < bestCost) {
+                        bestCost = cost + forwardCost.get(joined);
+                        meetingTail = joined;
+                        meetingHead = entry.state;
+                    }
+
+                    if (cost >= backwardCost.getOrDefault(neighbourState, Double.POSITIVE_INFINITY))
+                        continue;
+
+                    backwardCost.put(neighbourState, cost);
+                    backwardParents.put(neighbourState, entry.state);
+                    backwardFringe.add(new FringeEntry(neighbour, neighbourState,
+                            cost - potential(neighbour, start, goal, isSpeedHeuristic)));
+                }
+            }
+        }
+
+        settledCount = settled;
+        A_STAR_SETTLED.record(settled);
+
+        List<Node> path = new ArrayList<>();
+
+        //Mirror the unidirectional search, which returns just the goal when there is no path
+        if (meetingTail < 0) {
+            path.add(goal);
+            return path;
+        }
+
+        //Walk back from the meeting point to the start, then forward from the meeting point to the goal
+        for (Long current = meetingTail; current != null; current = forwardParents.get(current))
+            path.add(nodeOf(current));
+
+        Collections.reverse(path);
+
+        for (Long current = meetingHead; current != null; current = backwardParents.get(current))
+            path.add(nodeOf(current));
+
+        return path;
+    }
+
+    /**
+     * Identifies a search state. Most nodes only need one state, as every turn out of them is allowed whichever way
+     * they were reached. A node with turn restrictions has a state for each node next to it, so that reaching it
+     * cheaply from one side can't hide a path that needs a turn only allowed from the other side
+     *
+     * @param node      the node the state is at
+     * @param neighbour for a node with turn restrictions, the node the path came from (or for a backward search, the
+     *                  node it goes on to). Null at the start of a search
+     * @return the node's ID in the low 32 bits, and if it has restrictions, one more than the neighbour's ID above it
+     */
+    private long state(Node node, Node neighbour) {
+        return state(restrictionsMap, node.getID(), neighbour == null ? -1 : neighbour.getID());
+    }
+
+    /**
+     * Identifies a search state by node ID, for searches that don't work with Nodes
+     *
+     * @param neighbourID the ID of the node the path came from (or goes on to), or -1 at the start of a search
+     * @see #state(Node, Node)
+     */
+    static long state(Map<Integer, List<Restriction>> restrictionsMap, int nodeID, int neighbourID) {
+        long state = nodeID & 0xFFFFFFFFL;
+        if (neighbourID < 0 || !restrictionsMap.containsKey(nodeID))
+            return state;
+
+        return (neighbourID + 1L) << 32 | state;
+    }
+
+    private Node nodeOf(long state) {
+        return nodeLookupTable.get((int) state);
+    }
+
+    /**
+     * Finds the cheapest state one side of a bidirectional search has settled a node in, that the other side can join
+     * across a segment. Nodes without restrictions only have the one state to look at
+     *
+     * @param node      the node to join at
+     * @param other     the node at the other end of the joining segment
+     * @param isForward true if the states are the forward search's, keyed by the node before, with the path going on
+     *                  to the other node. Otherwise they're the backward search's, keyed by the node after, with the
+     *                  path coming from the other node
+     * @return the state, or -1 if the node hasn't been settled in a state that can be joined
+     */
+    private long settledState(Node node, Node other, boolean isForward, Set<Long> visited, Map<Long, Double> costs) {
+        long best = visited.contains(state(node, null)) ? state(node, null) : -1;
+        if (!restrictionsMap.containsKey(node.getID()))
+            return best;
+
+        //The node was either where the search started, or reached from (or left for) one of the nodes next to it
+        Map<Integer, List<RoadSegment>> table = isForward ? reverseAdjacencyTable : nodeAdjacencyTable;
+        for (RoadSegment segment : table.getOrDefault(node.getID(), Collections.emptyList())) {
+            Node neighbour = nodeLookupTable.get(segment.getOtherNode(node.getID()));
+            long state = state(node, neighbour);
+            if (!visited.contains(state)
+                    || (isForward ? isRestricted(neighbour, node, other) : isRestricted(other, node, neighbour)))
+                continue;
+
+            if (best < 0 || costs.get(state) < costs.get(best))
+                best = state;
+        }
+
+        return best;
+    }
+
+    /**
+     * Calculates the cost of travelling along a segment.
+     * The cost is the segment's length, augmented by the road weight (the road speed and class) if we are using speed
+     * as the heuristic, further augmented by a weight which depends on if we want to avoid traffic lights or not (this
+     * weight is arbitrary)
+     *
+     * @param segment the segment being travelled along
+     * @param head    the node at the end of the segment
+     * @return the cost of the segment
+     */
+    private double edgeCost(RoadSegment segment, Node head, boolean isSpeedHeuristic, boolean useTrafficLights) {
+        RoadInfo roadInfo = roadInfoLookupTable.get(segment.getID());
+
+        return segment.getLength()
+                / (isSpeedHeuristic ? roadInfo.getWeightedRoadSpeed() : 1)
+                * (useTrafficLights && head.hasTrafficLight() ? 1 : 2);
+    }
+
+    /**
+     * Calculates the time in hours to travel along a segment, entering it at the given time. Roads without a speed
+     * profile are travelled at their weighted speed
+     */
+    private double travelTime(RoadSegment segment, double time) {
+        RoadInfo roadInfo = roadInfoLookupTable.get(segment.getID());
+
+        return speedProfiles.getTravelTime(segment.getID(), segment.getLength(), time, roadInfo.getWeightedRoadSpeed());
+    }
+
+    /**
+     * Estimates the cost from one node to another. This should be admissible as it always underestimates the cost
+     */
+    private double heuristic(Node from, Node to, boolean isSpeedHeuristic) {
+        return distance(from, to) * (isSpeedHeuristic ? SPEED_HEURISTIC_SCALE : 1);
+    }
+
+    /**
+     * @return the straight line distance between two nodes, in kilometres
+     */
+    private static double distance(Node from, Node to) {
+        return Math.hypot(from.getX() - to.getX(), from.getY() - to.getY());
+    }
+
+    /**
+     * The averaged forward potential of a node. The backward potential is its negation
+     */
+    private double potential(Node node, Node start, Node goal, boolean isSpeedHeuristic) {
+        return (heuristic(node, goal, isSpeedHeuristic) - heuristic(start, node, isSpeedHeuristic)) / 2;
+    }
+
+    /**
+     * Checks the restrictions map to see if travelling from -> via -> to is banned
+     */
+    private boolean isRestricted(Node from, Node via, Node to) {
+        return from != null && to != null && isRestricted(restrictionsMap, from.getID(), via.getID(), to.getID());
+    }
+
+    /**
+     * Checks a restrictions map to see if travelling from -> via -> to is banned, by node ID
+     */
+    static boolean isRestricted(Map<Integer, List<Restriction>> restrictionsMap, int from, int via, int to) {
+        for (Restriction r : restrictionsMap.getOrDefault(via, Collections.emptyList()))
+            if (r.getNodeID1() == from && r.getNodeID2() == to)
+                return true;
+
+        return false;
+    }
+
+    /**
+     * An entry in the fringe, holding the node, the state it was reached in, and its key at the time it was queued.
+     * Searches that only work with node IDs leave the node out, as its ID is in the state
+     */
+    static class FringeEntry implements Comparable<FringeEntry> {
+        final Node node;
+        final long state;
+        final double estimate;
+
+        FringeEntry(long state, double estimate) {
+            this(null, state, estimate);
+        }
+
+        FringeEntry(Node node, double estimate) {
+            this(node, node.getID(), estimate);
+        }
+
+        FringeEntry(Node node, long state, double estimate) {
+            this.node = node;
+            this.state = state;
+            this.estimate = estimate;
+        }
+
+        @Override
+        public int compareTo(FringeEntry o) {
+            return Double.compare(estimate, o.estimate);
+        }
+    }
+}
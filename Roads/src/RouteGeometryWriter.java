@@ -0,0 +1,234 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Streams the geometry of routes to a file, for batch jobs that route far too many queries to keep their polylines in
+ * memory. Each route's points are read straight out of its segments' coordinate arrays, converted to latitude and
+ * longitude, and encoded into a direct buffer that is written to the file whenever it fills up, so writing a route
+ * doesn't create any objects.
+ * <p>
+ * Where consecutive segments meet, the shared point is only written once. Segments travelled from their second node to
+ * their first have their points written in reverse.
+ * <p>
+ * There are two formats:
+ * <ul>
+ * <li>{@link Format#VARINT}: binary records, one after another. Each is the route's ID and its number of points as
+ * unsigned varints, then each point's latitude and longitude in millionths of a degree, as the difference from the
+ * previous point (or from 0 for the first point) zigzag encoded into a signed varint</li>
+ * <li>{@link Format#POLYLINE}: a line of text for each route, with the route's ID, a tab, then the points in the
+ * encoded polyline format used by web maps, to a hundred thousandth of a degree</li>
+ * </ul>
+ */
+public class RouteGeometryWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_POINT_BYTES = 20; //Two varints of a long, which is more than two polyline values
+    private static final int MAX_HEADER_BYTES = 21; //A varint or decimal long, a varint int, and a tab
+
+    public enum Format {
+        VARINT(1e6), POLYLINE(1e5);
+
+        private final double scale; //Units per degree the coordinates are rounded to
+
+        Format(double scale) {
+            this.scale = scale;
+        }
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Format format;
+
+    private long routeCount = 0;
+    private long pointCount = 0;
+    private long bytesWritten = 0;
+
+    /**
+     * Creates (or truncates) the file to write routes to
+     *
+     * @param file   the file to write to
+     * @param format how to encode the routes
+     */
+    public RouteGeometryWriter(File file, Format format) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.format = format;
+    }
+
+    /**
+     * Writes the geometry of a route. A route that wasn't found is written with no points
+     *
+     * @param id    identifies the route in the file, such as the number of the query it answers. Must not be negative
+     * @param route the route to write
+     */
+    public void write(long id, Route route) throws IOException {
+        if (id < 0)
+            throw new IllegalArgumentException("Route ID must not be negative: " + id);
+
+        List<Node> nodes = route.getNodes();
+        List<RoadSegment> segments = route.getSegments();
+
+        //Every segment after the first starts with the point the previous one ended on
+        int count = 0;
+        for (int s = 0; s < segments.size(); s++)
+            count += s == 0 ? segments.get(s).getPointCount() : Math.max(0, segments.get(s).getPointCount() - 1);
+
+        ensureRemaining(MAX_HEADER_BYTES);
+        if (format == Format.VARINT) {
+            putVarint(id);
+            putVarint(count);
+        }
+        else {
+            putDecimal(id);
+            buffer.put((byte) '\t');
+        }
+
+        long lastLat = 0;
+        long lastLon = 0;
+        for (int s = 0; s < segments.size(); s++) {
+            RoadSegment segment = segments.get(s);
+            double[] xs = segment.getXs();
+            double[] ys = segment.getYs();
+            int n = xs.length;
+            boolean forward = s >= nodes.size() || segment.getNodeID1() == nodes.get(s).getID();
+
+            for (int k = s == 0 ? 0 : 1; k < n; k++) {
+                int p = forward ? k : n - 1 - k;
+                long lat = Math.round(Location.latFromY(ys[p]) * format.scale);
+                long lon = Math.round(Location.lonFromXY(xs[p], ys[p]) * format.scale);
+
+                ensureRemaining(MAX_POINT_BYTES);
+                if (format == Format.VARINT) {
+                    putVarint(zigzag(lat - lastLat));
+                    putVarint(zigzag(lon - lastLon));
+                }
+                else {
+                    putPolyline(lat - lastLat);
+                    putPolyline(lon - lastLon);
+                }
+
+                lastLat = lat;
+                lastLon = lon;
+            }
+        }
+
+        if (format == Format.POLYLINE) {
+            ensureRemaining(1);
+            buffer.put((byte) '\n');
+        }
+
+        routeCount++;
+        pointCount += count;
+    }
+
+    /**
+     * Maps a signed value to an unsigned one with small magnitudes staying small: 0, -1, 1, -2, ... become 0, 1, 2, 3
+     */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Puts an unsigned value seven bits at a time, lowest first, with the top bit of each byte set if more follow
+     */
+    private void putVarint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Puts a signed value in the polyline format: shifted left with the bits inverted if it's negative, then five
+     * bits at a time, lowest first, each with 0x20 set if more follow, offset by 63 into printable characters
+     */
+    private void putPolyline(long value) {
+        value = value < 0 ? ~(value << 1) : value << 1;
+        while (value >= 0x20) {
+            buffer.put((byte) ((0x20 | (value & 0x1F)) + 63));
+            value >>>= 5;
+        }
+
+        buffer.put((byte) (value + 63));
+    }
+
+    /**
+     * Puts a non-negative value as decimal digits, without building a string
+     */
+    private void putDecimal(long value) {
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10)
+            digits++;
+
+        int end = buffer.position() + digits;
+        for (int i = end - 1; i >= buffer.position(); i--) {
+            buffer.put(i, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+
+        buffer.position(end);
+    }
+
+    /**
+     * Writes the buffer out to the file if there's less than the given number of bytes left in it
+     */
+    private void ensureRemaining(int bytes) throws IOException {
+        if (buffer.remaining() < bytes)
+            drain();
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            bytesWritten += channel.write(buffer);
+
+        buffer.clear();
+    }
+
+    /**
+     * Writes everything buffered so far out to the file
+     */
+    public void flush() throws IOException {
+        drain();
+    }
+
+    /**
+     * @return the number of routes written
+     */
+    public long getRouteCount() {
+        return routeCount;
+    }
+
+    /**
+     * @return the number of points written across all of the routes
+     */
+    public long getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * @return the number of bytes written to the file so far, not counting what's still buffered
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Writes out anything still buffered, then closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        }
+        finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+import javax.swing.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs searches on a background thread as the user types, so the event dispatch thread never waits on one. Each
+ * search is only started once nothing newer has been submitted for a short delay, and a newer search supersedes any
+ * older one: a waiting search never starts, a running search can check whether it should give up, and a finished
+ * search's result is thrown away rather than published.
+ * <p>
+ * Results are published on the event dispatch thread, so whatever they replace there is swapped in one go.
+ *
+ * @param <T> the type of a search's result
+ */
+public class SearchScheduler<T> {
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long delay;
+    private final AtomicLong latest = new AtomicLong(); //Number of the newest search, older ones are superseded
+    private ScheduledFuture<?> pending = null;
+
+    /**
+     * @param delay how long to wait for more input before starting a search, in milliseconds
+     */
+    public SearchScheduler(long delay) {
+        this.delay = delay;
+    }
+
+    /**
+     * Submits a search, superseding any earlier one
+     *
+     * @param search  runs the search. It's given a check which becomes true once the search has been superseded, and
+     *                may give up (returning null) once it does
+     * @param publish given the result on the event dispatch thread, unless the search was superseded
+     */
+    public synchronized void submit(Function<BooleanSupplier, T> search, Consumer<T> publish) {
+        long number = latest.incrementAndGet();
+        BooleanSupplier superseded = () -> latest.get() != number;
+
+        if (pending != null)
+            pending.cancel(false);
+
+        pending = executor.schedule(() -> {
+            if (superseded.getAsBoolean())
+                return;
+
+            T result = search.apply(superseded);
+            if (result == null || superseded.getAsBoolean())
+                return;
+
+            SwingUtilities.invokeLater(() -> {
+                //Checked again, as a newer search could have been submitted while this was queued
+                if (!superseded.getAsBoolean())
+                    publish.accept(result);
+            });
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Supersedes any submitted search without starting a new one
+     */
+    public synchronized void cancel() {
+        latest.incrementAndGet();
+
+        if (pending != null)
+            pending.cancel(false);
+
+        pending = null;
+    }
+}
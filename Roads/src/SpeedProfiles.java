@@ -0,0 +1,210 @@
+import java.util.Arrays;
+
+/**
+ * Speeds along roads that change with the time of day. Each road can have a piecewise linear profile: a list of times
+ * of day and the speed at each, with the speed between them found by interpolating. Profiles repeat every day, so the
+ * speed after the last time of the day is interpolated towards the first one.
+ * <p>
+ * All of the profiles are packed into flat arrays, indexed through an array of road IDs, so that looking up a speed in
+ * the middle of a search doesn't allocate anything.
+ */
+public class SpeedProfiles {
+    public static final double HOURS_PER_DAY = 24;
+
+    private int[] profileOfRoad = new int[0]; //Maps road ID -> profile index, or -1 if the road doesn't have one
+    private int[] offsets = {0}; //Profile i's points are at offsets[i] up to offsets[i + 1]
+    private double[] times = new double[64]; //Time of day of each point, in hours
+    private double[] speeds = new double[64]; //Speed at each point, in km/h
+    private int profileCount = 0;
+    private double maxSpeed = 0;
+
+    /**
+     * Adds the profile for a road, replacing any it already had
+     *
+     * @param roadID ID of the road
+     * @param times  times of day in hours, in increasing order, between 0 and 24
+     * @param speeds speed in km/h at each time
+     * @throws IllegalArgumentException if the profile is empty, the arrays are different lengths, or the times are out
+     *                                  of order
+     */
+    public void add(int roadID, double[] times, double[] speeds) {
+        if (times.length == 0 || times.length != speeds.length)
+            throw new IllegalArgumentException("Profile for road " + roadID + " needs a speed for every time");
+
+        for (int i = 0; i < times.length; i++) {
+            if (times[i] < 0 || times[i] > HOURS_PER_DAY || i > 0 && times[i] <= times[i - 1])
+                throw new IllegalArgumentException("Profile for road " + roadID + " has times out of order");
+            if (!(speeds[i] > 0))
+                throw new IllegalArgumentException("Profile for road " + roadID + " has a speed that isn't positive");
+        }
+
+        if (roadID >= profileOfRoad.length) {
+            int length = profileOfRoad.length;
+            profileOfRoad = Arrays.copyOf(profileOfRoad, Math.max(roadID + 1, length * 2));
+            Arrays.fill(profileOfRoad, length, profileOfRoad.length, -1);
+        }
+
+        int start = offsets[profileCount];
+        int end = start + times.length;
+        if (end > this.times.length) {
+            this.times = Arrays.copyOf(this.times, Math.max(end, this.times.length * 2));
+            this.speeds = Arrays.copyOf(this.speeds, this.times.length);
+        }
+        if (profileCount + 2 > offsets.length)
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+
+        System.arraycopy(times, 0, this.times, start, times.length);
+        System.arraycopy(speeds, 0, this.speeds, start, speeds.length);
+        offsets[++profileCount] = end;
+        profileOfRoad[roadID] = profileCount - 1;
+
+        for (double speed : speeds)
+            maxSpeed = Math.max(maxSpeed, speed);
+    }
+
+    /**
+     * @return true if the road's speed depends on the time of day
+     */
+    public boolean hasProfile(int roadID) {
+        return roadID >= 0 && roadID < profileOfRoad.length && profileOfRoad[roadID] >= 0;
+    }
+
+    /**
+     * Finds the speed along a road at a time of day
+     *
+     * @param roadID       ID of the road
+     * @param time         time in hours since the start of the first day. Times past the first day wrap around
+     * @param defaultSpeed the speed to use if the road doesn't have a profile
+     * @return the speed in km/h
+     */
+    public double getSpeed(int roadID, double time, double defaultSpeed) {
+        if (!hasProfile(roadID))
+            return defaultSpeed;
+
+        int profile = profileOfRoad[roadID];
+        int start = offsets[profile];
+        int end = offsets[profile + 1];
+        double timeOfDay = time - Math.floor(time / HOURS_PER_DAY) * HOURS_PER_DAY;
+
+        //Profiles only have a few points, so a linear scan is quicker than a binary search
+        int next = start;
+        while (next < end && times[next] <= timeOfDay)
+            next++;
+
+        //Interpolate between the points either side, wrapping around midnight at either end of the day
+        int previous = next - 1;
+        double previousTime;
+        double nextTime;
+        if (next == start) {
+            previous = end - 1;
+            previousTime = times[previous] - HOURS_PER_DAY;
+            nextTime = times[next];
+        }
+        else if (next == end) {
+            next = start;
+            previousTime = times[previous];
+            nextTime = times[next] + HOURS_PER_DAY;
+        }
+        else {
+            previousTime = times[previous];
+            nextTime = times[next];
+        }
+
+        double t = (timeOfDay - previousTime) / (nextTime - previousTime);
+        return speeds[previous] + (speeds[next] - speeds[previous]) * t;
+    }
+
+    /**
+     * Finds how long it takes to travel along part of a road, entering it at the given time. The speed keeps changing
+     * while the road is travelled along, rather than staying at the speed it was entered at, so entering a road later
+     * never means leaving it earlier. Route searches which label nodes with arrival times rely on this.
+     *
+     * @param roadID       ID of the road
+     * @param length       distance to travel, in km
+     * @param time         time the road is entered, in hours since the start of the first day
+     * @param defaultSpeed the speed to use if the road doesn't have a profile
+     * @return the travel time in hours
+     */
+    public double getTravelTime(int roadID, double length, double time, double defaultSpeed) {
+        if (!hasProfile(roadID))
+            return length / defaultSpeed;
+
+        int profile = profileOfRoad[roadID];
+        int start = offsets[profile];
+        int end = offsets[profile + 1];
+
+        //Find the first point of the profile after the time the road is entered, on that day or the next
+        double dayStart = Math.floor(time / HOURS_PER_DAY) * HOURS_PER_DAY;
+        double timeOfDay = time - dayStart;
+        int next = start;
+        while (next < end && times[next] <= timeOfDay)
+            next++;
+
+        if (next == end) {
+            next = start;
+            dayStart += HOURS_PER_DAY;
+        }
+
+        //Step from one point of the profile to the next, until the distance covered reaches the length. The speed
+        //changes linearly between points, so the distance covered between them is the average speed times the time.
+        //The point and day are stepped along rather than found again from the time, as a time rebuilt from the day and
+        //the point can round to just before the point and find the same point again
+        double remaining = length;
+        double now = time;
+        double speed = getSpeed(roadID, time, 0);
+        while (true) {
+            double nextTime = dayStart + times[next];
+            double nextSpeed = speeds[next];
+            double duration = nextTime - now;
+
+            //Points at either end of the day can be at the same moment, which covers nothing
+            if (duration > 0) {
+                double covered = (speed + nextSpeed) / 2 * duration;
+
+                if (covered >= remaining) {
+                    //Solve speed * t + acceleration * t^2 / 2 = remaining for the time t
+                    double acceleration = (nextSpeed - speed) / duration;
+                    if (Math.abs(acceleration) < 1e-9)
+                        return now + remaining / speed - time;
+
+                    double root = Math.sqrt(Math.max(0, speed * speed + 2 * acceleration * remaining));
+                    return now + (root - speed) / acceleration - time;
+                }
+
+                remaining -= covered;
+            }
+
+            now = nextTime;
+            speed = nextSpeed;
+            if (++next == end) {
+                next = start;
+                dayStart += HOURS_PER_DAY;
+            }
+        }
+    }
+
+    /**
+     * @return the fastest speed in any profile, in km/h, or 0 if there are no profiles
+     */
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    public int size() {
+        return profileCount;
+    }
+
+    public boolean isEmpty() {
+        return profileCount == 0;
+    }
+
+    /**
+     * Throws away all of the profiles
+     */
+    public void clear() {
+        profileOfRoad = new int[0];
+        offsets = new int[]{0};
+        profileCount = 0;
+        maxSpeed = 0;
+    }
+}
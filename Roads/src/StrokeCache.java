@@ -0,0 +1,32 @@
+import java.awt.BasicStroke;
+
+/**
+ * Hands out strokes by width, so drawing a frame doesn't create a new stroke for every segment. A frame only draws a
+ * few widths (one for each road class at the current zoom, and one for highlighted roads), so only the most recently
+ * used widths are kept, and the oldest is replaced when a new width is asked for.
+ * <p>
+ * A cache is not thread safe. Drawing only happens on the event dispatch thread, so the road layers share one.
+ */
+public class StrokeCache {
+    private static final int CAPACITY = 8;
+
+    private final float[] widths = new float[CAPACITY];
+    private final BasicStroke[] strokes = new BasicStroke[CAPACITY];
+    private int next = 0; //The entry to replace next
+
+    /**
+     * @param width the line width of the stroke
+     * @return a stroke of the given width, which is the same stroke as last time if the width was asked for recently
+     */
+    public BasicStroke get(float width) {
+        for (int i = 0; i < CAPACITY; i++)
+            if (strokes[i] != null && widths[i] == width)
+                return strokes[i];
+
+        BasicStroke stroke = new BasicStroke(width);
+        widths[next] = width;
+        strokes[next] = stroke;
+        next = (next + 1) % CAPACITY;
+        return stroke;
+    }
+}
@@ -0,0 +1,625 @@
+import java.awt.*;
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the nodes, adjacency, and segment geometry of a map on disk, split into a grid of square cells, so that maps
+ * much larger than the heap can be viewed and searched. Only the cells that are drawn or searched through are paged
+ * in, through a {@link MappedFile} with a bounded number of mapped chunks.
+ * <p>
+ * The store is made of two files:
+ * <ul>
+ * <li>tiles.bin: a header, a directory with the position and size of each cell, then each cell's nodes, outgoing
+ * edges (in compressed sparse row form, indexed from the nodes), segments, and segment points. A segment is stored in
+ * the cell of its first node, and one way segments only have an edge leaving their first node.</li>
+ * <li>nodes.idx: for every node ID up to the largest, the cell the node is in (plus one, so zero means no node) and
+ * its position within the cell.</li>
+ * </ul>
+ * The store is built from the tab files by streaming through them a few times, so building one also doesn't need the
+ * map to fit in memory. Road info is small in comparison and stays on the heap.
+ */
+public class TiledRoadStore implements Closeable {
+    public static final String TILES_FILENAME = "tiles.bin";
+    public static final String INDEX_FILENAME = "nodes.idx";
+    private static final String BUILD_FILENAME = "build.tmp";
+
+    private static final int MAGIC = 0x524f4144; //"ROAD"
+    private static final int FORMAT_VERSION = 1;
+    private static final int NODES_PER_CELL = 4096; //Average number of nodes in each cell
+    private static final int MAX_MAPPED_CHUNKS = 32; //At most 512MB of each file is mapped at once
+
+    private static final int HEADER_SIZE = 64; //magic, version, grid size, node count, max node ID, minX, minY, cell size
+    private static final int DIRECTORY_ENTRY_SIZE = 32; //offset, node count, edge count, segment count, point count
+    private static final int NODE_SIZE = 32; //id, flags, x, y, first edge, edge count
+    private static final int EDGE_SIZE = 32; //head node ID, road ID, length, weighted speed, segment reference
+    private static final int SEGMENT_SIZE = 32; //road ID, road class, node ID 1, node ID 2, first point, point count, length
+    private static final int POINT_SIZE = 16; //x, y
+    private static final int INDEX_ENTRY_SIZE = 8; //cell + 1, position within the cell
+
+    private static final int FLAG_TRAFFIC_LIGHT = 1;
+
+    /**
+     * Receives the edges leaving a node
+     */
+    public interface EdgeVisitor {
+        void visit(int headID, int roadID, double length, double weightedSpeed, long segmentRef);
+    }
+
+    private final MappedFile tiles;
+    private final MappedFile index;
+    private final int gridSize;
+    private final int nodeCount;
+    private final int maxNodeID;
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+
+    //The directory is small enough to keep on the heap, which saves a lookup in the file for every access
+    private final long[] cellOffsets;
+    private final int[] cellNodeCounts;
+    private final int[] cellEdgeCounts;
+    private final int[] cellSegmentCounts;
+
+    private TiledRoadStore(MappedFile tiles, MappedFile index) throws IOException {
+        this.tiles = tiles;
+        this.index = index;
+
+        if (tiles.size() < HEADER_SIZE || tiles.getInt(0) != MAGIC || tiles.getInt(4) != FORMAT_VERSION)
+            throw new IOException("Not a tiled road store, or it was not finished being built");
+
+        gridSize = tiles.getInt(8);
+        nodeCount = tiles.getInt(12);
+        maxNodeID = tiles.getInt(16);
+        minX = tiles.getDouble(24);
+        minY = tiles.getDouble(32);
+        cellSize = tiles.getDouble(40);
+
+        int cells = gridSize * gridSize;
+        cellOffsets = new long[cells];
+        cellNodeCounts = new int[cells];
+        cellEdgeCounts = new int[cells];
+        cellSegmentCounts = new int[cells];
+        for (int cell = 0; cell < cells; cell++) {
+            long entry = HEADER_SIZE + (long) cell * DIRECTORY_ENTRY_SIZE;
+            cellOffsets[cell] = tiles.getLong(entry);
+            cellNodeCounts[cell] = tiles.getInt(entry + 8);
+            cellEdgeCounts[cell] = tiles.getInt(entry + 12);
+            cellSegmentCounts[cell] = tiles.getInt(entry + 16);
+        }
+    }
+
+    /**
+     * Opens a store that has already been built
+     *
+     * @param directory the directory the store was built into
+     */
+    public static TiledRoadStore open(File directory) throws IOException {
+        MappedFile tiles = MappedFile.openReadOnly(new File(directory, TILES_FILENAME), MAX_MAPPED_CHUNKS);
+        MappedFile index = MappedFile.openReadOnly(new File(directory, INDEX_FILENAME), MAX_MAPPED_CHUNKS);
+
+        try {
+            return new TiledRoadStore(tiles, index);
+        }
+        catch (IOException e) {
+            tiles.close();
+            index.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks if the store in the given directory has been built, and is newer than all of the given source files
+     */
+    public static boolean isUpToDate(File directory, File... sources) {
+        File tilesFile = new File(directory, TILES_FILENAME);
+        File indexFile = new File(directory, INDEX_FILENAME);
+
+        if (!tilesFile.isFile() || !indexFile.isFile() || new File(directory, BUILD_FILENAME).exists())
+            return false;
+
+        for (File source : sources)
+            if (source != null && source.lastModified() > tilesFile.lastModified())
+                return false;
+
+        return true;
+    }
+
+    /**
+     * Builds a store from the tab files. Each of the node and segment files are read through a few times, but nothing
+     * proportional to the number of nodes or segments is kept on the heap
+     *
+     * @param nodes         a File for nodeID-lat-lon.tab
+     * @param roads         a File for roadID-roadInfo.tab
+     * @param segments      a File for roadSeg-roadID-length-nodeID-nodeID-coords.tab
+     * @param trafficLights a File for traffic-lights.tab, or null
+     * @param directory     the directory to build the store in
+     */
+    public static void build(File nodes, File roads, File segments, File trafficLights, File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Could not create " + directory);
+
+        //Roads are needed to know which way segments go and how fast they are
+        Map<Integer, RoadInfo> roadInfos = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(roads))) {
+            reader.readLine(); //Ignore header line
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                RoadInfo roadInfo = new RoadInfo(line);
+                roadInfos.put(roadInfo.getID(), roadInfo);
+            }
+        }
+
+        //First pass over the nodes finds the bounds of the map, which decide the size of the grid
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        int nodeCount = 0;
+        int maxNodeID = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(nodes))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Node node = new Node(line);
+                minX = Math.min(minX, node.getX());
+                minY = Math.min(minY, node.getY());
+                maxX = Math.max(maxX, node.getX());
+                maxY = Math.max(maxY, node.getY());
+                maxNodeID = Math.max(maxNodeID, node.getID());
+                nodeCount++;
+            }
+        }
+
+        if (nodeCount == 0)
+            throw new IOException("No nodes in " + nodes);
+
+        int gridSize = Math.max(1, (int) Math.ceil(Math.sqrt(nodeCount / (double) NODES_PER_CELL)));
+        //Grow the cells slightly so that the nodes on the maximum edges still fall inside the grid
+        double cellSize = Math.max(Math.max(maxX - minX, maxY - minY), 1e-6) / gridSize * (1 + 1e-9);
+        int cells = gridSize * gridSize;
+
+        int[] cellNodeCounts = new int[cells];
+        int[] cellEdgeCounts = new int[cells];
+        int[] cellSegmentCounts = new int[cells];
+        int[] cellPointCounts = new int[cells];
+
+        File indexFile = new File(directory, INDEX_FILENAME);
+        File buildFile = new File(directory, BUILD_FILENAME);
+        File tilesFile = new File(directory, TILES_FILENAME);
+        long indexSize = ((long) maxNodeID + 1) * INDEX_ENTRY_SIZE;
+
+        //The build file holds the number of edges leaving each node, then the next free edge slot of each node
+        try (MappedFile index = MappedFile.create(indexFile, indexSize, MAX_MAPPED_CHUNKS);
+             MappedFile build = MappedFile.create(buildFile, indexSize, MAX_MAPPED_CHUNKS)) {
+
+            //Second pass assigns every node to a cell, in file order
+            try (BufferedReader reader = new BufferedReader(new FileReader(nodes))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Node node = new Node(line);
+                    int cell = cellOf(node.getX(), node.getY(), minX, minY, cellSize, gridSize);
+                    long entry = (long) node.getID() * INDEX_ENTRY_SIZE;
+                    index.putInt(entry, cell + 1);
+                    index.putInt(entry + 4, cellNodeCounts[cell]++);
+                }
+            }
+
+            //First pass over the segments counts the edges, segments, and points in each cell
+            try (BufferedReader reader = new BufferedReader(new FileReader(segments))) {
+                reader.readLine(); //Ignore header line
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    RoadSegment segment = new RoadSegment(line);
+                    int cell1 = cellOfNode(index, segment.getNodeID1(), maxNodeID);
+                    int cell2 = cellOfNode(index, segment.getNodeID2(), maxNodeID);
+                    if (cell1 < 0 || cell2 < 0)
+                        continue;
+
+                    long entry = (long) segment.getNodeID1() * INDEX_ENTRY_SIZE;
+                    build.putInt(entry, build.getInt(entry) + 1);
+                    cellEdgeCounts[cell1]++;
+
+                    if (!isOneWay(roadInfos, segment)) {
+                        entry = (long) segment.getNodeID2() * INDEX_ENTRY_SIZE;
+                        build.putInt(entry, build.getInt(entry) + 1);
+                        cellEdgeCounts[cell2]++;
+                    }
+
+                    cellSegmentCounts[cell1]++;
+                    cellPointCounts[cell1] += segment.getPointCount();
+                }
+            }
+
+            //Lay the cells out one after the other, after the header and directory
+            long[] cellOffsets = new long[cells];
+            long size = HEADER_SIZE + (long) cells * DIRECTORY_ENTRY_SIZE;
+            for (int cell = 0; cell < cells; cell++) {
+                cellOffsets[cell] = size;
+                size += (long) cellNodeCounts[cell] * NODE_SIZE + (long) cellEdgeCounts[cell] * EDGE_SIZE
+                        + (long) cellSegmentCounts[cell] * SEGMENT_SIZE + (long) cellPointCounts[cell] * POINT_SIZE;
+            }
+
+            try (MappedFile tiles = MappedFile.create(tilesFile, size, MAX_MAPPED_CHUNKS)) {
+                for (int cell = 0; cell < cells; cell++) {
+                    long entry = HEADER_SIZE + (long) cell * DIRECTORY_ENTRY_SIZE;
+                    tiles.putLong(entry, cellOffsets[cell]);
+                    tiles.putInt(entry + 8, cellNodeCounts[cell]);
+                    tiles.putInt(entry + 12, cellEdgeCounts[cell]);
+                    tiles.putInt(entry + 16, cellSegmentCounts[cell]);
+                    tiles.putInt(entry + 20, cellPointCounts[cell]);
+                }
+
+                TrafficLightIndex lights = readTrafficLights(trafficLights);
+
+                //Third pass over the nodes writes them out. Nodes are in the same order as the second pass, so each
+                // node's edges can be given the next block of edge slots in its cell
+                int[] cellCursors = new int[cells];
+                try (BufferedReader reader = new BufferedReader(new FileReader(nodes))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        Node node = new Node(line);
+                        long entry = (long) node.getID() * INDEX_ENTRY_SIZE;
+                        int cell = index.getInt(entry) - 1;
+                        int slot = index.getInt(entry + 4);
+                        int degree = build.getInt(entry);
+                        long position = cellOffsets[cell] + (long) slot * NODE_SIZE;
+
+                        tiles.putInt(position, node.getID());
+                        tiles.putInt(position + 4, lights.contains(node.getLocation()) ? FLAG_TRAFFIC_LIGHT : 0);
+                        tiles.putDouble(position + 8, node.getX());
+                        tiles.putDouble(position + 16, node.getY());
+                        tiles.putInt(position + 24, cellCursors[cell]);
+                        tiles.putInt(position + 28, degree);
+
+                        build.putInt(entry + 4, cellCursors[cell]);
+                        cellCursors[cell] += degree;
+                    }
+                }
+
+                //Second pass over the segments writes the segments, their points, and their edges
+                int[] segmentCursors = new int[cells];
+                int[] pointCursors = new int[cells];
+                try (BufferedReader reader = new BufferedReader(new FileReader(segments))) {
+                    reader.readLine(); //Ignore header line
+
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        RoadSegment segment = new RoadSegment(line);
+                        int cell1 = cellOfNode(index, segment.getNodeID1(), maxNodeID);
+                        int cell2 = cellOfNode(index, segment.getNodeID2(), maxNodeID);
+                        if (cell1 < 0 || cell2 < 0)
+                            continue;
+
+                        RoadInfo roadInfo = roadInfos.get(segment.getID());
+                        int segmentIndex = segmentCursors[cell1]++;
+                        int firstPoint = pointCursors[cell1];
+                        double[] xs = segment.getXs();
+                        double[] ys = segment.getYs();
+                        pointCursors[cell1] += xs.length;
+
+                        long segmentsBase = cellOffsets[cell1] + (long) cellNodeCounts[cell1] * NODE_SIZE
+                                + (long) cellEdgeCounts[cell1] * EDGE_SIZE;
+                        long position = segmentsBase + (long) segmentIndex * SEGMENT_SIZE;
+                        tiles.putInt(position, segment.getID());
+                        tiles.putInt(position + 4, roadInfo == null ? 0 : roadInfo.getRoadClass());
+                        tiles.putInt(position + 8, segment.getNodeID1());
+                        tiles.putInt(position + 12, segment.getNodeID2());
+                        tiles.putInt(position + 16, firstPoint);
+                        tiles.putInt(position + 20, xs.length);
+                        tiles.putDouble(position + 24, segment.getLength());
+
+                        long pointsBase = segmentsBase + (long) cellSegmentCounts[cell1] * SEGMENT_SIZE;
+                        for (int i = 0; i < xs.length; i++) {
+                            tiles.putDouble(pointsBase + (long) (firstPoint + i) * POINT_SIZE, xs[i]);
+                            tiles.putDouble(pointsBase + (long) (firstPoint + i) * POINT_SIZE + 8, ys[i]);
+                        }
+
+                        long segmentRef = segmentRef(cell1, segmentIndex);
+                        double speed = roadInfo == null ? 1 : roadInfo.getWeightedRoadSpeed();
+                        writeEdge(tiles, index, build, cellOffsets, cellNodeCounts, segment.getNodeID1(),
+                                segment.getNodeID2(), segment, speed, segmentRef);
+
+                        if (!isOneWay(roadInfos, segment))
+                            writeEdge(tiles, index, build, cellOffsets, cellNodeCounts, segment.getNodeID2(),
+                                    segment.getNodeID1(), segment, speed, segmentRef);
+                    }
+                }
+
+                //The header is written last, so a build that didn't finish can't be opened
+                tiles.putInt(8, gridSize);
+                tiles.putInt(12, nodeCount);
+                tiles.putInt(16, maxNodeID);
+                tiles.putDouble(24, minX);
+                tiles.putDouble(32, minY);
+                tiles.putDouble(40, cellSize);
+                tiles.putInt(4, FORMAT_VERSION);
+                tiles.putInt(0, MAGIC);
+            }
+        }
+
+        if (!buildFile.delete())
+            throw new IOException("Could not delete " + buildFile);
+    }
+
+    private static void writeEdge(MappedFile tiles, MappedFile index, MappedFile build, long[] cellOffsets,
+                                  int[] cellNodeCounts, int tailID, int headID, RoadSegment segment, double speed,
+                                  long segmentRef) {
+        long entry = (long) tailID * INDEX_ENTRY_SIZE;
+        int cell = index.getInt(entry) - 1;
+        int slot = build.getInt(entry + 4);
+        build.putInt(entry + 4, slot + 1);
+
+        long position = cellOffsets[cell] + (long) cellNodeCounts[cell] * NODE_SIZE + (long) slot * EDGE_SIZE;
+        tiles.putInt(position, headID);
+        tiles.putInt(position + 4, segment.getID());
+        tiles.putDouble(position + 8, segment.getLength());
+        tiles.putDouble(position + 16, speed);
+        tiles.putLong(position + 24, segmentRef);
+    }
+
+    private static boolean isOneWay(Map<Integer, RoadInfo> roadInfos, RoadSegment segment) {
+        RoadInfo roadInfo = roadInfos.get(segment.getID());
+        return roadInfo != null && roadInfo.isOneWay();
+    }
+
+    private static TrafficLightIndex readTrafficLights(File trafficLights) throws IOException {
+        TrafficLightIndex lights = new TrafficLightIndex();
+        if (trafficLights == null)
+            return lights;
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(trafficLights))) {
+            reader.readLine(); //Ignore the header line
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\\s+");
+                if (parts.length < 2)
+                    continue;
+
+                lights.add(Location.fromLatLon(Double.parseDouble(parts[1]), Double.parseDouble(parts[0])));
+            }
+        }
+
+        return lights;
+    }
+
+    private static int cellOf(double x, double y, double minX, double minY, double cellSize, int gridSize) {
+        int col = Math.max(0, Math.min(gridSize - 1, (int) ((x - minX) / cellSize)));
+        int row = Math.max(0, Math.min(gridSize - 1, (int) ((y - minY) / cellSize)));
+        return row * gridSize + col;
+    }
+
+    private static int cellOfNode(MappedFile index, int nodeID, int maxNodeID) {
+        if (nodeID < 0 || nodeID > maxNodeID)
+            return -1;
+
+        return index.getInt((long) nodeID * INDEX_ENTRY_SIZE) - 1;
+    }
+
+    private static long segmentRef(int cell, int segmentIndex) {
+        return ((long) cell << 32) | (segmentIndex & 0xffffffffL);
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    /**
+     * @return the number of chunks of the files that have been paged in so far
+     */
+    public long getMappedChunkCount() {
+        return tiles.getMappedChunkCount() + index.getMappedChunkCount();
+    }
+
+    public boolean containsNode(int nodeID) {
+        return cellOfNode(index, nodeID, maxNodeID) >= 0;
+    }
+
+    /**
+     * @return the position of the node's record in the tiles file
+     */
+    private long nodePosition(int nodeID) {
+        int cell = cellOfNode(index, nodeID, maxNodeID);
+        if (cell < 0)
+            throw new IllegalArgumentException("No node with ID " + nodeID);
+
+        return cellOffsets[cell] + (long) index.getInt((long) nodeID * INDEX_ENTRY_SIZE + 4) * NODE_SIZE;
+    }
+
+    public double getNodeX(int nodeID) {
+        return tiles.getDouble(nodePosition(nodeID) + 8);
+    }
+
+    public double getNodeY(int nodeID) {
+        return tiles.getDouble(nodePosition(nodeID) + 16);
+    }
+
+    public boolean hasTrafficLight(int nodeID) {
+        return (tiles.getInt(nodePosition(nodeID) + 4) & FLAG_TRAFFIC_LIGHT) != 0;
+    }
+
+    /**
+     * Creates a Node object for the given node. The object isn't kept, so asking for the same node twice gives two
+     * different (but equal in content) objects
+     */
+    public Node getNode(int nodeID) {
+        long position = nodePosition(nodeID);
+        Node node = new Node(nodeID, new Location(tiles.getDouble(position + 8), tiles.getDouble(position + 16)));
+        node.setHasTrafficLight((tiles.getInt(position + 4) & FLAG_TRAFFIC_LIGHT) != 0);
+        return node;
+    }
+
+    /**
+     * Calls the visitor for every edge that can be travelled out of the given node
+     */
+    public void forEachEdge(int nodeID, EdgeVisitor visitor) {
+        int cell = cellOfNode(index, nodeID, maxNodeID);
+        if (cell < 0)
+            return;
+
+        long position = cellOffsets[cell] + (long) index.getInt((long) nodeID * INDEX_ENTRY_SIZE + 4) * NODE_SIZE;
+        int firstEdge = tiles.getInt(position + 24);
+        int edgeCount = tiles.getInt(position + 28);
+        long edgesBase = cellOffsets[cell] + (long) cellNodeCounts[cell] * NODE_SIZE;
+
+        for (int i = firstEdge; i < firstEdge + edgeCount; i++) {
+            long edge = edgesBase + (long) i * EDGE_SIZE;
+            visitor.visit(tiles.getInt(edge), tiles.getInt(edge + 4), tiles.getDouble(edge + 8),
+                    tiles.getDouble(edge + 16), tiles.getLong(edge + 24));
+        }
+    }
+
+    /**
+     * Creates a RoadSegment object for the segment with the given reference, as passed to an {@link EdgeVisitor}
+     */
+    public RoadSegment getSegment(long segmentRef) {
+        int cell = (int) (segmentRef >>> 32);
+        long position = segmentsBase(cell) + (segmentRef & 0xffffffffL) * SEGMENT_SIZE;
+        long pointsBase = segmentsBase(cell) + (long) cellSegmentCounts[cell] * SEGMENT_SIZE;
+
+        int firstPoint = tiles.getInt(position + 16);
+        int pointCount = tiles.getInt(position + 20);
+        double[] xs = new double[pointCount];
+        double[] ys = new double[pointCount];
+        for (int i = 0; i < pointCount; i++) {
+            long point = pointsBase + (long) (firstPoint + i) * POINT_SIZE;
+            xs[i] = tiles.getDouble(point);
+            ys[i] = tiles.getDouble(point + 8);
+        }
+
+        return new RoadSegment(tiles.getInt(position), tiles.getDouble(position + 24), tiles.getInt(position + 8),
+                tiles.getInt(position + 12), xs, ys);
+    }
+
+    private long segmentsBase(int cell) {
+        return cellOffsets[cell] + (long) cellNodeCounts[cell] * NODE_SIZE + (long) cellEdgeCounts[cell] * EDGE_SIZE;
+    }
+
+    /**
+     * Finds the closest node to the given location, only looking in the cells within range of it
+     *
+     * @param location the location to search around
+     * @param range    the maximum distance in each axis to look
+     * @return the ID of the closest node, or -1 if there is none in range
+     */
+    public int findClosestNode(Location location, double range) {
+        int closest = -1;
+        double closestDist = Double.POSITIVE_INFINITY;
+
+        for (int cell : cellsInRange(location.x - range, location.y - range, location.x + range, location.y + range)) {
+            for (int i = 0; i < cellNodeCounts[cell]; i++) {
+                long position = cellOffsets[cell] + (long) i * NODE_SIZE;
+                double dist = Math.hypot(tiles.getDouble(position + 8) - location.x, tiles.getDouble(position + 16) - location.y);
+
+                if (dist < closestDist && dist <= range) {
+                    closestDist = dist;
+                    closest = tiles.getInt(position);
+                }
+            }
+        }
+
+        return closest;
+    }
+
+    private List<Integer> cellsInRange(double x1, double y1, double x2, double y2) {
+        int minCol = Math.max(0, (int) Math.floor((x1 - minX) / cellSize));
+        int minRow = Math.max(0, (int) Math.floor((y1 - minY) / cellSize));
+        int maxCol = Math.min(gridSize - 1, (int) Math.floor((x2 - minX) / cellSize));
+        int maxRow = Math.min(gridSize - 1, (int) Math.floor((y2 - minY) / cellSize));
+
+        List<Integer> cells = new ArrayList<>();
+        for (int row = minRow; row <= maxRow; row++)
+            for (int col = minCol; col <= maxCol; col++)
+                cells.add(row * gridSize + col);
+
+        return cells;
+    }
+
+    /**
+     * Draws the segments that could be in the given area, with the same rules as {@link RoadSegment#draw}
+     *
+     * @param g      graphics object to draw to
+     * @param offset window offset from the origin
+     * @param centre centre of the window
+     * @param zoom   zoom factor of the map
+     * @param min    the bottom left corner of the visible area
+     * @param max    the top right corner of the visible area
+     */
+    public void drawSegments(Graphics g, Point offset, Point centre, double zoom, Location min, Location max) {
+        Graphics2D g2d = (Graphics2D) g;
+
+        //A segment is stored in the cell of its first node, so segments crossing into the visible area from the
+        // neighbouring cells are drawn by also visiting the cells around it
+        for (int cell : cellsInRange(min.x - cellSize, min.y - cellSize, max.x + cellSize, max.y + cellSize)) {
+            long segmentsBase = segmentsBase(cell);
+            long pointsBase = segmentsBase + (long) cellSegmentCounts[cell] * SEGMENT_SIZE;
+
+            for (int i = 0; i < cellSegmentCounts[cell]; i++) {
+                long position = segmentsBase + (long) i * SEGMENT_SIZE;
+                int roadClass = tiles.getInt(position + 4);
+
+                if (roadClass == 0 && zoom < MapViewer.CLOSE_ZOOM_CUTOFF || roadClass == 1 && zoom < MapViewer.MEDIUM_ZOOM_CUTOFF)
+                    continue;
+
+                g2d.setStroke(RoadSegment.STROKES.get((float) ((roadClass + 1) * zoom / 3)));
+
+                //Points are projected straight out of the file, without creating Location or Point objects
+                int firstPoint = tiles.getInt(position + 16);
+                int pointCount = tiles.getInt(position + 20);
+                int lastU = 0, lastV = 0;
+                for (int j = 0; j < pointCount; j++) {
+                    long point = pointsBase + (long) (firstPoint + j) * POINT_SIZE;
+                    int u = (int) ((offset.x + (tiles.getDouble(point) * MapViewer.WINDOW_SCALE)) * zoom) + centre.x;
+                    int v = (int) ((offset.y - (tiles.getDouble(point + 8) * MapViewer.WINDOW_SCALE)) * zoom) + centre.y;
+
+                    if (j > 0)
+                        g2d.drawLine(lastU, lastV, u, v);
+
+                    lastU = u;
+                    lastV = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws the nodes in the given area, with the same rules as {@link Node#draw}
+     *
+     * @param g      graphics object to draw to
+     * @param offset window offset from the origin
+     * @param centre centre of the window
+     * @param zoom   zoom factor of the map
+     * @param size   size of the circles
+     * @param min    the bottom left corner of the visible area
+     * @param max    the top right corner of the visible area
+     */
+    public void drawNodes(Graphics g, Point offset, Point centre, double zoom, double size, Location min, Location max) {
+        if (zoom < MapViewer.CLOSE_ZOOM_CUTOFF) //Don't draw if it's too small
+            return;
+
+        int hSize = (int) (size / 2);
+        for (int cell : cellsInRange(min.x, min.y, max.x, max.y)) {
+            for (int i = 0; i < cellNodeCounts[cell]; i++) {
+                long position = cellOffsets[cell] + (long) i * NODE_SIZE;
+                int u = (int) ((offset.x + (tiles.getDouble(position + 8) * MapViewer.WINDOW_SCALE)) * zoom) + centre.x;
+                int v = (int) ((offset.y - (tiles.getDouble(position + 16) * MapViewer.WINDOW_SCALE)) * zoom) + centre.y;
+
+                g.fillOval(u - hSize, v - hSize, (int) size, (int) size);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        tiles.close();
+        index.close();
+    }
+}
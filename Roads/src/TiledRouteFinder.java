@@ -0,0 +1,163 @@
+import java.util.*;
+
+/**
+ * Searches a {@link TiledRoadStore} with A*. Only the nodes the search reaches are read from the store, so only the
+ * cells around the route are paged in, and the search state is kept in maps sized by the number of nodes reached
+ * rather than the size of the map. Like {@link RouteFinder#aStarSearch}, the search settles states rather than nodes,
+ * so it finds the same routes through nodes with turn restrictions
+ */
+public class TiledRouteFinder {
+    private static final Histogram TILED_TIME = Metrics.timer("route.tiled");
+    private static final Histogram TILED_SETTLED = Metrics.counts("route.tiled.settled");
+
+    private TiledRoadStore store;
+    private Map<Integer, RoadInfo> roadInfoLookupTable;
+    private Map<Integer, List<Restriction>> restrictionsMap;
+
+    private volatile int settledCount = 0;
+
+    /**
+     * @param store               the store holding the nodes and segments
+     * @param roadInfoLookupTable maps road ID -> road info
+     * @param restrictionsMap     maps node ID -> turn restrictions through the node
+     */
+    public TiledRouteFinder(TiledRoadStore store, Map<Integer, RoadInfo> roadInfoLookupTable,
+                            Map<Integer, List<Restriction>> restrictionsMap) {
+        this.store = store;
+        this.roadInfoLookupTable = roadInfoLookupTable;
+        this.restrictionsMap = restrictionsMap;
+    }
+
+    /**
+     * @return the number of nodes settled by the most recent search
+     */
+    public int getSettledCount() {
+        return settledCount;
+    }
+
+    /**
+     * Searches for a path between the two nodes, then builds the list of segments along it and a summary of how far
+     * is travelled along each road
+     *
+     * @param startID          the ID of the node to start searching from
+     * @param goalID           the ID of the node to look for a path to
+     * @param isSpeedHeuristic true if the cost should be travel time rather than distance
+     * @param useTrafficLights true if routes through traffic lights should be preferred
+     * @return the route between the two nodes, or {@link Route#NOT_FOUND}
+     */
+    public Route findRoute(int startID, int goalID, boolean isSpeedHeuristic, boolean useTrafficLights) {
+        long startTime = System.nanoTime();
+        Route route = search(startID, goalID, isSpeedHeuristic, useTrafficLights);
+        Metrics.recordSince(TILED_TIME, startTime);
+        return route;
+    }
+
+    private Route search(int startID, int goalID, boolean isSpeedHeuristic, boolean useTrafficLights) {
+        if (startID == goalID || !store.containsNode(startID) || !store.containsNode(goalID)) {
+            settledCount = 0;
+            TILED_SETTLED.record(0);
+            return Route.NOT_FOUND;
+        }
+
+        HashMap<Long, Long> exploredPath = new HashMap<>(); //Maps child state -> parent state
+        HashMap<Long, Long> pathSegments = new HashMap<>(); //Maps child state -> segment from the parent
+        HashMap<Long, Double> pathCost = new HashMap<>();
+        PriorityQueue<RouteFinder.FringeEntry> fringe = new PriorityQueue<>();
+        Set<Long> visited = new HashSet<>();
+
+        int settled = 0; //Counted locally, and only published once the search is done
+        double goalX = store.getNodeX(goalID);
+        double goalY = store.getNodeY(goalID);
+
+        long startState = RouteFinder.state(restrictionsMap, startID, -1);
+        pathCost.put(startState, 0d);
+        fringe.add(new RouteFinder.FringeEntry(startState, heuristic(startID, goalX, goalY, isSpeedHeuristic)));
+
+        long goalState = -1;
+        while (!fringe.isEmpty()) {
+            long state = fringe.poll().state;
+            int node = (int) state;
+
+            //Don't revisit already visited states
+            if (!visited.add(state))
+                continue;
+
+            settled++;
+
+            if (node == goalID) {
+                goalState = state;
+                break;
+            }
+
+            Long parentState = exploredPath.get(state);
+            int parent = parentState == null ? -1 : (int) (long) parentState;
+            double nodeCost = pathCost.get(state);
+
+            store.forEachEdge(node, (headID, roadID, length, weightedSpeed, segmentRef) -> {
+                long headState = RouteFinder.state(restrictionsMap, headID, node);
+                if (visited.contains(headState)
+                        || parent >= 0 && RouteFinder.isRestricted(restrictionsMap, parent, node, headID))
+                    return;
+
+                double cost = nodeCost + length
+                        / (isSpeedHeuristic ? weightedSpeed : 1)
+                        * (useTrafficLights && store.hasTrafficLight(headID) ? 1 : 2);
+
+                //Only requeue the neighbour if this is a cheaper way of reaching it
+                if (cost >= pathCost.getOrDefault(headState, Double.POSITIVE_INFINITY))
+                    return;
+
+                pathCost.put(headState, cost);
+                exploredPath.put(headState, state);
+                pathSegments.put(headState, segmentRef);
+                fringe.add(new RouteFinder.FringeEntry(headState,
+                        cost + heuristic(headID, goalX, goalY, isSpeedHeuristic)));
+            });
+        }
+
+        settledCount = settled;
+        TILED_SETTLED.record(settled);
+
+        if (goalState < 0)
+            return Route.NOT_FOUND;
+
+        //Reconstruct the path backwards from the goal, reading the segments back in from the store
+        List<Node> nodes = new ArrayList<>();
+        List<RoadSegment> segments = new ArrayList<>();
+        for (Long current = goalState; current != null; current = exploredPath.get(current)) {
+            nodes.add(store.getNode((int) (long) current));
+
+            if (pathSegments.containsKey(current))
+                segments.add(store.getSegment(pathSegments.get(current)));
+        }
+
+        Collections.reverse(nodes);
+        Collections.reverse(segments);
+
+        //Merge consecutive segments on the same road
+        List<String> pathNames = new ArrayList<>();
+        List<Double> pathCosts = new ArrayList<>();
+        for (RoadSegment segment : segments) {
+            RoadInfo roadInfo = roadInfoLookupTable.get(segment.getID());
+            String roadName = roadInfo == null ? "" : roadInfo.getLabel();
+
+            if (!pathNames.isEmpty() && roadName.equals(pathNames.get(pathNames.size() - 1))) {
+                pathCosts.set(pathCosts.size() - 1, pathCosts.get(pathCosts.size() - 1) + segment.getLength());
+            }
+            else {
+                pathNames.add(roadName);
+                pathCosts.add(segment.getLength());
+            }
+        }
+
+        return new Route(nodes, segments, pathNames, pathCosts);
+    }
+
+    /**
+     * Estimates the cost from a node to the goal. This should be admissible as it always underestimates the cost
+     */
+    private double heuristic(int nodeID, double goalX, double goalY, boolean isSpeedHeuristic) {
+        return Math.hypot(store.getNodeX(nodeID) - goalX, store.getNodeY(nodeID) - goalY)
+                * (isSpeedHeuristic ? RouteFinder.SPEED_HEURISTIC_SCALE : 1);
+    }
+}
@@ -0,0 +1,680 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Plans the quickest order to visit a set of stops in (a travelling salesman tour over the road graph).
+ * <p>
+ * The travel time between every pair of stops is found first, with one Dijkstra search out of each stop that stops
+ * once every other stop is settled. The searches run in parallel over a flat copy of the graph, each in its own
+ * {@link SearchSpace}. The order is then built by nearest insertion and improved with 2-opt and Or-opt moves until
+ * neither finds anything better. If there's time left in the budget, the best tour is repeatedly kicked with a random
+ * double bridge and improved again, keeping whichever tour is quickest. Finally each leg of the tour is found with A*
+ * and the legs are stitched together into one route.
+ * <p>
+ * Times are in hours at the roads' weighted speeds. Turn restrictions are followed within a leg, but any turn is
+ * allowed at a stop. Like {@link RouteFinder#aStarSearch}, the searches settle states rather than nodes: a node with
+ * turn restrictions has a state for each arc into it, so reaching it cheaply from one side can't hide a path that needs
+ * a turn only allowed from the other side.
+ * <p>
+ * The travel times aren't symmetric because of one way roads, so every move is costed in the direction it's travelled.
+ */
+public class TourPlanner {
+    private static final double UNREACHABLE = 1e6; //Travel time given to a leg that can't be driven at all
+    private static final double EPSILON = 1e-9; //Smallest improvement a move has to make, so rounding can't loop
+    private static final int MAX_OR_OPT_LENGTH = 3; //Most stops moved at once by an Or-opt move
+
+    private final Node[] nodes; //Maps index -> node
+    private final int[] indexOfID; //Maps node ID -> index, or -1
+    private final int[] arcOffsets; //Arcs out of node i are arcOffsets[i] up to arcOffsets[i + 1]
+    private final int[] arcHeads;
+    private final RoadSegment[] arcSegments;
+    private final double[] arcTimes;
+    private final boolean[] restricted; //True if a node has any turn restrictions through it
+    private final int[] arcStates; //Maps arc -> state reached along it, which is the head unless it's restricted
+    private final int[] stateNodes; //Maps state -> node. The first states are the nodes themselves
+    private final double maxSpeed;
+
+    private final Map<Integer, List<Restriction>> restrictionsMap;
+    private final RouteFinder routeFinder;
+    private final ThreadLocal<SearchSpace> searchSpaces;
+
+    /**
+     * Copies the graph into flat arrays to plan tours over. The tables aren't read again afterwards, apart from the
+     * restrictions
+     *
+     * @param nodeLookupTable     maps node ID -> node
+     * @param nodeAdjacencyTable  maps node ID -> segments that can be travelled out of the node
+     * @param roadInfoLookupTable maps road ID -> road info
+     * @param restrictionsMap     maps node ID -> turn restrictions through the node
+     * @param routeFinder         route finder over the same graph, used to summarise the stitched route
+     */
+    public TourPlanner(Map<Integer, Node> nodeLookupTable, Map<Integer, List<RoadSegment>> nodeAdjacencyTable,
+                       Map<Integer, RoadInfo> roadInfoLookupTable, Map<Integer, List<Restriction>> restrictionsMap,
+                       RouteFinder routeFinder) {
+        this.restrictionsMap = restrictionsMap;
+        this.routeFinder = routeFinder;
+
+        int count = nodeLookupTable.size();
+        int maxID = -1;
+        for (int id : nodeLookupTable.keySet())
+            maxID = Math.max(maxID, id);
+
+        nodes = new Node[count];
+        indexOfID = new int[maxID + 1];
+        Arrays.fill(indexOfID, -1);
+        int n = 0;
+        for (Node node : nodeLookupTable.values()) {
+            indexOfID[node.getID()] = n;
+            nodes[n++] = node;
+        }
+
+        arcOffsets = new int[count + 1];
+        for (int i = 0; i < count; i++)
+            arcOffsets[i + 1] = arcOffsets[i] + nodeAdjacencyTable.getOrDefault(nodes[i].getID(), Collections.emptyList()).size();
+
+        arcHeads = new int[arcOffsets[count]];
+        arcSegments = new RoadSegment[arcOffsets[count]];
+        arcTimes = new double[arcOffsets[count]];
+        restricted = new boolean[count];
+        double fastest = 1e-9;
+        int arc = 0;
+        for (int i = 0; i < count; i++) {
+            int id = nodes[i].getID();
+            restricted[i] = restrictionsMap.containsKey(id);
+
+            for (RoadSegment segment : nodeAdjacencyTable.getOrDefault(id, Collections.emptyList())) {
+                double speed = roadInfoLookupTable.get(segment.getID()).getWeightedRoadSpeed();
+                arcHeads[arc] = indexOf(segment.getOtherNode(id));
+                arcSegments[arc] = segment;
+                arcTimes[arc] = segment.getLength() / speed;
+                fastest = Math.max(fastest, speed);
+                arc++;
+            }
+        }
+        maxSpeed = fastest;
+
+        //Arcs into a restricted node each get a state of their own after the nodes' states
+        arcStates = new int[arcHeads.length];
+        int stateCount = count;
+        for (int i = 0; i < arcHeads.length; i++)
+            arcStates[i] = arcHeads[i] >= 0 && restricted[arcHeads[i]] ? stateCount++ : arcHeads[i];
+
+        stateNodes = new int[stateCount];
+        for (int i = 0; i < count; i++)
+            stateNodes[i] = i;
+        for (int i = 0; i < arcHeads.length; i++)
+            if (arcStates[i] >= count)
+                stateNodes[arcStates[i]] = arcHeads[i];
+
+        int states = stateCount;
+        searchSpaces = ThreadLocal.withInitial(() -> new SearchSpace(states));
+    }
+
+    /**
+     * Plans the quickest order to visit the stops in, starting from the first stop
+     *
+     * @param stops         the stops to visit, the first of which is where the tour starts
+     * @param returnToStart true if the tour has to end back at the first stop
+     * @param timeBudget    how long to spend improving the order, in milliseconds. The travel times and the legs of
+     *                      the route are found outside of the budget
+     * @return the planned tour
+     * @throws IllegalArgumentException if there are no stops, or a stop isn't in the graph
+     */
+    public Tour plan(List<Node> stops, boolean returnToStart, long timeBudget) {
+        if (stops.isEmpty())
+            throw new IllegalArgumentException("A tour needs at least one stop");
+
+        long start = System.nanoTime();
+        int k = stops.size();
+        int[] stopNodes = new int[k];
+        for (int i = 0; i < k; i++) {
+            stopNodes[i] = indexOf(stops.get(i).getID());
+            if (stopNodes[i] < 0)
+                throw new IllegalArgumentException("Stop is not in the graph: " + stops.get(i).getID());
+        }
+
+        double[][] times = travelTimes(stopNodes);
+        long matrixEnd = System.nanoTime();
+
+        //An open tour is planned as a closed one through a dummy stop, which any stop can go to for free but which can
+        //only go on to the start. The dummy then ends up straight after wherever the tour should finish
+        double[][] costs = times;
+        if (!returnToStart) {
+            costs = new double[k + 1][k + 1];
+            for (int i = 0; i < k; i++)
+                costs[i] = Arrays.copyOf(times[i], k + 1);
+
+            Arrays.fill(costs[k], UNREACHABLE);
+            costs[k][0] = 0;
+            costs[k][k] = 0;
+        }
+
+        int[] tour = improve(nearestInsertion(costs), costs, matrixEnd + timeBudget * 1_000_000);
+        if (!returnToStart)
+            tour = Arrays.stream(tour).filter(stop -> stop != k).toArray();
+        long orderEnd = System.nanoTime();
+
+        //Find each leg of the tour, then join them up
+        int legCount = returnToStart && k > 1 ? k : k - 1;
+        int[] order = tour;
+        List<List<Node>> legNodes = new ArrayList<>(Collections.nCopies(legCount, null));
+        List<List<RoadSegment>> legSegments = new ArrayList<>(Collections.nCopies(legCount, null));
+        IntStream.range(0, legCount).parallel().forEach(leg -> {
+            List<Node> path = new ArrayList<>();
+            List<RoadSegment> segments = new ArrayList<>();
+            findLeg(stopNodes[order[leg]], stopNodes[order[(leg + 1) % k]], path, segments);
+            legNodes.set(leg, path);
+            legSegments.set(leg, segments);
+        });
+
+        List<Node> path = new ArrayList<>();
+        List<RoadSegment> segments = new ArrayList<>();
+        double travelTime = 0;
+        boolean complete = true;
+        for (int leg = 0; leg < legCount; leg++) {
+            travelTime += times[order[leg]][order[(leg + 1) % k]];
+
+            if (stopNodes[order[leg]] == stopNodes[order[(leg + 1) % k]])
+                continue;
+
+            if (legSegments.get(leg).isEmpty()) {
+                complete = false;
+                continue;
+            }
+
+            //Each leg starts where the last one finished, so the joining node is only added once
+            List<Node> legPath = legNodes.get(leg);
+            path.addAll(path.isEmpty() ? legPath : legPath.subList(1, legPath.size()));
+            segments.addAll(legSegments.get(leg));
+        }
+
+        List<Node> orderedStops = new ArrayList<>(k);
+        for (int stop : order)
+            orderedStops.add(stops.get(stop));
+
+        return new Tour(orderedStops, order, routeFinder.buildRoute(path, segments), complete ? travelTime : Double.POSITIVE_INFINITY,
+                (matrixEnd - start) / 1e9, (orderEnd - matrixEnd) / 1e9, (System.nanoTime() - orderEnd) / 1e9);
+    }
+
+    /**
+     * Finds the travel time between every pair of stops, with one search out of each stop run in parallel
+     *
+     * @return the travel times, where [i][j] is from stop i to stop j, or UNREACHABLE if there's no route
+     */
+    private double[][] travelTimes(int[] stopNodes) {
+        int k = stopNodes.length;
+
+        //Several stops can be at the same node, so the stops at each node are chained together
+        Map<Integer, Integer> firstStop = new HashMap<>();
+        int[] nextStop = new int[k];
+        for (int i = k - 1; i >= 0; i--) {
+            nextStop[i] = firstStop.getOrDefault(stopNodes[i], -1);
+            firstStop.put(stopNodes[i], i);
+        }
+
+        int[] stopAt = new int[nodes.length];
+        Arrays.fill(stopAt, -1);
+        firstStop.forEach((node, stop) -> stopAt[node] = stop);
+        int targets = firstStop.size();
+
+        double[][] times = new double[k][];
+        IntStream.range(0, k).parallel().forEach(source -> {
+            double[] row = new double[k];
+            Arrays.fill(row, UNREACHABLE);
+
+            SearchSpace space = searchSpaces.get();
+            space.reset();
+            space.relax(stopNodes[source], 0, -1, -1);
+            int remaining = targets;
+
+            while (remaining > 0 && !space.heap.isEmpty()) {
+                int state = space.heap.poll();
+                if (!space.settle(state))
+                    continue;
+
+                //A restricted stop can be settled in more than one state, and the first is the quickest
+                int node = stateNodes[state];
+                if (stopAt[node] >= 0 && row[stopAt[node]] == UNREACHABLE) {
+                    for (int stop = stopAt[node]; stop >= 0; stop = nextStop[stop])
+                        row[stop] = space.cost[state];
+                    remaining--;
+                }
+
+                expand(space, state, space.cost[state], -1);
+            }
+
+            times[source] = row;
+        });
+
+        return times;
+    }
+
+    /**
+     * Finds the quickest path between two nodes with A*, filling in the nodes and segments along it. They're left empty
+     * if there's no path
+     */
+    private void findLeg(int from, int to, List<Node> path, List<RoadSegment> segments) {
+        if (from == to)
+            return;
+
+        SearchSpace space = searchSpaces.get();
+        space.reset();
+        space.relax(from, 0, -1, -1);
+
+        int goalState = -1;
+        while (!space.heap.isEmpty()) {
+            int state = space.heap.poll();
+            if (!space.settle(state))
+                continue;
+
+            if (stateNodes[state] == to) {
+                goalState = state;
+                break;
+            }
+
+            expand(space, state, space.cost[state], to);
+        }
+
+        if (goalState < 0)
+            return;
+
+        for (int state = goalState; state != from; state = space.parents[state]) {
+            path.add(nodes[stateNodes[state]]);
+            segments.add(arcSegments[space.parentArcs[state]]);
+        }
+        path.add(nodes[from]);
+
+        Collections.reverse(path);
+        Collections.reverse(segments);
+    }
+
+    /**
+     * Relaxes the arcs out of the node of a settled state
+     *
+     * @param goal the node being searched for, which adds the A* heuristic to the heap keys, or -1 for Dijkstra
+     */
+    private void expand(SearchSpace space, int state, double cost, int goal) {
+        int node = stateNodes[state];
+        int parent = space.parents[state] < 0 ? -1 : stateNodes[space.parents[state]];
+
+        for (int arc = arcOffsets[node]; arc < arcOffsets[node + 1]; arc++) {
+            int head = arcHeads[arc];
+            if (head < 0 || space.isSettled(arcStates[arc]) || restricted[node] && isRestricted(parent, node, head))
+                continue;
+
+            double estimate = goal < 0 ? 0 : distance(head, goal) / maxSpeed;
+            space.relax(arcStates[arc], cost + arcTimes[arc], state, arc, estimate);
+        }
+    }
+
+    /**
+     * Checks the restrictions map to see if travelling from -> via -> to is banned
+     */
+    private boolean isRestricted(int from, int via, int to) {
+        if (from < 0)
+            return false;
+
+        for (Restriction r : restrictionsMap.getOrDefault(nodes[via].getID(), Collections.emptyList()))
+            if (r.getNodeID1() == nodes[from].getID() && r.getNodeID2() == nodes[to].getID())
+                return true;
+
+        return false;
+    }
+
+    private double distance(int from, int to) {
+        double dx = nodes[from].getX() - nodes[to].getX();
+        double dy = nodes[from].getY() - nodes[to].getY();
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private int indexOf(int nodeID) {
+        return nodeID >= 0 && nodeID < indexOfID.length ? indexOfID[nodeID] : -1;
+    }
+
+    /**
+     * Builds a closed tour starting at stop 0 by nearest insertion: the stop closest to any stop already in the tour
+     * (in either direction) is added next, wherever in the tour it adds the least time
+     */
+    static int[] nearestInsertion(double[][] costs) {
+        int m = costs.length;
+        int[] tour = new int[m];
+        int size = 1;
+
+        boolean[] inTour = new boolean[m];
+        double[] nearest = new double[m];
+        inTour[0] = true;
+        for (int stop = 1; stop < m; stop++)
+            nearest[stop] = Math.min(costs[0][stop], costs[stop][0]);
+
+        while (size < m) {
+            int next = -1;
+            for (int stop = 1; stop < m; stop++)
+                if (!inTour[stop] && (next < 0 || nearest[stop] < nearest[next]))
+                    next = stop;
+
+            int best = 0;
+            double bestIncrease = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < size; i++) {
+                int a = tour[i];
+                int b = tour[(i + 1) % size];
+                double increase = costs[a][next] + costs[next][b] - (size == 1 ? 0 : costs[a][b]);
+                if (increase < bestIncrease) {
+                    bestIncrease = increase;
+                    best = i;
+                }
+            }
+
+            System.arraycopy(tour, best + 1, tour, best + 2, size - best - 1);
+            tour[best + 1] = next;
+            size++;
+            inTour[next] = true;
+
+            for (int stop = 1; stop < m; stop++)
+                if (!inTour[stop])
+                    nearest[stop] = Math.min(nearest[stop], Math.min(costs[next][stop], costs[stop][next]));
+        }
+
+        return tour;
+    }
+
+    /**
+     * Improves a tour with local search until the deadline. Stop 0 always stays at the start of the tour
+     *
+     * @param deadline System.nanoTime() to stop by
+     * @return the quickest tour found
+     */
+    static int[] improve(int[] tour, double[][] costs, long deadline) {
+        int[] best = tour.clone();
+        localSearch(best, costs, deadline);
+        double bestCost = cost(best, costs);
+
+        //Double bridge kicks need at least 8 stops to have room for three cut points after the start
+        Random random = new Random(261);
+        while (best.length >= 8 && System.nanoTime() < deadline) {
+            int[] candidate = doubleBridge(best, random);
+            localSearch(candidate, costs, deadline);
+
+            double candidateCost = cost(candidate, costs);
+            if (candidateCost < bestCost - EPSILON) {
+                best = candidate;
+                bestCost = candidateCost;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Applies improving 2-opt and Or-opt moves to the tour until there are none left, or the deadline passes
+     */
+    private static void localSearch(int[] tour, double[][] costs, long deadline) {
+        int m = tour.length;
+        if (m < 3)
+            return;
+
+        //forward[i] is the time from tour[0] to tour[i] along the tour, and backward[i] is the time of the same stops
+        //travelled in reverse, so the cost of reversing any run of the tour is a couple of subtractions
+        double[] forward = new double[m];
+        double[] backward = new double[m];
+        boolean improved = true;
+
+        while (improved && System.nanoTime() < deadline) {
+            improved = false;
+            prefixTimes(tour, costs, forward, backward);
+
+            //2-opt: reverse the run tour[i..j]
+            for (int i = 1; i < m - 1 && !improved; i++) {
+                for (int j = i + 1; j < m; j++) {
+                    int before = tour[i - 1];
+                    int after = tour[(j + 1) % m];
+                    double removed = costs[before][tour[i]] + (forward[j] - forward[i]) + costs[tour[j]][after];
+                    double added = costs[before][tour[j]] + (backward[j] - backward[i]) + costs[tour[i]][after];
+
+                    if (added < removed - EPSILON) {
+                        reverse(tour, i, j);
+                        improved = true;
+                        break;
+                    }
+                }
+            }
+
+            if (improved)
+                continue;
+
+            //Or-opt: move the run tour[i..i + length - 1] to between two other stops, either way around
+            for (int length = 1; length <= MAX_OR_OPT_LENGTH && !improved; length++) {
+                for (int i = 1; i + length <= m && !improved; i++) {
+                    int first = tour[i];
+                    int last = tour[i + length - 1];
+                    int before = tour[i - 1];
+                    int after = tour[(i + length) % m];
+                    double run = forward[i + length - 1] - forward[i];
+                    double reversedRun = backward[i + length - 1] - backward[i];
+                    double removed = costs[before][first] + costs[last][after] - costs[before][after];
+
+                    for (int p = 0; p < m; p++) {
+                        //The run goes between tour[p] and tour[p + 1], which can't be inside or next to it
+                        if (p >= i - 1 && p < i + length)
+                            continue;
+
+                        int a = tour[p];
+                        int b = tour[(p + 1) % m];
+                        double kept = costs[a][first] + costs[last][b] - costs[a][b];
+                        double flipped = costs[a][last] + reversedRun - run + costs[first][b] - costs[a][b];
+
+                        if (Math.min(kept, flipped) < removed - EPSILON) {
+                            moveRun(tour, i, length, p, flipped < kept);
+                            improved = true;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void prefixTimes(int[] tour, double[][] costs, double[] forward, double[] backward) {
+        for (int i = 1; i < tour.length; i++) {
+            forward[i] = forward[i - 1] + costs[tour[i - 1]][tour[i]];
+            backward[i] = backward[i - 1] + costs[tour[i]][tour[i - 1]];
+        }
+    }
+
+    private static void reverse(int[] tour, int i, int j) {
+        for (; i < j; i++, j--) {
+            int t = tour[i];
+            tour[i] = tour[j];
+            tour[j] = t;
+        }
+    }
+
+    /**
+     * Moves the run of stops starting at position i to straight after position p
+     */
+    private static void moveRun(int[] tour, int i, int length, int p, boolean reversed) {
+        int[] run = Arrays.copyOfRange(tour, i, i + length);
+        if (reversed)
+            reverse(run, 0, length - 1);
+
+        if (p < i) {
+            System.arraycopy(tour, p + 1, tour, p + 1 + length, i - p - 1);
+            System.arraycopy(run, 0, tour, p + 1, length);
+        }
+        else {
+            System.arraycopy(tour, i + length, tour, i, p - i - length + 1);
+            System.arraycopy(run, 0, tour, p - length + 1, length);
+        }
+    }
+
+    /**
+     * Cuts the tour into four pieces after the start and joins them back up in the order A C B D, which no 2-opt or
+     * Or-opt move can undo in one step
+     */
+    private static int[] doubleBridge(int[] tour, Random random) {
+        int m = tour.length;
+        int[] cuts = {1 + random.nextInt(m - 1), 1 + random.nextInt(m - 1), 1 + random.nextInt(m - 1)};
+        Arrays.sort(cuts);
+
+        int[] kicked = new int[m];
+        int n = 0;
+        for (int i = 0; i < cuts[0]; i++)
+            kicked[n++] = tour[i];
+        for (int i = cuts[1]; i < cuts[2]; i++)
+            kicked[n++] = tour[i];
+        for (int i = cuts[0]; i < cuts[1]; i++)
+            kicked[n++] = tour[i];
+        for (int i = cuts[2]; i < m; i++)
+            kicked[n++] = tour[i];
+
+        return kicked;
+    }
+
+    /**
+     * @return the time to travel around the whole tour, back to the start
+     */
+    static double cost(int[] tour, double[][] costs) {
+        double total = 0;
+        for (int i = 0; i < tour.length; i++)
+            total += costs[tour[i]][tour[(i + 1) % tour.length]];
+
+        return total;
+    }
+
+    /**
+     * A planned tour: the order to visit the stops in and the route through them
+     */
+    public static class Tour {
+        private final List<Node> stops;
+        private final int[] order;
+        private final Route route;
+        private final double travelTime;
+        private final double matrixTime;
+        private final double orderTime;
+        private final double routeTime;
+
+        private Tour(List<Node> stops, int[] order, Route route, double travelTime, double matrixTime,
+                     double orderTime, double routeTime) {
+            this.stops = Collections.unmodifiableList(stops);
+            this.order = order;
+            this.route = route;
+            this.travelTime = travelTime;
+            this.matrixTime = matrixTime;
+            this.orderTime = orderTime;
+            this.routeTime = routeTime;
+        }
+
+        /**
+         * @return the stops in the order they're visited, starting with the first stop (which isn't repeated at the end
+         * of a tour that returns to it)
+         */
+        public List<Node> getStops() {
+            return stops;
+        }
+
+        /**
+         * @return the position in the original list of stops of each stop in the order they're visited
+         */
+        public int[] getOrder() {
+            return order.clone();
+        }
+
+        /**
+         * @return the route through every stop in order, leaving out any legs which couldn't be driven
+         */
+        public Route getRoute() {
+            return route;
+        }
+
+        /**
+         * @return the time to drive the tour in hours, or infinity if some stops can't be reached from others
+         */
+        public double getTravelTime() {
+            return travelTime;
+        }
+
+        public boolean isComplete() {
+            return travelTime != Double.POSITIVE_INFINITY;
+        }
+
+        /**
+         * @return how long finding the travel times between the stops took, in seconds
+         */
+        public double getMatrixTime() {
+            return matrixTime;
+        }
+
+        /**
+         * @return how long ordering the stops took, in seconds
+         */
+        public double getOrderTime() {
+            return orderTime;
+        }
+
+        /**
+         * @return how long finding and joining up the legs of the route took, in seconds
+         */
+        public double getRouteTime() {
+            return routeTime;
+        }
+    }
+
+    /**
+     * The state of one search, indexed by search state. Each search gets a new stamp rather than clearing the arrays,
+     * so starting a search costs nothing however big the graph is
+     */
+    private static class SearchSpace {
+        private final double[] cost;
+        private final int[] parents;
+        private final int[] parentArcs;
+        private final int[] reached; //Stamp of the search which last reached the state
+        private final int[] settled; //Stamp of the search which last settled the state
+        private final NodeHeap heap = new NodeHeap();
+        private int stamp = 0;
+
+        private SearchSpace(int stateCount) {
+            cost = new double[stateCount];
+            parents = new int[stateCount];
+            parentArcs = new int[stateCount];
+            reached = new int[stateCount];
+            settled = new int[stateCount];
+        }
+
+        private void reset() {
+            stamp++;
+            heap.clear();
+        }
+
+        /**
+         * @param estimate lower bound on the cost from the node to the goal, added to its key in the heap
+         */
+        private void relax(int state, double newCost, int parent, int arc, double estimate) {
+            if (settled[state] == stamp || reached[state] == stamp && newCost >= cost[state])
+                return;
+
+            reached[state] = stamp;
+            cost[state] = newCost;
+            parents[state] = parent;
+            parentArcs[state] = arc;
+            heap.add(state, newCost + estimate);
+        }
+
+        private void relax(int state, double newCost, int parent, int arc) {
+            relax(state, newCost, parent, arc, 0);
+        }
+
+        /**
+         * @return false if the state was already settled, which means the heap entry was a stale one
+         */
+        private boolean settle(int state) {
+            if (settled[state] == stamp)
+                return false;
+
+            settled[state] = stamp;
+            return true;
+        }
+
+        private boolean isSettled(int state) {
+            return settled[state] == stamp;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the traffic lights at a location. The lights are kept in a hash grid with cells of 0.01 (the distance
+ * {@link Location#equals} uses), so a location only has to be compared against the lights in the cells around it
+ * rather than every light
+ */
+public class TrafficLightIndex {
+    private static final double CELL_SIZE = 0.01;
+
+    private Map<Long, List<Location>> cells = new HashMap<>();
+
+    public void add(Location light) {
+        cells.computeIfAbsent(key(cell(light.x), cell(light.y)), v -> new ArrayList<>()).add(light);
+    }
+
+    /**
+     * @return true if there is a light equal to the given location
+     */
+    public boolean contains(Location location) {
+        long x = cell(location.x);
+        long y = cell(location.y);
+
+        for (long dx = -1; dx <= 1; dx++)
+            for (long dy = -1; dy <= 1; dy++)
+                for (Location light : cells.getOrDefault(key(x + dx, y + dy), Collections.emptyList()))
+                    if (light.equals(location))
+                        return true;
+
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return cells.isEmpty();
+    }
+
+    private static long cell(double coordinate) {
+        return (long) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    private static long key(long x, long y) {
+        return (x << 32) ^ (y & 0xffffffffL);
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * The ways a route can be travelled, each with the roads it's allowed on and how fast it goes along them. Each profile
+ * has its own bit, so the profiles allowed along a segment can be precomputed into one bitmask.
+ */
+public enum VehicleProfile {
+    CAR("Car", 1 / 0.0083, true),
+    BIKE("Bike", 18, true),
+    WALK("Walk", 5, false);
+
+    private final String name;
+    private final double maxSpeed;
+    private final boolean followsTrafficRules;
+
+    VehicleProfile(String name, double maxSpeed, boolean followsTrafficRules) {
+        this.name = name;
+        this.maxSpeed = maxSpeed;
+        this.followsTrafficRules = followsTrafficRules;
+    }
+
+    /**
+     * @return the bit for this profile in an access mask
+     */
+    public int getBit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * @return a speed in km/h which is at least as fast as this profile goes along any road, for search heuristics
+     */
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+    /**
+     * @return true if this profile has to follow one way roads and turn restrictions
+     */
+    public boolean followsTrafficRules() {
+        return followsTrafficRules;
+    }
+
+    /**
+     * @return the speed this profile travels along the road at, in km/h
+     */
+    public double getSpeed(RoadInfo roadInfo) {
+        switch (this) {
+            case CAR:
+                return roadInfo.getWeightedRoadSpeed();
+            case BIKE:
+                return Math.min(maxSpeed, roadInfo.getActualSpeed());
+            default:
+                return maxSpeed;
+        }
+    }
+
+    /**
+     * @return true if this profile is allowed on the road
+     */
+    public boolean isAllowedOn(RoadInfo roadInfo) {
+        switch (this) {
+            case CAR:
+                return !roadInfo.isNotForCars();
+            case BIKE:
+                return !roadInfo.isNotForCyclists();
+            default:
+                return !roadInfo.isNotForPedestrians();
+        }
+    }
+
+    /**
+     * Works out which profiles can travel along a road
+     *
+     * @param roadInfo the road
+     * @param against  true if the road is being travelled from its second node to its first
+     * @return a mask with the bit set for every profile allowed
+     */
+    public static int accessMask(RoadInfo roadInfo, boolean against) {
+        int mask = 0;
+        for (VehicleProfile profile : values())
+            if (profile.isAllowedOn(roadInfo) && !(against && roadInfo.isOneWay() && profile.followsTrafficRules))
+                mask |= profile.getBit();
+
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
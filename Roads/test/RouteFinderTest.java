@@ -0,0 +1,369 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Checks that bidirectional A*, time dependent A*, the car profile and A* over a tiled store find the same routes as
+ * one way A*, between random starts and goals on synthetic grids with and without turn restrictions. Every path found
+ * is also checked to only follow segments that can be travelled in that direction, and never to take a banned turn.
+ * The grids come from {@link SyntheticRoadNetwork}, so build and run from the Roads directory with:
+ * <pre>
+ *     javac -d out src/*.java bench/*.java test/*.java
+ *     java -cp out RouteFinderTest
+ * </pre>
+ * Exits with a failure if any check doesn't hold.
+ */
+public class RouteFinderTest {
+    private static final int NODE_COUNT = 2500;
+    private static final int PAIR_COUNT = 200;
+    private static final double EXTRA_RESTRICTIONS = 0.2; //Fraction of nodes given a banned turn in the last map
+    private static final double EPSILON = 1e-9;
+    private static final double DEPARTURE_TIME = 8.5;
+
+    public static void main(String[] args) throws IOException {
+        File directory = Files.createTempDirectory("roads-test").toFile();
+        try {
+            new SyntheticRoadNetwork(SyntheticRoadNetwork.Topology.GRID, NODE_COUNT, 17).write(directory);
+            File restrictions = new File(directory, SyntheticRoadNetwork.RESTRICTIONS_FILENAME);
+
+            RoadMap map = load(directory, null);
+            compare(map, "without restrictions");
+            compareTimeDependent(map, "without restrictions");
+            compareCarProfile(map, "without restrictions");
+
+            map = load(directory, restrictions);
+            compare(map, "with the generated restrictions");
+            compareTimeDependent(map, "with the generated restrictions");
+            compareCarProfile(map, "with the generated restrictions");
+            compareTiled(directory, restrictions, "with the generated restrictions");
+
+            addRestrictions(directory, restrictions);
+            map = load(directory, restrictions);
+            compare(map, "with a banned turn at a fifth of the nodes");
+            compareTimeDependent(map, "with a banned turn at a fifth of the nodes");
+            compareCarProfile(map, "with a banned turn at a fifth of the nodes");
+            compareTiled(directory, restrictions, "with a banned turn at a fifth of the nodes");
+        }
+        finally {
+            delete(directory);
+        }
+
+        System.out.println("RouteFinderTest passed");
+    }
+
+    static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null)
+            for (File child : files)
+                delete(child);
+
+        file.delete();
+    }
+
+    /**
+     * Searches between random pairs of nodes both ways, for every combination of cost options, checking that the two
+     * searches agree on whether there's a path and on its cost
+     */
+    private static void compare(RoadMap map, String description) {
+        Random random = new Random(NODE_COUNT);
+        List<Node> nodes = new ArrayList<>(map.getNodeLookupTable().values());
+        RouteFinder routeFinder = map.getRouteFinder();
+        int found = 0;
+
+        for (int pair = 0; pair < PAIR_COUNT; pair++) {
+            Node start = nodes.get(random.nextInt(nodes.size()));
+            Node goal = nodes.get(random.nextInt(nodes.size()));
+            if (start.equals(goal))
+                continue;
+
+            for (int options = 0; options < 4; options++) {
+                boolean isSpeedHeuristic = (options & 1) != 0;
+                boolean useTrafficLights = (options & 2) != 0;
+                String query = description + ", " + start.getID() + " to " + goal.getID() + ", speed "
+                        + isSpeedHeuristic + ", traffic lights " + useTrafficLights;
+
+                List<Node> oneWay = routeFinder.aStarSearch(start, goal, isSpeedHeuristic, useTrafficLights);
+                List<Node> bidirectional = routeFinder.bidirectionalAStarSearch(start, goal, isSpeedHeuristic,
+                        useTrafficLights);
+
+                check(isPath(oneWay, start, goal) == isPath(bidirectional, start, goal),
+                        "both searches find a path or neither does: " + query);
+                if (!isPath(oneWay, start, goal))
+                    continue;
+
+                double oneWayCost = cost(map, oneWay, isSpeedHeuristic, useTrafficLights, query);
+                double bidirectionalCost = cost(map, bidirectional, isSpeedHeuristic, useTrafficLights, query);
+                check(Math.abs(oneWayCost - bidirectionalCost) <= EPSILON * Math.max(1, oneWayCost),
+                        "bidirectional cost " + bidirectionalCost + " matches one way cost " + oneWayCost + ": " + query);
+                found++;
+            }
+        }
+
+        check(found > PAIR_COUNT, "most searches " + description + " find a path");
+    }
+
+    /**
+     * Searches between random pairs of nodes with A* by travel time and with time dependent A*, checking they agree.
+     * The maps have no speed profiles, so every road is travelled at its weighted speed whenever it's reached, and the
+     * quickest path is the one A* finds (its costs are doubled when traffic lights aren't preferred, which doesn't
+     * change which path is cheapest)
+     */
+    private static void compareTimeDependent(RoadMap map, String description) {
+        Random random = new Random(NODE_COUNT);
+        List<Node> nodes = new ArrayList<>(map.getNodeLookupTable().values());
+        RouteFinder routeFinder = map.getRouteFinder();
+        int found = 0;
+
+        for (int pair = 0; pair < PAIR_COUNT; pair++) {
+            Node start = nodes.get(random.nextInt(nodes.size()));
+            Node goal = nodes.get(random.nextInt(nodes.size()));
+            if (start.equals(goal))
+                continue;
+
+            String query = description + ", " + start.getID() + " to " + goal.getID() + ", time dependent";
+            List<Node> oneWay = routeFinder.aStarSearch(start, goal, true, false);
+            List<Node> timeDependent = routeFinder.timeDependentSearch(start, goal, DEPARTURE_TIME);
+
+            check(isPath(oneWay, start, goal) == isPath(timeDependent, start, goal),
+                    "both searches find a path or neither does: " + query);
+            if (!isPath(oneWay, start, goal))
+                continue;
+
+            double oneWayCost = cost(map, oneWay, true, false, query);
+            double timeDependentCost = cost(map, timeDependent, true, false, query);
+            check(Math.abs(oneWayCost - timeDependentCost) <= EPSILON * Math.max(1, oneWayCost),
+                    "time dependent cost " + timeDependentCost + " matches one way cost " + oneWayCost + ": " + query);
+            found++;
+        }
+
+        check(found > PAIR_COUNT / 2, "most time dependent searches " + description + " find a path");
+    }
+
+    /**
+     * Searches between random pairs of nodes with A* by travel time and for the car profile, checking they agree. The
+     * car travels at the same weighted speeds, but isn't allowed on the few roads closed to cars, which A* doesn't
+     * know about. So the car's route can never be quicker, and has to be just as quick whenever A*'s route stays on
+     * roads cars are allowed on
+     */
+    private static void compareCarProfile(RoadMap map, String description) {
+        Random random = new Random(NODE_COUNT);
+        List<Node> nodes = new ArrayList<>(map.getNodeLookupTable().values());
+        RouteFinder routeFinder = map.getRouteFinder();
+        int matched = 0;
+
+        for (int pair = 0; pair < PAIR_COUNT; pair++) {
+            Node start = nodes.get(random.nextInt(nodes.size()));
+            Node goal = nodes.get(random.nextInt(nodes.size()));
+            if (start.equals(goal))
+                continue;
+
+            String query = description + ", " + start.getID() + " to " + goal.getID() + ", car profile";
+            List<Node> oneWay = routeFinder.aStarSearch(start, goal, true, false);
+            List<Node> car = routeFinder.findRoute(start, goal, VehicleProfile.CAR).getNodes();
+
+            if (!isPath(oneWay, start, goal)) {
+                check(!isPath(car, start, goal), "the car finds no path when A* doesn't: " + query);
+                continue;
+            }
+            if (!isPath(car, start, goal))
+                continue;
+
+            double oneWayCost = cost(map, oneWay, true, false, false, query);
+            double carCost = cost(map, car, true, false, true, query);
+            check(carCost >= oneWayCost - EPSILON * Math.max(1, oneWayCost),
+                    "car cost " + carCost + " isn't less than one way cost " + oneWayCost + ": " + query);
+
+            if (!staysOnCarRoads(map, oneWay)
+                    || Math.abs(cost(map, oneWay, true, false, true, query) - oneWayCost) > EPSILON * oneWayCost)
+                continue;
+
+            check(Math.abs(oneWayCost - carCost) <= EPSILON * Math.max(1, oneWayCost),
+                    "car cost " + carCost + " matches one way cost " + oneWayCost + ": " + query);
+            matched++;
+        }
+
+        check(matched > PAIR_COUNT / 2, "most car searches " + description + " match A*");
+    }
+
+    /**
+     * @return true if every pair of nodes along the path is joined by a segment cars are allowed on
+     */
+    private static boolean staysOnCarRoads(RoadMap map, List<Node> path) {
+        for (int i = 0; i + 1 < path.size(); i++) {
+            int from = path.get(i).getID();
+            int to = path.get(i + 1).getID();
+            boolean allowed = false;
+            for (RoadSegment segment : map.getNodeAdjacencyTable().getOrDefault(from, List.of()))
+                allowed |= segment.getOtherNode(from) == to
+                        && !map.getRoadInfoLookupTable().get(segment.getID()).isNotForCars();
+
+            if (!allowed)
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Searches between random pairs of nodes with A* on the heap and on a {@link TiledRoadStore} built from the same
+     * files, for every combination of cost options, checking they agree. The tiled store keeps the IDs in the files, so
+     * the map on the heap is loaded in file order
+     */
+    private static void compareTiled(File directory, File restrictions, String description) throws IOException {
+        RoadMap map = new RoadMap();
+        map.setHilbertOrdering(false);
+        File nodesFile = new File(directory, SyntheticRoadNetwork.NODES_FILENAME);
+        File roadsFile = new File(directory, SyntheticRoadNetwork.ROADS_FILENAME);
+        File segsFile = new File(directory, SyntheticRoadNetwork.SEGS_FILENAME);
+        File trafficFile = new File(directory, SyntheticRoadNetwork.TRAFFIC_FILENAME);
+        check(map.load(nodesFile, roadsFile, segsFile, null, restrictions, trafficFile), "map loads in file order");
+
+        File tiles = new File(directory, "tiles");
+        tiles.mkdir();
+        TiledRoadStore.build(nodesFile, roadsFile, segsFile, trafficFile, tiles);
+
+        try (TiledRoadStore store = TiledRoadStore.open(tiles)) {
+            TiledRouteFinder tiledRouteFinder = new TiledRouteFinder(store, map.getRoadInfoLookupTable(),
+                    map.getRestrictionsMap());
+            Random random = new Random(NODE_COUNT);
+            List<Node> nodes = new ArrayList<>(map.getNodeLookupTable().values());
+            int found = 0;
+
+            for (int pair = 0; pair < PAIR_COUNT; pair++) {
+                Node start = nodes.get(random.nextInt(nodes.size()));
+                Node goal = nodes.get(random.nextInt(nodes.size()));
+                if (start.equals(goal))
+                    continue;
+
+                for (int options = 0; options < 4; options++) {
+                    boolean isSpeedHeuristic = (options & 1) != 0;
+                    boolean useTrafficLights = (options & 2) != 0;
+                    String query = description + ", " + start.getID() + " to " + goal.getID() + ", tiled, speed "
+                            + isSpeedHeuristic + ", traffic lights " + useTrafficLights;
+
+                    List<Node> oneWay = map.getRouteFinder().aStarSearch(start, goal, isSpeedHeuristic,
+                            useTrafficLights);
+                    Route tiled = tiledRouteFinder.findRoute(start.getID(), goal.getID(), isSpeedHeuristic,
+                            useTrafficLights);
+
+                    check(isPath(oneWay, start, goal) == tiled.isFound(),
+                            "both searches find a path or neither does: " + query);
+                    if (!tiled.isFound())
+                        continue;
+
+                    //The tiled store reads its own copies of the nodes, so the path is costed with the map's
+                    List<Node> tiledPath = new ArrayList<>();
+                    for (Node node : tiled.getNodes())
+                        tiledPath.add(map.getNodeLookupTable().get(node.getID()));
+
+                    double oneWayCost = cost(map, oneWay, isSpeedHeuristic, useTrafficLights, query);
+                    double tiledCost = cost(map, tiledPath, isSpeedHeuristic, useTrafficLights, query);
+                    check(Math.abs(oneWayCost - tiledCost) <= EPSILON * Math.max(1, oneWayCost),
+                            "tiled cost " + tiledCost + " matches one way cost " + oneWayCost + ": " + query);
+                    found++;
+                }
+            }
+
+            check(found > PAIR_COUNT, "most tiled searches " + description + " find a path");
+        }
+    }
+
+    /**
+     * @return true if the search found a path from the start to the goal, rather than just the goal on its own
+     */
+    private static boolean isPath(List<Node> path, Node start, Node goal) {
+        return path.size() >= 2 && path.get(0).equals(start) && path.get(path.size() - 1).equals(goal);
+    }
+
+    /**
+     * Adds up the cost of a path the same way the route finder does, taking the cheapest segment between each pair of
+     * nodes. Fails if a pair isn't joined by a segment that can be travelled that way, or a turn along it is banned
+     */
+    private static double cost(RoadMap map, List<Node> path, boolean isSpeedHeuristic, boolean useTrafficLights,
+                               String query) {
+        return cost(map, path, isSpeedHeuristic, useTrafficLights, false, query);
+    }
+
+    /**
+     * @param carsOnly true to only take segments on roads cars are allowed on
+     */
+    private static double cost(RoadMap map, List<Node> path, boolean isSpeedHeuristic, boolean useTrafficLights,
+                               boolean carsOnly, String query) {
+        double cost = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            Node from = path.get(i);
+            Node to = path.get(i + 1);
+
+            if (i > 0) {
+                for (Restriction restriction : map.getRestrictionsMap().getOrDefault(from.getID(), List.of()))
+                    check(restriction.getNodeID1() != path.get(i - 1).getID() || restriction.getNodeID2() != to.getID(),
+                            "path doesn't turn from " + path.get(i - 1).getID() + " through " + from.getID() + " to "
+                                    + to.getID() + ": " + query);
+            }
+
+            double cheapest = Double.POSITIVE_INFINITY;
+            for (RoadSegment segment : map.getNodeAdjacencyTable().getOrDefault(from.getID(), List.of())) {
+                RoadInfo roadInfo = map.getRoadInfoLookupTable().get(segment.getID());
+                if (segment.getOtherNode(from.getID()) != to.getID() || carsOnly && roadInfo.isNotForCars())
+                    continue;
+
+                cheapest = Math.min(cheapest, segment.getLength()
+                        / (isSpeedHeuristic ? roadInfo.getWeightedRoadSpeed() : 1)
+                        * (useTrafficLights && to.hasTrafficLight() ? 1 : 2));
+            }
+
+            check(cheapest < Double.POSITIVE_INFINITY,
+                    "path can travel from " + from.getID() + " to " + to.getID() + ": " + query);
+            cost += cheapest;
+        }
+
+        return cost;
+    }
+
+    /**
+     * Bans a random turn at a fraction of the nodes, on top of the restrictions already in the file. The map is loaded
+     * in file order, so the restrictions use the IDs in the files
+     */
+    static void addRestrictions(File directory, File restrictions) throws IOException {
+        RoadMap map = new RoadMap();
+        map.setHilbertOrdering(false);
+        check(map.load(new File(directory, SyntheticRoadNetwork.NODES_FILENAME),
+                new File(directory, SyntheticRoadNetwork.ROADS_FILENAME),
+                new File(directory, SyntheticRoadNetwork.SEGS_FILENAME), null, null, null), "map loads in file order");
+
+        Random random = new Random(NODE_COUNT + 1);
+        List<Integer> ids = new ArrayList<>(map.getNodeLookupTable().keySet());
+        Collections.sort(ids);
+
+        try (Writer writer = new FileWriter(restrictions, true)) {
+            for (int via : ids) {
+                List<RoadSegment> segments = map.getNodeAdjacencyTable().getOrDefault(via, List.of());
+                if (segments.size() < 2 || random.nextDouble() >= EXTRA_RESTRICTIONS)
+                    continue;
+
+                RoadSegment in = segments.get(random.nextInt(segments.size()));
+                RoadSegment out = segments.get(random.nextInt(segments.size()));
+                if (in == out)
+                    continue;
+
+                writer.write(in.getOtherNode(via) + "\t" + in.getID() + "\t" + via + "\t" + out.getID() + "\t"
+                        + out.getOtherNode(via) + "\n");
+            }
+        }
+    }
+
+    static RoadMap load(File directory, File restrictions) {
+        RoadMap map = new RoadMap();
+        check(map.load(new File(directory, SyntheticRoadNetwork.NODES_FILENAME),
+                new File(directory, SyntheticRoadNetwork.ROADS_FILENAME),
+                new File(directory, SyntheticRoadNetwork.SEGS_FILENAME), null, restrictions,
+                new File(directory, SyntheticRoadNetwork.TRAFFIC_FILENAME)), "map loads");
+
+        return map;
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,75 @@
+import java.util.concurrent.*;
+
+/**
+ * Checks travel times along roads with speed profiles. Build and run from the Roads directory with:
+ * <pre>
+ *     javac -d out src/*.java test/*.java
+ *     java -cp out SpeedProfilesTest
+ * </pre>
+ * Exits with a failure if any check doesn't hold.
+ */
+public class SpeedProfilesTest {
+    private static final double EPSILON = 1e-9;
+
+    public static void main(String[] args) throws Exception {
+        SpeedProfiles profiles = new SpeedProfiles();
+        profiles.add(1, new double[]{0.2, 7, 9}, new double[]{30, 60, 40});
+        profiles.add(2, new double[]{0, 12, 24}, new double[]{20, 80, 20});
+
+        //Leaving on a later day, just before a point, where a time rebuilt from the day and the point rounds to
+        //just before the point and used to find the same point forever
+        double firstDay = travelTime(profiles, 1, 1.0, 0.19);
+        for (int day = 1; day <= 5; day++) {
+            double time = day * SpeedProfiles.HOURS_PER_DAY + 0.19;
+            check(Math.abs(travelTime(profiles, 1, 1.0, time) - firstDay) < EPSILON,
+                    "travel time leaving at " + time + " matches the first day");
+        }
+
+        //Leaving exactly on a point on a later day, and from one day into the next
+        for (int day = 0; day <= 5; day++) {
+            for (double timeOfDay : new double[]{0.2, 7, 9, 23.9}) {
+                double time = day * SpeedProfiles.HOURS_PER_DAY + timeOfDay;
+                check(Math.abs(travelTime(profiles, 1, 1.0, time) - travelTime(profiles, 1, 1.0, timeOfDay)) < EPSILON,
+                        "travel time leaving at " + time + " matches the first day");
+            }
+        }
+
+        //Points at the start and end of the day are at the same moment, and a long road crosses them
+        check(travelTime(profiles, 2, 100, 23) > 0, "travel time across midnight is positive");
+
+        //A constant speed profile takes the length over the speed
+        profiles.add(3, new double[]{6}, new double[]{50});
+        check(Math.abs(travelTime(profiles, 3, 500, 30.5) - 10) < EPSILON, "constant profile travel time");
+
+        //Roads without a profile use the default speed
+        check(Math.abs(profiles.getTravelTime(4, 10, 48.2, 40) - 0.25) < EPSILON, "default speed travel time");
+
+        System.out.println("SpeedProfilesTest passed");
+    }
+
+    /**
+     * Finds a travel time on another thread, failing rather than hanging if it doesn't return
+     */
+    private static double travelTime(SpeedProfiles profiles, int roadID, double length, double time) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            return executor.submit(() -> profiles.getTravelTime(roadID, length, time, 0)).get(5, TimeUnit.SECONDS);
+        }
+        catch (TimeoutException e) {
+            throw new AssertionError("travel time leaving at " + time + " never returned");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
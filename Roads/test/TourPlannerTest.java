@@ -0,0 +1,163 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Checks that planned tours cost what driving their legs with A* costs, on a synthetic grid with a banned turn at a
+ * fifth of the nodes, and that improving a tour never makes it slower than the nearest insertion tour it started from.
+ * The grid comes from {@link SyntheticRoadNetwork}, and the restrictions from {@link RouteFinderTest}, so build and run
+ * from the Roads directory with:
+ * <pre>
+ *     javac -d out src/*.java bench/*.java test/*.java
+ *     java -cp out TourPlannerTest
+ * </pre>
+ * Exits with a failure if any check doesn't hold.
+ */
+public class TourPlannerTest {
+    private static final int NODE_COUNT = 2500;
+    private static final int TOUR_COUNT = 10;
+    private static final int STOP_COUNT = 12;
+    private static final long TIME_BUDGET = 100; //Milliseconds
+    private static final int MATRIX_COUNT = 200;
+    private static final double EPSILON = 1e-9;
+
+    public static void main(String[] args) throws IOException {
+        File directory = Files.createTempDirectory("roads-test").toFile();
+        try {
+            new SyntheticRoadNetwork(SyntheticRoadNetwork.Topology.GRID, NODE_COUNT, 17).write(directory);
+            File restrictions = new File(directory, SyntheticRoadNetwork.RESTRICTIONS_FILENAME);
+            RouteFinderTest.addRestrictions(directory, restrictions);
+
+            checkLegs(RouteFinderTest.load(directory, restrictions));
+        }
+        finally {
+            RouteFinderTest.delete(directory);
+        }
+
+        checkImprovement();
+
+        System.out.println("TourPlannerTest passed");
+    }
+
+    /**
+     * Plans tours through random stops, checking that the tour's travel time is what it takes A* to drive each leg, and
+     * that the route through the stops takes that long too
+     */
+    private static void checkLegs(RoadMap map) {
+        Random random = new Random(NODE_COUNT);
+        List<Node> nodes = new ArrayList<>(map.getNodeLookupTable().values());
+        RouteFinder routeFinder = map.getRouteFinder();
+        TourPlanner planner = map.getTourPlanner();
+        int complete = 0;
+
+        for (int tour = 0; tour < TOUR_COUNT; tour++) {
+            List<Node> stops = new ArrayList<>();
+            for (int i = 0; i < STOP_COUNT; i++)
+                stops.add(nodes.get(random.nextInt(nodes.size())));
+
+            boolean returnToStart = tour % 2 == 0;
+            TourPlanner.Tour planned = planner.plan(stops, returnToStart, TIME_BUDGET);
+            List<Node> ordered = planned.getStops();
+            String query = "tour " + tour + " through " + stops.size() + " stops, return to start " + returnToStart;
+
+            check(ordered.get(0).equals(stops.get(0)), "tour starts at the first stop: " + query);
+            check(ordered.size() == stops.size(), "tour visits every stop: " + query);
+            if (!planned.isComplete())
+                continue;
+
+            double expected = 0;
+            int legCount = returnToStart ? ordered.size() : ordered.size() - 1;
+            for (int leg = 0; leg < legCount; leg++) {
+                Node from = ordered.get(leg);
+                Node to = ordered.get((leg + 1) % ordered.size());
+                if (from.equals(to))
+                    continue;
+
+                List<Node> path = routeFinder.aStarSearch(from, to, true, false);
+                check(path.size() >= 2, "A* finds the leg from " + from.getID() + " to " + to.getID() + ": " + query);
+                expected += time(map, path);
+            }
+
+            double routeTime = 0;
+            for (RoadSegment segment : planned.getRoute().getSegments())
+                routeTime += time(map, segment);
+
+            check(Math.abs(planned.getTravelTime() - expected) <= EPSILON * Math.max(1, expected),
+                    "tour time " + planned.getTravelTime() + " matches A* time " + expected + ": " + query);
+            check(Math.abs(routeTime - expected) <= EPSILON * Math.max(1, expected),
+                    "route time " + routeTime + " matches A* time " + expected + ": " + query);
+            complete++;
+        }
+
+        check(complete > TOUR_COUNT / 2, "most tours can be driven");
+    }
+
+    /**
+     * Improves nearest insertion tours over random asymmetric travel times, checking the improved tour still starts at
+     * the first stop, visits every stop once, and is never slower
+     */
+    private static void checkImprovement() {
+        Random random = new Random(MATRIX_COUNT);
+
+        for (int matrix = 0; matrix < MATRIX_COUNT; matrix++) {
+            int size = 2 + random.nextInt(40);
+            double[][] costs = new double[size][size];
+            for (int i = 0; i < size; i++)
+                for (int j = 0; j < size; j++)
+                    costs[i][j] = i == j ? 0 : random.nextDouble();
+
+            int[] inserted = TourPlanner.nearestInsertion(costs);
+            int[] improved = TourPlanner.improve(inserted, costs, System.nanoTime() + 10_000_000);
+            String query = "matrix " + matrix + " of " + size + " stops";
+
+            check(improved[0] == 0, "improved tour starts at the first stop: " + query);
+            check(isPermutation(improved), "improved tour visits every stop once: " + query);
+            check(TourPlanner.cost(improved, costs) <= TourPlanner.cost(inserted, costs) + EPSILON,
+                    "improved tour " + TourPlanner.cost(improved, costs) + " isn't slower than nearest insertion "
+                            + TourPlanner.cost(inserted, costs) + ": " + query);
+        }
+    }
+
+    private static boolean isPermutation(int[] tour) {
+        boolean[] seen = new boolean[tour.length];
+        for (int stop : tour) {
+            if (stop < 0 || stop >= tour.length || seen[stop])
+                return false;
+
+            seen[stop] = true;
+        }
+
+        return true;
+    }
+
+    /**
+     * Adds up the time to travel along a path at the roads' weighted speeds, taking the quickest segment between each
+     * pair of nodes like A* by travel time does. A* doubles its costs when traffic lights aren't preferred, which
+     * doesn't change the path it finds
+     */
+    private static double time(RoadMap map, List<Node> path) {
+        double time = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            int from = path.get(i).getID();
+            int to = path.get(i + 1).getID();
+
+            double quickest = Double.POSITIVE_INFINITY;
+            for (RoadSegment segment : map.getNodeAdjacencyTable().getOrDefault(from, List.of()))
+                if (segment.getOtherNode(from) == to)
+                    quickest = Math.min(quickest, time(map, segment));
+
+            time += quickest;
+        }
+
+        return time;
+    }
+
+    private static double time(RoadMap map, RoadSegment segment) {
+        return segment.getLength() / map.getRoadInfoLookupTable().get(segment.getID()).getWeightedRoadSpeed();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}